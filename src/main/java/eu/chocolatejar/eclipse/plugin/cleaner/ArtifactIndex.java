@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import eu.chocolatejar.eclipse.plugin.cleaner.model.Artifact;
+
+/**
+ * Artifacts of an installation kept in memory, indexed by their location and
+ * grouped by their symbolic name.
+ *
+ * Duplicates are always decided among artifacts with the same symbolic name,
+ * so a change of a single artifact needs to examine only its group.
+ *
+ * The index is not thread safe.
+ */
+class ArtifactIndex {
+
+    private final Map<File, Artifact> byLocation = new HashMap<>();
+    private final Map<String, Map<File, Artifact>> bySymbolicName = new HashMap<>();
+
+    /**
+     * Adds the artifact, replaces an artifact at the same location.
+     * 
+     * @return the replaced artifact, <code>null</code> if there was none
+     */
+    Artifact put(Artifact artifact) {
+        Artifact previous = remove(artifact.getLocation());
+        byLocation.put(artifact.getLocation(), artifact);
+        Map<File, Artifact> group = bySymbolicName.get(artifact.getSymbolicName());
+        if (group == null) {
+            group = new HashMap<>(2);
+            bySymbolicName.put(artifact.getSymbolicName(), group);
+        }
+        group.put(artifact.getLocation(), artifact);
+        return previous;
+    }
+
+    /**
+     * @return the removed artifact, <code>null</code> if there was none at
+     *         the location
+     */
+    Artifact remove(File location) {
+        Artifact removed = byLocation.remove(location);
+        if (removed != null) {
+            Map<File, Artifact> group = bySymbolicName.get(removed.getSymbolicName());
+            group.remove(location);
+            if (group.isEmpty()) {
+                bySymbolicName.remove(removed.getSymbolicName());
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * @return a copy of all artifacts with the symbolic name, never
+     *         <code>null</code>
+     */
+    Set<Artifact> getGroup(String symbolicName) {
+        Map<File, Artifact> group = bySymbolicName.get(symbolicName);
+        if (group == null) {
+            return Collections.emptySet();
+        }
+        return new HashSet<>(group.values());
+    }
+
+    /**
+     * @return a copy of all artifacts
+     */
+    Set<Artifact> getAll() {
+        return new HashSet<>(byLocation.values());
+    }
+
+    boolean contains(File location) {
+        return byLocation.containsKey(location);
+    }
+
+    int size() {
+        return byLocation.size();
+    }
+
+    void clear() {
+        byLocation.clear();
+        bySymbolicName.clear();
+    }
+}
@@ -15,23 +15,31 @@
  *******************************************************************************/
 package eu.chocolatejar.eclipse.plugin.cleaner;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.jar.Attributes;
-import java.util.jar.JarInputStream;
-import java.util.jar.Manifest;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.osgi.framework.Constants;
+import org.osgi.framework.Version;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import eu.chocolatejar.eclipse.plugin.cleaner.model.Artifact;
+import eu.chocolatejar.eclipse.plugin.cleaner.model.Requirement;
 
 /**
  * Parses an artifact (plugin or feature) from a folder or a file.
@@ -40,82 +48,130 @@ public class ArtifactParser {
 
     private static final Logger logger = LoggerFactory.getLogger(ArtifactParser.class);
 
-    /*
-     * The regexp based on specification (
-     * http://www.osgi.org/download/r4v43/osgi.core-4.3.0.pdf chapter 3.2.2 )
-     * 
-     * version ::= MAJOR( '.' MINOR ( '.' MICRO ( '.' QUALIFIER )? )? )?
-     * 
-     * MAJOR ::= NUMBER
-     * 
-     * MINOR ::= NUMBER
-     * 
-     * MICRO ::= NUMBER
-     * 
-     * QUALIFIER ::= ( ALPHANUM | ’_’ | '-' )+
-     * 
-     * where
-     * 
-     * NUMBER ::= digit+
-     * 
-     * ALPHANUM ::= alpha | digit
-     * 
-     * digit ::= [0..9]
-     * 
-     * alpha ::= [a..zA..Z]
+    private static final ManifestHeaderScanner HEADER_SCANNER = new ManifestHeaderScanner(
+            Constants.BUNDLE_SYMBOLICNAME, Constants.BUNDLE_VERSION, Constants.REQUIRE_BUNDLE,
+            Constants.FRAGMENT_HOST);
+
+    /**
+     * Mapping pays off only for large (signed) manifests. Small ones are read
+     * to the heap, this also keeps them unlocked on Windows for a later move.
+     */
+    private static final long MAPPED_MANIFEST_SIZE = 64 * 1024;
+
+    private final EntryReader entryReader = new EntryReader();
+
+    private final FeatureParser featureParser = new FeatureParser();
+
+    private final ContentFingerprinter fingerprinter = new ContentFingerprinter(entryReader);
+
+    private volatile boolean fingerprints;
+
+    private final ManifestCache manifestCache;
+
+    private final SymbolTable symbolTable;
+
+    private final AtomicLong metadataCalls = new AtomicLong();
+
+    /**
+     * Creates a parser that always reads manifests.
+     */
+    public ArtifactParser() {
+        this(null);
+    }
+
+    /**
+     * @param manifestCache
+     *            opens only manifests that are not in the cache,
+     *            <code>null</code> to disable caching
+     */
+    public ArtifactParser(ManifestCache manifestCache) {
+        this(manifestCache, new SymbolTable());
+    }
+
+    /**
+     * @param manifestCache
+     *            opens only manifests that are not in the cache,
+     *            <code>null</code> to disable caching
+     * @param symbolTable
+     *            shares names and versions of all parsed artifacts
+     */
+    public ArtifactParser(ManifestCache manifestCache, SymbolTable symbolTable) {
+        this.manifestCache = manifestCache;
+        this.symbolTable = symbolTable;
+    }
+
+    /**
+     * @param fingerprints
+     *            when <code>true</code> artifacts parsed from a manifest or a
+     *            <code>feature.xml</code> get a content fingerprint, see
+     *            {@link ContentFingerprinter}
      */
-    private static final String ALPHANUM = "A-Za-z0-9";
-    private static final String NUMBER = "[0-9]+";
-    private static final String MAJOR = NUMBER;
-    private static final String MINOR = NUMBER;
-    private static final String MICRO = NUMBER;
-    private static final String QUALIFIER = "[" + ALPHANUM + "\\_\\-]+";
-    private static final String VERSION_REGULAR_EXPRESSION = MAJOR + "(\\." + MINOR + "(\\." + MICRO + "(\\."
-            + QUALIFIER + ")?" + ")?" + ")?";
-    private static final Pattern VERSION_PATTERN = Pattern.compile(VERSION_REGULAR_EXPRESSION);
+    public void setFingerprints(boolean fingerprints) {
+        this.fingerprints = fingerprints;
+    }
 
     /**
-     * Parses a bundle from a folder or a jar file using a manifest. If manifest
-     * is unreadable uses the filename to obtain a version.
+     * Parses a bundle from a folder or a jar file using a manifest. Features
+     * without an OSGi manifest are parsed from their <code>feature.xml</code>.
+     * If neither is readable uses the filename to obtain a version.
      * 
      * @param file
      *            with a potential bundle to parse
      */
     public Artifact createFromFile(File file) {
-        Artifact a = getArtifactBasedOnManifest(file);
+        return createFromFile(file, null);
+    }
+
+    /**
+     * Parses a bundle using attributes already read by a directory scan, so
+     * the file itself is not examined again.
+     * 
+     * @param file
+     *            with a potential bundle to parse
+     * @param attributes
+     *            of the file, <code>null</code> if not known
+     * @see #createFromFile(File)
+     */
+    public Artifact createFromFile(File file, BasicFileAttributes attributes) {
+        Artifact a = getArtifactBasedOnManifest(file, attributes);
 
         if (a == null) {
             a = getArtifactBasedOnFilename(file);
 
             if (a == null) {
                 logger.error("Skipping: Unable to parse a version from '{}'!", file);
+                return null;
             }
         }
 
-        return a;
+        return symbolTable.intern(a);
     }
 
     /**
-     * Resolve artifact by reg exp from the filename
+     * Parses a bundle only from its filename, the manifest is not opened.
+     * 
+     * @param file
+     *            with a potential bundle to parse
+     * @return <code>null</code> if the filename doesn't contain a version
+     */
+    public Artifact createFromFilename(File file) {
+        Artifact a = getArtifactBasedOnFilename(file);
+        return a == null ? null : symbolTable.intern(a);
+    }
+
+    /**
+     * Resolve artifact from the filename
      * 
      * @param file
      * @return <code>null</code> if not found
+     * @see FilenameTokenizer
      */
     private Artifact getArtifactBasedOnFilename(File file) {
         if (file == null) {
             return null;
         }
         try {
-            String baseName = FilenameUtils.getName(file.getAbsolutePath());
-
-            Matcher versionMatcher = VERSION_PATTERN.matcher(baseName);
-            if (versionMatcher.find()) {
-                String version = versionMatcher.group(0);
-                if (baseName.contains("_")) {
-                    String bundleSymbolicName = StringUtils.substringBeforeLast(baseName, "_" + version);
-                    return new Artifact(file, bundleSymbolicName, version);
-                }
-            }
+            return FilenameTokenizer.tokenize(file);
         } catch (Exception e) {
             logger.debug("Unable to parse artifact based on filename from the file '{}'.", file, e);
         }
@@ -123,23 +179,41 @@ public class ArtifactParser {
     }
 
     /**
-     * Parses a bundle from a folder or a jar file using a manifest.
+     * Parses a bundle from a folder or a jar file using a manifest, or a
+     * feature using its <code>feature.xml</code>.
      * 
      * @param file
+     * @param attributes
+     *            of the file, read if <code>null</code>
      * @return <code>null</code> if unable to parse
      */
-    private Artifact getArtifactBasedOnManifest(File file) {
+    private Artifact getArtifactBasedOnManifest(File file, BasicFileAttributes attributes) {
         if (file == null) {
             return null;
         }
         try {
-            if (file.isDirectory()) {
+            if (attributes == null) {
+                attributes = readAttributes(file);
+                if (attributes == null) {
+                    return null;
+                }
+            }
+            if (attributes.isDirectory()) {
                 File manifest = FileUtils.getFile(file, "META-INF/MANIFEST.MF");
-                if (manifest.exists()) {
-                    return parseFromManifest(file, manifest);
+                BasicFileAttributes manifestAttributes = readAttributes(manifest);
+                if (manifestAttributes != null) {
+                    Artifact a = parseFromCachedManifest(file, manifest, manifestAttributes);
+                    if (a != null) {
+                        return a;
+                    }
+                }
+                File featureXml = new File(file, FeatureParser.FEATURE_XML);
+                BasicFileAttributes featureXmlAttributes = readAttributes(featureXml);
+                if (featureXmlAttributes != null) {
+                    return parseFromCachedManifest(file, featureXml, featureXmlAttributes);
                 }
             } else {
-                return parseFromManifest(file, file);
+                return parseFromCachedManifest(file, file, attributes);
             }
         } catch (Exception e) {
             logger.debug("Unable to parse artifact based on manifest from the file '{}'.", file, e);
@@ -148,57 +222,217 @@ public class ArtifactParser {
     }
 
     /**
-     * Create an artifact for the jar based on jarsManifest
+     * Uses the manifest cache if available, otherwise parses the manifest
+     * directly.
      * 
-     * @param jar
-     *            the location of the bundle. It can be a folder or a file.
-     * @param jarsManifest
-     *            manifest location can be within the folder or within the jar.
-     * @return
+     * The cache key is the absolute normalized path, resolving a canonical
+     * path would cost additional metadata calls. A fingerprint missing in the
+     * cache is computed and stored when fingerprints are enabled. The cached
+     * fingerprint of an exploded bundle is used only while its tree signature
+     * is unchanged, the manifest alone doesn't tell whether other files
+     * changed.
+     * 
+     * @see #parseFromDescriptor(File, File)
      */
-    private Artifact parseFromManifest(File jar, File jarsManifest) {
-        Manifest bundleManifest = readManifestfromJarOrDirectory(jarsManifest);
+    private Artifact parseFromCachedManifest(File jar, File jarsManifest, BasicFileAttributes attributes)
+            throws IOException {
+        if (manifestCache == null) {
+            Artifact artifact = parseFromDescriptor(jar, jarsManifest);
+            if (artifact != null && fingerprints) {
+                artifact = artifact.withFingerprint(fingerprint(jar));
+            }
+            return artifact;
+        }
 
-        if (bundleManifest == null) {
-            logger.debug("Invalid manifest '{}'", jarsManifest);
+        final String path = jarsManifest.toPath().toAbsolutePath().normalize().toString();
+        final long size = attributes.size();
+        final long lastModified = attributes.lastModifiedTime().toMillis();
+        // the descriptor of an exploded bundle is a file within it
+        final boolean exploded = !jar.equals(jarsManifest);
+        final String treeSignature = fingerprints && exploded ? treeSignature(jar) : null;
+
+        ManifestCache.Entry cached = manifestCache.get(path, size, lastModified);
+        if (cached != null) {
+            if (cached.isNegative()) {
+                return null;
+            }
+            String fingerprint = cached.fingerprint;
+            if (exploded && (treeSignature == null || !treeSignature.equals(cached.treeSignature))) {
+                fingerprint = null;
+            }
+            boolean missing = fingerprint == null && fingerprints;
+            if (missing) {
+                fingerprint = fingerprint(jar);
+            }
+            Version version = new Version(cached.version);
+            Artifact artifact = new Artifact(jar, cached.symbolicName, version, cached.requirements, null, fingerprint);
+            if (missing) {
+                manifestCache.put(path, size, lastModified, artifact, treeSignature);
+            }
+            return artifact;
+        }
+
+        Artifact artifact = null;
+        try {
+            artifact = parseFromDescriptor(jar, jarsManifest);
+            if (artifact != null && fingerprints) {
+                artifact = artifact.withFingerprint(fingerprint(jar));
+            }
+            return artifact;
+        } finally {
+            // failures are cached as well
+            manifestCache.put(path, size, lastModified, artifact, treeSignature);
+        }
+    }
+
+    /**
+     * @return <code>null</code> if the folder can't be walked, a fingerprint
+     *         is then never reused
+     */
+    private String treeSignature(File folder) {
+        try {
+            return fingerprinter.treeSignature(folder);
+        } catch (IOException e) {
+            logger.debug("Unable to read the tree signature of '{}'.", folder, e);
             return null;
         }
+    }
 
-        Attributes attributes = bundleManifest.getMainAttributes();
-        if (attributes == null) {
-            logger.debug("Manifest '{}' doesn't contain attributes.", jarsManifest);
+    /**
+     * @return <code>null</code> if the content can't be fingerprinted
+     */
+    private String fingerprint(File jar) {
+        try {
+            return fingerprinter.fingerprint(jar);
+        } catch (IOException e) {
+            logger.debug("Unable to fingerprint '{}'.", jar, e);
             return null;
         }
+    }
+
+    /**
+     * Parses either a manifest or a <code>feature.xml</code>. A jar without an
+     * OSGi manifest is tried as a feature jar, only a jar that is neither is
+     * reported.
+     * 
+     * @param descriptor
+     *            a manifest, a <code>feature.xml</code> or a jar
+     */
+    private Artifact parseFromDescriptor(File jar, File descriptor) throws IOException {
+        if (FeatureParser.FEATURE_XML.equals(descriptor.getName())) {
+            try (InputStream in = new BufferedInputStream(new FileInputStream(descriptor))) {
+                return featureParser.parse(jar, in);
+            }
+        }
 
-        String bundleSymbolicName = attributes.getValue(Constants.BUNDLE_SYMBOLICNAME);
-        String bundleVersion = attributes.getValue(Constants.BUNDLE_VERSION);
+        String[] headers = readHeaders(descriptor);
+        if (headers != null && StringUtils.isNotBlank(headers[0]) && StringUtils.isNotBlank(headers[1])) {
+            List<Requirement> requirements = RequirementParser.parse(headers[2], headers[3]);
+            return new Artifact(jar, headers[0], new Version(headers[1]), requirements, null, null);
+        }
+        if (jar.equals(descriptor)) {
+            byte[] featureXml = entryReader.readEntry(jar, FeatureParser.FEATURE_XML);
+            if (featureXml != null) {
+                return featureParser.parse(jar, new ByteArrayInputStream(featureXml));
+            }
+        }
+        if (headers != null) {
+            logger.warn("Manifest '{}' doesn't contain OSGI attributes.", descriptor);
+        }
+        return null;
+    }
+
+    /**
+     * Scans the headers of a bundle manifest.
+     * 
+     * @param jarsManifest
+     *            manifest location can be within the folder or within the jar.
+     * @return values of the headers of {@link #HEADER_SCANNER}, <code>null</code>
+     *         if the manifest is missing or invalid
+     */
+    private String[] readHeaders(File jarsManifest) {
+        ByteBuffer bundleManifest = readManifestfromJarOrDirectory(jarsManifest);
 
-        if (StringUtils.isBlank(bundleSymbolicName) || StringUtils.isBlank(bundleVersion)) {
-            logger.warn("Manifest '{}' doesn't contain OSGI attributes.", jarsManifest);
+        if (bundleManifest == null) {
+            logger.debug("Invalid manifest '{}'", jarsManifest);
+            return null;
+        }
+
+        try {
+            return HEADER_SCANNER.scan(bundleManifest);
+        } catch (IOException e) {
+            logger.debug("Invalid manifest '{}'", jarsManifest, e);
             return null;
         }
-        return new Artifact(jar, bundleSymbolicName, bundleVersion);
     }
 
-    private Manifest readManifestfromJarOrDirectory(File file) {
+    /**
+     * Reads the manifest bytes. Large manifests of exploded bundles are memory
+     * mapped, the manifest of a jar is inflated to a heap buffer.
+     * 
+     * @return <code>null</code> if unable to read
+     */
+    private ByteBuffer readManifestfromJarOrDirectory(File file) {
         try {
-            Manifest bundleManifest = null;
+            final boolean isJar = "jar".equalsIgnoreCase(FilenameUtils.getExtension(file.getName()));
+            if (isJar) {
+                byte[] manifestBytes = entryReader.readManifest(file);
+                return manifestBytes == null ? null : ByteBuffer.wrap(manifestBytes);
+            }
 
-            try (final FileInputStream is = new FileInputStream(file)) {
-                final boolean isJar = "jar".equalsIgnoreCase(FilenameUtils.getExtension(file.getName()));
-                if (isJar) {
-                    try (final JarInputStream jis = new JarInputStream(is)) {
-                        bundleManifest = jis.getManifest();
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                final long size = channel.size();
+                if (size >= MAPPED_MANIFEST_SIZE) {
+                    return channel.map(MapMode.READ_ONLY, 0, size);
+                }
+                ByteBuffer manifest = ByteBuffer.allocate((int) size);
+                while (manifest.hasRemaining()) {
+                    if (channel.read(manifest) < 0) {
+                        break;
                     }
-                } else {
-                    bundleManifest = new Manifest(is);
                 }
+                manifest.flip();
+                return manifest;
             }
-            return bundleManifest;
         } catch (IOException e) {
             logger.debug("Unable to read manifest from jar or directory.", e);
             return null;
         }
     }
 
+    /**
+     * Reads all basic attributes of the file at once.
+     * 
+     * @return <code>null</code> if the file doesn't exist
+     */
+    private BasicFileAttributes readAttributes(File file) {
+        metadataCalls.incrementAndGet();
+        try {
+            return Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the number of file system metadata calls made by this parser
+     */
+    long getMetadataCalls() {
+        return metadataCalls.get();
+    }
+
+    /**
+     * @return the table shared by all artifacts created by this parser
+     */
+    SymbolTable getSymbolTable() {
+        return symbolTable;
+    }
+
+    /**
+     * @return the reader used to obtain manifests from jars
+     */
+    EntryReader getEntryReader() {
+        return entryReader;
+    }
+
 }
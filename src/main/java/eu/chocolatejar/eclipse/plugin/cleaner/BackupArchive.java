@@ -0,0 +1,751 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Backs duplicates up into a single zip archive instead of a folder.
+ * 
+ * Files of duplicates are compressed in parallel, one task per file, while
+ * a single writer appends the compressed entries in the original order. Jars
+ * and other zip files are stored without recompression, so are files larger
+ * than {@link #LARGE_FILE}; their checksum is computed by a task and the
+ * writer streams them into the archive instead of holding them in memory.
+ * The entries waiting for the writer are limited both in number and in the
+ * bytes of compressed files they hold.
+ * 
+ * A jar is backed up as the entry <code>&lt;type&gt;/&lt;name&gt;.jar</code>,
+ * an exploded bundle as the folder entry <code>&lt;type&gt;/&lt;name&gt;/</code>
+ * followed by all its files. The first entry of each duplicate holds its
+ * original location and the number of its entries in extra fields, see
+ * {@link #restore(File, Collection, File)}.
+ * 
+ * An original is deleted only after all its entries are forced to the disk.
+ * Another duplicate with the same name is deleted without a copy, but only
+ * once the first one is deleted; if the first one can't be backed up, both
+ * are kept.
+ * The disk is forced after each {@link #SYNC_BYTES} written and at the end of
+ * each {@link #add(Collection, String)}, rather than once per duplicate.
+ * 
+ * The archive is thread safe, duplicates added by several threads are
+ * written one after the other.
+ */
+final class BackupArchive implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(BackupArchive.class);
+
+    static final String EXTENSION = ".zip";
+
+    /**
+     * Files larger than this are stored and streamed by the writer.
+     */
+    static final long LARGE_FILE = 8 * 1024 * 1024;
+
+    private static final long SYNC_BYTES = 64 * 1024 * 1024;
+    private static final int PENDING_PER_THREAD = 4;
+    private static final long PENDING_BYTES_PER_THREAD = LARGE_FILE;
+    private static final String JAR_EXTENSION = ".jar";
+
+    /**
+     * The extra field holding the absolute path of a duplicate in UTF-8.
+     */
+    private static final int LOCATION_EXTRA_ID = 0x4350;
+
+    /**
+     * The extra field holding the number of entries of a duplicate, a 32-bit
+     * integer.
+     */
+    private static final int ENTRIES_EXTRA_ID = 0x4351;
+
+    private final File file;
+    private final ZipArchiveWriter writer;
+    private final ExecutorService executor;
+    private final int maxPending;
+    private final long maxPendingBytes;
+    /**
+     * Names in the archive and the duplicates they have been taken by.
+     */
+    private final Map<String, Duplicate> names = new HashMap<>();
+
+    private int archived;
+    private long entries;
+    private long bytes;
+    private long nanos;
+    private IOException failure;
+
+    /**
+     * @param file
+     *            the archive, must not exist yet
+     * @param threads
+     *            the number of files compressed at the same time
+     */
+    BackupArchive(File file, int threads) throws IOException {
+        this.file = file;
+        Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+        this.writer = new ZipArchiveWriter(file);
+        this.maxPending = Math.max(1, threads) * PENDING_PER_THREAD;
+        this.maxPendingBytes = Math.max(1, threads) * PENDING_BYTES_PER_THREAD;
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "plugin-cleaner-archiver-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Adds duplicates into the archive and deletes them. A duplicate that
+     * can't be read is kept in place, a duplicate whose name is already in
+     * the archive is deleted directly once the archived one is deleted.
+     * 
+     * @param duplicates
+     *            jars or folders
+     * @param type
+     *            either {@link Cleaner#PLUGINS} or {@link Cleaner#FEATURES}
+     * @throws IOException
+     *             if the archive can't be written, no more duplicates are
+     *             then deleted
+     */
+    synchronized void add(Collection<File> duplicates, String type) throws IOException {
+        if (failure != null) {
+            throw new IOException("The archive '" + file + "' has failed before.", failure);
+        }
+        final long start = System.nanoTime();
+        List<Item> items = new ArrayList<>();
+        for (File file : duplicates) {
+            String name = type + "/" + file.getName();
+            Duplicate owner = names.get(name);
+            if (owner != null && !owner.failed) {
+                if (owner.deleted) {
+                    deleteAlreadyArchived(file, name);
+                } else {
+                    owner.sameName.add(file);
+                }
+                continue;
+            }
+            Duplicate duplicate = new Duplicate(file, name);
+            try {
+                listItems(duplicate, items);
+                names.put(name, duplicate);
+            } catch (IOException e) {
+                logger.error("Unable to back the duplicate '{}' up.", file, e);
+            }
+        }
+
+        try {
+            write(items);
+        } catch (IOException e) {
+            failure = e;
+            throw e;
+        } finally {
+            nanos += System.nanoTime() - start;
+        }
+    }
+
+    private void deleteAlreadyArchived(File duplicate, String name) {
+        if (FileUtils.deleteQuietly(duplicate)) {
+            logger.warn(
+                    " --> The duplicate `{}` was deleted directly without creating a copy in the archive, `{}` is already backed up.",
+                    duplicate, name);
+        } else {
+            logger.warn(" Unable to remove the duplicate '{}'.", duplicate);
+        }
+    }
+
+    /**
+     * Lists the entries of a duplicate, a folder first, then its content.
+     */
+    private void listItems(final Duplicate duplicate, final List<Item> items) throws IOException {
+        final Path root = duplicate.file.toPath();
+        final String name = duplicate.name;
+        if (!Files.isDirectory(root)) {
+            items.add(new Item(duplicate, duplicate.file, name, true, duplicate.file.length()));
+            return;
+        }
+        final List<Item> content = new ArrayList<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                content.add(new Item(duplicate, dir.toFile(), entryName(dir) + "/", dir.equals(root), 0));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) {
+                content.add(new Item(duplicate, path.toFile(), entryName(path), false, attrs.size()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            private String entryName(Path path) {
+                String relative = FilenameUtils.separatorsToUnix(root.relativize(path).toString());
+                return relative.isEmpty() ? name : name + "/" + relative;
+            }
+        });
+        duplicate.entries = content.size();
+        duplicate.remaining = content.size();
+        items.addAll(content);
+    }
+
+    /**
+     * Compresses items in parallel and writes them in order. Duplicates are
+     * deleted once their entries are synced.
+     */
+    private void write(List<Item> items) throws IOException {
+        Deque<Future<Prepared>> pending = new ArrayDeque<>();
+        List<Duplicate> written = new ArrayList<>();
+        long pendingBytes = 0;
+        long unsynced = 0;
+        int next = 0;
+        try {
+            while (next < items.size() || !pending.isEmpty()) {
+                // a single item is submitted regardless of its size
+                while (next < items.size() && pending.size() < maxPending
+                        && (pending.isEmpty() || pendingBytes + items.get(next).heldBytes() <= maxPendingBytes)) {
+                    Item item = items.get(next++);
+                    pendingBytes += item.heldBytes();
+                    pending.add(executor.submit(item));
+                }
+                Prepared prepared = take(pending.poll());
+                pendingBytes -= prepared.item.heldBytes();
+                Duplicate duplicate = prepared.item.duplicate;
+                if (prepared.failure != null) {
+                    if (!duplicate.failed) {
+                        logger.error("Unable to back the duplicate '{}' up, it is kept.", duplicate.file,
+                                prepared.failure);
+                        for (File sameName : duplicate.sameName) {
+                            logger.warn(" The duplicate '{}' is kept as well, it has the same name.", sameName);
+                        }
+                        duplicate.sameName.clear();
+                    }
+                    duplicate.failed = true;
+                    continue;
+                }
+                if (duplicate.failed) {
+                    continue;
+                }
+
+                final long before = writer.getPosition();
+                if (prepared.data == null) {
+                    writer.write(prepared.entry, prepared.item.file);
+                } else {
+                    writer.write(prepared.entry, prepared.data);
+                }
+                entries++;
+                bytes += prepared.entry.size;
+                unsynced += writer.getPosition() - before;
+                if (--duplicate.remaining == 0) {
+                    written.add(duplicate);
+                }
+                if (unsynced >= SYNC_BYTES) {
+                    syncAndDelete(written);
+                    unsynced = 0;
+                }
+            }
+            syncAndDelete(written);
+        } finally {
+            for (Future<Prepared> f : pending) {
+                f.cancel(true);
+            }
+        }
+    }
+
+    private Prepared take(Future<Prepared> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Writing of the archive has been interrupted.", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Unable to compress an entry.", e.getCause());
+        }
+    }
+
+    private void syncAndDelete(List<Duplicate> written) throws IOException {
+        if (written.isEmpty()) {
+            return;
+        }
+        writer.sync();
+        for (Duplicate duplicate : written) {
+            if (FileUtils.deleteQuietly(duplicate.file)) {
+                archived++;
+                logger.debug("Backed up '{}'.", duplicate.file);
+            } else {
+                logger.warn(" Unable to remove the backed up duplicate '{}'.", duplicate.file);
+            }
+            // the copy is in the archive either way
+            duplicate.deleted = true;
+            for (File sameName : duplicate.sameName) {
+                deleteAlreadyArchived(sameName, duplicate.name);
+            }
+            duplicate.sameName.clear();
+        }
+        written.clear();
+    }
+
+    /**
+     * @return the archive file
+     */
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the number of duplicates backed up and deleted
+     */
+    synchronized int getArchived() {
+        return archived;
+    }
+
+    /**
+     * Logs the number of entries and the compression ratio.
+     */
+    synchronized void logStatistics() {
+        if (entries == 0) {
+            return;
+        }
+        logger.info("Archived {} duplicates ({} entries, {} KB) into {} KB in {} ms.", archived, entries,
+                bytes / 1024, writer.getPosition() / 1024, TimeUnit.NANOSECONDS.toMillis(nanos));
+    }
+
+    /**
+     * Writes the central directory. Duplicates can't be added any more.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        executor.shutdownNow();
+        writer.close();
+    }
+
+    /**
+     * Restores backed up duplicates from an archive. A duplicate is never
+     * restored over an existing file.
+     * 
+     * The central directory is used if present, otherwise, e.g. for an
+     * archive of an interrupted run, the archive is read sequentially up to
+     * its last complete entry. A duplicate with fewer entries than recorded
+     * in its first entry, e.g. one that failed to be backed up and was kept,
+     * is removed again after its extraction. A first entry that doesn't record
+     * the number is not restored at all.
+     * 
+     * @param bundles
+     *            file names of duplicates to restore, e.g.
+     *            <code>a_1.0.0.jar</code> or <code>a_1.0.0</code>, a name
+     *            ending with <code>*</code> is a prefix, all duplicates are
+     *            restored if empty
+     * @param destinationFolder
+     *            <code>null</code> restores duplicates to their original
+     *            locations, otherwise into
+     *            <code>&lt;destination&gt;/&lt;type&gt;</code>
+     * @return the number of restored duplicates
+     */
+    static int restore(File archive, Collection<String> bundles, File destinationFolder) throws IOException {
+        Restore restore = new Restore(bundles, destinationFolder);
+        ZipFile zip;
+        try {
+            zip = new ZipFile(archive, StandardCharsets.UTF_8);
+        } catch (ZipException e) {
+            logger.warn("The archive '{}' has no central directory, reading it sequentially.", archive);
+            return restoreSequentially(archive, restore);
+        }
+        try {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (restore.accept(entry)) {
+                    try (InputStream in = zip.getInputStream(entry)) {
+                        restore.extract(entry, in);
+                    }
+                }
+            }
+            restore.finish();
+        } finally {
+            zip.close();
+        }
+        return restore.restored;
+    }
+
+    private static int restoreSequentially(File archive, Restore restore) throws IOException {
+        try (ZipInputStream in = new ZipInputStream(new BufferedInputStream(new FileInputStream(archive)),
+                StandardCharsets.UTF_8)) {
+            for (ZipEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+                if (restore.accept(entry)) {
+                    restore.extract(entry, in);
+                }
+            }
+        } catch (EOFException e) {
+            logger.warn("The archive '{}' ends with an incomplete entry, its duplicate wasn't deleted.", archive);
+        }
+        restore.finish();
+        return restore.restored;
+    }
+
+    private static byte[] firstExtra(Duplicate duplicate) {
+        byte[] location = duplicate.file.getAbsolutePath().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer extra = ByteBuffer.allocate(4 + location.length + 8).order(ByteOrder.LITTLE_ENDIAN);
+        extra.putShort((short) LOCATION_EXTRA_ID);
+        extra.putShort((short) location.length);
+        extra.put(location);
+        extra.putShort((short) ENTRIES_EXTRA_ID);
+        extra.putShort((short) 4);
+        extra.putInt(duplicate.entries);
+        return extra.array();
+    }
+
+    /**
+     * @return <code>null</code> if the entry has no location
+     */
+    private static File location(ZipEntry entry) {
+        ByteBuffer field = extraField(entry, LOCATION_EXTRA_ID);
+        if (field == null) {
+            return null;
+        }
+        return new File(new String(field.array(), field.position(), field.remaining(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the number of entries of the duplicate starting with the entry,
+     *         <code>-1</code> if the entry doesn't record it
+     */
+    private static int entries(ZipEntry entry) {
+        ByteBuffer field = extraField(entry, ENTRIES_EXTRA_ID);
+        return field == null || field.remaining() < 4 ? -1 : field.getInt();
+    }
+
+    /**
+     * @return the data of the extra field, <code>null</code> if the entry
+     *         doesn't have it
+     */
+    private static ByteBuffer extraField(ZipEntry entry, int extraId) {
+        byte[] extra = entry.getExtra();
+        if (extra == null) {
+            return null;
+        }
+        ByteBuffer fields = ByteBuffer.wrap(extra).order(ByteOrder.LITTLE_ENDIAN);
+        while (fields.remaining() >= 4) {
+            final int id = fields.getShort() & 0xFFFF;
+            final int size = fields.getShort() & 0xFFFF;
+            if (size > fields.remaining()) {
+                return null;
+            }
+            if (id == extraId) {
+                fields.limit(fields.position() + size);
+                return fields;
+            }
+            fields.position(fields.position() + size);
+        }
+        return null;
+    }
+
+    private static boolean isZip(File file) {
+        String extension = FilenameUtils.getExtension(file.getName());
+        return extension.equalsIgnoreCase("jar") || extension.equalsIgnoreCase("zip");
+    }
+
+    /**
+     * A duplicate being written, its entries may be compressed by several
+     * threads, but they are counted by the writer only.
+     */
+    private static final class Duplicate {
+        final File file;
+        final String name;
+        /**
+         * Other duplicates with the same name, deleted after this one.
+         */
+        final List<File> sameName = new ArrayList<>(0);
+        int entries = 1;
+        int remaining = 1;
+        boolean failed;
+        boolean deleted;
+
+        Duplicate(File file, String name) {
+            this.file = file;
+            this.name = name;
+        }
+    }
+
+    /**
+     * A file or a folder of a duplicate to be compressed.
+     */
+    private static final class Item implements Callable<Prepared> {
+        final Duplicate duplicate;
+        final File file;
+        final String name;
+        final boolean first;
+        /**
+         * The size of the file when it was listed
+         */
+        final long size;
+
+        Item(Duplicate duplicate, File file, String name, boolean first, long size) {
+            this.duplicate = duplicate;
+            this.file = file;
+            this.name = name;
+            this.first = first;
+            this.size = size;
+        }
+
+        /**
+         * @return the bytes held in memory until the item is written, an
+         *         estimate as the file may change in the meantime
+         */
+        long heldBytes() {
+            return name.endsWith("/") || isStreamed(file, size) ? 0 : size;
+        }
+
+        private static boolean isStreamed(File file, long size) {
+            return size > LARGE_FILE || isZip(file);
+        }
+
+        @Override
+        public Prepared call() {
+            try {
+                return prepare();
+            } catch (IOException e) {
+                return new Prepared(this, e);
+            }
+        }
+
+        private Prepared prepare() throws IOException {
+            final byte[] extra = first ? firstExtra(duplicate) : new byte[0];
+            final long time = file.lastModified();
+            if (name.endsWith("/")) {
+                return new Prepared(this, new ZipArchiveWriter.Entry(name, time, ZipArchiveWriter.STORED, 0, 0, 0,
+                        extra), new byte[0]);
+            }
+
+            final long size = file.length();
+            if (isStreamed(file, size)) {
+                long crc = FileUtils.checksumCRC32(file);
+                return new Prepared(this, new ZipArchiveWriter.Entry(name, time, ZipArchiveWriter.STORED, crc, size,
+                        size, extra), null);
+            }
+
+            byte[] data = FileUtils.readFileToByteArray(file);
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            byte[] deflated = deflate(data);
+            if (deflated.length < data.length) {
+                return new Prepared(this, new ZipArchiveWriter.Entry(name, time, ZipArchiveWriter.DEFLATED,
+                        crc.getValue(), data.length, deflated.length, extra), deflated);
+            }
+            return new Prepared(this, new ZipArchiveWriter.Entry(name, time, ZipArchiveWriter.STORED,
+                    crc.getValue(), data.length, data.length, extra), data);
+        }
+
+        private static byte[] deflate(byte[] data) {
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            try {
+                deflater.setInput(data);
+                deflater.finish();
+                ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+                byte[] buffer = new byte[8 * 1024];
+                while (!deflater.finished()) {
+                    out.write(buffer, 0, deflater.deflate(buffer));
+                }
+                return out.toByteArray();
+            } finally {
+                deflater.end();
+            }
+        }
+    }
+
+    /**
+     * A compressed entry ready to be written.
+     */
+    private static final class Prepared {
+        final Item item;
+        final ZipArchiveWriter.Entry entry;
+        /**
+         * <code>null</code> if the file is streamed by the writer
+         */
+        final byte[] data;
+        final IOException failure;
+
+        Prepared(Item item, ZipArchiveWriter.Entry entry, byte[] data) {
+            this.item = item;
+            this.entry = entry;
+            this.data = data;
+            this.failure = null;
+        }
+
+        Prepared(Item item, IOException failure) {
+            this.item = item;
+            this.entry = null;
+            this.data = null;
+            this.failure = failure;
+        }
+    }
+
+    /**
+     * Extracts entries of selected duplicates. Entries of a duplicate follow
+     * its first entry.
+     */
+    private static final class Restore {
+        final Collection<String> bundles;
+        final File destinationFolder;
+
+        String prefix;
+        File target;
+        int expected;
+        int extracted;
+        int restored;
+
+        Restore(Collection<String> bundles, File destinationFolder) {
+            this.bundles = bundles;
+            this.destinationFolder = destinationFolder;
+        }
+
+        /**
+         * @return <code>true</code> if the entry is to be extracted
+         */
+        boolean accept(ZipEntry entry) {
+            final String name = entry.getName();
+            final int typeEnd = name.indexOf('/');
+            if (typeEnd <= 0 || name.contains("../")) {
+                return false;
+            }
+            final int bundleEnd = name.indexOf('/', typeEnd + 1);
+            if (bundleEnd >= 0 && bundleEnd < name.length() - 1) {
+                return prefix != null && name.startsWith(prefix);
+            }
+
+            finish();
+            String bundle = name.substring(typeEnd + 1, bundleEnd < 0 ? name.length() : bundleEnd);
+            if (!matches(bundle)) {
+                return false;
+            }
+            File location = destinationFolder == null ? location(entry) : FileUtils.getFile(destinationFolder,
+                    name.substring(0, typeEnd), bundle);
+            if (location == null) {
+                logger.warn("The original location of '{}' is unknown, use a destination to restore it.", name);
+                return false;
+            }
+            final int entries = entries(entry);
+            if (entries < 1) {
+                logger.warn("The number of entries of '{}' is unknown, it is not restored.", name);
+                return false;
+            }
+            if (location.exists()) {
+                logger.warn("'{}' already exists, '{}' is not restored.", location, name);
+                return false;
+            }
+            logger.info("Restoring '{}' to '{}'.", name, location);
+            prefix = name;
+            target = location;
+            expected = entries;
+            extracted = 0;
+            restored++;
+            return true;
+        }
+
+        /**
+         * Completes the duplicate extracted last, an incomplete one is
+         * removed again.
+         */
+        void finish() {
+            if (prefix != null && extracted != expected) {
+                logger.warn("'{}' is incomplete in the archive, it is not restored.", prefix);
+                FileUtils.deleteQuietly(target);
+                restored--;
+            }
+            prefix = null;
+        }
+
+        private boolean matches(String bundle) {
+            if (bundles.isEmpty()) {
+                return true;
+            }
+            final int end = bundle.length() - JAR_EXTENSION.length();
+            final String withoutJar = bundle.regionMatches(true, end, JAR_EXTENSION, 0, JAR_EXTENSION.length()) ? bundle
+                    .substring(0, end) : bundle;
+            for (String pattern : bundles) {
+                if (pattern.endsWith("*")) {
+                    if (bundle.startsWith(pattern.substring(0, pattern.length() - 1))) {
+                        return true;
+                    }
+                } else if (pattern.equals(bundle) || pattern.equals(withoutJar)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void extract(ZipEntry entry, InputStream in) throws IOException {
+            File file = entry.getName().equals(prefix) ? target : new File(target, entry.getName().substring(
+                    prefix.length()));
+            if (entry.isDirectory()) {
+                Files.createDirectories(file.toPath());
+            } else {
+                try (OutputStream out = FileUtils.openOutputStream(file)) {
+                    IOUtils.copy(in, out);
+                }
+            }
+            if (entry.getTime() >= 0) {
+                file.setLastModified(entry.getTime());
+            }
+            extracted++;
+        }
+    }
+}
@@ -0,0 +1,291 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.osgi.framework.Version;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import eu.chocolatejar.eclipse.plugin.cleaner.model.Artifact;
+
+/**
+ * Bundles and features still used by installations sharing a p2 bundle pool.
+ *
+ * A reference can be:
+ * <ul>
+ * <li>an installation folder, its
+ * <code>configuration/org.eclipse.equinox.simpleconfigurator/bundles.info</code>
+ * and its p2 profiles (if the installation has its own p2 agent) are read</li>
+ * <li>a <code>bundles.info</code> file</li>
+ * <li>a p2 profile, either a <code>*.profile</code> folder (the latest state
+ * is read), a <code>*.profile</code> or a <code>*.profile.gz</code> file, or a
+ * <code>profileRegistry</code> folder with several profiles</li>
+ * </ul>
+ *
+ * Profiles are streamed, only <code>unit</code> elements are examined.
+ */
+public class BundleReferences {
+
+    private static final Logger logger = LoggerFactory.getLogger(BundleReferences.class);
+
+    static final String BUNDLES_INFO = "bundles.info";
+
+    private static final String[] BUNDLES_INFO_PATH = { "configuration", "org.eclipse.equinox.simpleconfigurator",
+            BUNDLES_INFO };
+    private static final String[] PROFILE_REGISTRY_PATH = { "p2", "org.eclipse.equinox.p2.engine",
+            "profileRegistry" };
+
+    private static final String PROFILE_EXTENSION = ".profile";
+    private static final String GZIP_EXTENSION = ".gz";
+    private static final String FEATURE_JAR_SUFFIX = ".feature.jar";
+
+    private final Map<String, Set<Version>> references = new HashMap<>();
+    private int size;
+
+    private final XMLInputFactory factory;
+
+    private BundleReferences() {
+        factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    }
+
+    /**
+     * @param locations
+     *            installations, <code>bundles.info</code> files or p2
+     *            profiles
+     * @return never <code>null</code>
+     * @throws IOException
+     *             if a location can't be read
+     */
+    public static BundleReferences load(Collection<File> locations) throws IOException {
+        BundleReferences references = new BundleReferences();
+        for (File location : locations) {
+            final int before = references.size;
+            references.read(location);
+            logger.info("Found {} references in '{}'.", references.size - before, location);
+        }
+        return references;
+    }
+
+    /**
+     * @return whether the same symbolic name and version is referenced
+     */
+    public boolean isReferenced(Artifact artifact) {
+        Set<Version> versions = references.get(artifact.getSymbolicName());
+        return versions != null && versions.contains(artifact.getVersion());
+    }
+
+    /**
+     * @return the number of distinct references
+     */
+    public int size() {
+        return size;
+    }
+
+    private void read(File location) throws IOException {
+        final String name = location.getName();
+        if (location.isFile()) {
+            if (name.equals(BUNDLES_INFO)) {
+                readBundlesInfo(location);
+            } else if (name.endsWith(PROFILE_EXTENSION) || name.endsWith(PROFILE_EXTENSION + GZIP_EXTENSION)) {
+                readProfile(location);
+            } else {
+                throw new IOException("Unknown type of a reference: " + location);
+            }
+        } else if (location.isDirectory()) {
+            if (name.endsWith(PROFILE_EXTENSION)) {
+                readLatestProfile(location);
+            } else if (containsProfiles(location)) {
+                readProfileRegistry(location);
+            } else {
+                readInstallation(location);
+            }
+        } else {
+            throw new IOException("The reference doesn't exist: " + location);
+        }
+    }
+
+    private void readInstallation(File installation) throws IOException {
+        boolean found = false;
+        File bundlesInfo = FileUtils.getFile(installation, BUNDLES_INFO_PATH);
+        if (bundlesInfo.isFile()) {
+            readBundlesInfo(bundlesInfo);
+            found = true;
+        }
+        File profileRegistry = FileUtils.getFile(installation, PROFILE_REGISTRY_PATH);
+        if (profileRegistry.isDirectory()) {
+            readProfileRegistry(profileRegistry);
+            found = true;
+        }
+        if (!found) {
+            throw new IOException("Neither bundles.info nor a p2 profile found in the installation: "
+                    + installation);
+        }
+    }
+
+    /**
+     * Each line has the format
+     * <code>symbolicName,version,location,startLevel,autoStart</code>.
+     */
+    private void readBundlesInfo(File bundlesInfo) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(bundlesInfo),
+                StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#") || line.trim().isEmpty()) {
+                    continue;
+                }
+                String[] columns = StringUtils.split(line, ',');
+                if (columns.length < 2) {
+                    logger.debug("Skipping an invalid line '{}' of '{}'.", line, bundlesInfo);
+                    continue;
+                }
+                add(columns[0], columns[1]);
+            }
+        }
+    }
+
+    private boolean containsProfiles(File folder) {
+        File[] profiles = profiles(folder);
+        return profiles != null && profiles.length > 0;
+    }
+
+    private File[] profiles(File folder) {
+        return folder.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File f) {
+                return f.isDirectory() && f.getName().endsWith(PROFILE_EXTENSION);
+            }
+        });
+    }
+
+    private void readProfileRegistry(File registry) throws IOException {
+        File[] profiles = profiles(registry);
+        if (profiles != null) {
+            for (File profile : profiles) {
+                readLatestProfile(profile);
+            }
+        }
+    }
+
+    /**
+     * The states of a profile are named by a timestamp, only the latest one
+     * is read.
+     */
+    private void readLatestProfile(File profileFolder) throws IOException {
+        File latest = null;
+        long latestTimestamp = -1;
+        File[] states = profileFolder.listFiles();
+        if (states != null) {
+            for (File state : states) {
+                String name = state.getName();
+                String timestamp = StringUtils.substringBefore(name, PROFILE_EXTENSION);
+                if (!name.equals(timestamp) && StringUtils.isNumeric(timestamp) && !timestamp.isEmpty()) {
+                    long value = Long.parseLong(timestamp);
+                    if (value > latestTimestamp) {
+                        latestTimestamp = value;
+                        latest = state;
+                    }
+                }
+            }
+        }
+        if (latest == null) {
+            throw new IOException("No state of the p2 profile found: " + profileFolder);
+        }
+        readProfile(latest);
+    }
+
+    /**
+     * Streams the profile and adds all installable units. Feature jars are
+     * installed as units named <code>&lt;feature id&gt;.feature.jar</code>.
+     */
+    private void readProfile(File profile) throws IOException {
+        try (InputStream in = open(profile)) {
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() == XMLStreamConstants.START_ELEMENT && "unit".equals(reader.getLocalName())) {
+                        String id = reader.getAttributeValue(null, "id");
+                        String version = reader.getAttributeValue(null, "version");
+                        if (id != null && version != null) {
+                            add(StringUtils.removeEnd(id, FEATURE_JAR_SUFFIX), version);
+                        }
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Invalid p2 profile: " + profile, e);
+        }
+    }
+
+    private InputStream open(File profile) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(profile));
+        if (profile.getName().endsWith(GZIP_EXTENSION)) {
+            try {
+                return new GZIPInputStream(in);
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+        return in;
+    }
+
+    private void add(String symbolicName, String version) {
+        final Version parsed;
+        try {
+            parsed = Version.parseVersion(version.trim());
+        } catch (IllegalArgumentException e) {
+            logger.debug("Skipping an invalid version '{}' of '{}'.", version, symbolicName);
+            return;
+        }
+        final String name = symbolicName.trim();
+        Set<Version> versions = references.get(name);
+        if (versions == null) {
+            versions = new HashSet<>(2);
+            references.put(name, versions);
+        }
+        if (versions.add(parsed)) {
+            size++;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner;
+
+import java.io.File;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import eu.chocolatejar.eclipse.plugin.cleaner.model.LocationClass;
+
+/**
+ * A potential bundle found by the {@link DirectoryScanner} together with
+ * everything the scan already knows about it.
+ */
+final class Candidate {
+
+    private final File file;
+    private final BasicFileAttributes attributes;
+    private final LocationClass locationClass;
+
+    /**
+     * @param attributes
+     *            <code>null</code> if not known
+     * @param locationClass
+     *            <code>null</code> if not known
+     */
+    Candidate(File file, BasicFileAttributes attributes, LocationClass locationClass) {
+        this.file = file;
+        this.attributes = attributes;
+        this.locationClass = locationClass;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * @return attributes read by the scan or <code>null</code>
+     */
+    BasicFileAttributes getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * @return the root folder of the candidate or <code>null</code>
+     */
+    LocationClass getLocationClass() {
+        return locationClass;
+    }
+
+    @Override
+    public String toString() {
+        return file.toString();
+    }
+}
@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner;
+
+import java.io.File;
+
+/**
+ * Counts of a clean up of a single installation.
+ */
+final class CleanUpSummary {
+
+    private final File eclipseFolder;
+
+    private int plugins;
+    private int pluginsDuplicates;
+    private int features;
+    private int featuresDuplicates;
+    private int moved;
+    private int copied;
+    private long millis;
+    private String failure;
+
+    CleanUpSummary(File eclipseFolder) {
+        this.eclipseFolder = eclipseFolder;
+    }
+
+    File getEclipseFolder() {
+        return eclipseFolder;
+    }
+
+    void setPlugins(int plugins, int duplicates) {
+        this.plugins = plugins;
+        this.pluginsDuplicates = duplicates;
+    }
+
+    void setFeatures(int features, int duplicates) {
+        this.features = features;
+        this.featuresDuplicates = duplicates;
+    }
+
+    int getPlugins() {
+        return plugins;
+    }
+
+    int getPluginsDuplicates() {
+        return pluginsDuplicates;
+    }
+
+    int getFeatures() {
+        return features;
+    }
+
+    int getFeaturesDuplicates() {
+        return featuresDuplicates;
+    }
+
+    /**
+     * @param moved
+     *            duplicates moved by an atomic rename
+     * @param copied
+     *            duplicates copied to another device and deleted
+     */
+    void setMoves(int moved, int copied) {
+        this.moved = moved;
+        this.copied = copied;
+    }
+
+    int getMoved() {
+        return moved;
+    }
+
+    int getCopied() {
+        return copied;
+    }
+
+    long getMillis() {
+        return millis;
+    }
+
+    void setMillis(long millis) {
+        this.millis = millis;
+    }
+
+    /**
+     * @return <code>null</code> if the clean up succeeded
+     */
+    String getFailure() {
+        return failure;
+    }
+
+    void setFailure(String failure) {
+        this.failure = failure;
+    }
+
+    @Override
+    public String toString() {
+        if (failure != null) {
+            return "'" + eclipseFolder + "' failed: " + failure;
+        }
+        return "'" + eclipseFolder + "' " + pluginsDuplicates + "/" + plugins + " plugins, " + featuresDuplicates
+                + "/" + features + " features duplicated, " + (copied == 0 ? "" : copied + " copied across devices, ")
+                + millis + " ms";
+    }
+}
@@ -18,16 +18,38 @@ package eu.chocolatejar.eclipse.plugin.cleaner;
 import static eu.chocolatejar.eclipse.plugin.cleaner.util.DropinsFilter.DROPINS;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import org.apache.commons.io.FileExistsException;
 import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import eu.chocolatejar.eclipse.plugin.cleaner.detector.RetentionPolicy;
 import eu.chocolatejar.eclipse.plugin.cleaner.model.Artifact;
+import eu.chocolatejar.eclipse.plugin.cleaner.model.BackupFormat;
 import eu.chocolatejar.eclipse.plugin.cleaner.model.CleaningMode;
+import eu.chocolatejar.eclipse.plugin.cleaner.model.DetectionResult;
+import eu.chocolatejar.eclipse.plugin.cleaner.model.DetectionResult.Group;
+import eu.chocolatejar.eclipse.plugin.cleaner.model.DuplicationListener;
+import eu.chocolatejar.eclipse.plugin.cleaner.model.LocationClass;
+import eu.chocolatejar.eclipse.plugin.cleaner.model.StreamingDuplicationDetector;
 
 /**
  * Finds duplicate bundles and move them to a back up folder
@@ -36,20 +58,36 @@ public class Cleaner {
 
     private static final Logger logger = LoggerFactory.getLogger(Cleaner.class);
 
-    private static final String FEATURES = "features";
-    private static final String PLUGINS = "plugins";
+    static final String FEATURES = "features";
+    static final String PLUGINS = "plugins";
 
     private static final File THIS_EXECUTABLE_JAR = new File(Main.class.getProtectionDomain().getCodeSource()
             .getLocation().getPath());
 
-    private final ArtifactParser artifactParser = new ArtifactParser();
-    private final DuplicationDetectorFactory detector;
+    private DuplicationDetectorFactory detector;
+    private ParsingStage parsingStage;
+    private DirectoryScanner directoryScanner;
+    private DuplicateMover mover;
+    private BackupArchive archive;
+    private final Map<String, AtomicInteger> streamedDuplicates = new ConcurrentHashMap<>();
 
     private final File backupFolder;
     private final File eclipseFolder;
     private final boolean dryRun;
     private final CleaningMode cleaningMode;
 
+    private boolean useManifestCache;
+    private int threads = 1;
+    private boolean quickScan;
+    private boolean verifyScan;
+    private boolean pipeline;
+    private boolean pool;
+    private boolean watch;
+    private boolean fingerprints;
+    private RetentionPolicy retentionPolicy = RetentionPolicy.NONE;
+    private BackupFormat backupFormat = BackupFormat.folder;
+    private BundleReferences references;
+
     /**
      * Create an instance of the Cleaner class and set initial cleaning
      * parameters.
@@ -74,72 +112,461 @@ public class Cleaner {
         this.backupFolder = destinationFolder;
         this.cleaningMode = mode;
         this.dryRun = dryRun;
-        this.detector = new DuplicationDetectorFactory(cleaningMode);
+    }
+
+    /**
+     * @param useManifestCache
+     *            when <code>true</code> parsed manifests are cached in the
+     *            folder {@link ManifestCache#CACHE_FOLDER} of the Eclipse
+     *            installation, so the next run opens only changed bundles
+     */
+    public void setUseManifestCache(boolean useManifestCache) {
+        this.useManifestCache = useManifestCache;
+    }
+
+    /**
+     * @param threads
+     *            the number of bundles parsed concurrently, the default is
+     *            <code>1</code>
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * @param quickScan
+     *            when <code>true</code> manifests are read only for bundles
+     *            that share a symbolic name based on their filenames
+     * @param verifyScan
+     *            when <code>true</code> the quick scan is checked against a
+     *            full scan and differences are reported, intended for
+     *            debugging
+     */
+    public void setQuickScan(boolean quickScan, boolean verifyScan) {
+        this.quickScan = quickScan;
+        this.verifyScan = verifyScan;
+    }
+
+    /**
+     * @param pipeline
+     *            when <code>true</code> duplicates are acted on as soon as
+     *            they are detected while the scan continues, the memory is
+     *            then bounded by the number of distinct symbolic names
+     */
+    public void setPipeline(boolean pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    /**
+     * @param pool
+     *            when <code>true</code> the source is a p2 bundle pool with
+     *            <code>plugins</code> and <code>features</code> only
+     * @param references
+     *            bundles still used by installations sharing the pool, they
+     *            are never removed, <code>null</code> if there are none
+     */
+    public void setPool(boolean pool, BundleReferences references) {
+        this.pool = pool;
+        this.references = references;
+    }
+
+    /**
+     * @param watch
+     *            when <code>true</code> the installation is watched for
+     *            changes after the first scan and new duplicates are acted on
+     *            until the thread is interrupted
+     */
+    public void setWatch(boolean watch) {
+        this.watch = watch;
+    }
+
+    /**
+     * @param fingerprints
+     *            when <code>true</code> artifacts with the same content are
+     *            duplicates as well, regardless of their symbolic names, see
+     *            {@link ContentFingerprinter}
+     */
+    public void setFingerprints(boolean fingerprints) {
+        this.fingerprints = fingerprints;
+    }
+
+    /**
+     * @param retentionPolicy
+     *            rules overriding the cleaning mode for matching symbolic
+     *            names, the default is {@link RetentionPolicy#NONE}
+     */
+    public void setRetentionPolicy(RetentionPolicy retentionPolicy) {
+        this.retentionPolicy = retentionPolicy;
+    }
+
+    /**
+     * @param backupFormat
+     *            {@link BackupFormat#zip} backs duplicates up into the archive
+     *            <code>&lt;destination&gt;.zip</code> compressed by all cores,
+     *            the default is {@link BackupFormat#folder}
+     */
+    public void setBackupFormat(BackupFormat backupFormat) {
+        this.backupFormat = backupFormat;
     }
 
     /**
      * Executes clean up based on provided parameters in the constructor.
      */
     public void run() {
+        ManifestCache manifestCache = useManifestCache ? ManifestCache.load(eclipseFolder) : null;
+        SymbolTable symbolTable = new SymbolTable();
+        ArtifactParser artifactParser = new ArtifactParser(manifestCache, symbolTable);
+        CleanUpSummary summary;
+        try (ParsingStage stage = new ParsingStage(artifactParser, threads)) {
+            summary = run(artifactParser, stage);
+        }
+        if (summary.getFailure() != null) {
+            return;
+        }
+        logger.debug("Distinct symbolic names: {}, versions: {}.", symbolTable.getNames(),
+                symbolTable.getVersions());
+
+        if (manifestCache != null) {
+            manifestCache.save();
+            logger.info("Manifest cache: {} hits, {} misses.", manifestCache.getHits(), manifestCache.getMisses());
+        }
+
+        logger.info("Done!");
+    }
+
+    /**
+     * Executes clean up with a parser and a parsing stage shared by several
+     * installations, see {@link Fleet}.
+     * 
+     * @return never <code>null</code>
+     */
+    CleanUpSummary run(ArtifactParser artifactParser, ParsingStage stage) {
+        final CleanUpSummary summary = new CleanUpSummary(eclipseFolder);
+        final long start = System.nanoTime();
         logger.info(
                 "\n Parameters summary\n\n Eclipse folder (source): '{}'\n Back up duplicates to: '{}'\n Dry run: '{}'\n Cleaning mode: '{}'\n\n",
-                eclipseFolder, backupFolder, dryRun, cleaningMode);
+                eclipseFolder, getBackupLocation(), dryRun, cleaningMode);
 
         if (!eclipseFolder.exists()) {
             logger.error(
                     "The Eclipse installation hasn't been found at '{}', the location doesn't exists. \n\n The program terminated with an error!",
                     eclipseFolder);
-            return;
+            summary.setFailure("the location doesn't exist");
+            return summary;
         }
 
-        if (backupFolder.exists()) {
+        if (backupFormat == BackupFormat.folder && backupFolder.exists()) {
             logger.warn("The destination folder '{}' already exists! The duplicates will be move to this folder.",
                     backupFolder);
         }
 
         logger.info("Scanning '{}'...", eclipseFolder);
 
-        simulateOrDoRealCleanUp();
+        final long metadataCalls = artifactParser.getMetadataCalls();
+        directoryScanner = new DirectoryScanner();
+        parsingStage = stage;
+        final boolean byContent = fingerprints && !watch && !pipeline;
+        if (fingerprints && !byContent) {
+            logger.warn("Content fingerprints are not used in the pipeline and the watch mode.");
+        } else if (byContent && quickScan) {
+            logger.warn("The quick scan is not used with content fingerprints, using the full scan.");
+        }
+        if (pipeline && !watch && retentionPolicy.retainsSeveralVersions()) {
+            logger.warn("The pipeline mode keeps only the newest version of each bundle, regardless of the rules.");
+        }
+        artifactParser.setFingerprints(byContent);
+        detector = new DuplicationDetectorFactory(cleaningMode, Runtime.getRuntime().availableProcessors(), byContent,
+                retentionPolicy);
+        if (!dryRun && backupFormat == BackupFormat.zip) {
+            try {
+                archive = new BackupArchive(getBackupLocation(), Runtime.getRuntime().availableProcessors());
+            } catch (IOException e) {
+                logger.error("Unable to create the back up archive '{}'.", getBackupLocation(), e);
+                summary.setFailure("unable to create the back up archive");
+                return summary;
+            }
+        } else if (!dryRun) {
+            mover = DuplicateMover.create(eclipseFolder, backupFolder);
+        }
+        try {
+            if (watch) {
+                watchCleanUp(summary);
+            } else if (pipeline) {
+                streamCleanUp(summary);
+            } else {
+                simulateOrDoRealCleanUp(summary);
+            }
+        } finally {
+            closeArchive();
+        }
+        if (mover != null) {
+            mover.logStatistics();
+            summary.setMoves(mover.getMoved(), mover.getCopied());
+        }
+        logger.info("File system metadata calls: {} by the scan, {} by the parsing.",
+                directoryScanner.getMetadataCalls(), artifactParser.getMetadataCalls() - metadataCalls);
 
-        logger.info("Done!");
+        summary.setMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return summary;
     }
 
     /**
-     * Simulates or executes real clean up of plugins and features.
+     * @return the base directory of the Eclipse installation
      */
-    private void simulateOrDoRealCleanUp() {
-        Set<Artifact> plugins = findArtifacts(PLUGINS);
-        Set<Artifact> features = findArtifacts(FEATURES);
+    File getEclipseFolder() {
+        return eclipseFolder;
+    }
 
-        Set<Artifact> pluginsDuplicates = detector.getDuplicates(plugins);
-        Set<Artifact> featuresDuplicates = detector.getDuplicates(features);
+    /**
+     * @return either the back up folder or the archive next to it
+     */
+    private File getBackupLocation() {
+        if (backupFormat == BackupFormat.zip) {
+            return new File(backupFolder.getPath() + BackupArchive.EXTENSION);
+        }
+        return backupFolder;
+    }
+
+    private void closeArchive() {
+        if (archive == null) {
+            return;
+        }
+        try {
+            archive.close();
+        } catch (IOException e) {
+            logger.error("Unable to finish the back up archive '{}'.", archive.getFile(), e);
+        }
+        archive.logStatistics();
+    }
+
+    /**
+     * Simulates or executes real clean up of plugins and features.
+     */
+    private void simulateOrDoRealCleanUp(CleanUpSummary summary) {
+        List<RootScan> roots = scanRoots();
+        Set<Artifact> plugins = findArtifacts(PLUGINS, roots);
+        Set<Artifact> features = findArtifacts(FEATURES, roots);
+
+        DetectionResult pluginsResult = detector.detect(plugins);
+        DetectionResult featuresResult = detector.detect(features);
+        showRuleDecisions(pluginsResult);
+        showRuleDecisions(featuresResult);
+        Set<Artifact> pluginsDuplicates = withoutRequired(plugins, withoutReferenced(pluginsResult.getDuplicates()));
+        Set<Artifact> featuresDuplicates = withoutReferenced(featuresResult.getDuplicates());
 
         if (dryRun) {
             logger.info("\n Simulating clean up...");
 
-            showDuplicates(pluginsDuplicates);
-            showDuplicates(featuresDuplicates);
+            showDuplicates(pluginsDuplicates, pluginsResult);
+            showDuplicates(featuresDuplicates, featuresResult);
         } else {
             logger.info("\n Cleaning up...");
 
             removeAndBackupDuplicates(pluginsDuplicates, PLUGINS);
             removeAndBackupDuplicates(featuresDuplicates, FEATURES);
 
-            logger.warn("\n Duplicates are located at '{}'", backupFolder);
+            logger.warn("\n Duplicates are located at '{}'", getBackupLocation());
         }
 
         logger.warn("\n Found {} duplicates from overall {} plugins and {} duplicates from overall {} features.",
                 pluginsDuplicates.size(), plugins.size(), featuresDuplicates.size(), features.size());
+        summary.setPlugins(plugins.size(), pluginsDuplicates.size());
+        summary.setFeatures(features.size(), featuresDuplicates.size());
     }
 
-    private void showDuplicates(Set<Artifact> duplicates) {
+    /**
+     * Streams scanned artifacts into detectors, duplicates are shown or moved
+     * as soon as they are detected. Roots are walked one by one, the parsing
+     * runs in parallel according to the number of threads.
+     * 
+     * Duplicates are the same as of a non streaming run that processes
+     * artifacts in the order of the scan. The quick scan is not supported,
+     * it needs all candidates at once.
+     */
+    private void streamCleanUp(CleanUpSummary summary) {
+        if (quickScan) {
+            logger.warn("The quick scan is not supported in the pipeline mode, using the full scan.");
+        }
+        logger.info(dryRun ? "\n Simulating clean up..." : "\n Cleaning up...");
+
+        ParsingStage.AsyncRun run = parsingStage.startAsync();
+        DropinsScanner.Listing dropins = pool ? null : listDropins();
+        StreamingDuplicationDetector plugins = streamArtifacts(PLUGINS, run, dropins);
+        StreamingDuplicationDetector features = streamArtifacts(FEATURES, run, dropins);
+        run.await();
+
+        if (!dryRun) {
+            logger.warn("\n Duplicates are located at '{}'", getBackupLocation());
+        }
+
+        logger.warn("\n Found {} duplicates from overall {} plugins and {} duplicates from overall {} features.",
+                streamedDuplicates.get(PLUGINS).get(), plugins.getArtifactsCount(),
+                streamedDuplicates.get(FEATURES).get(), features.getArtifactsCount());
+        summary.setPlugins(plugins.getArtifactsCount(), streamedDuplicates.get(PLUGINS).get());
+        summary.setFeatures(features.getArtifactsCount(), streamedDuplicates.get(FEATURES).get());
+    }
+
+    /**
+     * Cleans up the installation and keeps watching it, until the thread is
+     * interrupted.
+     */
+    private void watchCleanUp(CleanUpSummary summary) {
+        if (quickScan || pipeline) {
+            logger.warn("The quick scan and the pipeline mode are not used in the watch mode.");
+        }
+        logger.info(dryRun ? "\n Simulating clean up..." : "\n Cleaning up...");
+
+        Map<String, DuplicationListener> listeners = new LinkedHashMap<>();
+        listeners.put(PLUGINS, createDuplicationListener(PLUGINS));
+        listeners.put(FEATURES, createDuplicationListener(FEATURES));
+
+        InstallationWatcher watcher = new InstallationWatcher(eclipseFolder, pool, directoryScanner, parsingStage,
+                detector, listeners);
+        try {
+            watcher.watch();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.info("Watching of '{}' has been stopped.", eclipseFolder);
+        } catch (IOException e) {
+            logger.error("Unable to watch '{}'.", eclipseFolder, e);
+        }
+
+        if (!dryRun) {
+            logger.warn("\n Duplicates are located at '{}'", getBackupLocation());
+        }
+        logger.warn("\n Found {} duplicates of plugins and {} duplicates of features.",
+                streamedDuplicates.get(PLUGINS).get(), streamedDuplicates.get(FEATURES).get());
+        summary.setPlugins(watcher.getIndex(PLUGINS).size(), streamedDuplicates.get(PLUGINS).get());
+        summary.setFeatures(watcher.getIndex(FEATURES).size(), streamedDuplicates.get(FEATURES).get());
+    }
+
+    /**
+     * Scans all roots of the type and passes candidates to the parsing.
+     * 
+     * @param type
+     *            either {@link #PLUGINS} or {@link #FEATURES}
+     * @param run
+     *            the background parsing of this clean up
+     * @param dropins
+     *            the listed dropins folder, <code>null</code> for a bundle
+     *            pool
+     * @return the detector, artifacts may still be added to it until the
+     *         parsing is finished
+     */
+    private StreamingDuplicationDetector streamArtifacts(final String type, final ParsingStage.AsyncRun run,
+            DropinsScanner.Listing dropins) {
+        final StreamingDuplicationDetector streamingDetector = detector
+                .createStreamingDetector(createDuplicationListener(type));
+
+        DirectoryScanner.Visitor visitor = new DirectoryScanner.Visitor() {
+            @Override
+            public void visit(Candidate candidate) {
+                if (!isThisExecutableJar(candidate)) {
+                    run.parse(candidate, streamingDetector);
+                }
+            }
+        };
+        directoryScanner.scan(FileUtils.getFile(eclipseFolder, type), LocationClass.INSTALLATION, visitor);
+        if (dropins != null) {
+            createDropinsScanner(type).scan(dropins, type, visitor);
+        }
+        return streamingDetector;
+    }
+
+    /**
+     * Shows or moves duplicates as soon as they are detected, they are
+     * counted in {@link #streamedDuplicates}.
+     * 
+     * @param type
+     *            either {@link #PLUGINS} or {@link #FEATURES}
+     */
+    private DuplicationListener createDuplicationListener(final String type) {
+        final AtomicInteger duplicates = new AtomicInteger();
+        streamedDuplicates.put(type, duplicates);
+
+        return new DuplicationListener() {
+            @Override
+            public void duplicateFound(Artifact duplicate, Artifact master) {
+                if (isReferenced(duplicate)) {
+                    return;
+                }
+                duplicates.incrementAndGet();
+                if (dryRun) {
+                    logger.info("{} duplicates {}", duplicate, master);
+                } else {
+                    removeAndBackupDuplicate(duplicate, type);
+                }
+            }
+        };
+    }
+
+    /**
+     * @return duplicates that are not referenced by any installation sharing
+     *         the pool
+     */
+    private Set<Artifact> withoutReferenced(Set<Artifact> duplicates) {
+        if (references == null) {
+            return duplicates;
+        }
+        Set<Artifact> unreferenced = new HashSet<>();
+        for (Artifact duplicate : duplicates) {
+            if (!isReferenced(duplicate)) {
+                unreferenced.add(duplicate);
+            }
+        }
+        return unreferenced;
+    }
+
+    /**
+     * Keeps duplicates that are the only match of a <code>Require-Bundle</code>
+     * or <code>Fragment-Host</code> of a surviving plugin.
+     * 
+     * @param plugins
+     *            all plugins of the installation
+     * @return duplicates no surviving plugin depends on
+     */
+    private Set<Artifact> withoutRequired(Set<Artifact> plugins, Set<Artifact> duplicates) {
+        if (duplicates.isEmpty()) {
+            return duplicates;
+        }
+        Map<Artifact, Artifact> required = new RequirementGraph(plugins).findRequired(duplicates);
+        if (required.isEmpty()) {
+            return duplicates;
+        }
+        Set<Artifact> unrequired = new HashSet<>(duplicates);
+        for (Map.Entry<Artifact, Artifact> e : required.entrySet()) {
+            logger.info("Keeping {}, it is still required by {}.", e.getKey(), e.getValue());
+            unrequired.remove(e.getKey());
+        }
+        return unrequired;
+    }
+
+    private boolean isReferenced(Artifact duplicate) {
+        if (references != null && references.isReferenced(duplicate)) {
+            logger.info("Keeping {}, it is still referenced.", duplicate);
+            return true;
+        }
+        return false;
+    }
+
+    private void showRuleDecisions(DetectionResult result) {
+        for (Group group : result.getGroups()) {
+            if (group.getRule() != null) {
+                logger.info("Rule {} decided '{}', keeping {} besides {}.", group.getRule(), group.getKey(),
+                        group.getKept(), group.getMaster());
+            }
+        }
+    }
+
+    private void showDuplicates(Set<Artifact> duplicates, DetectionResult result) {
         for (Artifact a : duplicates) {
-            logger.info("{}", a);
+            logger.info("{} duplicates {}", a, result.getMaster(a));
         }
     }
 
     /**
-     * Removes and back duplicates up.
+     * Removes and back duplicates up. All duplicates are passed to the
+     * archive at once, so their files are compressed in parallel.
      * 
      * @param duplicates
      *            list of artifacts to remove
@@ -147,64 +574,266 @@ public class Cleaner {
      *            either {@link #PLUGINS} or {@link #FEATURES}
      */
     private void removeAndBackupDuplicates(final Set<Artifact> duplicates, final String type) {
-        File destinationTypeFolder = FileUtils.getFile(backupFolder, type);
+        if (archive != null) {
+            List<File> locations = new ArrayList<>(duplicates.size());
+            for (Artifact artifact : duplicates) {
+                logger.info("Cleaning {}", artifact);
+                locations.add(artifact.getLocation());
+            }
+            archiveDuplicates(locations, type);
+            return;
+        }
 
         for (Artifact artifact : duplicates) {
-            logger.info("Cleaning {}", artifact);
-            try {
-                FileUtils.moveToDirectory(artifact.getLocation(), destinationTypeFolder, true);
-                logger.info(" OK");
-            } catch (FileExistsException e1) {
-                // the bundle was already copied there from an other
-                // location, so it means we have more duplicates in multiple
-                // location(s) with the same version, simply just delete it!
-                boolean wasDeleted = FileUtils.deleteQuietly(artifact.getLocation());
-                if (wasDeleted) {
-                    logger.warn(
-                            " --> The duplicate `{}` was deleted directly without creating a copy in the destination folder due to \n   `{}`.",
-                            artifact, e1.getLocalizedMessage());
-                } else {
-                    logger.warn(" Unable to remove the duplicate '{}' from '{}'.", artifact, artifact.getLocation());
-                }
-            } catch (Exception e) {
-                logger.error("Unable to remove the duplicate '{}'.", artifact, e);
+            removeAndBackupDuplicate(artifact, type);
+        }
+    }
+
+    private void archiveDuplicates(List<File> locations, String type) {
+        try {
+            archive.add(locations, type);
+        } catch (IOException e) {
+            logger.error("Unable to back duplicates up into '{}'.", archive.getFile(), e);
+        }
+    }
+
+    /**
+     * Moves a duplicate to the back up folder or the archive.
+     * 
+     * @param artifact
+     *            to remove
+     * @param type
+     *            either {@link #PLUGINS} or {@link #FEATURES}
+     */
+    private void removeAndBackupDuplicate(Artifact artifact, String type) {
+        logger.info("Cleaning {}", artifact);
+        if (archive != null) {
+            archiveDuplicates(Collections.singletonList(artifact.getLocation()), type);
+            return;
+        }
+        try {
+            mover.move(artifact.getLocation(), FileUtils.getFile(backupFolder, type));
+            logger.info(" OK");
+        } catch (FileAlreadyExistsException e1) {
+            // the bundle was already copied there from an other
+            // location, so it means we have more duplicates in multiple
+            // location(s) with the same version, simply just delete it!
+            boolean wasDeleted = FileUtils.deleteQuietly(artifact.getLocation());
+            if (wasDeleted) {
+                logger.warn(
+                        " --> The duplicate `{}` was deleted directly without creating a copy in the destination folder due to \n   `{}`.",
+                        artifact, e1.getLocalizedMessage());
+            } else {
+                logger.warn(" Unable to remove the duplicate '{}' from '{}'.", artifact, artifact.getLocation());
+            }
+        } catch (Exception e) {
+            logger.error("Unable to remove the duplicate '{}'.", artifact, e);
+        }
+    }
+
+    /**
+     * Scans all roots of plugins and features concurrently. A full scan parses
+     * each root within its own task, the quick scan only lists them since it
+     * needs all candidates of a type at once.
+     * 
+     * @return scanned roots, plugins first
+     */
+    private List<RootScan> scanRoots() {
+        List<RootScan> roots = new ArrayList<>();
+        // a bundle pool has no dropins
+        final DropinsScanner.Listing dropins = pool ? null : listDropins();
+        for (String type : new String[] { PLUGINS, FEATURES }) {
+            roots.add(new RootScan(type, FileUtils.getFile(eclipseFolder, type), null));
+            if (dropins != null) {
+                roots.add(new RootScan(type, dropins.dropins, dropins));
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(roots.size(), new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "plugin-cleaner-scanner-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            List<Future<Void>> tasks = new ArrayList<>(roots.size());
+            for (RootScan root : roots) {
+                tasks.add(executor.submit(root));
             }
 
+            Throwable failure = null;
+            for (int i = 0; i < roots.size(); i++) {
+                try {
+                    tasks.get(i).get();
+                } catch (ExecutionException e) {
+                    logger.error("Unable to scan '{}'.", roots.get(i).folder, e.getCause());
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                }
+            }
+            if (failure != null) {
+                throw new IllegalStateException("Unable to scan the Eclipse installation.", failure);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Scanning has been interrupted.", e);
+        } finally {
+            executor.shutdownNow();
         }
+        return roots;
     }
 
     /**
-     * Finds either plugins or features within Eclipse.
+     * Merges scanned roots of either plugins or features.
      * 
      * @param type
      *            either {@link #PLUGINS} or {@link #FEATURES}
      * @return never <code>null</code>
      */
-    private Set<Artifact> findArtifacts(String type) {
-        Set<Artifact> found = new HashSet<>();
-        find(FileUtils.getFile(eclipseFolder, type), found);
-        find(FileUtils.getFile(eclipseFolder, DROPINS, "eclipse", type), found);
-        find(FileUtils.getFile(eclipseFolder, DROPINS, type), found);
-        return found;
+    private Set<Artifact> findArtifacts(String type, List<RootScan> roots) {
+        List<Candidate> candidates = new ArrayList<>();
+        Set<Artifact> found = Collections.newSetFromMap(new ConcurrentHashMap<Artifact, Boolean>());
+        for (RootScan root : roots) {
+            if (root.type.equals(type)) {
+                candidates.addAll(root.candidates);
+                found.addAll(root.artifacts);
+            }
+        }
+
+        if (isQuickScan()) {
+            int opened = parsingStage.parseContested(candidates, found);
+            logger.debug("Quick scan of {} opened {} of {} manifests.", type, opened, candidates.size());
+
+            if (verifyScan) {
+                found = verifyQuickScan(type, candidates, found);
+            }
+        }
+        // keep the same iteration order as a sequential scan
+        return new HashSet<>(found);
     }
 
-    private void find(File base, Set<Artifact> artifacts) {
-        File[] entries = base.listFiles();
-        if (entries == null) {
-            return;
+    /**
+     * Compares duplicates found by the quick scan with duplicates found by a
+     * full scan.
+     * 
+     * @return the result of the full scan
+     */
+    private Set<Artifact> verifyQuickScan(String type, List<Candidate> candidates, Set<Artifact> quick) {
+        Set<Artifact> full = Collections.newSetFromMap(new ConcurrentHashMap<Artifact, Boolean>());
+        parsingStage.parse(candidates, full);
+
+        Set<Artifact> quickDuplicates = detector.detect(new HashSet<>(quick)).getDuplicates();
+        Set<Artifact> fullDuplicates = detector.detect(new HashSet<>(full)).getDuplicates();
+
+        if (quickDuplicates.equals(fullDuplicates)) {
+            logger.info("Quick scan of {} verified, {} duplicates found by both scans.", type, fullDuplicates.size());
+        } else {
+            for (Artifact a : fullDuplicates) {
+                if (!quickDuplicates.contains(a)) {
+                    logger.warn("Quick scan of {} missed the duplicate {}", type, a);
+                }
+            }
+            for (Artifact a : quickDuplicates) {
+                if (!fullDuplicates.contains(a)) {
+                    logger.warn("Quick scan of {} reported an extra duplicate {}", type, a);
+                }
+            }
+            logger.warn("Quick scan of {} differs from the full scan, using the full scan.", type);
         }
+        return full;
+    }
 
-        for (File f : entries) {
-            if (f.isFile() && f.getName().equals(THIS_EXECUTABLE_JAR.getName())) {
-                logger.debug("Skipping this executable jar: {}", THIS_EXECUTABLE_JAR);
-                continue;
+    /**
+     * Lists entries of the folder, the root folder of each entry is recorded
+     * so the detectors don't need to examine paths.
+     */
+    private void listCandidates(File base, LocationClass locationClass, List<Candidate> candidates) {
+        for (Candidate c : directoryScanner.list(base, locationClass)) {
+            if (!isThisExecutableJar(c)) {
+                candidates.add(c);
             }
+        }
+    }
+
+    /**
+     * @return the dropins folder classified once for plugins and features
+     */
+    private DropinsScanner.Listing listDropins() {
+        return new DropinsScanner(directoryScanner, eclipseFolder).list(FileUtils.getFile(eclipseFolder, DROPINS));
+    }
+
+    /**
+     * @return a scanner that skips the installation folder of the type
+     */
+    private DropinsScanner createDropinsScanner(String type) {
+        DropinsScanner dropinsScanner = new DropinsScanner(directoryScanner, eclipseFolder);
+        dropinsScanner.exclude(FileUtils.getFile(eclipseFolder, type));
+        return dropinsScanner;
+    }
 
-            Artifact a = artifactParser.createFromFile(f);
-            logger.trace("Found bundle {} ", a);
-            if (a != null) {
-                artifacts.add(a);
+    /**
+     * @return <code>false</code> with content fingerprints, they need all
+     *         manifests
+     */
+    private boolean isQuickScan() {
+        return quickScan && !fingerprints;
+    }
+
+    private boolean isThisExecutableJar(Candidate c) {
+        if (c.getAttributes().isRegularFile() && c.getFile().getName().equals(THIS_EXECUTABLE_JAR.getName())) {
+            logger.debug("Skipping this executable jar: {}", THIS_EXECUTABLE_JAR);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Lists and, unless the quick scan is used, parses a single root folder.
+     * The dropins root covers all layouts of the dropins folder.
+     */
+    private class RootScan implements Callable<Void> {
+        final String type;
+        final File folder;
+        /**
+         * <code>null</code> for the installation folder of the type
+         */
+        final DropinsScanner.Listing dropins;
+
+        final List<Candidate> candidates = new ArrayList<>();
+        final Set<Artifact> artifacts = Collections.newSetFromMap(new ConcurrentHashMap<Artifact, Boolean>());
+
+        RootScan(String type, File folder, DropinsScanner.Listing dropins) {
+            this.type = type;
+            this.folder = folder;
+            this.dropins = dropins;
+        }
+
+        @Override
+        public Void call() {
+            final long start = System.nanoTime();
+            if (dropins != null) {
+                createDropinsScanner(type).scan(dropins, type, new DirectoryScanner.Visitor() {
+                    @Override
+                    public void visit(Candidate candidate) {
+                        if (!isThisExecutableJar(candidate)) {
+                            candidates.add(candidate);
+                        }
+                    }
+                });
+            } else {
+                listCandidates(folder, LocationClass.INSTALLATION, candidates);
+            }
+            if (!isQuickScan()) {
+                parsingStage.parse(candidates, artifacts);
             }
+            logger.info("Scanned {} entries of '{}' in {} ms.", candidates.size(), folder,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return null;
         }
     }
 }
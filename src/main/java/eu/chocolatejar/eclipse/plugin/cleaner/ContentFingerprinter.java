@@ -0,0 +1,225 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Computes a fingerprint of the content of a bundle, so byte identical copies
+ * are recognized regardless of their filenames.
+ * 
+ * The fingerprint is a SHA-1 digest of the names, sizes and CRC-32 checksums of
+ * all files sorted by name. A jar is fingerprinted from its central directory
+ * only, no entry is inflated. An exploded bundle is fingerprinted from the
+ * CRC-32 of each file, so it gets the same fingerprint as a jar with the same
+ * content.
+ * 
+ * Directory entries, the manifest and the signature files in
+ * <code>META-INF</code> are left out, so copies signed differently or not at
+ * all are still equal.
+ * 
+ * Reading every file of an exploded bundle is expensive, so its fingerprint
+ * may be cached together with a {@link #treeSignature(File)}.
+ * 
+ * The fingerprinter is thread safe.
+ */
+class ContentFingerprinter {
+
+    private static final String META_INF = "META-INF/";
+
+    private static final String[] SIGNATURE_EXTENSIONS = { ".SF", ".RSA", ".DSA", ".EC" };
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final EntryReader entryReader;
+
+    /**
+     * @param entryReader
+     *            used to list the central directory of jars
+     */
+    ContentFingerprinter(EntryReader entryReader) {
+        this.entryReader = entryReader;
+    }
+
+    /**
+     * @param location
+     *            a jar or a folder
+     * @return the fingerprint in hex, <code>null</code> if there is no content
+     *         besides the manifest, such bundles differ only by it
+     * @throws IOException
+     *             if the jar is not a valid archive or a file is not readable
+     */
+    String fingerprint(File location) throws IOException {
+        final List<FileEntry> entries = new ArrayList<>();
+        if (location.isDirectory()) {
+            collectFiles(location.toPath(), entries);
+        } else {
+            entryReader.visitEntries(location, new EntryReader.EntryVisitor() {
+                @Override
+                public void visit(String name, long size, long crc) {
+                    if (isContent(name)) {
+                        entries.add(new FileEntry(name, size, crc));
+                    }
+                }
+            });
+        }
+        return entries.isEmpty() ? null : digest(entries);
+    }
+
+    /**
+     * A cheap signature of the content of an exploded bundle: the number of
+     * files and the latest modification time of all files and folders. An
+     * added, removed, renamed or rewritten file changes it, while only
+     * metadata is read.
+     * 
+     * @param folder
+     *            an exploded bundle
+     * @return never <code>null</code>
+     * @throws IOException
+     *             if the folder can't be walked
+     */
+    String treeSignature(File folder) throws IOException {
+        final long[] signature = new long[2];
+        Files.walkFileTree(folder.toPath(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+                signature[1] = Math.max(signature[1], attributes.lastModifiedTime().toMillis());
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                signature[0]++;
+                signature[1] = Math.max(signature[1], attributes.lastModifiedTime().toMillis());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return signature[0] + ":" + signature[1];
+    }
+
+    private void collectFiles(final Path root, final List<FileEntry> entries) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                if (attributes.isRegularFile()) {
+                    String name = root.relativize(file).toString().replace(File.separatorChar, '/');
+                    if (isContent(name)) {
+                        entries.add(new FileEntry(name, attributes.size(), crc(file)));
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static long crc(Path file) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(file)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                crc.update(buffer, 0, n);
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * @return <code>false</code> for directories, the manifest and signature
+     *         files
+     */
+    static boolean isContent(String name) {
+        if (name.endsWith("/")) {
+            return false;
+        }
+        if (!name.regionMatches(true, 0, META_INF, 0, META_INF.length())
+                || name.indexOf('/', META_INF.length()) >= 0) {
+            return true;
+        }
+        if (name.equalsIgnoreCase(EntryReader.MANIFEST_NAME)) {
+            return false;
+        }
+        for (String extension : SIGNATURE_EXTENSIONS) {
+            if (name.regionMatches(true, name.length() - extension.length(), extension, 0, extension.length())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String digest(List<FileEntry> entries) {
+        Collections.sort(entries);
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-1
+            throw new IllegalStateException(e);
+        }
+        byte[] numbers = new byte[16];
+        for (FileEntry entry : entries) {
+            digest.update(entry.name.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            putLong(numbers, 0, entry.size);
+            putLong(numbers, 8, entry.crc);
+            digest.update(numbers);
+        }
+
+        StringBuilder hex = new StringBuilder(40);
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private static void putLong(byte[] target, int offset, long value) {
+        for (int i = 7; i >= 0; i--) {
+            target[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    private static final class FileEntry implements Comparable<FileEntry> {
+        final String name;
+        final long size;
+        final long crc;
+
+        FileEntry(String name, long size, long crc) {
+            this.name = name;
+            this.size = size;
+            this.crc = crc;
+        }
+
+        @Override
+        public int compareTo(FileEntry o) {
+            return name.compareTo(o.name);
+        }
+    }
+}
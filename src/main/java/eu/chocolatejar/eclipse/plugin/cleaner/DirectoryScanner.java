@@ -0,0 +1,216 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import eu.chocolatejar.eclipse.plugin.cleaner.model.LocationClass;
+
+/**
+ * Lists the entries of a root folder like <code>plugins</code>.
+ *
+ * The attributes of every entry are read once by the directory walk and
+ * handed over to the later stages within a {@link Candidate}, so no other
+ * stage needs to examine the entry again. On Windows the attributes come
+ * directly with the directory listing. Symbolic links are followed, both a
+ * linked root and linked entries, a broken link is listed as the link
+ * itself.
+ *
+ * The number of file system metadata calls (a directory listing or reading
+ * attributes of a path) is counted, see {@link #getMetadataCalls()}.
+ *
+ * The scanner is thread safe.
+ */
+class DirectoryScanner {
+
+    private static final Logger logger = LoggerFactory.getLogger(DirectoryScanner.class);
+
+    private final AtomicLong metadataCalls = new AtomicLong();
+
+    /**
+     * @param root
+     *            a folder with potential bundles, may not exist
+     * @param locationClass
+     *            recorded for all entries
+     * @return entries of the root in the order of the directory listing, never
+     *         <code>null</code>
+     */
+    List<Candidate> list(File root, LocationClass locationClass) {
+        final List<Candidate> candidates = new ArrayList<>();
+        scan(root, locationClass, new Visitor() {
+            @Override
+            public void visit(Candidate candidate) {
+                candidates.add(candidate);
+            }
+        });
+        return candidates;
+    }
+
+    /**
+     * Hands over entries of a root folder one by one, without keeping them.
+     * 
+     * @param root
+     *            a folder with potential bundles, may not exist
+     * @param locationClass
+     *            recorded for all entries
+     * @param visitor
+     *            called in the order of the directory listing
+     */
+    void scan(File root, final LocationClass locationClass, final Visitor visitor) {
+        final Path rootPath = root.toPath();
+        try {
+            Files.walkFileTree(rootPath, EnumSet.of(FileVisitOption.FOLLOW_LINKS), 1, new SimpleFileVisitor<Path>() {
+
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    // attributes of the root and its listing
+                    metadataCalls.addAndGet(2);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    metadataCalls.incrementAndGet();
+                    if (!file.equals(rootPath)) {
+                        visitor.visit(new Candidate(file.toFile(), attrs, locationClass));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    metadataCalls.incrementAndGet();
+                    if (!(e instanceof NoSuchFileException)) {
+                        logger.warn("Unable to read '{}'.", file);
+                        logger.debug("Unable to read the file attributes.", e);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            logger.warn("Unable to list '{}'.", root, e);
+        }
+    }
+
+    /**
+     * Reads attributes of a single entry the same way as the directory walk,
+     * symbolic links are followed.
+     * 
+     * @return <code>null</code> if the entry doesn't exist or can't be read
+     */
+    Candidate candidate(File file, LocationClass locationClass) {
+        metadataCalls.incrementAndGet();
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            return new Candidate(file, attrs, locationClass);
+        } catch (NoSuchFileException e) {
+            return brokenLink(file, locationClass);
+        } catch (IOException e) {
+            logger.warn("Unable to read '{}'.", file);
+            logger.debug("Unable to read the file attributes.", e);
+            return null;
+        }
+    }
+
+    /**
+     * @return the link itself, <code>null</code> if there is no link either
+     */
+    private Candidate brokenLink(File file, LocationClass locationClass) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class,
+                    LinkOption.NOFOLLOW_LINKS);
+            return new Candidate(file, attrs, locationClass);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Identifies a folder independently of the path it is reached by, symbolic
+     * links are followed.
+     * 
+     * @return the file key of the folder, or its real path if the file system
+     *         doesn't provide file keys, <code>null</code> if it is not a
+     *         readable folder
+     */
+    Object directoryKey(File folder) {
+        metadataCalls.incrementAndGet();
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(folder.toPath(), BasicFileAttributes.class);
+            if (!attrs.isDirectory()) {
+                return null;
+            }
+            Object key = attrs.fileKey();
+            return key != null ? key : folder.toPath().toRealPath();
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            logger.warn("Unable to read '{}'.", folder);
+            logger.debug("Unable to read the folder attributes.", e);
+            return null;
+        }
+    }
+
+    /**
+     * Probes a single path, symbolic links are followed.
+     * 
+     * @return <code>true</code> if the path is a folder
+     */
+    boolean isDirectory(File file) {
+        metadataCalls.incrementAndGet();
+        return file.isDirectory();
+    }
+
+    /**
+     * Probes a single path, symbolic links are followed.
+     * 
+     * @return <code>true</code> if the path exists
+     */
+    boolean exists(File file) {
+        metadataCalls.incrementAndGet();
+        return file.exists();
+    }
+
+    /**
+     * @return the number of file system metadata calls made by this scanner
+     */
+    long getMetadataCalls() {
+        return metadataCalls.get();
+    }
+
+    /**
+     * Receives entries of a scanned folder.
+     */
+    interface Visitor {
+        void visit(Candidate candidate);
+    }
+}
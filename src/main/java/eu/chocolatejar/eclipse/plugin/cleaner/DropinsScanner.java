@@ -0,0 +1,329 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner;
+
+import static eu.chocolatejar.eclipse.plugin.cleaner.Cleaner.FEATURES;
+import static eu.chocolatejar.eclipse.plugin.cleaner.Cleaner.PLUGINS;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import eu.chocolatejar.eclipse.plugin.cleaner.model.LocationClass;
+
+/**
+ * Finds bundles of the <code>dropins</code> folder in all layouts supported
+ * by the Eclipse dropins reconciler:
+ * <ul>
+ * <li><code>dropins/plugins</code> and <code>dropins/features</code></li>
+ * <li><code>dropins/eclipse/plugins</code></li>
+ * <li><code>dropins/&lt;name&gt;/plugins</code> and
+ * <code>dropins/&lt;name&gt;/eclipse/plugins</code></li>
+ * <li>jars and bundle folders directly within <code>dropins</code></li>
+ * <li><code>dropins/&lt;name&gt;.link</code> files pointing to a folder with
+ * one of the layouts above, a relative path is resolved against the Eclipse
+ * installation</li>
+ * </ul>
+ *
+ * The entries of the dropins folder are classified once by
+ * {@link #list(File)} from the attributes read by the directory walk, the
+ * {@link Listing} is shared by the scans of plugins and features.
+ *
+ * Every folder is scanned once, even when it is reached by several paths,
+ * through a symbolic link or a link file. Folders are identified by
+ * {@link DirectoryScanner#directoryKey(File)}, so link loops end as well.
+ * Symbolic links are followed everywhere, a linked <code>plugins</code>
+ * folder or a linked layout is scanned like a real one.
+ *
+ * A scanner keeps the visited folders, a new one is needed for every scan.
+ */
+class DropinsScanner {
+
+    private static final Logger logger = LoggerFactory.getLogger(DropinsScanner.class);
+
+    static final String LINK_EXTENSION = ".link";
+
+    private static final String ECLIPSE = "eclipse";
+    private static final String LINK_PATH = "path";
+    private static final String JAR_EXTENSION = ".jar";
+
+    private final DirectoryScanner directoryScanner;
+    private final File eclipseFolder;
+    private final Set<Object> visited = new HashSet<>();
+    private final Map<File, LocationClass> roots = new LinkedHashMap<>();
+    private final List<File> layouts = new ArrayList<>();
+
+    /**
+     * @param directoryScanner
+     *            lists the bundle folders
+     * @param eclipseFolder
+     *            the Eclipse installation, relative link files are resolved
+     *            against it
+     */
+    DropinsScanner(DirectoryScanner directoryScanner, File eclipseFolder) {
+        this.directoryScanner = directoryScanner;
+        this.eclipseFolder = eclipseFolder;
+    }
+
+    /**
+     * Marks a folder as already scanned, e.g. <code>plugins</code> of the
+     * installation, so a link file pointing to it is ignored.
+     */
+    void exclude(File folder) {
+        Object key = directoryScanner.directoryKey(folder);
+        if (key != null) {
+            visited.add(key);
+        }
+    }
+
+    /**
+     * Hands over all bundles of the type found within the dropins folder.
+     * 
+     * @param dropins
+     *            the dropins folder, may not exist
+     * @param type
+     *            either {@link Cleaner#PLUGINS} or {@link Cleaner#FEATURES}
+     * @param visitor
+     *            receives the bundles, the location class of bundles within
+     *            <code>dropins/eclipse</code> is
+     *            {@link LocationClass#DROPINS_ECLIPSE}
+     */
+    void scan(File dropins, String type, DirectoryScanner.Visitor visitor) {
+        scan(list(dropins), type, visitor);
+    }
+
+    /**
+     * Hands over all bundles of the type found within a listed dropins
+     * folder.
+     * 
+     * @param listing
+     *            the dropins folder listed by any scanner of the installation
+     * @see #scan(File, String, DirectoryScanner.Visitor)
+     */
+    void scan(Listing listing, String type, DirectoryScanner.Visitor visitor) {
+        if (!visit(listing.dropins)) {
+            return;
+        }
+        layouts.add(listing.dropins);
+
+        scanRoot(new File(listing.dropins, type), LocationClass.DROPINS, visitor);
+        for (Map.Entry<File, LocationClass> layout : listing.layouts.entrySet()) {
+            scanLayout(layout.getKey(), type, layout.getValue(), visitor);
+        }
+        if (type.equals(PLUGINS)) {
+            for (Candidate bundle : listing.looseBundles) {
+                visitor.visit(bundle);
+            }
+        }
+    }
+
+    /**
+     * Lists the dropins folder and classifies its entries, link files are
+     * read.
+     * 
+     * @param dropins
+     *            the dropins folder, may not exist
+     * @return never <code>null</code>
+     */
+    Listing list(File dropins) {
+        final Listing listing = new Listing(dropins);
+        for (Candidate entry : directoryScanner.list(dropins, LocationClass.DROPINS)) {
+            final File file = entry.getFile();
+            final String name = file.getName();
+            final boolean directory = entry.getAttributes().isDirectory();
+
+            if (name.equals(PLUGINS) || name.equals(FEATURES)) {
+                continue;
+            } else if (name.equals(ECLIPSE)) {
+                listing.addLayout(file, LocationClass.DROPINS_ECLIPSE);
+            } else if (StringUtils.endsWithIgnoreCase(name, LINK_EXTENSION) && !directory) {
+                File target = readLink(file);
+                if (target != null) {
+                    logger.debug("Following '{}' to '{}'.", file, target);
+                    listing.addLayout(target, LocationClass.DROPINS);
+                }
+            } else if (directory && isLayout(directoryScanner, file)) {
+                listing.addLayout(file, LocationClass.DROPINS);
+            } else if (isLooseBundle(file, directory)) {
+                listing.looseBundles.add(entry);
+            }
+        }
+        return listing;
+    }
+
+    /**
+     * Scans <code>plugins</code> or <code>features</code> of the location and
+     * of its <code>eclipse</code> subfolder.
+     */
+    private void scanLayout(File location, String type, LocationClass locationClass, DirectoryScanner.Visitor visitor) {
+        Object key = directoryScanner.directoryKey(location);
+        if (key == null) {
+            return;
+        }
+        if (!visited.add(key)) {
+            logger.debug("Skipping '{}', it has been already scanned.", location);
+            return;
+        }
+        layouts.add(location);
+        scanRoot(new File(location, type), locationClass, visitor);
+        scanLayout(new File(location, ECLIPSE), type, locationClass, visitor);
+    }
+
+    private void scanRoot(File root, LocationClass locationClass, DirectoryScanner.Visitor visitor) {
+        if (visit(root)) {
+            roots.put(root, locationClass);
+            directoryScanner.scan(root, locationClass, visitor);
+        }
+    }
+
+    /**
+     * @return scanned <code>plugins</code> or <code>features</code> folders
+     *         and the location class of their bundles
+     */
+    Map<File, LocationClass> getRoots() {
+        return roots;
+    }
+
+    /**
+     * @return scanned folders containing the roots, including the dropins
+     *         folder itself; a change within them may change the layout
+     */
+    List<File> getLayouts() {
+        return layouts;
+    }
+
+    /**
+     * @return <code>false</code> if the folder doesn't exist or it has been
+     *         already visited
+     */
+    private boolean visit(File folder) {
+        Object key = directoryScanner.directoryKey(folder);
+        return key != null && visited.add(key);
+    }
+
+    private static boolean isLayout(DirectoryScanner directoryScanner, File folder) {
+        return directoryScanner.isDirectory(new File(folder, PLUGINS))
+                || directoryScanner.isDirectory(new File(folder, FEATURES))
+                || directoryScanner.isDirectory(new File(folder, ECLIPSE));
+    }
+
+    /**
+     * @param directory
+     *            whether the entry is a folder
+     */
+    static boolean isLooseBundle(File entry, boolean directory) {
+        return directory || StringUtils.endsWithIgnoreCase(entry.getName(), JAR_EXTENSION);
+    }
+
+    /**
+     * Tells whether a changed entry directly within a scanned layout folder
+     * may change the layout. Only folders and link files do, a deleted entry
+     * may have been a folder unless it is a jar of the dropins folder.
+     * 
+     * @param directoryScanner
+     *            probes the entry
+     * @param dropinsFolder
+     *            whether the entry is within the dropins folder itself, where
+     *            a folder without a layout is a loose bundle
+     */
+    static boolean isLayoutEntry(DirectoryScanner directoryScanner, File entry, boolean dropinsFolder) {
+        final String name = entry.getName();
+        if (name.equals(PLUGINS) || name.equals(FEATURES) || name.equals(ECLIPSE)
+                || StringUtils.endsWithIgnoreCase(name, LINK_EXTENSION)) {
+            return true;
+        }
+        if (directoryScanner.isDirectory(entry)) {
+            return !dropinsFolder || isLayout(directoryScanner, entry);
+        }
+        return !directoryScanner.exists(entry)
+                && !(dropinsFolder && StringUtils.endsWithIgnoreCase(name, JAR_EXTENSION));
+    }
+
+    /**
+     * A link file is a properties file with the <code>path</code> key. A file
+     * containing just the path is accepted as well.
+     * 
+     * @return <code>null</code> if the link file can't be read
+     */
+    File readLink(File link) {
+        String path;
+        try {
+            byte[] content = FileUtils.readFileToByteArray(link);
+            Properties properties = new Properties();
+            properties.load(new ByteArrayInputStream(content));
+            path = properties.getProperty(LINK_PATH);
+            if (path == null) {
+                path = firstLine(new String(content, StandardCharsets.UTF_8));
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            logger.warn("Unable to read the link file '{}'.", link);
+            logger.debug("Unable to read the link file.", e);
+            return null;
+        }
+        if (StringUtils.isBlank(path)) {
+            logger.warn("The link file '{}' doesn't contain a path.", link);
+            return null;
+        }
+        File target = new File(path.trim());
+        return target.isAbsolute() ? target : FileUtils.getFile(eclipseFolder, path.trim());
+    }
+
+    private String firstLine(String content) {
+        for (String line : StringUtils.split(content, "\r\n")) {
+            if (!line.trim().isEmpty() && !line.trim().startsWith("#")) {
+                return line;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The classified entries of a dropins folder, the same for plugins and
+     * features.
+     */
+    static final class Listing {
+        final File dropins;
+        /**
+         * Folders with a layout and the location class of their bundles, in
+         * the order of the directory listing.
+         */
+        final Map<File, LocationClass> layouts = new LinkedHashMap<>();
+        final List<Candidate> looseBundles = new ArrayList<>();
+
+        Listing(File dropins) {
+            this.dropins = dropins;
+        }
+
+        private void addLayout(File location, LocationClass locationClass) {
+            if (!layouts.containsKey(location)) {
+                layouts.put(location, locationClass);
+            }
+        }
+    }
+}
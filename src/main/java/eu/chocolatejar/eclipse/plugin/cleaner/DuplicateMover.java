@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Moves duplicates into the back up folder.
+ * 
+ * When the back up folder is on the same file store as the installation,
+ * decided once per run, each duplicate (a jar or an exploded bundle) is moved
+ * by a single atomic rename. Otherwise, or if a duplicate reached by a link
+ * file turns out to be on another device, it is copied and deleted. Both ways
+ * are counted and timed separately.
+ * 
+ * The mover is thread safe.
+ */
+final class DuplicateMover {
+
+    private static final Logger logger = LoggerFactory.getLogger(DuplicateMover.class);
+
+    private final boolean sameFileStore;
+
+    private final AtomicInteger moved = new AtomicInteger();
+    private final AtomicLong movedNanos = new AtomicLong();
+    private final AtomicInteger copied = new AtomicInteger();
+    private final AtomicLong copiedNanos = new AtomicLong();
+
+    /**
+     * @param sameFileStore
+     *            when <code>false</code> duplicates are always copied and
+     *            deleted
+     */
+    DuplicateMover(boolean sameFileStore) {
+        this.sameFileStore = sameFileStore;
+    }
+
+    /**
+     * Compares file stores of the installation and the back up folder.
+     * 
+     * @param sourceFolder
+     *            the Eclipse installation
+     * @param destinationFolder
+     *            the back up folder, may not exist yet
+     */
+    static DuplicateMover create(File sourceFolder, File destinationFolder) {
+        try {
+            Path source = sourceFolder.toPath().toAbsolutePath();
+            Path destination = existingAncestor(destinationFolder.toPath().toAbsolutePath());
+            boolean same = Files.getFileStore(source).equals(Files.getFileStore(destination));
+            if (!same) {
+                logger.warn("The destination '{}' is on another device, duplicates will be copied and deleted.",
+                        destinationFolder);
+            }
+            return new DuplicateMover(same);
+        } catch (IOException e) {
+            // a failed atomic move still falls back to the copy
+            logger.debug("Unable to compare file stores of '{}' and '{}'.", sourceFolder, destinationFolder, e);
+            return new DuplicateMover(true);
+        }
+    }
+
+    private static Path existingAncestor(Path path) {
+        Path existing = path;
+        while (existing.getParent() != null && !Files.exists(existing)) {
+            existing = existing.getParent();
+        }
+        return existing;
+    }
+
+    /**
+     * Moves a jar or a folder into the destination folder, keeping its name.
+     * 
+     * @param destinationFolder
+     *            created if missing
+     * @throws FileAlreadyExistsException
+     *             if the destination already contains a file of the same name
+     */
+    void move(File source, File destinationFolder) throws IOException {
+        final Path from = source.toPath();
+        final Path to = destinationFolder.toPath().resolve(from.getFileName());
+        Files.createDirectories(destinationFolder.toPath());
+        if (Files.exists(to, LinkOption.NOFOLLOW_LINKS)) {
+            throw new FileAlreadyExistsException(from.toString(), to.toString(), "already backed up");
+        }
+
+        final long start = System.nanoTime();
+        if (sameFileStore) {
+            try {
+                Files.move(from, to, StandardCopyOption.ATOMIC_MOVE);
+                moved.incrementAndGet();
+                movedNanos.addAndGet(System.nanoTime() - start);
+                return;
+            } catch (AtomicMoveNotSupportedException e) {
+                logger.debug("'{}' is on another device than '{}', copying it.", source, destinationFolder);
+            } catch (DirectoryNotEmptyException e) {
+                // a folder of the same name has been moved there meanwhile
+                throw new FileAlreadyExistsException(from.toString(), to.toString(), "already backed up");
+            }
+        }
+
+        if (Files.isDirectory(from, LinkOption.NOFOLLOW_LINKS)) {
+            FileUtils.copyDirectory(source, to.toFile(), true);
+            FileUtils.deleteDirectory(source);
+        } else {
+            Files.copy(from, to, StandardCopyOption.COPY_ATTRIBUTES);
+            Files.delete(from);
+        }
+        copied.incrementAndGet();
+        copiedNanos.addAndGet(System.nanoTime() - start);
+    }
+
+    /**
+     * @return the number of duplicates moved by an atomic rename
+     */
+    int getMoved() {
+        return moved.get();
+    }
+
+    /**
+     * @return the number of duplicates copied to another device and deleted
+     */
+    int getCopied() {
+        return copied.get();
+    }
+
+    /**
+     * Logs counts and timings of both ways.
+     */
+    void logStatistics() {
+        if (moved.get() == 0 && copied.get() == 0) {
+            return;
+        }
+        logger.info("Moved {} duplicates atomically in {} ms, copied {} across devices in {} ms.", moved.get(),
+                TimeUnit.NANOSECONDS.toMillis(movedNanos.get()), copied.get(),
+                TimeUnit.NANOSECONDS.toMillis(copiedNanos.get()));
+    }
+}
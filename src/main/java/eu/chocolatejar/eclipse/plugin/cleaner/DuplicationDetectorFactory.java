@@ -15,24 +15,33 @@
  *******************************************************************************/
 package eu.chocolatejar.eclipse.plugin.cleaner;
 
+import java.util.HashSet;
 import java.util.Set;
 
 import eu.chocolatejar.eclipse.plugin.cleaner.detector.DropinsOnlyDuplicationDetector;
 import eu.chocolatejar.eclipse.plugin.cleaner.detector.PrefereDropinsDuplicationDetector;
+import eu.chocolatejar.eclipse.plugin.cleaner.detector.RetentionPolicy;
 import eu.chocolatejar.eclipse.plugin.cleaner.detector.UnlimitedDuplicationDetector;
 import eu.chocolatejar.eclipse.plugin.cleaner.model.Artifact;
 import eu.chocolatejar.eclipse.plugin.cleaner.model.CleaningMode;
+import eu.chocolatejar.eclipse.plugin.cleaner.model.DetectionResult;
 import eu.chocolatejar.eclipse.plugin.cleaner.model.DuplicationDetector;
+import eu.chocolatejar.eclipse.plugin.cleaner.model.DuplicationListener;
+import eu.chocolatejar.eclipse.plugin.cleaner.model.StreamingDuplicationDetector;
 
 /**
  * Create a bundle duplication {@link DuplicationDetector} based on a provided
  * mode.
  * 
+ * Detectors are created once and shared by all calls, the factory is thus
+ * thread safe and may be reused across installations.
+ * 
  * @see CleaningMode
  */
 public class DuplicationDetectorFactory implements DuplicationDetector {
 
-    private final CleaningMode mode;
+    private final DuplicationDetector byName;
+    private final DuplicationDetector byContent;
 
     /**
      * Create a detector based on a provided mode.
@@ -42,7 +51,64 @@ public class DuplicationDetectorFactory implements DuplicationDetector {
      *            duplicates
      */
     public DuplicationDetectorFactory(CleaningMode mode) {
-        this.mode = mode;
+        this(mode, 1);
+    }
+
+    /**
+     * Create a detector based on a provided mode, large sets of artifacts are
+     * resolved in parallel. The result doesn't depend on the parallelism.
+     * 
+     * @param mode
+     *            - a {@link CleaningMode} that specify detector to resolve
+     *            duplicates
+     * @param parallelism
+     *            the number of threads, <code>1</code> to use only the
+     *            calling thread
+     */
+    public DuplicationDetectorFactory(CleaningMode mode, int parallelism) {
+        this(mode, parallelism, false);
+    }
+
+    /**
+     * Create a detector based on a provided mode that optionally detects
+     * copies with the same content as well.
+     * 
+     * @param mode
+     *            - a {@link CleaningMode} that specify detector to resolve
+     *            duplicates
+     * @param parallelism
+     *            the number of threads, <code>1</code> to use only the
+     *            calling thread
+     * @param byContent
+     *            when <code>true</code> artifacts that remain after the
+     *            detection by symbolic names are grouped by their fingerprints,
+     *            see {@link Artifact#getFingerprint()}; bundles required by
+     *            their symbolic name are left out
+     */
+    public DuplicationDetectorFactory(CleaningMode mode, int parallelism, boolean byContent) {
+        this(mode, parallelism, byContent, RetentionPolicy.NONE);
+    }
+
+    /**
+     * Create a detector based on a provided mode whose decisions are
+     * overridden by rules for matching groups.
+     * 
+     * @param mode
+     *            - a {@link CleaningMode} that specify detector to resolve
+     *            duplicates
+     * @param parallelism
+     *            the number of threads, <code>1</code> to use only the
+     *            calling thread
+     * @param byContent
+     *            when <code>true</code> artifacts that remain after the
+     *            detection by symbolic names are grouped by their fingerprints
+     * @param policy
+     *            rules overriding the mode, {@link RetentionPolicy#NONE} if
+     *            there are none
+     */
+    public DuplicationDetectorFactory(CleaningMode mode, int parallelism, boolean byContent, RetentionPolicy policy) {
+        this.byName = createDetector(mode, parallelism, false, policy);
+        this.byContent = byContent ? createDetector(mode, parallelism, true, policy) : null;
     }
 
     /**
@@ -50,26 +116,54 @@ public class DuplicationDetectorFactory implements DuplicationDetector {
      * cleaningMode
      * 
      * @param cleaningMode
+     * @param parallelism
+     *            the number of threads
+     * @param content
+     *            whether to group artifacts by their fingerprints
+     * @param policy
+     *            rules overriding the mode
      * @return DuplicationDetector instance, never <code>null</code>
      */
-    private DuplicationDetector createDetector(CleaningMode cleaningMode) {
+    @SuppressWarnings("deprecation")
+    private static DuplicationDetector createDetector(CleaningMode cleaningMode, int parallelism, boolean content,
+            RetentionPolicy policy) {
         switch (cleaningMode) {
 
         case dropinsOnly:
-            return new DropinsOnlyDuplicationDetector();
+            return new DropinsOnlyDuplicationDetector(parallelism, content, policy);
 
         case unlimited:
-            return new UnlimitedDuplicationDetector();
+            return new UnlimitedDuplicationDetector(parallelism, content, policy);
 
         case prefereDropins:
         default:
-            return new PrefereDropinsDuplicationDetector();
+            return new PrefereDropinsDuplicationDetector(parallelism, content, policy);
         }
     }
 
+    /**
+     * Creates a new streaming detector based on the mode of this factory.
+     * 
+     * @param listener
+     *            receives duplicates as soon as they are known
+     * @return never <code>null</code>
+     */
+    @Override
+    public StreamingDuplicationDetector createStreamingDetector(DuplicationListener listener) {
+        return byName.createStreamingDetector(listener);
+    }
+
     @Override
-    public Set<Artifact> getDuplicates(Set<Artifact> artifacts) {
-        // we need to always return a new detector object for each call
-        return createDetector(mode).getDuplicates(artifacts);
+    public DetectionResult detect(Set<Artifact> artifacts) {
+        DetectionResult result = byName.detect(artifacts);
+        if (byContent == null) {
+            return result;
+        }
+
+        Set<Artifact> remaining = new HashSet<>(artifacts);
+        remaining.removeAll(result.getDuplicates());
+        // a copy with another name doesn't satisfy a requirement on this name
+        remaining.removeAll(new RequirementGraph(remaining).findRequiredByName());
+        return result.union(byContent.detect(remaining));
     }
 }
@@ -0,0 +1,493 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Reads single entries of a jar, e.g. <code>META-INF/MANIFEST.MF</code> or
+ * <code>feature.xml</code>, without streaming through the whole archive.
+ *
+ * The reader locates the end of central directory record at the end of the
+ * file (including the zip64 variant), walks the central directory until the
+ * requested entry is found, seeks to its local header and inflates only that
+ * entry. The position of the entry within the archive doesn't matter. All
+ * entries of the central directory can be listed the same way, see
+ * {@link #visitEntries(File, EntryVisitor)}.
+ *
+ * The number of bytes read from the disk is counted, see
+ * {@link #getBytesRead()}.
+ */
+class EntryReader {
+
+    static final String MANIFEST_NAME = "META-INF/MANIFEST.MF";
+
+    private static final byte[] MANIFEST_NAME_BYTES = upperCaseBytes(MANIFEST_NAME);
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int END_SIZE = 22;
+    private static final int ZIP64_END_SIZE = 56;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+
+    /**
+     * A sanity limit, no real manifest or feature.xml gets even close to it.
+     */
+    private static final long MAX_ENTRY_SIZE = 64 * 1024 * 1024;
+
+    private static final int CENTRAL_DIRECTORY_CHUNK = 8 * 1024;
+    private static final int SHORT_TAIL_SIZE = 512;
+
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong manifestsRead = new AtomicLong();
+
+    /**
+     * Reads the manifest from a jar.
+     *
+     * @param jar
+     *            zip or zip64 archive
+     * @return uncompressed bytes of the manifest or <code>null</code> if the
+     *         jar doesn't contain a manifest
+     * @throws IOException
+     *             if the file is not a valid archive
+     */
+    byte[] readManifest(File jar) throws IOException {
+        byte[] manifest = read(jar, MANIFEST_NAME_BYTES);
+        if (manifest != null) {
+            manifestsRead.incrementAndGet();
+        }
+        return manifest;
+    }
+
+    /**
+     * Reads an arbitrary entry from a jar the same way as the manifest.
+     *
+     * @param entryName
+     *            full name of the entry, compared case insensitively
+     * @return uncompressed bytes of the entry or <code>null</code> if the jar
+     *         doesn't contain it
+     * @throws IOException
+     *             if the file is not a valid archive
+     */
+    byte[] readEntry(File jar, String entryName) throws IOException {
+        return read(jar, upperCaseBytes(entryName));
+    }
+
+    private byte[] read(File jar, byte[] upperCaseName) throws IOException {
+        try (FileChannel channel = FileChannel.open(jar.toPath(), StandardOpenOption.READ)) {
+            CentralDirectory directory = findCentralDirectory(channel);
+            Entry entry = findEntry(channel, directory, upperCaseName);
+            if (entry == null) {
+                return null;
+            }
+            return readEntry(channel, entry);
+        }
+    }
+
+    /**
+     * @return overall number of bytes read from the disk by this reader
+     */
+    long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    /**
+     * @return overall number of manifests successfully read by this reader
+     */
+    long getManifestsRead() {
+        return manifestsRead.get();
+    }
+
+    private CentralDirectory findCentralDirectory(FileChannel channel) throws IOException {
+        final long size = channel.size();
+        if (size < END_SIZE) {
+            throw new ZipException("Too small to be a zip file.");
+        }
+
+        // jars rarely have a comment, so try a short tail first
+        CentralDirectory directory = findCentralDirectory(channel, size, SHORT_TAIL_SIZE);
+        if (directory == null) {
+            // the end record is followed only by a comment of a limited size
+            directory = findCentralDirectory(channel, size, END_SIZE + MAX_COMMENT_SIZE + ZIP64_LOCATOR_SIZE);
+        }
+        if (directory == null) {
+            throw new ZipException("End of central directory not found.");
+        }
+        if (directory.offset + directory.size > size) {
+            throw new ZipException("Invalid central directory offset.");
+        }
+        return directory;
+    }
+
+    /**
+     * Searches the last <code>maxTailSize</code> bytes of the file for the end
+     * of central directory record.
+     *
+     * @return <code>null</code> if not found
+     */
+    private CentralDirectory findCentralDirectory(FileChannel channel, long size, int maxTailSize)
+            throws IOException {
+        final int tailSize = (int) Math.min(size, maxTailSize);
+        ByteBuffer tail = read(channel, size - tailSize, tailSize);
+
+        for (int pos = tailSize - END_SIZE; pos >= 0; pos--) {
+            if (tail.getInt(pos) != END_SIGNATURE) {
+                continue;
+            }
+            final int commentLength = tail.getShort(pos + 20) & 0xFFFF;
+            if (pos + END_SIZE + commentLength > tailSize) {
+                // a false positive within the comment
+                continue;
+            }
+
+            CentralDirectory directory = new CentralDirectory();
+            directory.entries = tail.getShort(pos + 10) & 0xFFFF;
+            directory.size = tail.getInt(pos + 12) & ZIP64_MAGIC;
+            directory.offset = tail.getInt(pos + 16) & ZIP64_MAGIC;
+
+            final int locatorPos = pos - ZIP64_LOCATOR_SIZE;
+            if (locatorPos >= 0 && tail.getInt(locatorPos) == ZIP64_LOCATOR_SIGNATURE) {
+                readZip64End(channel, tail.getLong(locatorPos + 8), directory);
+            } else if (directory.entries == ZIP64_MAGIC_COUNT || directory.size == ZIP64_MAGIC
+                    || directory.offset == ZIP64_MAGIC) {
+                if (locatorPos < 0 && tailSize < size) {
+                    // the locator is out of the short tail
+                    return null;
+                }
+                throw new ZipException("Missing zip64 end of central directory locator.");
+            }
+            return directory;
+        }
+        return null;
+    }
+
+    private void readZip64End(FileChannel channel, long offset, CentralDirectory directory) throws IOException {
+        ByteBuffer end = read(channel, offset, ZIP64_END_SIZE);
+        if (end.getInt(0) != ZIP64_END_SIGNATURE) {
+            throw new ZipException("Invalid zip64 end of central directory.");
+        }
+        directory.entries = end.getLong(32);
+        directory.size = end.getLong(40);
+        directory.offset = end.getLong(48);
+    }
+
+    /**
+     * Walks the central directory chunk by chunk, stops as soon as the entry
+     * is found.
+     */
+    private Entry findEntry(FileChannel channel, CentralDirectory directory, final byte[] upperCaseName)
+            throws IOException {
+        final Entry[] found = new Entry[1];
+        walk(channel, directory, new HeaderHandler() {
+            @Override
+            public boolean handle(ByteBuffer chunk, int base, int nameLength, int extraLength) throws IOException {
+                if (!isName(chunk, base + CENTRAL_HEADER_SIZE, nameLength, upperCaseName)) {
+                    return true;
+                }
+                found[0] = readEntry(chunk, base, nameLength, extraLength);
+                return false;
+            }
+        });
+        return found[0];
+    }
+
+    /**
+     * Passes each central directory header to the handler until it asks to
+     * stop.
+     */
+    private void walk(FileChannel channel, CentralDirectory directory, HeaderHandler handler) throws IOException {
+        final long end = directory.offset + directory.size;
+        long position = directory.offset;
+
+        ByteBuffer chunk = ByteBuffer.allocate(CENTRAL_DIRECTORY_CHUNK).order(ByteOrder.LITTLE_ENDIAN);
+        chunk.limit(0);
+
+        for (long i = 0; i < directory.entries; i++) {
+            chunk = ensureAvailable(channel, chunk, position, end, CENTRAL_HEADER_SIZE);
+            int base = chunk.position();
+            if (chunk.getInt(base) != CENTRAL_HEADER_SIGNATURE) {
+                throw new ZipException("Invalid central directory header.");
+            }
+            final int nameLength = chunk.getShort(base + 28) & 0xFFFF;
+            final int extraLength = chunk.getShort(base + 30) & 0xFFFF;
+            final int commentLength = chunk.getShort(base + 32) & 0xFFFF;
+            final int headerLength = CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+
+            chunk = ensureAvailable(channel, chunk, position, end, headerLength);
+            base = chunk.position();
+
+            if (!handler.handle(chunk, base, nameLength, extraLength)) {
+                return;
+            }
+
+            chunk.position(base + headerLength);
+            position += headerLength;
+        }
+    }
+
+    private Entry readEntry(ByteBuffer chunk, int base, int nameLength, int extraLength) throws ZipException {
+        Entry entry = new Entry();
+        entry.method = chunk.getShort(base + 10) & 0xFFFF;
+        entry.crc = chunk.getInt(base + 16) & ZIP64_MAGIC;
+        entry.compressedSize = chunk.getInt(base + 20) & ZIP64_MAGIC;
+        entry.size = chunk.getInt(base + 24) & ZIP64_MAGIC;
+        entry.localHeaderOffset = chunk.getInt(base + 42) & ZIP64_MAGIC;
+        readZip64Extra(chunk, base + CENTRAL_HEADER_SIZE + nameLength, extraLength, entry);
+        return entry;
+    }
+
+    /**
+     * Lists all entries of a jar using only its central directory, no entry
+     * is read or inflated.
+     *
+     * @param jar
+     *            zip or zip64 archive
+     * @throws IOException
+     *             if the file is not a valid archive
+     */
+    void visitEntries(File jar, final EntryVisitor visitor) throws IOException {
+        try (FileChannel channel = FileChannel.open(jar.toPath(), StandardOpenOption.READ)) {
+            walk(channel, findCentralDirectory(channel), new HeaderHandler() {
+                @Override
+                public boolean handle(ByteBuffer chunk, int base, int nameLength, int extraLength)
+                        throws IOException {
+                    byte[] name = new byte[nameLength];
+                    for (int i = 0; i < nameLength; i++) {
+                        name[i] = chunk.get(base + CENTRAL_HEADER_SIZE + i);
+                    }
+                    Entry entry = readEntry(chunk, base, nameLength, extraLength);
+                    visitor.visit(new String(name, StandardCharsets.UTF_8), entry.size, entry.crc);
+                    return true;
+                }
+            });
+        }
+    }
+
+    /**
+     * Makes sure that at least <code>needed</code> bytes are available from
+     * the current position of the chunk, refills it from the channel otherwise.
+     *
+     * @param position
+     *            the file offset corresponding to the current chunk position
+     */
+    private ByteBuffer ensureAvailable(FileChannel channel, ByteBuffer chunk, long position, long end, int needed)
+            throws IOException {
+        if (chunk.remaining() >= needed) {
+            return chunk;
+        }
+        if (position + needed > end) {
+            throw new ZipException("Truncated central directory.");
+        }
+        ByteBuffer buffer = chunk;
+        if (buffer.capacity() < needed) {
+            buffer = ByteBuffer.allocate(needed).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        buffer.clear();
+        buffer.limit((int) Math.min(buffer.capacity(), end - position));
+        readFully(channel, buffer, position);
+        buffer.flip();
+        return buffer;
+    }
+
+    private boolean isName(ByteBuffer buffer, int offset, int length, byte[] upperCaseName) {
+        if (length != upperCaseName.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (toUpperCase(buffer.get(offset + i)) != upperCaseName[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] upperCaseBytes(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = toUpperCase(bytes[i]);
+        }
+        return bytes;
+    }
+
+    private static byte toUpperCase(byte b) {
+        return (b >= 'a' && b <= 'z') ? (byte) (b - ('a' - 'A')) : b;
+    }
+
+    /**
+     * Replaces the 32 bit values marked as {@link #ZIP64_MAGIC} with the values
+     * from the zip64 extended information extra field.
+     */
+    private void readZip64Extra(ByteBuffer buffer, int offset, int length, Entry entry) throws ZipException {
+        final int end = offset + length;
+        while (offset + 4 <= end) {
+            final int id = buffer.getShort(offset) & 0xFFFF;
+            final int size = buffer.getShort(offset + 2) & 0xFFFF;
+            int pos = offset + 4;
+            if (id == ZIP64_EXTRA_ID) {
+                final int fieldEnd = Math.min(pos + size, end);
+                if (entry.size == ZIP64_MAGIC && pos + 8 <= fieldEnd) {
+                    entry.size = buffer.getLong(pos);
+                    pos += 8;
+                }
+                if (entry.compressedSize == ZIP64_MAGIC && pos + 8 <= fieldEnd) {
+                    entry.compressedSize = buffer.getLong(pos);
+                    pos += 8;
+                }
+                if (entry.localHeaderOffset == ZIP64_MAGIC && pos + 8 <= fieldEnd) {
+                    entry.localHeaderOffset = buffer.getLong(pos);
+                }
+                break;
+            }
+            offset = pos + size;
+        }
+        if (entry.size == ZIP64_MAGIC || entry.compressedSize == ZIP64_MAGIC
+                || entry.localHeaderOffset == ZIP64_MAGIC) {
+            throw new ZipException("Missing zip64 extra field for the entry.");
+        }
+    }
+
+    private byte[] readEntry(FileChannel channel, Entry entry) throws IOException {
+        if (entry.size > MAX_ENTRY_SIZE || entry.compressedSize > MAX_ENTRY_SIZE) {
+            throw new ZipException("The entry is too large: " + entry.size);
+        }
+
+        ByteBuffer localHeader = read(channel, entry.localHeaderOffset, LOCAL_HEADER_SIZE);
+        if (localHeader.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            throw new ZipException("Invalid local header of the entry.");
+        }
+        final int nameLength = localHeader.getShort(26) & 0xFFFF;
+        final int extraLength = localHeader.getShort(28) & 0xFFFF;
+        final long dataOffset = entry.localHeaderOffset + LOCAL_HEADER_SIZE + nameLength + extraLength;
+
+        ByteBuffer data = read(channel, dataOffset, (int) entry.compressedSize);
+
+        switch (entry.method) {
+        case STORED:
+            return data.array();
+        case DEFLATED:
+            return inflate(data.array(), (int) entry.size);
+        default:
+            throw new ZipException("Unsupported compression method of the entry: " + entry.method);
+        }
+    }
+
+    private byte[] inflate(byte[] compressed, int size) throws ZipException {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed);
+            byte[] result = new byte[size];
+            int length = 0;
+            while (length < size && !inflater.finished()) {
+                int n = inflater.inflate(result, length, size - length);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += n;
+            }
+            if (length != size) {
+                throw new ZipException("Invalid size of the inflated entry.");
+            }
+            return result;
+        } catch (DataFormatException e) {
+            throw new ZipException("Unable to inflate the entry: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private ByteBuffer read(FileChannel channel, long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, buffer, offset);
+        buffer.flip();
+        return buffer;
+    }
+
+    private void readFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+        long position = offset;
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position);
+            if (n < 0) {
+                throw new ZipException("Unexpected end of file.");
+            }
+            position += n;
+        }
+        bytesRead.addAndGet(position - offset);
+    }
+
+    private static class CentralDirectory {
+        long entries;
+        long size;
+        long offset;
+    }
+
+    /**
+     * Receives entries of the central directory.
+     */
+    interface EntryVisitor {
+
+        /**
+         * @param name
+         *            the full name of the entry, directories end with a slash
+         * @param size
+         *            the uncompressed size
+         * @param crc
+         *            the CRC-32 of the uncompressed data
+         */
+        void visit(String name, long size, long crc);
+    }
+
+    private interface HeaderHandler {
+
+        /**
+         * @param chunk
+         *            contains the whole header starting at <code>base</code>
+         * @return <code>false</code> to stop the walk
+         */
+        boolean handle(ByteBuffer chunk, int base, int nameLength, int extraLength) throws IOException;
+    }
+
+    private static class Entry {
+        int method;
+        long crc;
+        long compressedSize;
+        long size;
+        long localHeaderOffset;
+    }
+}
@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.lang3.StringUtils;
+
+import eu.chocolatejar.eclipse.plugin.cleaner.model.Artifact;
+
+/**
+ * Parses a feature from its <code>feature.xml</code>.
+ *
+ * Only the root element <code>&lt;feature id="..." version="..."&gt;</code>
+ * is read, the parsing stops right after it. Descriptions, license texts and
+ * the included plugins are never processed.
+ *
+ * The parser is thread safe.
+ */
+class FeatureParser {
+
+    static final String FEATURE_XML = "feature.xml";
+
+    private static final String FEATURE_ELEMENT = "feature";
+    private static final String ID_ATTRIBUTE = "id";
+    private static final String VERSION_ATTRIBUTE = "version";
+
+    private final XMLInputFactory factory;
+
+    FeatureParser() {
+        factory = XMLInputFactory.newInstance();
+        // never resolve anything outside of the file
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+    }
+
+    /**
+     * @param feature
+     *            the location of the feature, a folder or a jar
+     * @param featureXml
+     *            content of the <code>feature.xml</code>, it is not closed
+     * @return <code>null</code> if the root element is not a feature with an
+     *         id and a version
+     * @throws IOException
+     *             if the content is not a well formed xml
+     */
+    Artifact parse(File feature, InputStream featureXml) throws IOException {
+        XMLStreamReader reader = null;
+        try {
+            reader = factory.createXMLStreamReader(featureXml);
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+                    return createArtifact(feature, reader);
+                }
+            }
+            return null;
+        } catch (XMLStreamException e) {
+            throw new IOException("Invalid feature.xml of '" + feature + "'.", e);
+        } finally {
+            close(reader);
+        }
+    }
+
+    private Artifact createArtifact(File feature, XMLStreamReader root) {
+        if (!FEATURE_ELEMENT.equals(root.getLocalName())) {
+            return null;
+        }
+        final String id = root.getAttributeValue(null, ID_ATTRIBUTE);
+        final String version = root.getAttributeValue(null, VERSION_ATTRIBUTE);
+        if (StringUtils.isBlank(id) || StringUtils.isBlank(version)) {
+            return null;
+        }
+        return new Artifact(feature, id.trim(), version.trim());
+    }
+
+    private void close(XMLStreamReader reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (XMLStreamException e) {
+                // nothing to do
+            }
+        }
+    }
+}
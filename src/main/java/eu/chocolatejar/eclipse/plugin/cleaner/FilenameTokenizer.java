@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner;
+
+import java.io.File;
+
+import org.osgi.framework.Version;
+
+import eu.chocolatejar.eclipse.plugin.cleaner.model.Artifact;
+
+/**
+ * Splits a bundle filename <code>&lt;symbolic name&gt;_&lt;version&gt;[.jar]</code>
+ * into the symbolic name and an already parsed version in a single pass,
+ * without regular expressions.
+ *
+ * The version follows the specification (
+ * http://www.osgi.org/download/r4v43/osgi.core-4.3.0.pdf chapter 3.2.2 )
+ *
+ * <pre>
+ * version ::= MAJOR( '.' MINOR ( '.' MICRO ( '.' QUALIFIER )? )? )?
+ *
+ * MAJOR ::= NUMBER
+ *
+ * MINOR ::= NUMBER
+ *
+ * MICRO ::= NUMBER
+ *
+ * QUALIFIER ::= ( ALPHANUM | '_' | '-' )+
+ *
+ * where
+ *
+ * NUMBER ::= digit+
+ *
+ * ALPHANUM ::= alpha | digit
+ *
+ * digit ::= [0..9]
+ *
+ * alpha ::= [a..zA..Z]
+ * </pre>
+ *
+ * Both the symbolic name and the qualifier may contain an underscore, so the
+ * version starts after the first underscore that is followed by a version
+ * spanning the rest of the filename.
+ */
+final class FilenameTokenizer {
+
+    private static final String JAR_EXTENSION = ".jar";
+
+    private FilenameTokenizer() {
+        // utility class
+    }
+
+    /**
+     * @param file
+     *            a jar or a folder
+     * @return <code>null</code> if the filename doesn't end with a version
+     */
+    static Artifact tokenize(File file) {
+        final String name = file.getName();
+        int end = name.length();
+        if (name.regionMatches(true, end - JAR_EXTENSION.length(), JAR_EXTENSION, 0, JAR_EXTENSION.length())) {
+            end -= JAR_EXTENSION.length();
+        }
+
+        // an underscore at the very beginning would give an empty name
+        for (int i = name.indexOf('_', 1); i >= 0 && i < end; i = name.indexOf('_', i + 1)) {
+            Version version = parseVersion(name, i + 1, end);
+            if (version != null) {
+                return new Artifact(file, name.substring(0, i), version);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Parses the version spanning exactly from <code>start</code> to
+     * <code>end</code>.
+     *
+     * @return <code>null</code> if the range is not a valid version
+     */
+    static Version parseVersion(String s, int start, int end) {
+        final int majorEnd = numberEnd(s, start, end);
+        final int major = parseNumber(s, start, majorEnd);
+        if (major < 0) {
+            return null;
+        }
+        if (majorEnd == end) {
+            return new Version(major, 0, 0);
+        }
+        if (s.charAt(majorEnd) != '.') {
+            return null;
+        }
+
+        final int minorStart = majorEnd + 1;
+        final int minorEnd = numberEnd(s, minorStart, end);
+        final int minor = parseNumber(s, minorStart, minorEnd);
+        if (minor < 0) {
+            return null;
+        }
+        if (minorEnd == end) {
+            return new Version(major, minor, 0);
+        }
+        if (s.charAt(minorEnd) != '.') {
+            return null;
+        }
+
+        final int microStart = minorEnd + 1;
+        final int microEnd = numberEnd(s, microStart, end);
+        final int micro = parseNumber(s, microStart, microEnd);
+        if (micro < 0) {
+            return null;
+        }
+        if (microEnd == end) {
+            return new Version(major, minor, micro);
+        }
+        if (s.charAt(microEnd) != '.') {
+            return null;
+        }
+
+        final int qualifierStart = microEnd + 1;
+        if (qualifierStart == end) {
+            return null;
+        }
+        for (int i = qualifierStart; i < end; i++) {
+            if (!isQualifierChar(s.charAt(i))) {
+                return null;
+            }
+        }
+        return new Version(major, minor, micro, s.substring(qualifierStart, end));
+    }
+
+    private static int numberEnd(String s, int start, int end) {
+        int i = start;
+        while (i < end && isDigit(s.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @return <code>-1</code> if there are no digits or the number is too big
+     */
+    private static int parseNumber(String s, int start, int end) {
+        if (start == end) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            value = value * 10 + (s.charAt(i) - '0');
+            if (value > Integer.MAX_VALUE) {
+                return -1;
+            }
+        }
+        return (int) value;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isQualifierChar(char c) {
+        return isDigit(c) || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c == '-';
+    }
+}
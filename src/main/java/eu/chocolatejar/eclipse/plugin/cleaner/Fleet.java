@@ -0,0 +1,190 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cleans up several Eclipse installations within a single run.
+ *
+ * All installations share a symbol table, a parser with a single manifest
+ * cache and a parsing stage, so the number of files opened at the same time
+ * is limited by the number of threads across the whole fleet. Installations
+ * are processed in parallel according to
+ * {@link #setParallelInstallations(int)}, each one waits only for its own
+ * background parsing. A failure of an installation doesn't stop the others.
+ */
+public class Fleet {
+
+    private static final Logger logger = LoggerFactory.getLogger(Fleet.class);
+
+    private final List<Cleaner> cleaners;
+
+    private int threads = 1;
+    private int parallelInstallations = 1;
+    private boolean useManifestCache;
+
+    /**
+     * @param cleaners
+     *            one for each installation, the options of the parsing set on
+     *            them are ignored
+     */
+    public Fleet(List<Cleaner> cleaners) {
+        this.cleaners = cleaners;
+    }
+
+    /**
+     * @param threads
+     *            the number of bundles parsed concurrently across all
+     *            installations, the default is <code>1</code>
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * @param parallelInstallations
+     *            the number of installations processed at the same time, the
+     *            default is <code>1</code>
+     */
+    public void setParallelInstallations(int parallelInstallations) {
+        this.parallelInstallations = Math.max(1, parallelInstallations);
+    }
+
+    /**
+     * @param useManifestCache
+     *            when <code>true</code> parsed manifests are cached within
+     *            each installation
+     */
+    public void setUseManifestCache(boolean useManifestCache) {
+        this.useManifestCache = useManifestCache;
+    }
+
+    /**
+     * Cleans up all installations and logs a summary of each one and of the
+     * whole fleet.
+     */
+    public void run() {
+        final long start = System.nanoTime();
+
+        List<File> existing = new ArrayList<>();
+        for (Cleaner cleaner : cleaners) {
+            if (cleaner.getEclipseFolder().isDirectory()) {
+                existing.add(cleaner.getEclipseFolder());
+            }
+        }
+        ManifestCache manifestCache = useManifestCache && !existing.isEmpty() ? ManifestCache.load(existing) : null;
+        SymbolTable symbolTable = new SymbolTable();
+        ArtifactParser artifactParser = new ArtifactParser(manifestCache, symbolTable);
+
+        List<CleanUpSummary> summaries;
+        try (ParsingStage stage = new ParsingStage(artifactParser, threads)) {
+            summaries = cleanUp(artifactParser, stage);
+        }
+        logger.debug("Distinct symbolic names: {}, versions: {}.", symbolTable.getNames(),
+                symbolTable.getVersions());
+
+        if (manifestCache != null) {
+            manifestCache.save();
+            logger.info("Manifest cache: {} hits, {} misses.", manifestCache.getHits(), manifestCache.getMisses());
+        }
+
+        logSummary(summaries, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        logger.info("Done!");
+    }
+
+    private List<CleanUpSummary> cleanUp(final ArtifactParser artifactParser, final ParsingStage stage) {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelInstallations, cleaners.size()),
+                new ThreadFactory() {
+                    private final AtomicInteger counter = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "plugin-cleaner-installation-" + counter.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        try {
+            List<Future<CleanUpSummary>> tasks = new ArrayList<>(cleaners.size());
+            for (final Cleaner cleaner : cleaners) {
+                tasks.add(executor.submit(new Callable<CleanUpSummary>() {
+                    @Override
+                    public CleanUpSummary call() {
+                        return cleaner.run(artifactParser, stage);
+                    }
+                }));
+            }
+
+            List<CleanUpSummary> summaries = new ArrayList<>(cleaners.size());
+            for (int i = 0; i < tasks.size(); i++) {
+                File eclipseFolder = cleaners.get(i).getEclipseFolder();
+                try {
+                    summaries.add(tasks.get(i).get());
+                } catch (ExecutionException e) {
+                    logger.error("Unable to clean up '{}'.", eclipseFolder, e.getCause());
+                    CleanUpSummary failed = new CleanUpSummary(eclipseFolder);
+                    failed.setFailure(String.valueOf(e.getCause().getMessage()));
+                    summaries.add(failed);
+                }
+            }
+            return summaries;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Cleaning of the fleet has been interrupted.", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void logSummary(List<CleanUpSummary> summaries, long millis) {
+        int succeeded = 0;
+        int plugins = 0;
+        int pluginsDuplicates = 0;
+        int features = 0;
+        int featuresDuplicates = 0;
+
+        StringBuilder installations = new StringBuilder();
+        for (CleanUpSummary summary : summaries) {
+            installations.append("\n ").append(summary);
+            if (summary.getFailure() == null) {
+                succeeded++;
+                plugins += summary.getPlugins();
+                pluginsDuplicates += summary.getPluginsDuplicates();
+                features += summary.getFeatures();
+                featuresDuplicates += summary.getFeaturesDuplicates();
+            }
+        }
+
+        logger.warn("\n Fleet summary{}", installations);
+        logger.warn(
+                "\n Cleaned {} of {} installations in {} ms, found {} duplicates from overall {} plugins and {} duplicates from overall {} features.",
+                succeeded, summaries.size(), millis, pluginsDuplicates, plugins, featuresDuplicates, features);
+    }
+}
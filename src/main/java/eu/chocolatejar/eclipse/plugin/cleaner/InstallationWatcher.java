@@ -0,0 +1,404 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner;
+
+import static eu.chocolatejar.eclipse.plugin.cleaner.Cleaner.PLUGINS;
+import static eu.chocolatejar.eclipse.plugin.cleaner.util.DropinsFilter.DROPINS;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import eu.chocolatejar.eclipse.plugin.cleaner.model.Artifact;
+import eu.chocolatejar.eclipse.plugin.cleaner.model.DetectionResult;
+import eu.chocolatejar.eclipse.plugin.cleaner.model.DuplicationDetector;
+import eu.chocolatejar.eclipse.plugin.cleaner.model.DuplicationListener;
+import eu.chocolatejar.eclipse.plugin.cleaner.model.LocationClass;
+
+/**
+ * Keeps artifacts of an installation in memory and updates them from file
+ * system events instead of rescanning the whole installation.
+ *
+ * After a full scan the <code>plugins</code> and <code>features</code>
+ * folders, including all folders of the dropins layout, are watched. Events
+ * are collected until there are none for the debounce period, then only the
+ * changed entries are parsed and only groups of the affected symbolic names
+ * are examined for duplicates. Jars and bundle folders directly within
+ * <code>dropins</code> are updated the same way. A change of the dropins
+ * layout itself (e.g. a new folder or link file) or an overflow of events
+ * results in a full rescan.
+ *
+ * Each duplicate is reported once to the listener of its type. A duplicate
+ * that the listener doesn't remove is not reported again unless it changes.
+ */
+class InstallationWatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(InstallationWatcher.class);
+
+    static final long DEFAULT_DEBOUNCE_MILLIS = 500;
+
+    /**
+     * A continuous burst of events is processed at the latest after this
+     * many debounce periods.
+     */
+    private static final int MAX_DEBOUNCE_PERIODS = 20;
+
+    private final File eclipseFolder;
+    private final boolean pool;
+    private final DirectoryScanner directoryScanner;
+    private final ParsingStage parsingStage;
+    private final DuplicationDetector detector;
+    private final Map<String, DuplicationListener> listeners;
+
+    private final Map<String, ArtifactIndex> indexes = new LinkedHashMap<>();
+    private final Set<File> reported = new HashSet<>();
+    private final Map<WatchKey, WatchedFolder> folders = new HashMap<>();
+
+    private WatchService watchService;
+    private long debounceMillis = DEFAULT_DEBOUNCE_MILLIS;
+    private volatile int rescans;
+
+    /**
+     * @param eclipseFolder
+     *            the installation or a bundle pool
+     * @param pool
+     *            when <code>true</code> there are no dropins to watch
+     * @param listeners
+     *            receive duplicates, keyed by the type ({@link Cleaner#PLUGINS}
+     *            or {@link Cleaner#FEATURES}), only these types are watched
+     */
+    InstallationWatcher(File eclipseFolder, boolean pool, DirectoryScanner directoryScanner,
+            ParsingStage parsingStage, DuplicationDetector detector, Map<String, DuplicationListener> listeners) {
+        this.eclipseFolder = eclipseFolder;
+        this.pool = pool;
+        this.directoryScanner = directoryScanner;
+        this.parsingStage = parsingStage;
+        this.detector = detector;
+        this.listeners = listeners;
+        for (String type : listeners.keySet()) {
+            indexes.put(type, new ArtifactIndex());
+        }
+    }
+
+    /**
+     * @param debounceMillis
+     *            how long the file system has to be quiet before changes are
+     *            processed
+     */
+    void setDebounce(long debounceMillis) {
+        this.debounceMillis = debounceMillis;
+    }
+
+    /**
+     * Scans the installation and watches it until the thread is interrupted.
+     * 
+     * @throws IOException
+     *             if the file system can't be watched
+     * @throws InterruptedException
+     *             when watching has been stopped
+     */
+    void watch() throws IOException, InterruptedException {
+        try (WatchService service = FileSystems.getDefault().newWatchService()) {
+            watchService = service;
+            rescan();
+
+            while (true) {
+                WatchKey key = service.take();
+                Map<String, Map<File, LocationClass>> changes = new HashMap<>();
+                boolean rescan = false;
+
+                final long deadline = System.nanoTime()
+                        + TimeUnit.MILLISECONDS.toNanos(debounceMillis * MAX_DEBOUNCE_PERIODS);
+                while (key != null) {
+                    rescan |= collect(key, changes);
+                    key = System.nanoTime() < deadline ? service.poll(debounceMillis, TimeUnit.MILLISECONDS) : null;
+                }
+
+                if (rescan) {
+                    rescan();
+                } else {
+                    for (Map.Entry<String, Map<File, LocationClass>> e : changes.entrySet()) {
+                        update(e.getKey(), e.getValue());
+                    }
+                }
+            }
+        } finally {
+            folders.clear();
+            watchService = null;
+        }
+    }
+
+    /**
+     * @return the index of the type, intended for tests
+     */
+    ArtifactIndex getIndex(String type) {
+        return indexes.get(type);
+    }
+
+    /**
+     * @return the number of full scans so far, intended for tests
+     */
+    int getRescans() {
+        return rescans;
+    }
+
+    /**
+     * Adds changed entries of a watched folder.
+     * 
+     * @return <code>true</code> if a full rescan is needed
+     */
+    private boolean collect(WatchKey key, Map<String, Map<File, LocationClass>> changes) {
+        final WatchedFolder folder = folders.get(key);
+        boolean rescan = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (folder == null) {
+                // the key has been cancelled by a rescan
+                continue;
+            }
+            if (event.kind() == OVERFLOW) {
+                logger.warn("Too many changes within '{}', rescanning.", folder.path);
+                rescan = true;
+            } else if (folder.type == null) {
+                final File entry = folder.path.resolve((Path) event.context()).toFile();
+                if (folder.locationClass != null && isLooseBundle(entry)) {
+                    changed(changes, PLUGINS).put(entry, folder.locationClass);
+                } else if (DropinsScanner.isLayoutEntry(directoryScanner, entry, folder.locationClass != null)) {
+                    logger.debug("The layout of '{}' has been changed, rescanning.", folder.path);
+                    rescan = true;
+                }
+            } else {
+                changed(changes, folder.type).put(folder.path.resolve((Path) event.context()).toFile(),
+                        folder.locationClass);
+            }
+        }
+        if (!key.reset() && folder != null) {
+            logger.debug("'{}' is no longer accessible, rescanning.", folder.path);
+            rescan = true;
+        }
+        return rescan;
+    }
+
+    private static Map<File, LocationClass> changed(Map<String, Map<File, LocationClass>> changes, String type) {
+        Map<File, LocationClass> changed = changes.get(type);
+        if (changed == null) {
+            changed = new LinkedHashMap<>();
+            changes.put(type, changed);
+        }
+        return changed;
+    }
+
+    /**
+     * A loose bundle directly within the dropins folder is indexed with the
+     * plugins, if they are watched. A deleted entry is recognized by the
+     * index.
+     */
+    private boolean isLooseBundle(File entry) {
+        final ArtifactIndex plugins = indexes.get(PLUGINS);
+        if (plugins == null) {
+            return false;
+        }
+        return plugins.contains(entry) || !DropinsScanner.isLayoutEntry(directoryScanner, entry, true)
+                && DropinsScanner.isLooseBundle(entry, directoryScanner.isDirectory(entry));
+    }
+
+    /**
+     * Reindexes changed entries and examines groups of their symbolic names.
+     */
+    private void update(String type, Map<File, LocationClass> changed) {
+        final ArtifactIndex index = indexes.get(type);
+        final Set<String> affected = new HashSet<>();
+        final List<Candidate> candidates = new ArrayList<>();
+
+        for (Map.Entry<File, LocationClass> e : changed.entrySet()) {
+            Artifact removed = index.remove(e.getKey());
+            if (removed != null) {
+                affected.add(removed.getSymbolicName());
+            }
+            reported.remove(e.getKey());
+
+            Candidate candidate = directoryScanner.candidate(e.getKey(), e.getValue());
+            if (candidate != null) {
+                candidates.add(candidate);
+            }
+        }
+
+        for (Artifact a : parse(candidates)) {
+            index.put(a);
+            affected.add(a.getSymbolicName());
+        }
+        logger.info("Updated {} changed entries of {}, {} artifacts indexed.", changed.size(), type, index.size());
+
+        for (String symbolicName : affected) {
+            examine(type, index.getGroup(symbolicName));
+        }
+    }
+
+    /**
+     * Rebuilds all indexes and the watched folders from scratch.
+     */
+    private void rescan() throws IOException {
+        rescans++;
+        for (WatchKey key : folders.keySet()) {
+            key.cancel();
+        }
+        folders.clear();
+
+        final File dropins = new File(eclipseFolder, DROPINS);
+        // classified once for both types
+        DropinsScanner.Listing dropinsListing = null;
+        for (Map.Entry<String, ArtifactIndex> e : indexes.entrySet()) {
+            final String type = e.getKey();
+            final ArtifactIndex index = e.getValue();
+            final long start = System.nanoTime();
+
+            final List<Candidate> candidates = new ArrayList<>();
+            final File root = new File(eclipseFolder, type);
+            register(root, type, LocationClass.INSTALLATION);
+            candidates.addAll(directoryScanner.list(root, LocationClass.INSTALLATION));
+
+            if (!pool) {
+                DropinsScanner dropinsScanner = new DropinsScanner(directoryScanner, eclipseFolder);
+                if (dropinsListing == null) {
+                    dropinsListing = dropinsScanner.list(dropins);
+                }
+                dropinsScanner.exclude(root);
+                dropinsScanner.scan(dropinsListing, type, new DirectoryScanner.Visitor() {
+                    @Override
+                    public void visit(Candidate candidate) {
+                        candidates.add(candidate);
+                    }
+                });
+                for (Map.Entry<File, LocationClass> dropinsRoot : dropinsScanner.getRoots().entrySet()) {
+                    register(dropinsRoot.getKey(), type, dropinsRoot.getValue());
+                }
+                for (File layout : dropinsScanner.getLayouts()) {
+                    // loose bundles are found only directly within dropins
+                    register(layout, null, layout.equals(dropins) ? LocationClass.DROPINS : null);
+                }
+            }
+
+            index.clear();
+            for (Artifact a : parse(candidates)) {
+                index.put(a);
+            }
+            logger.info("Indexed {} artifacts of {} in {} ms.", index.size(), type,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+
+        for (Iterator<File> i = reported.iterator(); i.hasNext();) {
+            if (!isIndexed(i.next())) {
+                i.remove();
+            }
+        }
+        for (Map.Entry<String, ArtifactIndex> e : indexes.entrySet()) {
+            examine(e.getKey(), e.getValue().getAll());
+        }
+        logger.info("Watching {} folders of '{}' for changes...", folders.size(), eclipseFolder);
+    }
+
+    private boolean isIndexed(File location) {
+        for (ArtifactIndex index : indexes.values()) {
+            if (index.contains(location)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void register(File folder, String type, LocationClass locationClass) throws IOException {
+        if (folder.isDirectory()) {
+            Path path = folder.toPath();
+            WatchKey key = path.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+            folders.put(key, new WatchedFolder(path, type, locationClass));
+        }
+    }
+
+    private Set<Artifact> parse(List<Candidate> candidates) {
+        Set<Artifact> artifacts = Collections.newSetFromMap(new ConcurrentHashMap<Artifact, Boolean>());
+        parsingStage.parse(candidates, artifacts);
+        return artifacts;
+    }
+
+    /**
+     * Reports duplicates among the artifacts that haven't been reported yet.
+     */
+    private void examine(String type, Set<Artifact> artifacts) {
+        if (artifacts.size() < 2) {
+            return;
+        }
+        final ArtifactIndex index = indexes.get(type);
+        final DuplicationListener listener = listeners.get(type);
+        DetectionResult result = detector.detect(artifacts);
+        for (Map.Entry<Artifact, Artifact> e : result.getMastersOfDuplicates().entrySet()) {
+            final Artifact duplicate = e.getKey();
+            final File location = duplicate.getLocation();
+            if (reported.contains(location)) {
+                continue;
+            }
+            listener.duplicateFound(duplicate, e.getValue());
+            if (location.exists()) {
+                reported.add(location);
+            } else {
+                index.remove(location);
+            }
+        }
+    }
+
+    /**
+     * A watched folder, either a root with bundles of a type or a folder of
+     * the dropins layout.
+     */
+    private static class WatchedFolder {
+        final Path path;
+        /**
+         * <code>null</code> for a folder of the dropins layout
+         */
+        final String type;
+        /**
+         * <code>null</code> for a folder of the dropins layout without loose
+         * bundles
+         */
+        final LocationClass locationClass;
+
+        WatchedFolder(Path path, String type, LocationClass locationClass) {
+            this.path = path;
+            this.type = type;
+            this.locationClass = locationClass;
+        }
+    }
+}
@@ -16,9 +16,15 @@
 package eu.chocolatejar.eclipse.plugin.cleaner;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
 
@@ -35,6 +41,8 @@ import org.apache.commons.lang3.time.DateFormatUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import eu.chocolatejar.eclipse.plugin.cleaner.detector.RetentionPolicy;
+import eu.chocolatejar.eclipse.plugin.cleaner.model.BackupFormat;
 import eu.chocolatejar.eclipse.plugin.cleaner.model.CleaningMode;
 
 /**
@@ -44,6 +52,8 @@ public class Main {
 
     private static final Logger logger = LoggerFactory.getLogger(Main.class);
 
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 5000;
+
     CommandLine input;
 
     /**
@@ -64,12 +74,24 @@ public class Main {
         options.addOption(generateOption("h", "help", false, "Shows this help."));
 
         options.addOption(generateOption("s", "source", true,
-                "Path to Eclipse installation. The default is the current folder."));
+                "Path to Eclipse installation. The default is the current folder. May be repeated to clean several installations."));
+        options.addOption(generateOption("l", "source-list", true,
+                "A file listing paths to Eclipse installations, one per line, all of them are cleaned within a single run."));
+        options.addOption(generateOption("i", "parallel-installations", true,
+                "The number of installations cleaned at the same time when there are several sources. The default is 1."));
         options.addOption(generateOption(
                 "d",
                 "destination",
                 true,
                 "Path to folder where duplicated bundles will be moved. The default is the absolute path to <source>/duplicates-<timestamp>."));
+        options.addOption(generateOption("b", "backup-format", true,
+                "'" + BackupFormat.folder.name() + "' (default) moves duplicates into the destination folder, '"
+                        + BackupFormat.zip.name()
+                        + "' compresses them into the single archive <destination>.zip using all cores."));
+        options.addOption(generateOption("x", "restore", true,
+                "Restores duplicates from a back up archive to their original locations, or into the destination if given."));
+        options.addOption(generateOption("n", "restore-bundles", true,
+                "Comma separated file names of duplicates to restore, e.g. 'a_1.0.0.jar,b_*'. The default is all of them."));
         options.addOption(generateOption("t", "test", false,
                 "Test - Enables a dry run mode, e.g. no action will be taken."));
 
@@ -81,8 +103,42 @@ public class Main {
                         + CleaningMode.dropinsOnly.name()
                         + "' (default) Duplicates can only be artifacts located in the ``dropins`` folder.\n'"
                         + CleaningMode.prefereDropins.name()
-                        + "' If there are two bundles with the same version, then the bundle that is in the ``dropins`` folder is considered to be duplicated. If both of them are from a ``non-dropins`` folder, than the first one is kept and the second one is marked as a duplicate.\n'"
-                        + CleaningMode.unlimited.name() + "' Resolves duplicates regardless their location."));
+                        + "' Deprecated, the same as '" + CleaningMode.unlimited.name() + "'.\n'"
+                        + CleaningMode.unlimited.name()
+                        + "' Resolves duplicates regardless their location, among bundles with the same version the one outside of the ``dropins`` folder is kept, then the one with the lexicographically first location."));
+
+        options.addOption(generateOption("c", "cache", false, "Caches parsed manifests in the folder <source>/"
+                + ManifestCache.CACHE_FOLDER + ", so repeated runs open only new or changed bundles."));
+
+        options.addOption(generateOption("j", "threads", true,
+                "The number of bundles parsed concurrently, useful for network drives. The default is 1."));
+
+        options.addOption(generateOption("q", "quick-scan", false,
+                "Reads manifests only of bundles whose filenames share a symbolic name."));
+        options.addOption(generateOption("v", "verify-scan", false,
+                "Debugging - Checks the quick scan against a full scan and reports differences."));
+
+        options.addOption(generateOption("p", "pipeline", false,
+                "Acts on duplicates while the scan continues, the memory is bounded by the number of distinct bundles."));
+
+        options.addOption(generateOption("w", "watch", false,
+                "Keeps running after the clean up and acts on duplicates as soon as bundles are added, until stopped by Ctrl+C."));
+
+        options.addOption(generateOption("f", "fingerprint", false,
+                "Detects copies with the same content as duplicates, regardless of their names. "
+                        + "Jars are fingerprinted from their central directory."));
+
+        options.addOption(generateOption("R", "rules", true,
+                "A file with retention rules overriding the mode for matching symbolic names, one rule per line: "
+                        + "'pin <pattern>', 'keep <pattern> <versions>' or 'min-age <pattern> <age, e.g. 30d or 12h>'. "
+                        + "The first matching rule wins, '*' matches any characters."));
+
+        options.addOption(generateOption("P", "pool", true,
+                "Path to a p2 bundle pool (e.g. ~/.p2/pool) to clean instead of an Eclipse installation. "
+                        + "The default mode is then '" + CleaningMode.unlimited.name() + "'."));
+        options.addOption(generateOption("r", "references", true,
+                "Comma separated installations, bundles.info files or p2 profiles using the pool. "
+                        + "Bundles referenced by them are never removed from the pool."));
 
         try {
             // parse the command line arguments
@@ -91,13 +147,87 @@ public class Main {
                 showHelp(options);
                 return;
             }
+            if (input.hasOption("restore")) {
+                restore();
+                return;
+            }
 
-            File sourceFolder = new File(getParam("source", "."));
-            File destinationFolder = new File(getParam("destination", getDefaultDestinationFolder(sourceFolder)));
+            final boolean pool = input.hasOption("pool");
+            final List<File> sourceFolders = getSourceFolders(pool);
+            if (sourceFolders == null) {
+                return;
+            }
             boolean dryRun = input.hasOption("test");
-            final CleaningMode cleaningMode = getParamMode(CleaningMode.dropinsOnly);
+            final CleaningMode cleaningMode = getParamMode(pool ? CleaningMode.unlimited : CleaningMode.dropinsOnly);
+            final BackupFormat backupFormat = getParamBackupFormat();
+
+            BundleReferences references = null;
+            if (input.hasOption("references")) {
+                List<File> locations = new ArrayList<>();
+                for (String location : StringUtils.split(input.getOptionValue("references"), ',')) {
+                    locations.add(new File(location.trim()));
+                }
+                try {
+                    references = BundleReferences.load(locations);
+                } catch (IOException e) {
+                    logger.error("Unable to read references: {}", e.getMessage());
+                    return;
+                }
+            } else if (pool) {
+                logger.warn("No references given, all older versions within the pool are considered duplicates.");
+            }
+
+            RetentionPolicy retentionPolicy = RetentionPolicy.NONE;
+            if (input.hasOption("rules")) {
+                try {
+                    retentionPolicy = RetentionPolicy.load(new File(input.getOptionValue("rules")));
+                } catch (IOException e) {
+                    logger.error("Unable to read rules: {}", e.getMessage());
+                    return;
+                }
+                logger.info("Loaded {} retention rules.", retentionPolicy.getRules().size());
+            }
 
+            if (sourceFolders.size() > 1) {
+                if (input.hasOption("watch")) {
+                    logger.warn("The watch mode is not supported for several installations, cleaning them once.");
+                }
+                List<Cleaner> cleaners = new ArrayList<>(sourceFolders.size());
+                Set<String> destinationNames = new HashSet<>();
+                for (File sourceFolder : sourceFolders) {
+                    File destinationFolder = new File(getFleetDestinationFolder(sourceFolder, destinationNames));
+                    Cleaner cleaner = new Cleaner(sourceFolder, destinationFolder, dryRun, cleaningMode);
+                    cleaner.setQuickScan(input.hasOption("quick-scan"), input.hasOption("verify-scan"));
+                    cleaner.setPipeline(input.hasOption("pipeline"));
+                    cleaner.setPool(pool, references);
+                    cleaner.setFingerprints(input.hasOption("fingerprint"));
+                    cleaner.setRetentionPolicy(retentionPolicy);
+                    cleaner.setBackupFormat(backupFormat);
+                    cleaners.add(cleaner);
+                }
+                Fleet fleet = new Fleet(cleaners);
+                fleet.setUseManifestCache(input.hasOption("cache"));
+                fleet.setThreads(getParamInt("threads", 1));
+                fleet.setParallelInstallations(getParamInt("parallel-installations", 1));
+                fleet.run();
+                return;
+            }
+
+            File sourceFolder = sourceFolders.get(0);
+            File destinationFolder = new File(getParam("destination", getDefaultDestinationFolder(sourceFolder)));
             Cleaner bundlesDuplicateCleaner = new Cleaner(sourceFolder, destinationFolder, dryRun, cleaningMode);
+            bundlesDuplicateCleaner.setUseManifestCache(input.hasOption("cache"));
+            bundlesDuplicateCleaner.setThreads(getParamInt("threads", 1));
+            bundlesDuplicateCleaner.setQuickScan(input.hasOption("quick-scan"), input.hasOption("verify-scan"));
+            bundlesDuplicateCleaner.setPipeline(input.hasOption("pipeline"));
+            bundlesDuplicateCleaner.setPool(pool, references);
+            bundlesDuplicateCleaner.setWatch(input.hasOption("watch"));
+            bundlesDuplicateCleaner.setFingerprints(input.hasOption("fingerprint"));
+            bundlesDuplicateCleaner.setRetentionPolicy(retentionPolicy);
+            bundlesDuplicateCleaner.setBackupFormat(backupFormat);
+            if (input.hasOption("watch")) {
+                stopOnShutdown(Thread.currentThread());
+            }
             bundlesDuplicateCleaner.run();
 
         } catch (ParseException exp) {
@@ -107,6 +237,108 @@ public class Main {
         }
     }
 
+    /**
+     * Restores duplicates from the archive given by the option "restore",
+     * optionally only those given by "restore-bundles".
+     */
+    private void restore() {
+        File archive = new File(input.getOptionValue("restore"));
+        List<String> bundles = new ArrayList<>();
+        if (input.hasOption("restore-bundles")) {
+            for (String bundle : StringUtils.split(input.getOptionValue("restore-bundles"), ',')) {
+                if (StringUtils.isNotBlank(bundle)) {
+                    bundles.add(bundle.trim());
+                }
+            }
+        }
+        String destination = getParam("destination", null);
+        try {
+            int restored = BackupArchive.restore(archive, bundles, destination == null ? null : new File(destination));
+            logger.info("Restored {} duplicates from '{}'.", restored, archive);
+        } catch (IOException e) {
+            logger.error("Unable to restore duplicates from '{}': {}", archive, e.getMessage());
+        }
+    }
+
+    /**
+     * Resolves all sources given by the options "source" (may be repeated)
+     * and "source-list", or the option "pool".
+     * 
+     * @return never empty, <code>null</code> if the list of sources can't be
+     *         read
+     */
+    private List<File> getSourceFolders(boolean pool) {
+        List<File> sourceFolders = new ArrayList<>();
+        if (pool) {
+            sourceFolders.add(new File(getParam("pool", ".")));
+            return sourceFolders;
+        }
+        String[] sources = input.getOptionValues("source");
+        if (sources != null) {
+            for (String source : sources) {
+                if (StringUtils.isNotBlank(source)) {
+                    sourceFolders.add(new File(source.trim()));
+                }
+            }
+        }
+        if (input.hasOption("source-list")) {
+            File sourceList = new File(input.getOptionValue("source-list"));
+            try {
+                for (String line : FileUtils.readLines(sourceList, "UTF-8")) {
+                    if (StringUtils.isNotBlank(line) && !line.trim().startsWith("#")) {
+                        sourceFolders.add(new File(line.trim()));
+                    }
+                }
+            } catch (IOException e) {
+                logger.error("Unable to read the list of sources '{}': {}", sourceList, e.getMessage());
+                return null;
+            }
+        }
+        if (sourceFolders.isEmpty()) {
+            sourceFolders.add(new File("."));
+        }
+        return sourceFolders;
+    }
+
+    /**
+     * Each installation of a fleet is backed up into its own folder, either
+     * within the "destination" named by the installation, or the default one.
+     * 
+     * @param usedNames
+     *            names already used within the "destination"
+     */
+    String getFleetDestinationFolder(File sourceFolder, Set<String> usedNames) {
+        String destination = getParam("destination", null);
+        if (destination == null) {
+            return getDefaultDestinationFolder(sourceFolder);
+        }
+        Path fileName = sourceFolder.getAbsoluteFile().toPath().normalize().getFileName();
+        String baseName = fileName == null ? "root" : fileName.toString();
+        String name = baseName;
+        for (int i = 2; !usedNames.add(name); i++) {
+            name = baseName + "_" + i;
+        }
+        return new File(destination, name).getAbsolutePath();
+    }
+
+    /**
+     * Interrupts the watching thread when the JVM is terminated, so the
+     * cleaner finishes properly, e.g. saves the manifest cache.
+     */
+    private void stopOnShutdown(final Thread watching) {
+        Runtime.getRuntime().addShutdownHook(new Thread("plugin-cleaner-shutdown") {
+            @Override
+            public void run() {
+                watching.interrupt();
+                try {
+                    watching.join(SHUTDOWN_TIMEOUT_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+    }
+
     /**
      * Resolves the command line parameter "mode".
      * 
@@ -123,6 +355,41 @@ public class Main {
         }
     }
 
+    /**
+     * Resolves the command line parameter "backup-format", the default is
+     * {@link BackupFormat#folder}.
+     */
+    private BackupFormat getParamBackupFormat() {
+        String format = getParam("backup-format", BackupFormat.folder.name());
+        try {
+            return BackupFormat.valueOf(format);
+        } catch (Exception e) {
+            logger.warn("Unable to parse backup format '{}', using default format '{}'.", format, BackupFormat.folder);
+            return BackupFormat.folder;
+        }
+    }
+
+    /**
+     * Resolves a positive numeric command line parameter.
+     * 
+     * @param defaultValue
+     *            If the parameter is not specified or invalid this value is
+     *            used.
+     */
+    int getParamInt(String option, int defaultValue) {
+        String value = getParam(option, String.valueOf(defaultValue));
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed > 0) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            // handled below
+        }
+        logger.warn("Unable to parse {} '{}', using default value '{}'.", option, value, defaultValue);
+        return defaultValue;
+    }
+
     /**
      * The default destination is based on the <source
      * folder>/duplicates_<timestamp>
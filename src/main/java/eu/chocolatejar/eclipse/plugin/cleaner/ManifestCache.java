@@ -0,0 +1,353 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import eu.chocolatejar.eclipse.plugin.cleaner.model.Artifact;
+import eu.chocolatejar.eclipse.plugin.cleaner.model.Requirement;
+import eu.chocolatejar.eclipse.plugin.cleaner.model.VersionRange;
+
+/**
+ * A persistent cache of parsed manifests.
+ *
+ * An entry is keyed by the absolute path of the manifest (a jar, an exploded
+ * <code>META-INF/MANIFEST.MF</code> or <code>feature.xml</code>) and is valid
+ * only as long as the size and the last modification time of the file are the
+ * same. Manifests that failed to parse are cached as negative entries.
+ * Besides the symbolic name and the version an entry holds the requirements
+ * of the bundle and its content fingerprint, if computed. The fingerprint of
+ * an exploded bundle is stored with the tree signature of the bundle and is
+ * valid only as long as the signature is the same, see
+ * {@link ContentFingerprinter#treeSignature(File)}.
+ *
+ * Only entries used during the current run are saved, so entries of removed
+ * bundles don't pile up. A corrupted cache file is discarded.
+ *
+ * A single cache may serve several installations, each entry is then saved
+ * into the installation containing the manifest, entries outside of all
+ * installations (e.g. reached by a link file) into the first one.
+ *
+ * The cache is thread safe.
+ */
+public class ManifestCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ManifestCache.class);
+
+    /**
+     * The folder within the Eclipse installation where the cache is stored.
+     */
+    public static final String CACHE_FOLDER = ".plugin-cleaner";
+
+    private static final String CACHE_FILE = "manifest.cache";
+
+    private static final int MAGIC = 0x45504331;
+    private static final int FORMAT_VERSION = 4;
+
+    private final List<File> files;
+    private final List<String> prefixes;
+
+    private final Map<String, Entry> previous;
+    private final ConcurrentMap<String, Entry> current = new ConcurrentHashMap<>();
+
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    private ManifestCache(List<File> files, List<String> prefixes, Map<String, Entry> previous) {
+        this.files = files;
+        this.prefixes = prefixes;
+        this.previous = previous;
+    }
+
+    /**
+     * Loads the cache of the Eclipse installation. A missing or corrupted
+     * cache results in an empty one.
+     *
+     * @param eclipseFolder
+     *            the base directory of the Eclipse installation
+     * @return never <code>null</code>
+     */
+    public static ManifestCache load(File eclipseFolder) {
+        return load(Collections.singletonList(eclipseFolder));
+    }
+
+    /**
+     * Loads caches of several installations into a single one.
+     * 
+     * @param eclipseFolders
+     *            base directories of Eclipse installations, at least one
+     * @return never <code>null</code>
+     */
+    public static ManifestCache load(List<File> eclipseFolders) {
+        List<File> files = new ArrayList<>(eclipseFolders.size());
+        List<String> prefixes = new ArrayList<>(eclipseFolders.size());
+        Map<String, Entry> entries = new HashMap<>();
+        for (File eclipseFolder : eclipseFolders) {
+            File file = FileUtils.getFile(eclipseFolder, CACHE_FOLDER, CACHE_FILE);
+            files.add(file);
+            prefixes.add(eclipseFolder.toPath().toAbsolutePath().normalize().toString() + File.separator);
+            entries.putAll(read(file));
+        }
+        return new ManifestCache(files, prefixes, entries);
+    }
+
+    private static Map<String, Entry> read(File file) {
+        Map<String, Entry> entries = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException("Unknown format of the cache.");
+            }
+            final int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                long size = in.readLong();
+                long lastModified = in.readLong();
+                String symbolicName = null;
+                String version = null;
+                List<Requirement> requirements = Collections.emptyList();
+                String fingerprint = null;
+                String treeSignature = null;
+                if (in.readBoolean()) {
+                    symbolicName = in.readUTF();
+                    version = in.readUTF();
+                    requirements = readRequirements(in);
+                    if (in.readBoolean()) {
+                        fingerprint = in.readUTF();
+                        if (in.readBoolean()) {
+                            treeSignature = in.readUTF();
+                        }
+                    }
+                }
+                entries.put(path, new Entry(size, lastModified, symbolicName, version, requirements, fingerprint,
+                        treeSignature));
+            }
+            logger.debug("Loaded {} cached manifests from '{}'.", count, file);
+        } catch (FileNotFoundException e) {
+            logger.debug("No manifest cache found at '{}'.", file);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Discarding the corrupted manifest cache '{}'.", file);
+            logger.debug("Unable to read the manifest cache.", e);
+            entries.clear();
+        }
+        return entries;
+    }
+
+    private static List<Requirement> readRequirements(DataInputStream in) throws IOException {
+        final int count = in.readInt();
+        if (count == 0) {
+            return Collections.emptyList();
+        }
+        List<Requirement> requirements = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            requirements.add(new Requirement(in.readUTF(), VersionRange.parse(in.readUTF())));
+        }
+        return requirements;
+    }
+
+    /**
+     * Returns an entry if it is still valid.
+     *
+     * @return <code>null</code> if there is no entry or the file has been
+     *         changed since
+     */
+    Entry get(String path, long size, long lastModified) {
+        Entry entry = current.get(path);
+        if (entry == null) {
+            entry = previous.get(path);
+        }
+        if (entry != null && entry.size == size && entry.lastModified == lastModified) {
+            current.put(path, entry);
+            hits.incrementAndGet();
+            return entry;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Stores the result of the manifest parsing.
+     *
+     * @param artifact
+     *            <code>null</code> stores a negative entry
+     */
+    void put(String path, long size, long lastModified, Artifact artifact) {
+        put(path, size, lastModified, artifact, null);
+    }
+
+    /**
+     * Stores the result of the manifest parsing of an exploded bundle.
+     *
+     * @param artifact
+     *            <code>null</code> stores a negative entry
+     * @param treeSignature
+     *            the content the fingerprint of the artifact has been computed
+     *            from, <code>null</code> for a jar
+     */
+    void put(String path, long size, long lastModified, Artifact artifact, String treeSignature) {
+        if (artifact == null) {
+            current.put(path, new Entry(size, lastModified, null, null, Collections.<Requirement> emptyList(), null,
+                    null));
+        } else {
+            String fingerprint = artifact.getFingerprint();
+            current.put(path, new Entry(size, lastModified, artifact.getSymbolicName(), artifact.getVersion()
+                    .toString(), artifact.getRequirements(), fingerprint, fingerprint == null ? null
+                    : treeSignature));
+        }
+    }
+
+    /**
+     * Writes all entries used during this run. A file is replaced only when
+     * fully written.
+     */
+    public void save() {
+        List<Map<String, Entry>> snapshots = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            snapshots.add(new HashMap<String, Entry>());
+        }
+        for (Map.Entry<String, Entry> e : current.entrySet()) {
+            snapshots.get(indexOf(e.getKey())).put(e.getKey(), e.getValue());
+        }
+        for (int i = 0; i < files.size(); i++) {
+            save(files.get(i), snapshots.get(i));
+        }
+    }
+
+    /**
+     * @return the installation containing the path, the longest prefix wins
+     *         for nested installations
+     */
+    private int indexOf(String path) {
+        int found = 0;
+        int longest = -1;
+        for (int i = 0; i < prefixes.size(); i++) {
+            String prefix = prefixes.get(i);
+            if (prefix.length() > longest && path.startsWith(prefix)) {
+                found = i;
+                longest = prefix.length();
+            }
+        }
+        return found;
+    }
+
+    private void save(File file, Map<String, Entry> snapshot) {
+        try {
+            Files.createDirectories(file.getParentFile().toPath());
+            File temp = new File(file.getPath() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(snapshot.size());
+                for (Map.Entry<String, Entry> e : snapshot.entrySet()) {
+                    Entry entry = e.getValue();
+                    out.writeUTF(e.getKey());
+                    out.writeLong(entry.size);
+                    out.writeLong(entry.lastModified);
+                    out.writeBoolean(!entry.isNegative());
+                    if (!entry.isNegative()) {
+                        out.writeUTF(entry.symbolicName);
+                        out.writeUTF(entry.version);
+                        out.writeInt(entry.requirements.size());
+                        for (Requirement requirement : entry.requirements) {
+                            out.writeUTF(requirement.getSymbolicName());
+                            out.writeUTF(requirement.getVersionRange().toString());
+                        }
+                        out.writeBoolean(entry.fingerprint != null);
+                        if (entry.fingerprint != null) {
+                            out.writeUTF(entry.fingerprint);
+                            out.writeBoolean(entry.treeSignature != null);
+                            if (entry.treeSignature != null) {
+                                out.writeUTF(entry.treeSignature);
+                            }
+                        }
+                    }
+                }
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            logger.warn("Unable to save the manifest cache to '{}'.", file, e);
+        }
+    }
+
+    /**
+     * @return the number of valid entries found
+     */
+    public int getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of missing or outdated entries
+     */
+    public int getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * A cached result of a manifest parsing.
+     */
+    static class Entry {
+        final long size;
+        final long lastModified;
+        final String symbolicName;
+        final String version;
+        final List<Requirement> requirements;
+        final String fingerprint;
+        /**
+         * <code>null</code> for a jar or without a fingerprint
+         */
+        final String treeSignature;
+
+        Entry(long size, long lastModified, String symbolicName, String version, List<Requirement> requirements,
+                String fingerprint, String treeSignature) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.symbolicName = symbolicName;
+            this.version = version;
+            this.requirements = requirements;
+            this.fingerprint = fingerprint;
+            this.treeSignature = treeSignature;
+        }
+
+        /**
+         * @return <code>true</code> if the manifest couldn't be parsed
+         */
+        boolean isNegative() {
+            return symbolicName == null;
+        }
+    }
+}
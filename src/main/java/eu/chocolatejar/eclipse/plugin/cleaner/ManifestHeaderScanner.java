@@ -0,0 +1,198 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Extracts only selected headers from the main section of a manifest.
+ *
+ * In contrast to {@link java.util.jar.Manifest} the scanner works directly
+ * with the manifest bytes, allocates only for the values of the requested
+ * headers and stops as soon as all of them are found, so per-entry sections
+ * of signed bundles are never touched.
+ *
+ * Header names are matched case insensitively, values may be split into
+ * several 72 bytes long continuation lines.
+ *
+ * The scanner is immutable and thus thread safe.
+ */
+class ManifestHeaderScanner {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+    private static final byte SPACE = ' ';
+    private static final byte COLON = ':';
+
+    private final byte[][] headers;
+
+    /**
+     * @param headers
+     *            names of the headers to extract, e.g.
+     *            <code>Bundle-SymbolicName</code>
+     */
+    ManifestHeaderScanner(String... headers) {
+        this.headers = new byte[headers.length][];
+        for (int i = 0; i < headers.length; i++) {
+            this.headers[i] = toLowerCase(headers[i].getBytes(UTF_8));
+        }
+    }
+
+    /**
+     * Scans the main section of the manifest.
+     *
+     * @param manifest
+     *            the manifest bytes from the current position to the limit,
+     *            the buffer itself is not modified
+     * @return values in the same order as the requested headers,
+     *         <code>null</code> for missing headers
+     * @throws IOException
+     *             if a header line preceding the requested values is invalid
+     */
+    String[] scan(ByteBuffer manifest) throws IOException {
+        final String[] values = new String[headers.length];
+        int missing = headers.length;
+
+        final int limit = manifest.limit();
+        int pos = manifest.position();
+
+        while (pos < limit && missing > 0) {
+            final int lineEnd = findLineEnd(manifest, pos, limit);
+            if (lineEnd == pos) {
+                // an empty line ends the main section
+                break;
+            }
+
+            if (manifest.get(pos) != SPACE) {
+                final int colon = findColon(manifest, pos, lineEnd);
+                if (colon < 0 || colon + 1 >= lineEnd || manifest.get(colon + 1) != SPACE) {
+                    throw new IOException("Invalid manifest header at " + pos + ".");
+                }
+
+                final int header = findHeader(manifest, pos, colon);
+                if (header >= 0 && values[header] == null) {
+                    values[header] = readValue(manifest, colon + 2, lineEnd, limit);
+                    missing--;
+                }
+            }
+            // else a continuation of an uninteresting header
+
+            pos = skipLineEnd(manifest, lineEnd, limit);
+        }
+        return values;
+    }
+
+    /**
+     * Reads the value which starts on the current line and continues on all
+     * following lines that begin with a space.
+     */
+    private String readValue(ByteBuffer manifest, int start, int lineEnd, int limit) {
+        int length = lineEnd - start;
+        int next = skipLineEnd(manifest, lineEnd, limit);
+        while (next < limit && manifest.get(next) == SPACE) {
+            int end = findLineEnd(manifest, next, limit);
+            length += end - next - 1;
+            next = skipLineEnd(manifest, end, limit);
+        }
+
+        byte[] value = new byte[length];
+        int offset = copy(manifest, start, lineEnd, value, 0);
+        next = skipLineEnd(manifest, lineEnd, limit);
+        while (next < limit && manifest.get(next) == SPACE) {
+            int end = findLineEnd(manifest, next, limit);
+            offset = copy(manifest, next + 1, end, value, offset);
+            next = skipLineEnd(manifest, end, limit);
+        }
+        return new String(value, UTF_8);
+    }
+
+    private int copy(ByteBuffer manifest, int from, int to, byte[] target, int offset) {
+        for (int i = from; i < to; i++) {
+            target[offset++] = manifest.get(i);
+        }
+        return offset;
+    }
+
+    /**
+     * @return index of the requested header or <code>-1</code>
+     */
+    private int findHeader(ByteBuffer manifest, int from, int to) {
+        final int length = to - from;
+        for (int h = 0; h < headers.length; h++) {
+            final byte[] header = headers[h];
+            if (header.length != length) {
+                continue;
+            }
+            int i = 0;
+            while (i < length && toLowerCase(manifest.get(from + i)) == header[i]) {
+                i++;
+            }
+            if (i == length) {
+                return h;
+            }
+        }
+        return -1;
+    }
+
+    private static int findColon(ByteBuffer manifest, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (manifest.get(i) == COLON) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int findLineEnd(ByteBuffer manifest, int from, int limit) {
+        int i = from;
+        while (i < limit) {
+            byte b = manifest.get(i);
+            if (b == CR || b == LF) {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Skips <code>\r\n</code>, <code>\n</code> or <code>\r</code>.
+     */
+    private static int skipLineEnd(ByteBuffer manifest, int lineEnd, int limit) {
+        if (lineEnd >= limit) {
+            return limit;
+        }
+        if (manifest.get(lineEnd) == CR && lineEnd + 1 < limit && manifest.get(lineEnd + 1) == LF) {
+            return lineEnd + 2;
+        }
+        return lineEnd + 1;
+    }
+
+    private static byte[] toLowerCase(byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = toLowerCase(bytes[i]);
+        }
+        return bytes;
+    }
+
+    private static byte toLowerCase(byte b) {
+        return (b >= 'A' && b <= 'Z') ? (byte) (b + ('a' - 'A')) : b;
+    }
+}
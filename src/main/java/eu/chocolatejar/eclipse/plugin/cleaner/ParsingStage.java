@@ -0,0 +1,337 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import eu.chocolatejar.eclipse.plugin.cleaner.model.Artifact;
+import eu.chocolatejar.eclipse.plugin.cleaner.model.StreamingDuplicationDetector;
+
+/**
+ * Parses artifacts concurrently.
+ *
+ * The number of files opened at the same time is limited by the number of
+ * threads, even when several callers parse at the same time. Virtual threads
+ * are used when the runtime supports them, a pool of platform threads
+ * otherwise. With a single thread the files are parsed directly by the
+ * calling thread.
+ */
+class ParsingStage implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ParsingStage.class);
+
+    private final ArtifactParser artifactParser;
+    private final int threads;
+    private final Semaphore openFiles;
+    private final ExecutorService executor;
+
+    /**
+     * @param artifactParser
+     *            a thread safe parser
+     * @param threads
+     *            the maximum number of files parsed at the same time
+     */
+    ParsingStage(ArtifactParser artifactParser, int threads) {
+        this.artifactParser = artifactParser;
+        this.threads = Math.max(1, threads);
+        this.openFiles = new Semaphore(this.threads);
+        this.executor = this.threads > 1 ? createExecutor(this.threads) : null;
+    }
+
+    /**
+     * Parses all candidates and adds successfully parsed artifacts to the
+     * result.
+     *
+     * @param candidates
+     *            potential bundles
+     * @param artifacts
+     *            a thread safe set to collect the result
+     */
+    void parse(Collection<Candidate> candidates, final Set<Artifact> artifacts) {
+        if (executor == null) {
+            for (Candidate c : candidates) {
+                // several roots may be parsed at the same time
+                openFiles.acquireUninterruptibly();
+                try {
+                    addArtifact(c, artifacts);
+                } finally {
+                    openFiles.release();
+                }
+            }
+            return;
+        }
+
+        List<Future<?>> tasks = new ArrayList<>(candidates.size());
+        for (final Candidate c : candidates) {
+            tasks.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws InterruptedException {
+                    openFiles.acquire();
+                    try {
+                        addArtifact(c, artifacts);
+                    } finally {
+                        openFiles.release();
+                    }
+                    return null;
+                }
+            }));
+        }
+        waitFor(tasks);
+    }
+
+    /**
+     * Two-phase parsing. Files are grouped by the symbolic name derived from
+     * their filenames first, manifests are then opened only for groups with
+     * more than one candidate and for files with an unparseable filename.
+     * 
+     * A bundle that is the only one with its filename based symbolic name
+     * can't be a duplicate, so its filename based version is sufficient.
+     * Unless a manifest read in the first phase declares its symbolic name,
+     * e.g. <code>x_1.0.0</code> with <code>Bundle-SymbolicName: b</code>
+     * collides with <code>b_2.0.0</code>, the manifest of such a bundle is
+     * opened then, repeatedly until no new collision is found.
+     * 
+     * @param candidates
+     *            potential bundles
+     * @param artifacts
+     *            a thread safe set to collect the result
+     * @return the number of files parsed using a manifest
+     */
+    int parseContested(Collection<Candidate> candidates, Set<Artifact> artifacts) {
+        Map<String, List<Candidate>> groups = new HashMap<>();
+        Map<Candidate, Artifact> byFilename = new HashMap<>();
+        List<Candidate> contested = new ArrayList<>();
+
+        for (Candidate c : candidates) {
+            Artifact a = artifactParser.createFromFilename(c.getFile());
+            if (a == null) {
+                contested.add(c);
+                continue;
+            }
+            a = a.withLocationClass(c.getLocationClass());
+            byFilename.put(c, a);
+            List<Candidate> group = groups.get(a.getSymbolicName());
+            if (group == null) {
+                group = new ArrayList<>(1);
+                groups.put(a.getSymbolicName(), group);
+            }
+            group.add(c);
+        }
+
+        Map<String, Candidate> uncontested = new HashMap<>();
+        for (Map.Entry<String, List<Candidate>> e : groups.entrySet()) {
+            if (e.getValue().size() > 1) {
+                contested.addAll(e.getValue());
+            } else {
+                uncontested.put(e.getKey(), e.getValue().get(0));
+            }
+        }
+
+        int opened = 0;
+        for (List<Candidate> toOpen = contested; !toOpen.isEmpty();) {
+            Set<Artifact> parsed = Collections.newSetFromMap(new ConcurrentHashMap<Artifact, Boolean>());
+            parse(toOpen, parsed);
+            opened += toOpen.size();
+            artifacts.addAll(parsed);
+            toOpen = collisions(parsed, uncontested);
+        }
+
+        for (Candidate c : uncontested.values()) {
+            Artifact a = byFilename.get(c);
+            logger.trace("Found uncontested bundle {} ", a);
+            artifacts.add(a);
+        }
+        return opened;
+    }
+
+    /**
+     * Removes uncontested candidates sharing a symbolic name with a parsed
+     * manifest.
+     * 
+     * @return the removed candidates, their manifests need to be opened
+     */
+    private List<Candidate> collisions(Set<Artifact> parsed, Map<String, Candidate> uncontested) {
+        List<Candidate> colliding = new ArrayList<>();
+        for (Artifact a : parsed) {
+            Candidate c = uncontested.remove(a.getSymbolicName());
+            if (c != null) {
+                logger.debug("The manifest of '{}' declares the symbolic name of '{}'.", a.getLocation(), c);
+                colliding.add(c);
+            }
+        }
+        return colliding;
+    }
+
+    /**
+     * Starts a run of background parsing. Runs of several callers share the
+     * threads, but each one waits only for its own candidates and reports
+     * only its own failures.
+     * 
+     * @return a run to be awaited once
+     */
+    AsyncRun startAsync() {
+        return new AsyncRun();
+    }
+
+    /**
+     * Candidates parsed in the background by one caller, e.g. one
+     * installation of a fleet.
+     */
+    class AsyncRun {
+
+        private final Phaser pending = new Phaser(1);
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        private AsyncRun() {
+        }
+
+        /**
+         * Parses a candidate in the background and adds the artifact to the
+         * detector. Blocks while all threads are busy, so at most as many
+         * candidates as threads are held in memory.
+         *
+         * @param detector
+         *            receives parsed artifacts
+         * @see #await()
+         */
+        void parse(final Candidate candidate, final StreamingDuplicationDetector detector) {
+            if (executor == null) {
+                addArtifact(candidate, detector);
+                return;
+            }
+
+            openFiles.acquireUninterruptibly();
+            pending.register();
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            addArtifact(candidate, detector);
+                        } catch (RuntimeException | Error e) {
+                            failure.compareAndSet(null, e);
+                        } finally {
+                            openFiles.release();
+                            pending.arriveAndDeregister();
+                        }
+                    }
+                });
+            } catch (RuntimeException e) {
+                openFiles.release();
+                pending.arriveAndDeregister();
+                throw e;
+            }
+        }
+
+        /**
+         * Waits until all candidates passed to
+         * {@link #parse(Candidate, StreamingDuplicationDetector)} are parsed.
+         */
+        void await() {
+            pending.arriveAndAwaitAdvance();
+
+            Throwable cause = failure.get();
+            if (cause != null) {
+                throw new IllegalStateException("Unable to parse artifacts.", cause);
+            }
+        }
+    }
+
+    private void addArtifact(Candidate c, Set<Artifact> artifacts) {
+        Artifact a = createArtifact(c);
+        if (a != null) {
+            artifacts.add(a);
+        }
+    }
+
+    private void addArtifact(Candidate c, StreamingDuplicationDetector detector) {
+        Artifact a = createArtifact(c);
+        if (a != null) {
+            detector.add(a);
+        }
+    }
+
+    private Artifact createArtifact(Candidate c) {
+        Artifact a = artifactParser.createFromFile(c.getFile(), c.getAttributes());
+        logger.trace("Found bundle {} ", a);
+        return a == null ? null : a.withLocationClass(c.getLocationClass());
+    }
+
+    private void waitFor(List<Future<?>> tasks) {
+        try {
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Parsing has been interrupted.", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Unable to parse artifacts.", e.getCause());
+        }
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Uses <code>Executors.newVirtualThreadPerTaskExecutor()</code> when
+     * available, the concurrency is then limited by {@link #openFiles} only.
+     */
+    private static ExecutorService createExecutor(int threads) {
+        try {
+            ExecutorService virtual = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+            logger.debug("Parsing with virtual threads, at most {} files at once.", threads);
+            return virtual;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.debug("Parsing with {} platform threads.", threads);
+            return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                private final AtomicInteger counter = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "plugin-cleaner-parser-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+}
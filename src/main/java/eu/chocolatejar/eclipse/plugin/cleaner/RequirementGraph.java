@@ -0,0 +1,245 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import eu.chocolatejar.eclipse.plugin.cleaner.model.Artifact;
+import eu.chocolatejar.eclipse.plugin.cleaner.model.Requirement;
+
+/**
+ * Requirements of all bundles of an installation resolved to their matching
+ * bundles.
+ * 
+ * Bundles are indexed by integers, bundles with the same symbolic name get
+ * consecutive indexes. Each distinct requirement is resolved only once, to
+ * the first index of the group and a bitset of matching bundles relative to
+ * it, so the graph stays small even for tens of thousands of bundles.
+ * Checking a requirement is then only a lookup of a few bits of the surviving
+ * bundles.
+ */
+final class RequirementGraph {
+
+    private final Artifact[] artifacts;
+    private final Map<Artifact, Integer> indexes;
+
+    /**
+     * Indexes into {@link #groupStarts} and {@link #matches} of the
+     * requirements of each bundle.
+     */
+    private final int[][] requirements;
+
+    private final int[] groupStarts;
+    private final BitSet[] matches;
+
+    /**
+     * Builds the graph of all bundles, requirements that no bundle satisfies
+     * are left out.
+     * 
+     * @param bundles
+     *            all plugins of the installation
+     */
+    RequirementGraph(Collection<Artifact> bundles) {
+        Map<String, List<Artifact>> groups = new LinkedHashMap<>();
+        for (Artifact bundle : bundles) {
+            List<Artifact> group = groups.get(bundle.getSymbolicName());
+            if (group == null) {
+                group = new ArrayList<>(1);
+                groups.put(bundle.getSymbolicName(), group);
+            }
+            group.add(bundle);
+        }
+
+        artifacts = new Artifact[bundles.size()];
+        indexes = new HashMap<>(bundles.size() * 4 / 3 + 1);
+        Map<String, Integer> starts = new HashMap<>(groups.size() * 4 / 3 + 1);
+        int index = 0;
+        for (Map.Entry<String, List<Artifact>> group : groups.entrySet()) {
+            starts.put(group.getKey(), index);
+            for (Artifact bundle : group.getValue()) {
+                artifacts[index] = bundle;
+                indexes.put(bundle, index);
+                index++;
+            }
+        }
+
+        Map<Requirement, Integer> resolved = new HashMap<>();
+        List<Integer> resolvedStarts = new ArrayList<>();
+        List<BitSet> resolvedMatches = new ArrayList<>();
+        requirements = new int[artifacts.length][];
+        int[] edges = new int[16];
+        for (int i = 0; i < artifacts.length; i++) {
+            int count = 0;
+            for (Requirement requirement : artifacts[i].getRequirements()) {
+                Integer id = resolved.get(requirement);
+                if (id == null) {
+                    id = -1;
+                    Integer start = starts.get(requirement.getSymbolicName());
+                    if (start != null) {
+                        BitSet match = resolve(requirement, start);
+                        if (!match.isEmpty()) {
+                            id = resolvedMatches.size();
+                            resolvedStarts.add(start);
+                            resolvedMatches.add(match);
+                        }
+                    }
+                    resolved.put(requirement, id);
+                }
+                if (id >= 0) {
+                    if (count == edges.length) {
+                        edges = Arrays.copyOf(edges, count * 2);
+                    }
+                    edges[count++] = id;
+                }
+            }
+            requirements[i] = Arrays.copyOf(edges, count);
+        }
+
+        groupStarts = new int[resolvedStarts.size()];
+        for (int i = 0; i < groupStarts.length; i++) {
+            groupStarts[i] = resolvedStarts.get(i);
+        }
+        matches = resolvedMatches.toArray(new BitSet[resolvedMatches.size()]);
+    }
+
+    private BitSet resolve(Requirement requirement, int start) {
+        BitSet match = new BitSet();
+        String symbolicName = artifacts[start].getSymbolicName();
+        for (int i = start; i < artifacts.length && artifacts[i].getSymbolicName().equals(symbolicName); i++) {
+            if (requirement.getVersionRange().includes(artifacts[i].getVersion())) {
+                match.set(i - start);
+            }
+        }
+        return match;
+    }
+
+    /**
+     * Finds duplicates that are the only match of a requirement of a
+     * surviving bundle. A kept duplicate survives as well, so its own
+     * requirements are checked too. If several duplicates match a requirement
+     * the newest one is kept.
+     * 
+     * @param duplicates
+     *            bundles to be removed
+     * @return duplicates to keep mapped to a bundle that requires them, in the
+     *         order they were found
+     */
+    Map<Artifact, Artifact> findRequired(Set<Artifact> duplicates) {
+        BitSet surviving = new BitSet(artifacts.length);
+        surviving.set(0, artifacts.length);
+        for (Artifact duplicate : duplicates) {
+            Integer index = indexes.get(duplicate);
+            if (index != null) {
+                surviving.clear(index);
+            }
+        }
+
+        Deque<Integer> pending = new ArrayDeque<>();
+        for (int i = surviving.nextSetBit(0); i >= 0; i = surviving.nextSetBit(i + 1)) {
+            pending.add(i);
+        }
+
+        Map<Artifact, Artifact> required = new LinkedHashMap<>();
+        while (!pending.isEmpty()) {
+            final int requiring = pending.poll();
+            for (int id : requirements[requiring]) {
+                if (isSatisfied(id, surviving)) {
+                    continue;
+                }
+                final int kept = newestMatch(id);
+                surviving.set(kept);
+                pending.add(kept);
+                required.put(artifacts[kept], artifacts[requiring]);
+            }
+        }
+        return required;
+    }
+
+    private boolean isSatisfied(int id, BitSet surviving) {
+        final BitSet match = matches[id];
+        final int start = groupStarts[id];
+        for (int i = match.nextSetBit(0); i >= 0; i = match.nextSetBit(i + 1)) {
+            if (surviving.get(start + i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int newestMatch(int id) {
+        final BitSet match = matches[id];
+        final int start = groupStarts[id];
+        int newest = -1;
+        for (int i = match.nextSetBit(0); i >= 0; i = match.nextSetBit(i + 1)) {
+            if (newest < 0 || artifacts[start + i].compareTo(artifacts[newest]) > 0) {
+                newest = start + i;
+            }
+        }
+        return newest;
+    }
+
+    /**
+     * Finds bundles that satisfy a requirement of a bundle with another
+     * symbolic name, they are required by their own name.
+     * 
+     * @return never <code>null</code>
+     */
+    Set<Artifact> findRequiredByName() {
+        Set<Artifact> required = new HashSet<>();
+        BitSet visited = new BitSet(matches.length);
+        for (int requiring = 0; requiring < artifacts.length; requiring++) {
+            final String symbolicName = artifacts[requiring].getSymbolicName();
+            for (int id : requirements[requiring]) {
+                // a bundle requiring its own name doesn't count
+                if (visited.get(id) || symbolicName.equals(artifacts[groupStarts[id]].getSymbolicName())) {
+                    continue;
+                }
+                visited.set(id);
+                final BitSet match = matches[id];
+                for (int i = match.nextSetBit(0); i >= 0; i = match.nextSetBit(i + 1)) {
+                    required.add(artifacts[groupStarts[id] + i]);
+                }
+            }
+        }
+        return required;
+    }
+
+    /**
+     * @return the number of bundles in the graph
+     */
+    int size() {
+        return artifacts.length;
+    }
+
+    /**
+     * @return the number of distinct requirements satisfied by at least one
+     *         bundle
+     */
+    int getResolvedRequirements() {
+        return matches.length;
+    }
+}
@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.osgi.framework.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import eu.chocolatejar.eclipse.plugin.cleaner.model.Requirement;
+import eu.chocolatejar.eclipse.plugin.cleaner.model.VersionRange;
+
+/**
+ * Parses mandatory requirements from the values of the
+ * <code>Require-Bundle</code> and <code>Fragment-Host</code> headers.
+ * 
+ * <pre>
+ * header ::= clause ( ',' clause )*
+ * 
+ * clause ::= symbolic-name ( ';' parameter )*
+ * 
+ * parameter ::= attribute '=' value | directive ':=' value
+ * </pre>
+ * 
+ * Values may be quoted, commas and semicolons within quotes are not
+ * separators. Clauses with <code>resolution:=optional</code> are skipped, an
+ * invalid <code>bundle-version</code> skips the clause as well.
+ */
+final class RequirementParser {
+
+    private static final Logger logger = LoggerFactory.getLogger(RequirementParser.class);
+
+    private RequirementParser() {
+        // utility class
+    }
+
+    /**
+     * @param headers
+     *            values of requirement headers, <code>null</code> for a
+     *            missing header
+     * @return never <code>null</code>
+     */
+    static List<Requirement> parse(String... headers) {
+        List<Requirement> requirements = null;
+        for (String header : headers) {
+            if (StringUtils.isBlank(header)) {
+                continue;
+            }
+            for (String clause : split(header, ',')) {
+                Requirement requirement = parseClause(clause);
+                if (requirement != null) {
+                    if (requirements == null) {
+                        requirements = new ArrayList<>();
+                    }
+                    requirements.add(requirement);
+                }
+            }
+        }
+        return requirements == null ? Collections.<Requirement> emptyList() : requirements;
+    }
+
+    /**
+     * @return <code>null</code> for an optional or invalid clause
+     */
+    private static Requirement parseClause(String clause) {
+        List<String> parts = split(clause, ';');
+        String symbolicName = parts.get(0).trim();
+        if (symbolicName.isEmpty()) {
+            return null;
+        }
+
+        VersionRange versionRange = VersionRange.ANY;
+        for (int i = 1; i < parts.size(); i++) {
+            String parameter = parts.get(i);
+            int equals = parameter.indexOf('=');
+            if (equals <= 0) {
+                continue;
+            }
+            String value = parameter.substring(equals + 1).trim();
+            if (parameter.charAt(equals - 1) == ':') {
+                String directive = parameter.substring(0, equals - 1).trim();
+                if (Constants.RESOLUTION_DIRECTIVE.equals(directive)
+                        && Constants.RESOLUTION_OPTIONAL.equals(StringUtils.strip(value, "\""))) {
+                    return null;
+                }
+            } else if (Constants.BUNDLE_VERSION_ATTRIBUTE.equals(parameter.substring(0, equals).trim())) {
+                try {
+                    versionRange = VersionRange.parse(value);
+                } catch (IllegalArgumentException e) {
+                    logger.debug("Ignoring the requirement '{}' with an invalid version range.", clause, e);
+                    return null;
+                }
+            }
+        }
+        return new Requirement(symbolicName, versionRange);
+    }
+
+    /**
+     * Splits the value by the separator outside of quotes.
+     */
+    private static List<String> split(String value, char separator) {
+        List<String> parts = new ArrayList<>();
+        boolean quoted = false;
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == separator && !quoted) {
+                parts.add(value.substring(start, i));
+                start = i + 1;
+            }
+        }
+        parts.add(value.substring(start));
+        return parts;
+    }
+}
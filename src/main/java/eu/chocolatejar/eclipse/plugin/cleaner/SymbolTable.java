@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.osgi.framework.Version;
+
+import eu.chocolatejar.eclipse.plugin.cleaner.model.Artifact;
+
+/**
+ * Shares symbolic names and versions among artifacts of a scan session.
+ *
+ * The same bundle is usually present in many installations and in many
+ * versions, so identical names and versions are stored only once. Equal
+ * names and versions of interned artifacts are the same instances, hence
+ * comparing them by <code>equals</code> ends at the identity check.
+ *
+ * The table is thread safe.
+ */
+public class SymbolTable {
+
+    private final ConcurrentMap<String, String> names = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Version, Version> versions = new ConcurrentHashMap<>();
+
+    /**
+     * @param symbolicName
+     *            may contain directives like <code>;singleton:=true</code>
+     * @return the shared instance of the symbolic name without directives
+     */
+    public String symbolicName(String symbolicName) {
+        return intern(names, StringUtils.substringBefore(symbolicName, ";"));
+    }
+
+    /**
+     * @return the shared instance of the version
+     */
+    public Version version(Version version) {
+        return intern(versions, version);
+    }
+
+    /**
+     * @return the shared instance of the parsed version
+     * @throws IllegalArgumentException
+     *             if the version is not valid
+     */
+    public Version version(String version) {
+        return version(Version.parseVersion(version));
+    }
+
+    /**
+     * @return the artifact itself if it already uses shared instances,
+     *         otherwise an equal artifact that does
+     */
+    public Artifact intern(Artifact artifact) {
+        final String name = symbolicName(artifact.getSymbolicName());
+        final Version version = version(artifact.getVersion());
+        if (name == artifact.getSymbolicName() && version == artifact.getVersion()) {
+            return artifact;
+        }
+        return new Artifact(artifact.getLocation(), name, version, artifact.getRequirements(),
+                artifact.getLocationClass(), artifact.getFingerprint());
+    }
+
+    /**
+     * @return the number of distinct symbolic names
+     */
+    public int getNames() {
+        return names.size();
+    }
+
+    /**
+     * @return the number of distinct versions
+     */
+    public int getVersions() {
+        return versions.size();
+    }
+
+    private static <T> T intern(ConcurrentMap<T, T> table, T value) {
+        T shared = table.putIfAbsent(value, value);
+        return shared == null ? value : shared;
+    }
+}
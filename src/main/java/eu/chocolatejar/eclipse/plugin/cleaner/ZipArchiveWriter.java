@@ -0,0 +1,328 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Calendar;
+
+/**
+ * Writes a zip archive from entries whose data has already been prepared,
+ * e.g. compressed by other threads.
+ * 
+ * The size and the CRC-32 of each entry are known before its local header is
+ * written, so no data descriptors are needed and the archive can be read
+ * sequentially even without the central directory, e.g. after an
+ * interrupted run. Zip64 records are written only for sizes, offsets and
+ * counts exceeding the limits of the plain format.
+ * 
+ * The writer is not thread safe.
+ */
+final class ZipArchiveWriter implements Closeable {
+
+    static final int STORED = 0;
+    static final int DEFLATED = 8;
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int END_SIZE = 22;
+    private static final int ZIP64_END_SIZE = 56;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+
+    private static final int VERSION = 20;
+    private static final int ZIP64_VERSION = 45;
+    private static final int UTF8_FLAG = 1 << 11;
+    private static final int DIRECTORY_ATTRIBUTE = 0x10;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final OutputStream out;
+    private final ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+    private final Calendar calendar = Calendar.getInstance();
+
+    private long position;
+    private long entries;
+
+    /**
+     * @param file
+     *            must not exist yet
+     * @throws java.nio.file.FileAlreadyExistsException
+     *             if the file exists
+     */
+    ZipArchiveWriter(File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        out = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+    }
+
+    /**
+     * Writes an entry with data held in memory.
+     * 
+     * @param data
+     *            stored or raw deflated data of the entry
+     */
+    void write(Entry entry, byte[] data) throws IOException {
+        writeLocalHeader(entry);
+        out.write(data);
+        position += data.length;
+    }
+
+    /**
+     * Writes a stored entry streamed from a file.
+     * 
+     * @throws EOFException
+     *             if the file is shorter than the size of the entry
+     */
+    void write(Entry entry, File file) throws IOException {
+        writeLocalHeader(entry);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long remaining = entry.size;
+        try (InputStream in = new FileInputStream(file)) {
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    throw new EOFException("'" + file + "' has been truncated while written to the archive.");
+                }
+                out.write(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+        position += entry.size;
+    }
+
+    /**
+     * Forces all entries written so far to the disk.
+     */
+    void sync() throws IOException {
+        out.flush();
+        channel.force(false);
+    }
+
+    /**
+     * @return the number of bytes written so far
+     */
+    long getPosition() {
+        return position;
+    }
+
+    /**
+     * Writes the central directory and closes the file.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            final long offset = position;
+            centralDirectory.writeTo(out);
+            position += centralDirectory.size();
+            writeEnd(offset, centralDirectory.size());
+            out.flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void writeLocalHeader(Entry entry) throws IOException {
+        final boolean zip64 = entry.size >= ZIP64_MAGIC || entry.compressedSize >= ZIP64_MAGIC;
+        final long time = dosTime(entry.time);
+        final int extraSize = (zip64 ? 20 : 0) + entry.extra.length;
+
+        ByteBuffer header = header(LOCAL_HEADER_SIZE + entry.name.length + extraSize);
+        header.putInt(LOCAL_HEADER_SIGNATURE);
+        header.putShort((short) (zip64 ? ZIP64_VERSION : VERSION));
+        header.putShort((short) UTF8_FLAG);
+        header.putShort((short) entry.method);
+        header.putInt((int) time);
+        header.putInt((int) entry.crc);
+        header.putInt((int) (zip64 ? ZIP64_MAGIC : entry.compressedSize));
+        header.putInt((int) (zip64 ? ZIP64_MAGIC : entry.size));
+        header.putShort((short) entry.name.length);
+        header.putShort((short) extraSize);
+        header.put(entry.name);
+        if (zip64) {
+            header.putShort((short) ZIP64_EXTRA_ID);
+            header.putShort((short) 16);
+            header.putLong(entry.size);
+            header.putLong(entry.compressedSize);
+        }
+        header.put(entry.extra);
+
+        addCentralHeader(entry, time, position);
+        out.write(header.array());
+        position += header.capacity();
+        entries++;
+    }
+
+    private void addCentralHeader(Entry entry, long time, long offset) {
+        final boolean zip64Size = entry.size >= ZIP64_MAGIC;
+        final boolean zip64CompressedSize = entry.compressedSize >= ZIP64_MAGIC;
+        final boolean zip64Offset = offset >= ZIP64_MAGIC;
+        final int zip64Fields = (zip64Size ? 1 : 0) + (zip64CompressedSize ? 1 : 0) + (zip64Offset ? 1 : 0);
+        final int zip64ExtraSize = zip64Fields == 0 ? 0 : 4 + 8 * zip64Fields;
+        final int version = zip64Fields == 0 ? VERSION : ZIP64_VERSION;
+
+        ByteBuffer header = header(CENTRAL_HEADER_SIZE + entry.name.length + zip64ExtraSize + entry.extra.length);
+        header.putInt(CENTRAL_HEADER_SIGNATURE);
+        header.putShort((short) version);
+        header.putShort((short) version);
+        header.putShort((short) UTF8_FLAG);
+        header.putShort((short) entry.method);
+        header.putInt((int) time);
+        header.putInt((int) entry.crc);
+        header.putInt((int) (zip64CompressedSize ? ZIP64_MAGIC : entry.compressedSize));
+        header.putInt((int) (zip64Size ? ZIP64_MAGIC : entry.size));
+        header.putShort((short) entry.name.length);
+        header.putShort((short) (zip64ExtraSize + entry.extra.length));
+        // no comment, disk number and internal attributes
+        header.putShort((short) 0);
+        header.putShort((short) 0);
+        header.putShort((short) 0);
+        header.putInt(entry.isDirectory() ? DIRECTORY_ATTRIBUTE : 0);
+        header.putInt((int) (zip64Offset ? ZIP64_MAGIC : offset));
+        header.put(entry.name);
+        if (zip64Fields > 0) {
+            header.putShort((short) ZIP64_EXTRA_ID);
+            header.putShort((short) (8 * zip64Fields));
+            if (zip64Size) {
+                header.putLong(entry.size);
+            }
+            if (zip64CompressedSize) {
+                header.putLong(entry.compressedSize);
+            }
+            if (zip64Offset) {
+                header.putLong(offset);
+            }
+        }
+        header.put(entry.extra);
+        centralDirectory.write(header.array(), 0, header.capacity());
+    }
+
+    private void writeEnd(long offset, long size) throws IOException {
+        final boolean zip64 = entries >= ZIP64_MAGIC_COUNT || offset >= ZIP64_MAGIC || size >= ZIP64_MAGIC;
+        if (zip64) {
+            final long zip64EndOffset = position;
+            ByteBuffer end = header(ZIP64_END_SIZE + ZIP64_LOCATOR_SIZE);
+            end.putInt(ZIP64_END_SIGNATURE);
+            end.putLong(ZIP64_END_SIZE - 12);
+            end.putShort((short) ZIP64_VERSION);
+            end.putShort((short) ZIP64_VERSION);
+            end.putInt(0);
+            end.putInt(0);
+            end.putLong(entries);
+            end.putLong(entries);
+            end.putLong(size);
+            end.putLong(offset);
+
+            end.putInt(ZIP64_LOCATOR_SIGNATURE);
+            end.putInt(0);
+            end.putLong(zip64EndOffset);
+            end.putInt(1);
+            out.write(end.array());
+            position += end.capacity();
+        }
+
+        ByteBuffer end = header(END_SIZE);
+        end.putInt(END_SIGNATURE);
+        end.putShort((short) 0);
+        end.putShort((short) 0);
+        end.putShort((short) (zip64 ? ZIP64_MAGIC_COUNT : entries));
+        end.putShort((short) (zip64 ? ZIP64_MAGIC_COUNT : entries));
+        end.putInt((int) (zip64 ? ZIP64_MAGIC : size));
+        end.putInt((int) (zip64 ? ZIP64_MAGIC : offset));
+        end.putShort((short) 0);
+        out.write(end.array());
+        position += end.capacity();
+    }
+
+    private static ByteBuffer header(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * @return the MS-DOS date and time, the date in the upper half
+     */
+    private long dosTime(long millis) {
+        calendar.setTimeInMillis(millis);
+        final int year = calendar.get(Calendar.YEAR);
+        if (year < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (year - 1980) << 25 | (calendar.get(Calendar.MONTH) + 1) << 21
+                | calendar.get(Calendar.DAY_OF_MONTH) << 16 | calendar.get(Calendar.HOUR_OF_DAY) << 11
+                | calendar.get(Calendar.MINUTE) << 5 | calendar.get(Calendar.SECOND) >> 1;
+    }
+
+    /**
+     * Header fields of a single entry.
+     */
+    static final class Entry {
+        final byte[] name;
+        final long time;
+        final int method;
+        final long crc;
+        final long size;
+        final long compressedSize;
+        final byte[] extra;
+
+        /**
+         * @param name
+         *            the full name, a folder ends with a slash
+         * @param time
+         *            the last modification time in milliseconds
+         * @param method
+         *            either {@link ZipArchiveWriter#STORED} or
+         *            {@link ZipArchiveWriter#DEFLATED}
+         * @param extra
+         *            extra fields written into both the local and the central
+         *            header
+         */
+        Entry(String name, long time, int method, long crc, long size, long compressedSize, byte[] extra) {
+            this.name = name.getBytes(StandardCharsets.UTF_8);
+            this.time = time;
+            this.method = method;
+            this.crc = crc;
+            this.size = size;
+            this.compressedSize = compressedSize;
+            this.extra = extra;
+        }
+
+        boolean isDirectory() {
+            return name.length > 0 && name[name.length - 1] == '/';
+        }
+    }
+}
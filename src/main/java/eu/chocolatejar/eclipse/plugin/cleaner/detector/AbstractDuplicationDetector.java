@@ -15,108 +15,352 @@
  *******************************************************************************/
 package eu.chocolatejar.eclipse.plugin.cleaner.detector;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import eu.chocolatejar.eclipse.plugin.cleaner.model.Artifact;
+import eu.chocolatejar.eclipse.plugin.cleaner.model.DetectionResult;
+import eu.chocolatejar.eclipse.plugin.cleaner.model.DetectionResult.Group;
 import eu.chocolatejar.eclipse.plugin.cleaner.model.DuplicationDetector;
+import eu.chocolatejar.eclipse.plugin.cleaner.model.DuplicationListener;
+import eu.chocolatejar.eclipse.plugin.cleaner.model.StreamingDuplicationDetector;
 
 /**
  * The default implementation of a duplication detector.
  * 
- * This class is intended to be used a prototype. Each calling of
- * {@link #getDuplicates(Set)} must be create a new object.
+ * The detector is stateless and thread safe, a single instance serves
+ * repeated and concurrent calls of {@link #detect(Set)}. Decisions are
+ * returned as a {@link DetectionResult}, artifacts are never modified.
+ * 
+ * Duplicates are always decided among artifacts with the same symbolic name.
+ * The master of each group is the newest artifact, among the same versions the
+ * one outside of the dropins folder and then the one with the
+ * lexicographically first location. All other artifacts
+ * of the group are duplicates, see {@link #canBeDuplicate(Artifact)}. The
+ * result thus doesn't depend on the order of the artifacts.
+ * 
+ * A {@link RetentionPolicy} overrides these decisions for groups matching its
+ * rules. The first matching rule may pin the group, keep more than the newest
+ * version or keep recently modified artifacts, the result tells which rule
+ * decided each group.
+ * 
+ * A detector grouping by content uses the fingerprint of an artifact instead
+ * of its symbolic name, artifacts without a fingerprint are never duplicates
+ * then. Rules then only protect artifacts matching a pin or a minimal age
+ * rule. The streaming mode always groups by the symbolic name and keeps only
+ * the newest version even if a rule asks for more.
+ * 
+ * Groups are independent, so with a parallelism greater than one the
+ * artifacts are split into shards by the hash of their symbolic name and the
+ * shards are resolved on a fork-join pool. A single pool with a thread per
+ * processor is shared by all detectors of the JVM, e.g. of all installations
+ * of a fleet; it is created on the first parallel call and its threads are
+ * daemons. The result is the same as of a single thread.
+ * 
+ * A {@link StreamingDuplicationDetector} created by
+ * {@link #createStreamingDetector(DuplicationListener)} makes the same
+ * decisions one artifact at a time, duplicates are then reported instead of
+ * being collected.
  */
 abstract class AbstractDuplicationDetector implements DuplicationDetector {
 
-    final Map<String, Artifact> masterBundles = new HashMap<>();
-    final Set<Artifact> duplicates = new HashSet<>();
+    /**
+     * Fewer artifacts are resolved by the calling thread only.
+     */
+    static final int PARALLEL_THRESHOLD = 10000;
+
+    /**
+     * Shards per thread, so threads finishing early can steal more work.
+     */
+    private static final int SHARDS_PER_THREAD = 4;
+
+    private final int parallelism;
+    private final boolean byContent;
+    private final RetentionPolicy policy;
 
-    /*
-     * (non-Javadoc)
+    AbstractDuplicationDetector() {
+        this(1, false, RetentionPolicy.NONE);
+    }
+
+    /**
+     * Creates a detector as configured by the factory, every mode accepts the
+     * same parameters.
      * 
-     * @see
-     * eu.chocolatejar.eclipse.plugin.cleaner.detector.Detector#getDuplicates
-     * (java.util.Set)
+     * @param parallelism
+     *            the number of threads of the shared pool {@link #detect(Set)}
+     *            splits large sets for, <code>1</code> to use only the calling
+     *            thread
+     * @param byContent
+     *            when <code>true</code> {@link #detect(Set)} groups artifacts
+     *            with the same fingerprint regardless of their symbolic names
+     * @param policy
+     *            rules overriding decisions of matching groups,
+     *            {@link RetentionPolicy#NONE} if there are none
      */
+    AbstractDuplicationDetector(int parallelism, boolean byContent, RetentionPolicy policy) {
+        this.parallelism = Math.max(1, parallelism);
+        this.byContent = byContent;
+        this.policy = policy;
+    }
+
     @Override
-    public Set<Artifact> getDuplicates(Set<Artifact> artifacts) {
-        doDuplicationAnalysis(artifacts);
-        updateMasterReferenceToAllDuplicates();
-        return Collections.unmodifiableSet(duplicates);
+    public DetectionResult detect(Set<Artifact> artifacts) {
+        if (parallelism == 1 || artifacts.size() < PARALLEL_THRESHOLD) {
+            return new DetectionResult(resolveShard(artifacts));
+        }
+        return new DetectionResult(SharedPool.POOL.invoke(
+                new ShardsTask(shard(artifacts, parallelism * SHARDS_PER_THREAD))));
     }
 
-    protected void doDuplicationAnalysis(Set<Artifact> artifacts) {
+    /**
+     * Holds the pool shared by all detectors, created on the first access.
+     */
+    private static final class SharedPool {
+        static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    @Override
+    public StreamingDuplicationDetector createStreamingDetector(DuplicationListener listener) {
+        return new Stream(listener);
+    }
+
+    /**
+     * Splits artifacts by the hash of their group, so each group is within a
+     * single shard.
+     */
+    private List<List<Artifact>> shard(Set<Artifact> artifacts, int count) {
+        List<List<Artifact>> shards = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            shards.add(new ArrayList<Artifact>(artifacts.size() / count + 1));
+        }
         for (Artifact artifact : artifacts) {
+            String key = groupOf(artifact);
+            if (key != null) {
+                shards.get((key.hashCode() & Integer.MAX_VALUE) % count).add(artifact);
+            }
+        }
+        return shards;
+    }
 
-            Artifact master = getMasterFor(artifact);
-            if (master == null) {
-                keepAsOriginal(artifact);
-            } else {
-                // there is already a master bundle for the given artifact,
-                // resolve which version to keep
+    /**
+     * @return decisions of all groups of the shard with more than one artifact
+     */
+    private List<Group> resolveShard(Collection<Artifact> shard) {
+        List<Group> decisions = new ArrayList<>();
+        for (Map.Entry<String, List<Artifact>> group : groupByKey(shard).entrySet()) {
+            if (group.getValue().size() > 1) {
+                decisions.add(resolveGroup(group.getKey(), group.getValue()));
+            }
+        }
+        return decisions;
+    }
 
-                final int compareTo = artifact.compareTo(master);
-                final boolean isNewer = compareTo > 0;
-                final boolean isSame = compareTo == 0;
+    /**
+     * Resolves a range of shards, splits it in halves while there is more than
+     * one shard.
+     */
+    private class ShardsTask extends RecursiveTask<List<Group>> {
 
-                if (isNewer) {
-                    replaceMaster(artifact, master);
-                } else {
-                    if (isSame) {
-                        detectDuplicateForSameVersions(artifact, master);
-                    } else {
-                        // is older
-                        keepAsDuplicate(artifact);
-                    }
-                }
+        private static final long serialVersionUID = 1L;
+
+        private final List<List<Artifact>> shards;
+
+        ShardsTask(List<List<Artifact>> shards) {
+            this.shards = shards;
+        }
+
+        @Override
+        protected List<Group> compute() {
+            if (shards.size() == 1) {
+                return resolveShard(shards.get(0));
+            }
+            final int half = shards.size() / 2;
+            ShardsTask second = new ShardsTask(shards.subList(half, shards.size()));
+            second.fork();
+            List<Group> decisions = new ShardsTask(shards.subList(0, half)).compute();
+            decisions.addAll(second.join());
+            return decisions;
+        }
+    }
+
+    private Map<String, List<Artifact>> groupByKey(Collection<Artifact> artifacts) {
+        Map<String, List<Artifact>> groups = new HashMap<>();
+        for (Artifact artifact : artifacts) {
+            String key = groupOf(artifact);
+            if (key == null) {
+                continue;
+            }
+            List<Artifact> group = groups.get(key);
+            if (group == null) {
+                group = new ArrayList<>(1);
+                groups.put(key, group);
             }
+            group.add(artifact);
         }
+        return groups;
     }
 
     /**
-     * Resolves which artifact to keep.
-     * 
-     * There is already a master bundle for the given artifact and has as the
-     * same version as the master artifact.
-     * 
-     * @param artifact
-     * @param master
+     * @return <code>null</code> if the artifact doesn't belong to any group
+     */
+    private String groupOf(Artifact artifact) {
+        return byContent ? artifact.getFingerprint() : artifact.getSymbolicName();
+    }
+
+    /**
+     * Selects the master of the group, all other artifacts are duplicates of
+     * it unless the mode or a rule keeps them.
      */
-    protected abstract void detectDuplicateForSameVersions(Artifact artifact, Artifact master);
+    private Group resolveGroup(String key, List<Artifact> group) {
+        final RetentionRule rule = byContent ? null : policy.match(key);
+        final List<Artifact> retained = rule == null || rule.getVersions() == 1 ? Collections
+                .singletonList(findMaster(group)) : findNewestVersions(group, rule.getVersions());
+        final Artifact master = retained.get(0);
 
-    protected void keepAsOriginal(Artifact original) {
-        masterBundles.put(original.getSymbolicName(), original);
+        List<Artifact> duplicates = new ArrayList<>(group.size() - 1);
+        List<Artifact> kept = new ArrayList<>(retained.subList(1, retained.size()));
+        RetentionRule decidedBy = rule;
+        for (Artifact artifact : group) {
+            if (artifact == master || retained.size() > 1 && retained.contains(artifact)) {
+                continue;
+            }
+            RetentionRule protecting = protectingRule(artifact, rule);
+            if (protecting == null && canBeDuplicate(artifact)) {
+                duplicates.add(artifact);
+            } else {
+                kept.add(artifact);
+                if (decidedBy == null) {
+                    decidedBy = protecting;
+                }
+            }
+        }
+        return new Group(key, master, duplicates, kept, decidedBy == null ? null : decidedBy.toString());
     }
 
-    protected void keepAsDuplicate(Artifact artifact) {
-        duplicates.add(artifact);
-        if (masterBundles.containsValue(artifact)) {
-            masterBundles.remove(artifact.getSymbolicName());
+    private Artifact findMaster(List<Artifact> group) {
+        Artifact master = group.get(0);
+        for (int i = 1; i < group.size(); i++) {
+            Artifact artifact = group.get(i);
+            if (isNewMaster(artifact, master)) {
+                master = artifact;
+            }
         }
+        return master;
     }
 
-    protected void replaceMaster(Artifact newMaster, Artifact oldMaster) {
-        keepAsOriginal(newMaster);
-        keepAsDuplicate(oldMaster);
+    /**
+     * @return the preferred artifact of each of the newest versions, the
+     *         master first
+     */
+    private List<Artifact> findNewestVersions(List<Artifact> group, int versions) {
+        List<Artifact> sorted = new ArrayList<>(group);
+        Collections.sort(sorted, new Comparator<Artifact>() {
+            @Override
+            public int compare(Artifact a, Artifact b) {
+                return isNewMaster(a, b) ? -1 : isNewMaster(b, a) ? 1 : 0;
+            }
+        });
+        List<Artifact> newest = new ArrayList<>(versions);
+        for (Artifact artifact : sorted) {
+            if (newest.isEmpty() || artifact.compareTo(newest.get(newest.size() - 1)) != 0) {
+                if (newest.size() == versions) {
+                    break;
+                }
+                newest.add(artifact);
+            }
+        }
+        return newest;
     }
 
-    private Artifact getMasterFor(Artifact artifact) {
-        return masterBundles.get(artifact.getSymbolicName());
+    /**
+     * @param rule
+     *            the rule matching the symbolic name of the artifact, ignored
+     *            when grouped by content
+     * @return the rule that keeps the artifact, <code>null</code> if there is
+     *         none
+     */
+    private RetentionRule protectingRule(Artifact artifact, RetentionRule rule) {
+        RetentionRule matching = byContent ? policy.match(artifact.getSymbolicName()) : rule;
+        return matching != null && matching.protects(artifact) ? matching : null;
+    }
+
+    /**
+     * A stream of artifacts decided one at a time against the current master
+     * of their symbolic name.
+     */
+    private class Stream implements StreamingDuplicationDetector {
+
+        private final DuplicationListener listener;
+
+        /**
+         * The current master of each symbolic name.
+         */
+        private final Map<String, Artifact> masterBundles = new HashMap<>();
+        private int artifactsCount;
+
+        Stream(DuplicationListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void add(Artifact artifact) {
+            Artifact duplicate = null;
+            Artifact master;
+            synchronized (this) {
+                artifactsCount++;
+                master = masterBundles.get(artifact.getSymbolicName());
+                if (master == null) {
+                    masterBundles.put(artifact.getSymbolicName(), artifact);
+                } else if (isNewMaster(artifact, master)) {
+                    masterBundles.put(artifact.getSymbolicName(), artifact);
+                    duplicate = master;
+                    master = artifact;
+                } else {
+                    duplicate = artifact;
+                }
+            }
+            // outside of the lock, the listener may take its time
+            if (duplicate != null && canBeDuplicate(duplicate)
+                    && protectingRule(duplicate, policy.match(duplicate.getSymbolicName())) == null) {
+                listener.duplicateFound(duplicate, master);
+            }
+        }
+
+        @Override
+        public synchronized int getArtifactsCount() {
+            return artifactsCount;
+        }
     }
 
     /**
-     * Set a master (the latest resolved artifact) reference to all duplicates
+     * A newer artifact always replaces the master. Among the same versions
+     * the one outside of the dropins folder wins, e.g. the copy managed by p2,
+     * and then the one with the lexicographically first location.
      */
-    private void updateMasterReferenceToAllDuplicates() {
-        for (Artifact duplicate : duplicates) {
-            Artifact original = getMasterFor(duplicate);
-            assert original != null;
-            duplicate.setMaster(original);
+    private boolean isNewMaster(Artifact artifact, Artifact master) {
+        final int compareTo = artifact.compareTo(master);
+        if (compareTo != 0) {
+            return compareTo > 0;
+        }
+        if (artifact.isInDropinsFolder() != master.isInDropinsFolder()) {
+            return !artifact.isInDropinsFolder();
         }
+        return artifact.getLocation().getPath().compareTo(master.getLocation().getPath()) < 0;
     }
 
+    /**
+     * @return <code>false</code> if the artifact must never be marked as a
+     *         duplicate even if it isn't the master
+     */
+    protected boolean canBeDuplicate(Artifact artifact) {
+        return true;
+    }
 }
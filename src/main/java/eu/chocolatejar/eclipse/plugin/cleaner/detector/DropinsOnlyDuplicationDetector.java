@@ -18,16 +18,22 @@ package eu.chocolatejar.eclipse.plugin.cleaner.detector;
 import eu.chocolatejar.eclipse.plugin.cleaner.model.Artifact;
 
 /**
- * In contrast to {@link PrefereDropinsDuplicationDetector} this detector marks
- * as duplicates only artifacts located in the dropins folder.
+ * In contrast to {@link UnlimitedDuplicationDetector} this detector marks as
+ * duplicates only artifacts located in the dropins folder.
  */
-public class DropinsOnlyDuplicationDetector extends PrefereDropinsDuplicationDetector {
+public class DropinsOnlyDuplicationDetector extends AbstractDuplicationDetector {
+
+    public DropinsOnlyDuplicationDetector() {
+        super();
+    }
+
+    public DropinsOnlyDuplicationDetector(int parallelism, boolean byContent, RetentionPolicy policy) {
+        super(parallelism, byContent, policy);
+    }
 
     @Override
-    protected void keepAsDuplicate(Artifact artifact) {
+    protected boolean canBeDuplicate(Artifact artifact) {
         // Only in the dropins folder can be the artifact marked as duplicated
-        if (artifact.isInDropinsFolder()) {
-            super.keepAsDuplicate(artifact);
-        }
+        return artifact.isInDropinsFolder();
     }
 }
@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner.detector;
+
+import java.util.Arrays;
+
+/**
+ * A character trie of exact names and name prefixes, each marked by the index
+ * of a rule. A lookup walks the name once and returns the lowest index of all
+ * matching entries, so its cost depends on the length of the name only, not
+ * on the number of entries.
+ */
+final class NameTrie {
+
+    /**
+     * Returned when nothing matches.
+     */
+    static final int NO_MATCH = Integer.MAX_VALUE;
+
+    private final Node root = new Node();
+
+    /**
+     * @param index
+     *            of the rule, lower wins
+     */
+    void addExact(String name, int index) {
+        Node node = nodeOf(name);
+        node.exact = Math.min(node.exact, index);
+    }
+
+    /**
+     * @param index
+     *            of the rule, lower wins
+     */
+    void addPrefix(String prefix, int index) {
+        Node node = nodeOf(prefix);
+        node.prefix = Math.min(node.prefix, index);
+    }
+
+    /**
+     * @return the lowest index of an exact name or a prefix matching the
+     *         name, {@link #NO_MATCH} if there is none
+     */
+    int match(String name) {
+        int best = NO_MATCH;
+        Node node = root;
+        for (int i = 0; i < name.length(); i++) {
+            best = Math.min(best, node.prefix);
+            node = node.child(name.charAt(i));
+            if (node == null) {
+                return best;
+            }
+        }
+        return Math.min(best, Math.min(node.prefix, node.exact));
+    }
+
+    private Node nodeOf(String path) {
+        Node node = root;
+        for (int i = 0; i < path.length(); i++) {
+            node = node.addChild(path.charAt(i));
+        }
+        return node;
+    }
+
+    /**
+     * Children are kept sorted by their character, most nodes have a single
+     * child.
+     */
+    private static final class Node {
+
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private int exact = NO_MATCH;
+        private int prefix = NO_MATCH;
+
+        Node child(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            return i < 0 ? null : children[i];
+        }
+
+        Node addChild(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            if (i >= 0) {
+                return children[i];
+            }
+            i = -i - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[keys.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, i);
+            System.arraycopy(children, 0, newChildren, 0, i);
+            System.arraycopy(keys, i, newKeys, i + 1, keys.length - i);
+            System.arraycopy(children, i, newChildren, i + 1, keys.length - i);
+            newKeys[i] = c;
+            newChildren[i] = new Node();
+            keys = newKeys;
+            children = newChildren;
+            return newChildren[i];
+        }
+    }
+}
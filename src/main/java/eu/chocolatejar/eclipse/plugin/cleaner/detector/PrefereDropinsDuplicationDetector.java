@@ -15,31 +15,23 @@
  *******************************************************************************/
 package eu.chocolatejar.eclipse.plugin.cleaner.detector;
 
-import eu.chocolatejar.eclipse.plugin.cleaner.model.Artifact;
-
 /**
  * If there are two bundles with the same version the bundle that is in the
  * dropins folder is considered to be duplicated. If both of them are from a non
- * dropins folder than first come is kept the second one is marked as a
+ * dropins folder or both from the dropins folder, the one with the
+ * lexicographically first location is kept and the other one is marked as a
  * duplicate.
+ * 
+ * @deprecated the {@link UnlimitedDuplicationDetector} decides the same way
  */
-public class PrefereDropinsDuplicationDetector extends AbstractDuplicationDetector {
-    /**
-     * There is already a master bundle for the given artifact and has as the
-     * same version as the master artifact
-     * 
-     * Resolve which artifact to keep
-     * 
-     * @param artifact
-     * @param master
-     */
-    protected void detectDuplicateForSameVersions(Artifact artifact, Artifact master) {
-        // choose rather from the dropins folder
-        if (master.isInDropinsFolder()) {
-            keepAsDuplicate(master);
-            keepAsOriginal(artifact);
-        } else {
-            keepAsDuplicate(artifact);
-        }
+@Deprecated
+public class PrefereDropinsDuplicationDetector extends UnlimitedDuplicationDetector {
+
+    public PrefereDropinsDuplicationDetector() {
+        super();
+    }
+
+    public PrefereDropinsDuplicationDetector(int parallelism, boolean byContent, RetentionPolicy policy) {
+        super(parallelism, byContent, policy);
     }
 }
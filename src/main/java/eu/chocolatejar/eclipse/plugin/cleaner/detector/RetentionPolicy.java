@@ -0,0 +1,225 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner.detector;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import eu.chocolatejar.eclipse.plugin.cleaner.model.CleaningMode;
+
+/**
+ * Rules overriding the {@link CleaningMode} for groups of artifacts with
+ * matching symbolic names. A rules file has a rule per line, lines starting
+ * with <code>#</code> are ignored:
+ * 
+ * <pre>
+ * pin     com.ourcorp.*          # never a duplicate
+ * keep    org.eclipse.jdt.*  2   # the 2 newest versions are kept
+ * min-age *                  30d # modified within 30 days (or 12h) are kept
+ * </pre>
+ * 
+ * A pattern is a symbolic name, <code>*</code> matches any characters. The
+ * first rule matching the symbolic name decides the whole group, groups
+ * without a matching rule are decided by the mode only. The mode still
+ * decides which copy of a version is kept and which artifacts may be
+ * duplicates at all.
+ * 
+ * Rules are compiled once, exact names and patterns ending with the only
+ * <code>*</code> into a {@link NameTrie}, other patterns into regular
+ * expressions. Matching a name thus walks the name once plus the few
+ * patterns with an inner <code>*</code>.
+ * 
+ * The policy is immutable and thread safe.
+ */
+public final class RetentionPolicy {
+
+    /**
+     * A policy without any rules.
+     */
+    public static final RetentionPolicy NONE = new RetentionPolicy(Collections.<RetentionRule> emptyList());
+
+    private static final char WILDCARD = '*';
+
+    private final List<RetentionRule> rules;
+    private final NameTrie trie = new NameTrie();
+    private final List<Pattern> globs = new ArrayList<>();
+    private final List<Integer> globRules = new ArrayList<>();
+
+    private RetentionPolicy(List<RetentionRule> rules) {
+        this.rules = Collections.unmodifiableList(rules);
+        for (int i = 0; i < rules.size(); i++) {
+            String pattern = rules.get(i).getPattern();
+            final int wildcard = pattern.indexOf(WILDCARD);
+            if (wildcard < 0) {
+                trie.addExact(pattern, i);
+            } else if (wildcard == pattern.length() - 1) {
+                trie.addPrefix(pattern.substring(0, wildcard), i);
+            } else {
+                globs.add(toRegex(pattern));
+                globRules.add(i);
+            }
+        }
+    }
+
+    private static Pattern toRegex(String glob) {
+        String[] parts = StringUtils.splitPreserveAllTokens(glob, WILDCARD);
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < parts.length; i++) {
+            if (i > 0) {
+                regex.append(".*");
+            }
+            if (!parts[i].isEmpty()) {
+                regex.append(Pattern.quote(parts[i]));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    /**
+     * Loads rules from a file, ages are counted from now.
+     * 
+     * @throws IOException
+     *             if the file can't be read or contains an invalid rule
+     */
+    public static RetentionPolicy load(File file) throws IOException {
+        List<String> lines = FileUtils.readLines(file, "UTF-8");
+        try {
+            return parse(lines, System.currentTimeMillis());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid rules file '" + file + "', " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @param lines
+     *            of a rules file
+     * @param now
+     *            the time ages of {@link RetentionRule.Action#MIN_AGE} rules
+     *            are counted from
+     * @throws IllegalArgumentException
+     *             if a line is not a valid rule
+     */
+    public static RetentionPolicy parse(List<String> lines, long now) {
+        List<RetentionRule> rules = new ArrayList<>();
+        for (int i = 0; i < lines.size(); i++) {
+            String text = StringUtils.substringBefore(lines.get(i), "#").trim();
+            if (!text.isEmpty()) {
+                rules.add(parseRule(text, i + 1, now));
+            }
+        }
+        return rules.isEmpty() ? NONE : new RetentionPolicy(rules);
+    }
+
+    private static RetentionRule parseRule(String text, int line, long now) {
+        String[] tokens = StringUtils.split(text);
+        RetentionRule.Action action = RetentionRule.Action.fromKeyword(tokens[0]);
+        if (action == null) {
+            throw new IllegalArgumentException("unknown rule '" + tokens[0] + "' at line " + line + ".");
+        }
+        final int expected = action == RetentionRule.Action.PIN ? 2 : 3;
+        if (tokens.length != expected) {
+            throw new IllegalArgumentException("the rule '" + action.getKeyword() + "' at line " + line
+                    + " expects " + (expected - 1) + " arguments.");
+        }
+        String pattern = tokens[1];
+        switch (action) {
+        case KEEP:
+            return new RetentionRule(action, pattern, parseVersions(tokens[2], line), 0, text, line);
+        case MIN_AGE:
+            return new RetentionRule(action, pattern, 1, now - parseAge(tokens[2], line), text, line);
+        default:
+            return new RetentionRule(action, pattern, 1, 0, text, line);
+        }
+    }
+
+    private static int parseVersions(String token, int line) {
+        try {
+            int versions = Integer.parseInt(token);
+            if (versions > 0) {
+                return versions;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("'" + token + "' at line " + line + " is not a positive number.");
+    }
+
+    /**
+     * @return milliseconds of an age given in days (<code>30d</code>) or
+     *         hours (<code>12h</code>)
+     */
+    private static long parseAge(String token, int line) {
+        final char unit = token.charAt(token.length() - 1);
+        String amount = token.substring(0, token.length() - 1);
+        if ((unit == 'd' || unit == 'h') && !amount.isEmpty() && StringUtils.isNumeric(amount)) {
+            try {
+                long value = Long.parseLong(amount);
+                return unit == 'd' ? TimeUnit.DAYS.toMillis(value) : TimeUnit.HOURS.toMillis(value);
+            } catch (NumberFormatException e) {
+                // reported below
+            }
+        }
+        throw new IllegalArgumentException("'" + token + "' at line " + line
+                + " is not an age such as 30d or 12h.");
+    }
+
+    /**
+     * @return the first rule matching the symbolic name, <code>null</code> if
+     *         there is none
+     */
+    public RetentionRule match(String symbolicName) {
+        int best = trie.match(symbolicName);
+        for (int i = 0; i < globs.size(); i++) {
+            final int index = globRules.get(i);
+            if (index < best && globs.get(i).matcher(symbolicName).matches()) {
+                best = index;
+            }
+        }
+        return best == NameTrie.NO_MATCH ? null : rules.get(best);
+    }
+
+    /**
+     * @return rules in the order of the rules file
+     */
+    public List<RetentionRule> getRules() {
+        return rules;
+    }
+
+    public boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    /**
+     * @return <code>true</code> if any rule keeps more than the newest
+     *         version
+     */
+    public boolean retainsSeveralVersions() {
+        for (RetentionRule rule : rules) {
+            if (rule.getVersions() > 1) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
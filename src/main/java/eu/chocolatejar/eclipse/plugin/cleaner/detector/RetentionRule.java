@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner.detector;
+
+import eu.chocolatejar.eclipse.plugin.cleaner.model.Artifact;
+
+/**
+ * A single line of a {@link RetentionPolicy}, applied to artifacts whose
+ * symbolic name matches its pattern.
+ */
+public final class RetentionRule {
+
+    /**
+     * What a rule does with the artifacts it matches.
+     */
+    public enum Action {
+        /**
+         * Artifacts are never duplicates.
+         */
+        PIN("pin"),
+        /**
+         * The given number of newest versions is kept, older versions are
+         * duplicates.
+         */
+        KEEP("keep"),
+        /**
+         * Artifacts modified within the given age are never duplicates.
+         */
+        MIN_AGE("min-age");
+
+        private final String keyword;
+
+        private Action(String keyword) {
+            this.keyword = keyword;
+        }
+
+        /**
+         * @return the keyword used in a rules file
+         */
+        public String getKeyword() {
+            return keyword;
+        }
+
+        /**
+         * @return <code>null</code> if there is no such keyword
+         */
+        static Action fromKeyword(String keyword) {
+            for (Action action : values()) {
+                if (action.keyword.equals(keyword)) {
+                    return action;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final Action action;
+    private final String pattern;
+    private final int versions;
+    private final long modifiedAfter;
+    private final String text;
+    private final int line;
+
+    /**
+     * @param versions
+     *            the number of kept versions, <code>1</code> unless
+     *            {@link Action#KEEP}
+     * @param modifiedAfter
+     *            artifacts modified later are kept by {@link Action#MIN_AGE}
+     * @param text
+     *            of the rule as written in the rules file
+     * @param line
+     *            the number of the line in the rules file, starting with
+     *            <code>1</code>
+     */
+    RetentionRule(Action action, String pattern, int versions, long modifiedAfter, String text, int line) {
+        this.action = action;
+        this.pattern = pattern;
+        this.versions = versions;
+        this.modifiedAfter = modifiedAfter;
+        this.text = text;
+        this.line = line;
+    }
+
+    public Action getAction() {
+        return action;
+    }
+
+    /**
+     * @return a symbolic name, <code>*</code> matches any characters
+     */
+    public String getPattern() {
+        return pattern;
+    }
+
+    /**
+     * @return the number of newest versions kept
+     */
+    public int getVersions() {
+        return versions;
+    }
+
+    /**
+     * @return the number of the line in the rules file
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * @return <code>true</code> if the artifact must not be a duplicate
+     *         regardless of its version
+     */
+    public boolean protects(Artifact artifact) {
+        switch (action) {
+        case PIN:
+            return true;
+        case MIN_AGE:
+            return artifact.getLocation().lastModified() > modifiedAfter;
+        default:
+            return false;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "'" + text + "' (line " + line + ")";
+    }
+}
@@ -15,23 +15,18 @@
  *******************************************************************************/
 package eu.chocolatejar.eclipse.plugin.cleaner.detector;
 
-import eu.chocolatejar.eclipse.plugin.cleaner.model.Artifact;
-
 /**
- * Resolves duplicates regardless their location.
+ * Resolves duplicates regardless their location. Among bundles with the same
+ * version the one outside of the dropins folder is kept, then the one with the
+ * lexicographically first location.
  */
 public class UnlimitedDuplicationDetector extends AbstractDuplicationDetector {
 
-    /**
-     * Since the artifact and the master have the same version but are located
-     * in a different folder we can choose one of them as to be marked as a
-     * duplicate.
-     * 
-     * This implementation keeps the current master as a master and the artifact
-     * as a duplicate.
-     */
-    @Override
-    protected void detectDuplicateForSameVersions(Artifact artifact, Artifact master) {
-        keepAsDuplicate(artifact);
+    public UnlimitedDuplicationDetector() {
+        super();
+    }
+
+    public UnlimitedDuplicationDetector(int parallelism, boolean byContent, RetentionPolicy policy) {
+        super(parallelism, byContent, policy);
     }
 }
\ No newline at end of file
@@ -16,6 +16,8 @@
 package eu.chocolatejar.eclipse.plugin.cleaner.model;
 
 import java.io.File;
+import java.util.Collections;
+import java.util.List;
 
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -27,7 +29,7 @@ import eu.chocolatejar.eclipse.plugin.cleaner.util.DropinsFilter;
  * Represents a bundle with a version. The version is obtained via manifest or
  * via filename. The artifact can be file based (jar) or a folder.
  * 
- * Comparison is based on purely on the version.
+ * Comparison is based on purely on the version, see {@link VersionKey}.
  * 
  * HashCode and Equals are based on {@link #file} & {@link #bundleSymbolicName}
  * & {@link #bundleVersion}.
@@ -39,8 +41,11 @@ public class Artifact implements Comparable<Artifact> {
     private final File location;
     private final String bundleSymbolicName;
     private final Version bundleVersion;
+    private final VersionKey versionKey;
 
-    private Artifact master;
+    private final List<Requirement> requirements;
+    private final LocationClass locationClass;
+    private final String fingerprint;
 
     /**
      * This constructor is not intendet to be used
@@ -50,9 +55,44 @@ public class Artifact implements Comparable<Artifact> {
      * @param bundleVersion
      */
     public Artifact(File location, String bundleSymbolicName, String bundleVersion) {
+        this(location, bundleSymbolicName, new Version(bundleVersion));
+    }
+
+    /**
+     * Creates an artifact with an already parsed version.
+     * 
+     * @param location
+     * @param bundleSymbolicName
+     * @param bundleVersion
+     */
+    public Artifact(File location, String bundleSymbolicName, Version bundleVersion) {
+        this(location, bundleSymbolicName, bundleVersion, null, null, null);
+    }
+
+    /**
+     * Creates an artifact with all the values known after a scan.
+     * 
+     * @param location
+     * @param bundleSymbolicName
+     * @param bundleVersion
+     * @param requirements
+     *            mandatory requirements on other bundles, <code>null</code> if
+     *            none
+     * @param locationClass
+     *            the root folder where the artifact has been found,
+     *            <code>null</code> if unknown
+     * @param fingerprint
+     *            a digest of the content, <code>null</code> if not computed
+     */
+    public Artifact(File location, String bundleSymbolicName, Version bundleVersion, List<Requirement> requirements,
+            LocationClass locationClass, String fingerprint) {
         this.location = location;
         this.bundleSymbolicName = StringUtils.substringBefore(bundleSymbolicName, ";");
-        this.bundleVersion = new Version(bundleVersion);
+        this.bundleVersion = bundleVersion;
+        this.versionKey = new VersionKey(bundleVersion);
+        this.requirements = requirements == null ? Collections.<Requirement> emptyList() : requirements;
+        this.locationClass = locationClass;
+        this.fingerprint = fingerprint;
 
         if (StringUtils.isBlank(bundleSymbolicName)) {
             throw new IllegalArgumentException("Invalid bundle name for: " + location);
@@ -65,23 +105,51 @@ public class Artifact implements Comparable<Artifact> {
             // is newer than nothing
             return 1;
         }
-        return normalizeQualifier(getVersion()).compareTo(normalizeQualifier(o.getVersion()));
+        return versionKey.compareTo(o.versionKey);
     }
 
+    /**
+     * @return the version with the qualifier compared by {@link #compareTo}
+     * @see VersionKey
+     */
     protected static Version normalizeQualifier(Version orig) {
-        String normalizedQualifier = orig.getQualifier().replaceAll("v", "");
-        normalizedQualifier = normalizedQualifier.replaceAll("-", "");
-        return new Version(orig.getMajor(), orig.getMinor(), orig.getMicro(), normalizedQualifier);
+        return new Version(orig.getMajor(), orig.getMinor(), orig.getMicro(), VersionKey.normalize(orig
+                .getQualifier()));
     }
 
     /**
+     * Uses the location class recorded during the scan. An artifact without it
+     * is classified by its path.
+     * 
      * @return whether the artifact is located within the
      *         <strong>dropins</strong> folder
      */
     public boolean isInDropinsFolder() {
+        if (locationClass != null) {
+            return locationClass.isDropins();
+        }
         return DROPINS_FILTER.accept(getLocation());
     }
 
+    /**
+     * @return the root folder where the artifact has been found or
+     *         <code>null</code> if unknown
+     */
+    public LocationClass getLocationClass() {
+        return locationClass;
+    }
+
+    /**
+     * The location class is known only to the scan, which finds the artifact
+     * in one of the root folders.
+     * 
+     * @return a copy of this artifact with the given location class
+     * @see #getLocationClass()
+     */
+    public Artifact withLocationClass(LocationClass locationClass) {
+        return new Artifact(location, bundleSymbolicName, bundleVersion, requirements, locationClass, fingerprint);
+    }
+
     /**
      * The location of this bundle.
      * 
@@ -106,27 +174,33 @@ public class Artifact implements Comparable<Artifact> {
     }
 
     /**
-     * Indicates which artifact is duplicated by this artifact. The master
-     * artifact represents a "version parent" of this artifact.
-     * 
-     * The value of this field is set by a {@link DuplicationDetector}.
+     * Mandatory requirements on other bundles, features have none.
      * 
-     * @return Non-<code>null</code> value of the master indicates that this
-     *         artifact is a duplicate of the master.
+     * @return never <code>null</code>
+     */
+    public List<Requirement> getRequirements() {
+        return requirements;
+    }
+
+    /**
+     * A digest of the content of the artifact, equal for byte identical
+     * copies regardless of their location.
      * 
-     *         <code>null</code> indicates that this artifact is master and has
-     *         no duplicates e.g. has no better alternative during a
-     *         duplications detection.
+     * @return <code>null</code> if not computed
      */
-    public Artifact getMaster() {
-        return master;
+    public String getFingerprint() {
+        return fingerprint;
     }
 
     /**
-     * @see #getMaster()
+     * The fingerprint is computed after the manifest is parsed, and only when
+     * content fingerprints are enabled.
+     * 
+     * @return a copy of this artifact with the given fingerprint
+     * @see #getFingerprint()
      */
-    public void setMaster(Artifact parent) {
-        this.master = parent;
+    public Artifact withFingerprint(String fingerprint) {
+        return new Artifact(location, bundleSymbolicName, bundleVersion, requirements, locationClass, fingerprint);
     }
 
     @Override
@@ -168,11 +242,6 @@ public class Artifact implements Comparable<Artifact> {
 
     @Override
     public String toString() {
-        return getArtifactNameVersionAndLocation()
-                + (getMaster() == null ? "" : " duplicates " + getMaster().getArtifactNameVersionAndLocation());
-    }
-
-    private String getArtifactNameVersionAndLocation() {
         return "'" + getSymbolicName() + " #" + getVersion() + " @"
                 + FilenameUtils.getPathNoEndSeparator(location.getPath()) + "'";
     }
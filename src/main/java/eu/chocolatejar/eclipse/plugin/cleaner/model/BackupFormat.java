@@ -0,0 +1,33 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner.model;
+
+/**
+ * Represents how removed duplicates are backed up.
+ */
+public enum BackupFormat {
+
+    /**
+     * Duplicates are moved into the back up folder as they are.
+     */
+    folder,
+
+    /**
+     * Duplicates are compressed into a single zip archive next to the back
+     * up folder.
+     */
+    zip
+}
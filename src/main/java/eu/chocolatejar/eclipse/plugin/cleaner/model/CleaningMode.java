@@ -16,7 +16,6 @@
 package eu.chocolatejar.eclipse.plugin.cleaner.model;
 
 import eu.chocolatejar.eclipse.plugin.cleaner.detector.DropinsOnlyDuplicationDetector;
-import eu.chocolatejar.eclipse.plugin.cleaner.detector.PrefereDropinsDuplicationDetector;
 import eu.chocolatejar.eclipse.plugin.cleaner.detector.UnlimitedDuplicationDetector;
 
 /**
@@ -37,7 +36,8 @@ public enum CleaningMode {
     dropinsOnly,
 
     /**
-     * @see PrefereDropinsDuplicationDetector
+     * @deprecated decides the same way as {@link #unlimited}
      */
+    @Deprecated
     prefereDropins
 }
\ No newline at end of file
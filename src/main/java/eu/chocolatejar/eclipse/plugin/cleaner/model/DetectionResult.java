@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable result of a {@link DuplicationDetector}.
+ * 
+ * The result consists of decisions of all groups with more than one artifact.
+ * Each group has a single master, the other artifacts of the group are either
+ * duplicates of the master or kept, if the detector doesn't allow them to be
+ * duplicates (e.g. artifacts outside of the dropins folder or retained by a
+ * rule). Artifacts are not modified by the detection.
+ */
+public final class DetectionResult {
+
+    /**
+     * A result without any duplicates.
+     */
+    public static final DetectionResult EMPTY = new DetectionResult(Collections.<Group> emptyList());
+
+    private final List<Group> groups;
+    private final Map<Artifact, Artifact> masters;
+
+    /**
+     * @param groups
+     *            decisions of groups, an artifact must be within a single
+     *            group only
+     */
+    public DetectionResult(List<Group> groups) {
+        Map<Artifact, Artifact> masters = new HashMap<>();
+        for (Group group : groups) {
+            for (Artifact duplicate : group.getDuplicates()) {
+                masters.put(duplicate, group.getMaster());
+            }
+        }
+        this.groups = Collections.unmodifiableList(new ArrayList<>(groups));
+        this.masters = Collections.unmodifiableMap(masters);
+    }
+
+    /**
+     * @return duplicated artifacts, never <code>null</code>
+     */
+    public Set<Artifact> getDuplicates() {
+        return masters.keySet();
+    }
+
+    /**
+     * @return <code>true</code> if the artifact is a duplicate
+     */
+    public boolean isDuplicate(Artifact artifact) {
+        return masters.containsKey(artifact);
+    }
+
+    /**
+     * Indicates which artifact is duplicated by the given one. The master
+     * represents a "version parent" of the duplicate.
+     * 
+     * @return <code>null</code> if the artifact is not a duplicate
+     */
+    public Artifact getMaster(Artifact duplicate) {
+        return masters.get(duplicate);
+    }
+
+    /**
+     * @return the master of each duplicate, never <code>null</code>
+     */
+    public Map<Artifact, Artifact> getMastersOfDuplicates() {
+        return masters;
+    }
+
+    /**
+     * @return masters of all groups, including groups without any duplicate
+     */
+    public Set<Artifact> getMasters() {
+        Set<Artifact> result = new HashSet<>(groups.size());
+        for (Group group : groups) {
+            result.add(group.getMaster());
+        }
+        return Collections.unmodifiableSet(result);
+    }
+
+    /**
+     * @return decisions of all groups with more than one artifact
+     */
+    public List<Group> getGroups() {
+        return groups;
+    }
+
+    /**
+     * Combines results of detections over disjoint groups, e.g. the detection
+     * by symbolic names and the detection by content of the remaining
+     * artifacts.
+     * 
+     * @return a new result, never <code>null</code>
+     */
+    public DetectionResult union(DetectionResult other) {
+        if (other.groups.isEmpty()) {
+            return this;
+        }
+        if (groups.isEmpty()) {
+            return other;
+        }
+        List<Group> all = new ArrayList<>(groups.size() + other.groups.size());
+        all.addAll(groups);
+        all.addAll(other.groups);
+        return new DetectionResult(all);
+    }
+
+    @Override
+    public String toString() {
+        return groups.size() + " groups, " + masters.size() + " duplicates";
+    }
+
+    /**
+     * The decision made for a group of artifacts with the same key, either
+     * the symbolic name or the fingerprint.
+     */
+    public static final class Group {
+
+        private final String key;
+        private final Artifact master;
+        private final List<Artifact> duplicates;
+        private final List<Artifact> kept;
+        private final String rule;
+
+        /**
+         * @param key
+         *            the symbolic name or the fingerprint shared by the group
+         * @param master
+         *            the artifact that won over all other ones
+         * @param duplicates
+         *            duplicates of the master
+         * @param kept
+         *            artifacts that are neither the master nor duplicates
+         */
+        public Group(String key, Artifact master, List<Artifact> duplicates, List<Artifact> kept) {
+            this(key, master, duplicates, kept, null);
+        }
+
+        /**
+         * @param key
+         *            the symbolic name or the fingerprint shared by the group
+         * @param master
+         *            the artifact that won over all other ones
+         * @param duplicates
+         *            duplicates of the master
+         * @param kept
+         *            artifacts that are neither the master nor duplicates
+         * @param rule
+         *            describes the rule that decided the group,
+         *            <code>null</code> if decided by the cleaning mode only
+         */
+        public Group(String key, Artifact master, List<Artifact> duplicates, List<Artifact> kept, String rule) {
+            this.rule = rule;
+            this.key = key;
+            this.master = master;
+            this.duplicates = Collections.unmodifiableList(new ArrayList<>(duplicates));
+            this.kept = kept.isEmpty() ? Collections.<Artifact> emptyList() : Collections
+                    .unmodifiableList(new ArrayList<>(kept));
+        }
+
+        /**
+         * @return the symbolic name or the fingerprint shared by the group
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @return never <code>null</code>
+         */
+        public Artifact getMaster() {
+            return master;
+        }
+
+        /**
+         * @return duplicates of the master, never <code>null</code>
+         */
+        public List<Artifact> getDuplicates() {
+            return duplicates;
+        }
+
+        /**
+         * @return artifacts that are not the master but can't be duplicates,
+         *         never <code>null</code>
+         */
+        public List<Artifact> getKept() {
+            return kept;
+        }
+
+        /**
+         * @return describes the rule that decided the group, <code>null</code>
+         *         if decided by the cleaning mode only
+         */
+        public String getRule() {
+            return rule;
+        }
+
+        @Override
+        public String toString() {
+            return key + ": " + master + " over " + duplicates + (kept.isEmpty() ? "" : ", keeping " + kept)
+                    + (rule == null ? "" : " by the rule " + rule);
+        }
+    }
+}
@@ -19,6 +19,9 @@ import java.util.Set;
 
 /**
  * Detects duplicates between artifacts.
+ * 
+ * Implementations are stateless, a single instance may serve repeated and
+ * concurrent calls. Neither the artifacts nor the given set are modified.
  */
 public interface DuplicationDetector {
 
@@ -27,8 +30,17 @@ public interface DuplicationDetector {
      * 
      * @param artifacts
      *            to clean up
-     * @return duplicated artifacts, never <code>null</code>
+     * @return an immutable result, never <code>null</code>
      */
-    Set<Artifact> getDuplicates(Set<Artifact> artifacts);
+    DetectionResult detect(Set<Artifact> artifacts);
 
-}
\ No newline at end of file
+    /**
+     * Creates a new streaming detector making the same decisions. The state
+     * of the stream is held by the returned object, not by this detector.
+     * 
+     * @param listener
+     *            receives duplicates as soon as they are known
+     * @return never <code>null</code>
+     */
+    StreamingDuplicationDetector createStreamingDetector(DuplicationListener listener);
+}
@@ -0,0 +1,36 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner.model;
+
+/**
+ * Receives duplicates found by a {@link StreamingDuplicationDetector}.
+ */
+public interface DuplicationListener {
+
+    /**
+     * Called as soon as the artifact is known to be a duplicate. The master is
+     * the artifact that won over the duplicate, it may become a duplicate
+     * itself later.
+     * 
+     * The method may be called concurrently from several threads.
+     * 
+     * @param duplicate
+     *            never <code>null</code>
+     * @param master
+     *            never <code>null</code>
+     */
+    void duplicateFound(Artifact duplicate, Artifact master);
+}
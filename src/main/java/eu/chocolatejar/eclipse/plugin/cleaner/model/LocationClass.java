@@ -0,0 +1,51 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner.model;
+
+/**
+ * Classifies the root folder an artifact has been found in.
+ */
+public enum LocationClass {
+
+    /**
+     * <code>plugins</code> or <code>features</code> of the installation
+     */
+    INSTALLATION(false),
+
+    /**
+     * <code>dropins/eclipse/plugins</code> or
+     * <code>dropins/eclipse/features</code>
+     */
+    DROPINS_ECLIPSE(true),
+
+    /**
+     * <code>dropins/plugins</code> or <code>dropins/features</code>
+     */
+    DROPINS(true);
+
+    private final boolean dropins;
+
+    private LocationClass(boolean dropins) {
+        this.dropins = dropins;
+    }
+
+    /**
+     * @return whether the root is within the <strong>dropins</strong> folder
+     */
+    public boolean isDropins() {
+        return dropins;
+    }
+}
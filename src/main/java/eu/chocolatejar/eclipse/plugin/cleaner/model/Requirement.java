@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner.model;
+
+/**
+ * A mandatory requirement of a bundle on an other bundle, declared by
+ * <code>Require-Bundle</code> or <code>Fragment-Host</code>.
+ */
+public final class Requirement {
+
+    private final String symbolicName;
+    private final VersionRange versionRange;
+
+    /**
+     * @param symbolicName
+     *            of the required bundle
+     * @param versionRange
+     *            {@link VersionRange#ANY} if not specified
+     */
+    public Requirement(String symbolicName, VersionRange versionRange) {
+        this.symbolicName = symbolicName;
+        this.versionRange = versionRange;
+    }
+
+    /**
+     * @return the symbolic name of the required bundle
+     */
+    public String getSymbolicName() {
+        return symbolicName;
+    }
+
+    /**
+     * @return never <code>null</code>
+     */
+    public VersionRange getVersionRange() {
+        return versionRange;
+    }
+
+    /**
+     * @return <code>true</code> if the artifact satisfies this requirement
+     */
+    public boolean isSatisfiedBy(Artifact artifact) {
+        return symbolicName.equals(artifact.getSymbolicName()) && versionRange.includes(artifact.getVersion());
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * symbolicName.hashCode() + versionRange.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof Requirement)) {
+            return false;
+        }
+        Requirement other = (Requirement) obj;
+        return symbolicName.equals(other.symbolicName) && versionRange.equals(other.versionRange);
+    }
+
+    @Override
+    public String toString() {
+        return symbolicName + ";bundle-version=\"" + versionRange + "\"";
+    }
+}
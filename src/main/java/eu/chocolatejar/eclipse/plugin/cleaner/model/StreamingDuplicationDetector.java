@@ -0,0 +1,47 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner.model;
+
+/**
+ * Detects duplicates among artifacts added one by one, e.g. while the
+ * installation is still being scanned.
+ * 
+ * Only the current master of each symbolic name is kept, so the memory is
+ * bounded by the number of distinct symbolic names. Duplicates are reported to
+ * a {@link DuplicationListener} and not retained.
+ * 
+ * Ties among the same versions are broken by the location, so the reported
+ * duplicates are the same as of {@link DuplicationDetector#detect(java.util.Set)}
+ * regardless of the order the artifacts are added in. Only a retention rule
+ * keeping more than the newest version is not honoured, and bundles still
+ * required by others are not checked.
+ */
+public interface StreamingDuplicationDetector {
+
+    /**
+     * Adds an artifact, the listener is notified (in the calling thread)
+     * about duplicates resolved by it. Thread safe.
+     * 
+     * @param artifact
+     *            never <code>null</code>
+     */
+    void add(Artifact artifact);
+
+    /**
+     * @return the number of artifacts added so far
+     */
+    int getArtifactsCount();
+}
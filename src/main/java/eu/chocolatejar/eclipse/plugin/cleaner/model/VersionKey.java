@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner.model;
+
+import org.osgi.framework.Version;
+
+/**
+ * A precomputed key ordering versions the way {@link Artifact} compares them.
+ *
+ * The qualifier is normalized by removing all <code>v</code> and
+ * <code>-</code> characters, so <code>v20130514-0733</code> and
+ * <code>201305140733</code> are directly comparable. Normalized qualifiers
+ * consisting of digits only (all common Eclipse timestamps) are decoded into
+ * a <code>long</code> padded to {@link #MAX_TIMESTAMP_LENGTH} digits. Other
+ * qualifiers are compared as strings.
+ *
+ * The padding keeps the order of digit only qualifiers identical to the
+ * lexicographic order of their strings, the shorter qualifier wins a tie
+ * (e.g. <code>20140620</code> is older than <code>201406200000</code>).
+ *
+ * Comparing two keys doesn't allocate.
+ */
+final class VersionKey implements Comparable<VersionKey> {
+
+    /**
+     * The longest digit only qualifier that fits into a <code>long</code>.
+     */
+    static final int MAX_TIMESTAMP_LENGTH = 18;
+
+    private static final long NOT_A_TIMESTAMP = -1;
+
+    private final int major;
+    private final int minor;
+    private final int micro;
+    private final String qualifier;
+    private final long timestamp;
+
+    VersionKey(Version version) {
+        this.major = version.getMajor();
+        this.minor = version.getMinor();
+        this.micro = version.getMicro();
+        this.qualifier = normalize(version.getQualifier());
+        this.timestamp = decodeTimestamp(qualifier);
+    }
+
+    @Override
+    public int compareTo(VersionKey o) {
+        if (major != o.major) {
+            return major < o.major ? -1 : 1;
+        }
+        if (minor != o.minor) {
+            return minor < o.minor ? -1 : 1;
+        }
+        if (micro != o.micro) {
+            return micro < o.micro ? -1 : 1;
+        }
+        if (timestamp != NOT_A_TIMESTAMP && o.timestamp != NOT_A_TIMESTAMP) {
+            if (timestamp != o.timestamp) {
+                return timestamp < o.timestamp ? -1 : 1;
+            }
+            return Integer.compare(qualifier.length(), o.qualifier.length());
+        }
+        return qualifier.compareTo(o.qualifier);
+    }
+
+    /**
+     * @return the qualifier without <code>v</code> and <code>-</code>
+     */
+    static String normalize(String qualifier) {
+        if (qualifier.indexOf('v') < 0 && qualifier.indexOf('-') < 0) {
+            return qualifier;
+        }
+        StringBuilder normalized = new StringBuilder(qualifier.length());
+        for (int i = 0; i < qualifier.length(); i++) {
+            char c = qualifier.charAt(i);
+            if (c != 'v' && c != '-') {
+                normalized.append(c);
+            }
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * @return {@link #NOT_A_TIMESTAMP} if the qualifier is not made of digits
+     *         only
+     */
+    private static long decodeTimestamp(String qualifier) {
+        final int length = qualifier.length();
+        if (length == 0 || length > MAX_TIMESTAMP_LENGTH) {
+            return NOT_A_TIMESTAMP;
+        }
+        long value = 0;
+        for (int i = 0; i < MAX_TIMESTAMP_LENGTH; i++) {
+            int digit = 0;
+            if (i < length) {
+                char c = qualifier.charAt(i);
+                if (c < '0' || c > '9') {
+                    return NOT_A_TIMESTAMP;
+                }
+                digit = c - '0';
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner.model;
+
+import org.osgi.framework.Version;
+
+/**
+ * A version range of a requirement header, e.g. the
+ * <code>bundle-version</code> attribute of <code>Require-Bundle</code>.
+ * 
+ * The syntax follows the specification (
+ * http://www.osgi.org/download/r4v43/osgi.core-4.3.0.pdf chapter 3.2.6 )
+ * 
+ * <pre>
+ * version-range ::= interval | atleast
+ * 
+ * interval ::= ( '[' | '(' ) floor ',' ceiling ( ']' | ')' )
+ * 
+ * atleast ::= version
+ * </pre>
+ * 
+ * Versions are compared as defined by {@link Version#compareTo(Version)}, the
+ * same way a framework resolves the requirement.
+ */
+public final class VersionRange {
+
+    /**
+     * Matches every version, used when a requirement has no version range.
+     */
+    public static final VersionRange ANY = new VersionRange(true, Version.emptyVersion, null, false);
+
+    private final boolean floorIncluded;
+    private final Version floor;
+    private final Version ceiling;
+    private final boolean ceilingIncluded;
+
+    private VersionRange(boolean floorIncluded, Version floor, Version ceiling, boolean ceilingIncluded) {
+        this.floorIncluded = floorIncluded;
+        this.floor = floor;
+        this.ceiling = ceiling;
+        this.ceilingIncluded = ceilingIncluded;
+    }
+
+    /**
+     * @param range
+     *            an interval or a single version meaning "at least", may be
+     *            surrounded by quotes
+     * @return never <code>null</code>
+     * @throws IllegalArgumentException
+     *             if the range is invalid
+     */
+    public static VersionRange parse(String range) {
+        String s = range.trim();
+        if (s.length() >= 2 && s.charAt(0) == '"' && s.charAt(s.length() - 1) == '"') {
+            s = s.substring(1, s.length() - 1).trim();
+        }
+        if (s.isEmpty()) {
+            throw new IllegalArgumentException("Empty version range.");
+        }
+
+        final char first = s.charAt(0);
+        if (first != '[' && first != '(') {
+            return new VersionRange(true, Version.parseVersion(s), null, false);
+        }
+
+        final char last = s.charAt(s.length() - 1);
+        final int comma = s.indexOf(',');
+        if ((last != ']' && last != ')') || comma < 0) {
+            throw new IllegalArgumentException("Invalid version range '" + range + "'.");
+        }
+        Version floor = Version.parseVersion(s.substring(1, comma).trim());
+        Version ceiling = Version.parseVersion(s.substring(comma + 1, s.length() - 1).trim());
+        return new VersionRange(first == '[', floor, ceiling, last == ']');
+    }
+
+    /**
+     * @return <code>true</code> if the version is within this range
+     */
+    public boolean includes(Version version) {
+        final int toFloor = version.compareTo(floor);
+        if (toFloor < 0 || (toFloor == 0 && !floorIncluded)) {
+            return false;
+        }
+        if (ceiling == null) {
+            return true;
+        }
+        final int toCeiling = version.compareTo(ceiling);
+        return toCeiling < 0 || (toCeiling == 0 && ceilingIncluded);
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + (floorIncluded ? 1231 : 1237);
+        result = prime * result + floor.hashCode();
+        result = prime * result + ((ceiling == null) ? 0 : ceiling.hashCode());
+        result = prime * result + (ceilingIncluded ? 1231 : 1237);
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof VersionRange)) {
+            return false;
+        }
+        VersionRange other = (VersionRange) obj;
+        return floorIncluded == other.floorIncluded && floor.equals(other.floor)
+                && (ceiling == null ? other.ceiling == null : ceiling.equals(other.ceiling))
+                && ceilingIncluded == other.ceilingIncluded;
+    }
+
+    /**
+     * @return the range in the header syntax, it can be parsed back
+     */
+    @Override
+    public String toString() {
+        if (ceiling == null) {
+            return floor.toString();
+        }
+        return (floorIncluded ? "[" : "(") + floor + "," + ceiling + (ceilingIncluded ? "]" : ")");
+    }
+}
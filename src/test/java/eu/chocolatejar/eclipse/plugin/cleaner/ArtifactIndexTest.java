@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+
+import org.junit.Test;
+
+import eu.chocolatejar.eclipse.plugin.cleaner.model.Artifact;
+
+public class ArtifactIndexTest {
+
+    @Test
+    public void groupsBySymbolicName() {
+        ArtifactIndex index = new ArtifactIndex();
+        Artifact a1 = new Artifact(new File("a_1.0.0.jar"), "a", "1.0.0");
+        Artifact a2 = new Artifact(new File("a_2.0.0.jar"), "a", "2.0.0");
+        Artifact b1 = new Artifact(new File("b_1.0.0.jar"), "b", "1.0.0");
+        index.put(a1);
+        index.put(a2);
+        index.put(b1);
+
+        assertThat(index.size()).isEqualTo(3);
+        assertThat(index.getGroup("a")).containsOnly(a1, a2);
+        assertThat(index.getGroup("c")).isEmpty();
+
+        assertThat(index.remove(new File("a_1.0.0.jar"))).isEqualTo(a1);
+        assertThat(index.remove(new File("a_1.0.0.jar"))).isNull();
+        assertThat(index.getGroup("a")).containsOnly(a2);
+        assertThat(index.getAll()).containsOnly(a2, b1);
+    }
+
+    @Test
+    public void replacesArtifactAtTheSameLocation() {
+        ArtifactIndex index = new ArtifactIndex();
+        File location = new File("bundle");
+        Artifact old = new Artifact(location, "a", "1.0.0");
+        Artifact renamed = new Artifact(location, "b", "1.0.0");
+        index.put(old);
+
+        assertThat(index.put(renamed)).isEqualTo(old);
+        assertThat(index.getGroup("a")).isEmpty();
+        assertThat(index.getGroup("b")).containsOnly(renamed);
+        assertThat(index.size()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,227 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BackupArchiveTest {
+
+    File eclipse;
+    File archiveFile;
+
+    @Before
+    public void before() throws IOException {
+        eclipse = Files.createTempDirectory("backup-archive-").toFile();
+        archiveFile = new File(eclipse, "duplicates.zip");
+    }
+
+    @After
+    public void after() throws IOException {
+        FileUtils.deleteDirectory(eclipse);
+    }
+
+    private File jar(String name) throws IOException {
+        File jar = FileUtils.getFile(eclipse, "dropins", "plugins", name);
+        FileUtils.writeStringToFile(jar, "jar " + name);
+        assertThat(jar.setLastModified(1400000000000L)).isTrue();
+        return jar;
+    }
+
+    private File folder(String name) throws IOException {
+        File folder = FileUtils.getFile(eclipse, "dropins", "plugins", name);
+        FileUtils.writeStringToFile(FileUtils.getFile(folder, "META-INF", "MANIFEST.MF"),
+                "Bundle-SymbolicName: a\nBundle-SymbolicName: a\nBundle-SymbolicName: a\n");
+        FileUtils.writeStringToFile(FileUtils.getFile(folder, "a", "A.class"), "class A");
+        assertThat(FileUtils.getFile(folder, "empty").mkdir()).isTrue();
+        return folder;
+    }
+
+    @Test
+    public void duplicatesAreArchivedAndDeleted() throws IOException {
+        File jar = jar("a_1.0.0.jar");
+        File folder = folder("a_2.0.0");
+
+        try (BackupArchive archive = new BackupArchive(archiveFile, 4)) {
+            archive.add(Arrays.asList(jar, folder), Cleaner.PLUGINS);
+            assertThat(archive.getArchived()).isEqualTo(2);
+        }
+
+        assertThat(jar).doesNotExist();
+        assertThat(folder).doesNotExist();
+        try (ZipFile zip = new ZipFile(archiveFile)) {
+            assertThat(zip.getEntry("plugins/a_1.0.0.jar").getMethod()).isEqualTo(ZipEntry.STORED);
+            assertThat(zip.getEntry("plugins/a_2.0.0/").isDirectory()).isTrue();
+            assertThat(zip.getEntry("plugins/a_2.0.0/empty/").isDirectory()).isTrue();
+            assertThat(zip.getEntry("plugins/a_2.0.0/META-INF/MANIFEST.MF").getMethod()).isEqualTo(ZipEntry.DEFLATED);
+            assertThat(zip.size()).isEqualTo(7);
+        }
+    }
+
+    @Test
+    public void duplicatesAreRestoredToTheirLocations() throws IOException {
+        File jar = jar("a_1.0.0.jar");
+        File folder = folder("a_2.0.0");
+        File large = new File(folder, "large.bin");
+        byte[] content = new byte[(int) BackupArchive.LARGE_FILE + 1];
+        new Random(42).nextBytes(content);
+        FileUtils.writeByteArrayToFile(large, content);
+        File copy = new File(eclipse, "copy");
+        FileUtils.copyDirectory(folder, copy);
+
+        try (BackupArchive archive = new BackupArchive(archiveFile, 2)) {
+            archive.add(Arrays.asList(jar, folder), Cleaner.PLUGINS);
+        }
+
+        assertThat(BackupArchive.restore(archiveFile, Collections.<String> emptyList(), null)).isEqualTo(2);
+        assertThat(FileUtils.readFileToString(jar)).isEqualTo("jar a_1.0.0.jar");
+        assertThat(jar.lastModified()).isEqualTo(1400000000000L);
+        assertThat(FileUtils.readFileToByteArray(large)).isEqualTo(content);
+        assertThat(FileUtils.getFile(folder, "empty")).isDirectory();
+        assertThat(FileUtils.readFileToString(FileUtils.getFile(folder, "META-INF", "MANIFEST.MF"))).isEqualTo(
+                FileUtils.readFileToString(FileUtils.getFile(copy, "META-INF", "MANIFEST.MF")));
+    }
+
+    @Test
+    public void singleBundleIsRestoredIntoDestination() throws IOException {
+        File jar = jar("a_1.0.0.jar");
+        File folder = folder("a_2.0.0");
+        File other = jar("b_1.0.0.jar");
+        try (BackupArchive archive = new BackupArchive(archiveFile, 2)) {
+            archive.add(Arrays.asList(jar, folder, other), Cleaner.PLUGINS);
+        }
+        File destination = new File(eclipse, "restored");
+
+        assertThat(BackupArchive.restore(archiveFile, Arrays.asList("a_2.0.0", "b_*"), destination)).isEqualTo(2);
+
+        assertThat(FileUtils.getFile(destination, "plugins", "a_1.0.0.jar")).doesNotExist();
+        assertThat(FileUtils.getFile(destination, "plugins", "a_2.0.0", "a", "A.class")).exists();
+        assertThat(FileUtils.getFile(destination, "plugins", "b_1.0.0.jar")).exists();
+        assertThat(jar).doesNotExist();
+    }
+
+    @Test
+    public void existingFileIsNotOverwritten() throws IOException {
+        File jar = jar("a_1.0.0.jar");
+        try (BackupArchive archive = new BackupArchive(archiveFile, 1)) {
+            archive.add(Collections.singletonList(jar), Cleaner.PLUGINS);
+        }
+        FileUtils.writeStringToFile(jar, "newer");
+
+        assertThat(BackupArchive.restore(archiveFile, Collections.<String> emptyList(), null)).isEqualTo(0);
+        assertThat(FileUtils.readFileToString(jar)).isEqualTo("newer");
+    }
+
+    @Test
+    public void sameNameIsDeletedDirectly() throws IOException {
+        File jar = jar("a_1.0.0.jar");
+        File sameName = FileUtils.getFile(eclipse, "dropins", "other", "plugins", "a_1.0.0.jar");
+        FileUtils.writeStringToFile(sameName, "other");
+
+        try (BackupArchive archive = new BackupArchive(archiveFile, 2)) {
+            archive.add(Collections.singletonList(jar), Cleaner.PLUGINS);
+            archive.add(Collections.singletonList(sameName), Cleaner.PLUGINS);
+            assertThat(archive.getArchived()).isEqualTo(1);
+        }
+
+        assertThat(sameName).doesNotExist();
+        try (ZipFile zip = new ZipFile(archiveFile)) {
+            assertThat(zip.size()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void sameNameIsKeptIfFirstFails() throws IOException {
+        File folder = folder("a_2.0.0");
+        Files.createSymbolicLink(FileUtils.getFile(folder, "a", "missing").toPath(), new File(eclipse, "missing")
+                .toPath());
+        File sameName = FileUtils.getFile(eclipse, "dropins", "other", "plugins", "a_2.0.0");
+        FileUtils.copyDirectory(FileUtils.getFile(folder, "META-INF"), FileUtils.getFile(sameName, "META-INF"));
+        File destination = new File(eclipse, "restored");
+
+        BackupArchive archive = new BackupArchive(archiveFile, 2);
+        try {
+            archive.add(Arrays.asList(folder, sameName), Cleaner.PLUGINS);
+            assertThat(archive.getArchived()).isEqualTo(0);
+
+            assertThat(BackupArchive.restore(archiveFile, Collections.<String> emptyList(), destination))
+                    .isEqualTo(0);
+        } finally {
+            archive.close();
+        }
+
+        assertThat(folder).exists();
+        assertThat(sameName).exists();
+        assertThat(BackupArchive.restore(archiveFile, Collections.<String> emptyList(), destination)).isEqualTo(0);
+        assertThat(FileUtils.getFile(destination, "plugins", "a_2.0.0")).doesNotExist();
+    }
+
+    @Test
+    public void entryWithoutCountIsNotRestored() throws IOException {
+        try (ZipOutputStream zip = new ZipOutputStream(FileUtils.openOutputStream(archiveFile))) {
+            zip.putNextEntry(new ZipEntry("plugins/a_1.0.0.jar"));
+            zip.write("jar".getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+        File destination = new File(eclipse, "restored");
+
+        assertThat(BackupArchive.restore(archiveFile, Collections.<String> emptyList(), destination)).isEqualTo(0);
+        assertThat(FileUtils.getFile(destination, "plugins", "a_1.0.0.jar")).doesNotExist();
+    }
+
+    @Test
+    public void archiveWithoutCentralDirectoryIsRestored() throws IOException {
+        File jar = jar("a_1.0.0.jar");
+        File folder = folder("a_2.0.0");
+        BackupArchive archive = new BackupArchive(archiveFile, 2);
+        try {
+            archive.add(Arrays.asList(jar, folder), Cleaner.PLUGINS);
+
+            // the run has been interrupted before the archive is closed
+            assertThat(BackupArchive.restore(archiveFile, Collections.singletonList("a_*"), null)).isEqualTo(2);
+        } finally {
+            archive.close();
+        }
+        assertThat(FileUtils.readFileToString(jar)).isEqualTo("jar a_1.0.0.jar");
+        assertThat(FileUtils.getFile(folder, "a", "A.class")).exists();
+    }
+
+    @Test
+    public void existingArchiveIsNotReplaced() throws IOException {
+        FileUtils.writeStringToFile(archiveFile, "previous run");
+        try {
+            new BackupArchive(archiveFile, 1).close();
+            throw new AssertionError("The archive has been replaced.");
+        } catch (IOException e) {
+            assertThat(FileUtils.readFileToString(archiveFile)).isEqualTo("previous run");
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.chocolatejar.eclipse.plugin.cleaner.model.Artifact;
+
+public class BundleReferencesTest {
+
+    File folder;
+
+    @Before
+    public void before() throws IOException {
+        folder = Files.createTempDirectory("bundle-references-").toFile();
+    }
+
+    @After
+    public void after() throws IOException {
+        FileUtils.deleteDirectory(folder);
+    }
+
+    @Test
+    public void bundlesInfo() throws IOException {
+        File bundlesInfo = new File(folder, BundleReferences.BUNDLES_INFO);
+        FileUtils.writeStringToFile(bundlesInfo, "#encoding=UTF-8\n#version=1\n"
+                + "a,1.0.0.v2014,../pool/plugins/a_1.0.0.v2014.jar,4,false\n" + "invalid\n");
+
+        BundleReferences references = BundleReferences.load(Collections.singleton(bundlesInfo));
+
+        assertThat(references.size()).isEqualTo(1);
+        assertThat(references.isReferenced(artifact("a", "1.0.0.v2014"))).isTrue();
+        assertThat(references.isReferenced(artifact("a", "1.0.0"))).isFalse();
+        assertThat(references.isReferenced(artifact("b", "1.0.0.v2014"))).isFalse();
+    }
+
+    @Test
+    public void compressedProfile() throws IOException {
+        File profile = new File(folder, "1400000000000.profile.gz");
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(profile))) {
+            out.write(profile("a", "2.0.0", "f.feature.jar", "1.0.0").getBytes(StandardCharsets.UTF_8));
+        }
+
+        BundleReferences references = BundleReferences.load(Collections.singleton(profile));
+
+        assertThat(references.isReferenced(artifact("a", "2.0.0"))).isTrue();
+        assertThat(references.isReferenced(artifact("f", "1.0.0"))).isTrue();
+    }
+
+    @Test
+    public void installationWithLatestProfileState() throws IOException {
+        File installation = new File(folder, "eclipse");
+        File profileFolder = FileUtils.getFile(installation, "p2", "org.eclipse.equinox.p2.engine",
+                "profileRegistry", "SDKProfile.profile");
+        FileUtils.writeStringToFile(new File(profileFolder, "1400000000000.profile"), profile("a", "1.0.0"));
+        FileUtils.writeStringToFile(new File(profileFolder, "1500000000000.profile"), profile("a", "2.0.0"));
+        FileUtils.writeStringToFile(FileUtils.getFile(installation, "configuration",
+                "org.eclipse.equinox.simpleconfigurator", BundleReferences.BUNDLES_INFO), "b,3.0.0,b.jar,4,false\n");
+
+        BundleReferences references = BundleReferences.load(Arrays.asList(installation));
+
+        assertThat(references.isReferenced(artifact("a", "1.0.0"))).isFalse();
+        assertThat(references.isReferenced(artifact("a", "2.0.0"))).isTrue();
+        assertThat(references.isReferenced(artifact("b", "3.0.0"))).isTrue();
+    }
+
+    @Test(expected = IOException.class)
+    public void missingReference() throws IOException {
+        BundleReferences.load(Collections.singleton(new File(folder, "missing")));
+    }
+
+    private String profile(String... units) {
+        StringBuilder profile = new StringBuilder("<?xml version='1.0' encoding='UTF-8'?>\n<profile id='SDK'><units>");
+        for (int i = 0; i < units.length; i += 2) {
+            profile.append("<unit id='").append(units[i]).append("' version='").append(units[i + 1]).append("'/>");
+        }
+        return profile.append("</units></profile>").toString();
+    }
+
+    private Artifact artifact(String symbolicName, String version) {
+        return new Artifact(new File(symbolicName), symbolicName, version);
+    }
+}
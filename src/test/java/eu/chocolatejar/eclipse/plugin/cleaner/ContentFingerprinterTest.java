@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(JUnitParamsRunner.class)
+public class ContentFingerprinterTest {
+
+    File folder;
+
+    ContentFingerprinter fingerprinter = new ContentFingerprinter(new EntryReader());
+
+    @Before
+    public void before() throws IOException {
+        folder = Files.createTempDirectory("fingerprint-").toFile();
+    }
+
+    @After
+    public void after() throws IOException {
+        FileUtils.deleteDirectory(folder);
+    }
+
+    private static Map<String, String> content(String... namesAndContents) {
+        Map<String, String> entries = new LinkedHashMap<>();
+        for (int i = 0; i < namesAndContents.length; i += 2) {
+            entries.put(namesAndContents[i], namesAndContents[i + 1]);
+        }
+        return entries;
+    }
+
+    private File jar(String name, Map<String, String> entries) throws IOException {
+        File jar = new File(folder, name);
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+            for (Map.Entry<String, String> e : entries.entrySet()) {
+                out.putNextEntry(new ZipEntry(e.getKey()));
+                out.write(e.getValue().getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+        return jar;
+    }
+
+    private File exploded(String name, Map<String, String> entries) throws IOException {
+        File bundle = new File(folder, name);
+        for (Map.Entry<String, String> e : entries.entrySet()) {
+            FileUtils.writeStringToFile(new File(bundle, e.getKey()), e.getValue(), StandardCharsets.UTF_8);
+        }
+        return bundle;
+    }
+
+    @Test
+    public void sameContentDifferentNames() throws IOException {
+        Map<String, String> entries = content("META-INF/MANIFEST.MF", "Bundle-SymbolicName: a\n", "a/A.class",
+                "class A", "plugin.xml", "<plugin/>");
+
+        String fingerprint = fingerprinter.fingerprint(jar("a_1.0.0.jar", entries));
+
+        assertThat(fingerprint).hasSize(40);
+        assertThat(fingerprinter.fingerprint(jar("copy-of-a.jar", entries))).isEqualTo(fingerprint);
+        assertThat(fingerprinter.fingerprint(exploded("a_1.0.0", entries))).isEqualTo(fingerprint);
+    }
+
+    @Test
+    public void orderAndSignatureDontMatter() throws IOException {
+        String unsigned = fingerprinter.fingerprint(jar("a.jar", content("META-INF/MANIFEST.MF",
+                "Bundle-SymbolicName: a\n", "a/A.class", "class A", "a/B.class", "class B")));
+        String signed = fingerprinter.fingerprint(jar("signed.jar", content("META-INF/MANIFEST.MF",
+                "Bundle-SymbolicName: a\nName: a/A.class\nSHA-256-Digest: x\n", "META-INF/ECLIPSE_.SF", "sf",
+                "META-INF/ECLIPSE_.RSA", "rsa", "a/", "", "a/B.class", "class B", "a/A.class", "class A")));
+
+        assertThat(signed).isEqualTo(unsigned);
+    }
+
+    @Test
+    public void differentContent() throws IOException {
+        String a = fingerprinter.fingerprint(jar("a.jar", content("a/A.class", "class A")));
+
+        assertThat(fingerprinter.fingerprint(jar("b.jar", content("a/A.class", "class B")))).isNotEqualTo(a);
+        assertThat(fingerprinter.fingerprint(jar("c.jar", content("a/C.class", "class A")))).isNotEqualTo(a);
+        assertThat(fingerprinter.fingerprint(jar("d.jar", content("a/A.class", "class A", "a/D.class", "")))).isNotEqualTo(a);
+    }
+
+    @Test
+    public void onlyManifest() throws IOException {
+        assertThat(fingerprinter.fingerprint(jar("a.jar", content("META-INF/MANIFEST.MF", "Bundle-SymbolicName: a\n"))))
+                .isNull();
+        assertThat(fingerprinter.fingerprint(exploded("b", content("META-INF/MANIFEST.MF", "Bundle-SymbolicName: b\n"))))
+                .isNull();
+    }
+
+    @Test(expected = IOException.class)
+    public void invalidJar() throws IOException {
+        File jar = new File(folder, "invalid.jar");
+        FileUtils.writeStringToFile(jar, "not a zip file at all");
+        fingerprinter.fingerprint(jar);
+    }
+
+    @Test
+    @Parameters({ "a/A.class | true", //
+            "META-INF/MANIFEST.MF | false", //
+            "meta-inf/manifest.mf | false", //
+            "META-INF/ECLIPSE_.SF | false", //
+            "META-INF/ECLIPSE_.RSA | false", //
+            "META-INF/KEY.DSA | false", //
+            "META-INF/KEY.EC | false", //
+            "META-INF/maven/pom.xml | true", //
+            "META-INF/sub/X.SF | true", //
+            "META-INF/p2.inf | true", //
+            "a/ | false" })
+    public void isContent(String name, boolean content) {
+        assertThat(ContentFingerprinter.isContent(name)).isEqualTo(content);
+    }
+}
@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.chocolatejar.eclipse.plugin.cleaner.model.Artifact;
+import eu.chocolatejar.eclipse.plugin.cleaner.model.LocationClass;
+
+public class DirectoryScannerTest {
+
+    File plugins;
+
+    @Before
+    public void before() throws IOException {
+        plugins = Files.createTempDirectory("directory-scanner-").toFile();
+        FileUtils.writeStringToFile(FileUtils.getFile(plugins, "a_1.0.0", "META-INF", "MANIFEST.MF"),
+                "Bundle-SymbolicName: a\nBundle-Version: 1.0.0.manifest\n");
+        FileUtils.writeStringToFile(new File(plugins, "b_1.0.0.jar"), "not a jar");
+    }
+
+    @After
+    public void after() throws IOException {
+        FileUtils.deleteDirectory(plugins);
+    }
+
+    @Test
+    public void listsEntriesWithAttributes() {
+        List<Candidate> candidates = new DirectoryScanner().list(plugins, LocationClass.DROPINS);
+
+        assertThat(candidates).hasSize(2);
+        for (Candidate c : candidates) {
+            assertThat(c.getFile().getParentFile()).isEqualTo(plugins);
+            assertThat(c.getAttributes().isDirectory()).isEqualTo(c.getFile().isDirectory());
+            assertThat(c.getLocationClass()).isEqualTo(LocationClass.DROPINS);
+        }
+    }
+
+    @Test
+    public void missingRoot() {
+        assertThat(new DirectoryScanner().list(new File(plugins, "missing"), LocationClass.INSTALLATION)).isEmpty();
+    }
+
+    @Test
+    public void parserDoesNotReadAttributesAgain() {
+        ArtifactParser parser = new ArtifactParser();
+        for (Candidate c : new DirectoryScanner().list(plugins, LocationClass.INSTALLATION)) {
+            Artifact a = parser.createFromFile(c.getFile(), c.getAttributes());
+            assertThat(a.getSymbolicName()).isIn("a", "b");
+        }
+        // only the manifest of the exploded bundle
+        assertThat(parser.getMetadataCalls()).isEqualTo(1);
+
+        parser = new ArtifactParser();
+        parser.createFromFile(new File(plugins, "b_1.0.0.jar"));
+        assertThat(parser.getMetadataCalls()).isEqualTo(1);
+    }
+
+    private Path link(File link, File target) {
+        try {
+            return Files.createSymbolicLink(link.toPath(), target.toPath());
+        } catch (IOException | UnsupportedOperationException e) {
+            Assume.assumeNoException(e);
+            return null;
+        }
+    }
+
+    @Test
+    public void linkedRootIsListed() throws IOException {
+        File linked = new File(plugins.getParentFile(), plugins.getName() + "-link");
+        link(linked, plugins);
+        try {
+            assertThat(new DirectoryScanner().list(linked, LocationClass.INSTALLATION)).hasSize(2);
+        } finally {
+            Files.delete(linked.toPath());
+        }
+    }
+
+    @Test
+    public void linkedBundleIsAFolder() throws IOException {
+        File external = Files.createTempDirectory("directory-scanner-").toFile();
+        try {
+            FileUtils.moveDirectory(new File(plugins, "a_1.0.0"), new File(external, "a_1.0.0"));
+            link(new File(plugins, "a_1.0.0"), new File(external, "a_1.0.0"));
+
+            Candidate linked = null;
+            for (Candidate c : new DirectoryScanner().list(plugins, LocationClass.INSTALLATION)) {
+                if (c.getFile().getName().equals("a_1.0.0")) {
+                    linked = c;
+                }
+            }
+            assertThat(linked.getAttributes().isDirectory()).isTrue();
+            assertThat(new DirectoryScanner().candidate(linked.getFile(), LocationClass.INSTALLATION)
+                    .getAttributes().isDirectory()).isTrue();
+            assertThat(new ArtifactParser().createFromFile(linked.getFile(), linked.getAttributes()).getVersion()
+                    .toString()).isEqualTo("1.0.0.manifest");
+        } finally {
+            FileUtils.deleteDirectory(external);
+        }
+    }
+}
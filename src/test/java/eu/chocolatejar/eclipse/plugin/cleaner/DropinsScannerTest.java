@@ -0,0 +1,248 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.chocolatejar.eclipse.plugin.cleaner.model.LocationClass;
+
+public class DropinsScannerTest {
+
+    File eclipse;
+    File dropins;
+
+    @Before
+    public void before() throws IOException {
+        eclipse = Files.createTempDirectory("dropins-scanner-").toFile();
+        dropins = new File(eclipse, "dropins");
+    }
+
+    @After
+    public void after() throws IOException {
+        FileUtils.deleteDirectory(eclipse);
+    }
+
+    @Test
+    public void allLayouts() throws IOException {
+        bundle(dropins, "plugins", "a_1.0.0.jar");
+        bundle(dropins, "eclipse", "plugins", "b_1.0.0.jar");
+        bundle(dropins, "tool", "plugins", "c_1.0.0.jar");
+        bundle(dropins, "nested", "eclipse", "plugins", "d_1.0.0.jar");
+        bundle(dropins, "e_1.0.0.jar");
+        FileUtils.forceMkdir(FileUtils.getFile(dropins, "f_1.0.0", "META-INF"));
+        bundle(dropins, "eclipse", "features", "feature_1.0.0");
+
+        Map<String, LocationClass> plugins = scan(Cleaner.PLUGINS);
+
+        assertThat(plugins).hasSize(6);
+        assertThat(plugins.get("a_1.0.0.jar")).isEqualTo(LocationClass.DROPINS);
+        assertThat(plugins.get("b_1.0.0.jar")).isEqualTo(LocationClass.DROPINS_ECLIPSE);
+        assertThat(plugins.get("c_1.0.0.jar")).isEqualTo(LocationClass.DROPINS);
+        assertThat(plugins.get("d_1.0.0.jar")).isEqualTo(LocationClass.DROPINS);
+        assertThat(plugins.get("e_1.0.0.jar")).isEqualTo(LocationClass.DROPINS);
+        assertThat(plugins.get("f_1.0.0")).isEqualTo(LocationClass.DROPINS);
+        assertThat(scan(Cleaner.FEATURES).keySet()).containsOnly("feature_1.0.0");
+    }
+
+    @Test
+    public void linkFiles() throws IOException {
+        File external = Files.createTempDirectory("dropins-link-").toFile();
+        try {
+            bundle(external, "eclipse", "plugins", "a_1.0.0.jar");
+            bundle(eclipse, "relative", "plugins", "b_1.0.0.jar");
+            FileUtils.writeStringToFile(new File(dropins, "absolute.link"),
+                    "path=" + external.getAbsolutePath().replace('\\', '/') + "\n");
+            FileUtils.writeStringToFile(new File(dropins, "relative.link"), "# legacy format\nrelative\n");
+            FileUtils.writeStringToFile(new File(dropins, "missing.link"), "path=missing\n");
+
+            assertThat(scan(Cleaner.PLUGINS).keySet()).containsOnly("a_1.0.0.jar", "b_1.0.0.jar");
+        } finally {
+            FileUtils.deleteDirectory(external);
+        }
+    }
+
+    @Test
+    public void sameFolderIsScannedOnce() throws IOException {
+        bundle(eclipse, "plugins", "installed_1.0.0.jar");
+        bundle(dropins, "eclipse", "plugins", "a_1.0.0.jar");
+        FileUtils.writeStringToFile(new File(dropins, "self.link"), "path=dropins\n");
+        FileUtils.writeStringToFile(new File(dropins, "installation.link"), "path=.\n");
+        FileUtils.writeStringToFile(new File(dropins, "eclipse.link"), "path=dropins/eclipse\n");
+
+        assertThat(scan(Cleaner.PLUGINS).keySet()).containsOnly("a_1.0.0.jar");
+        assertThat(count(Cleaner.PLUGINS)).isEqualTo(1);
+    }
+
+    @Test
+    public void listingIsSharedByBothTypes() throws IOException {
+        bundle(dropins, "tool", "plugins", "c_1.0.0.jar");
+        FileUtils.forceMkdir(FileUtils.getFile(dropins, "tool", "features", "feature_1.0.0"));
+        bundle(dropins, "e_1.0.0.jar");
+        DirectoryScanner directoryScanner = new DirectoryScanner();
+
+        DropinsScanner.Listing listing = new DropinsScanner(directoryScanner, eclipse).list(dropins);
+
+        // the listing, two entries and a single probe of tool/plugins
+        assertThat(directoryScanner.getMetadataCalls()).isEqualTo(5);
+        assertThat(listing.layouts.keySet()).containsOnly(new File(dropins, "tool"));
+        assertThat(listing.looseBundles).hasSize(1);
+        assertThat(scan(directoryScanner, listing, Cleaner.PLUGINS).keySet()).containsOnly("c_1.0.0.jar",
+                "e_1.0.0.jar");
+        assertThat(scan(directoryScanner, listing, Cleaner.FEATURES).keySet()).containsOnly("feature_1.0.0");
+    }
+
+    @Test
+    public void symbolicLinkLoop() throws IOException {
+        bundle(dropins, "eclipse", "plugins", "a_1.0.0.jar");
+        try {
+            Files.createSymbolicLink(new File(dropins, "alias").toPath(), new File(dropins, "eclipse").toPath());
+            Files.createSymbolicLink(FileUtils.getFile(dropins, "eclipse", "eclipse").toPath(), dropins.toPath());
+        } catch (IOException | UnsupportedOperationException e) {
+            Assume.assumeNoException(e);
+        }
+
+        assertThat(count(Cleaner.PLUGINS)).isEqualTo(1);
+    }
+
+    @Test
+    public void linkedPluginsFolder() throws IOException {
+        File external = external();
+        try {
+            link(new File(dropins, "plugins"), new File(external, "plugins"));
+
+            assertThat(scan(Cleaner.PLUGINS)).containsEntry("a_1.0.0.jar", LocationClass.DROPINS).hasSize(2);
+        } finally {
+            FileUtils.deleteDirectory(external);
+        }
+    }
+
+    @Test
+    public void linkedPluginsFolderOfATool() throws IOException {
+        File external = external();
+        try {
+            link(FileUtils.getFile(dropins, "vendor", "plugins"), new File(external, "plugins"));
+
+            assertThat(scan(Cleaner.PLUGINS)).containsEntry("a_1.0.0.jar", LocationClass.DROPINS).hasSize(2);
+        } finally {
+            FileUtils.deleteDirectory(external);
+        }
+    }
+
+    @Test
+    public void linkedTree() throws IOException {
+        File external = external();
+        try {
+            link(new File(dropins, "tree"), external);
+
+            assertThat(scan(Cleaner.PLUGINS)).containsEntry("a_1.0.0.jar", LocationClass.DROPINS).hasSize(2);
+            assertThat(scan(Cleaner.FEATURES).keySet()).containsOnly("feature_1.0.0");
+        } finally {
+            FileUtils.deleteDirectory(external);
+        }
+    }
+
+    @Test
+    public void linkedEclipseFolder() throws IOException {
+        File external = external();
+        try {
+            link(new File(dropins, "eclipse"), external);
+
+            assertThat(scan(Cleaner.PLUGINS)).containsEntry("a_1.0.0.jar", LocationClass.DROPINS_ECLIPSE)
+                    .hasSize(2);
+        } finally {
+            FileUtils.deleteDirectory(external);
+        }
+    }
+
+    /**
+     * @return a folder outside of the installation with a jar and an
+     *         exploded bundle in <code>plugins</code> and a feature
+     */
+    private File external() throws IOException {
+        File external = Files.createTempDirectory("dropins-linked-").toFile();
+        bundle(external, "plugins", "a_1.0.0.jar");
+        FileUtils.forceMkdir(FileUtils.getFile(external, "plugins", "b_1.0.0", "META-INF"));
+        FileUtils.forceMkdir(FileUtils.getFile(external, "features", "feature_1.0.0"));
+        return external;
+    }
+
+    private void link(File link, File target) throws IOException {
+        FileUtils.forceMkdir(link.getParentFile());
+        try {
+            Files.createSymbolicLink(link.toPath(), target.toPath());
+        } catch (IOException | UnsupportedOperationException e) {
+            Assume.assumeNoException(e);
+        }
+    }
+
+    private void bundle(File parent, String... path) throws IOException {
+        File bundle = FileUtils.getFile(parent, path);
+        FileUtils.forceMkdir(bundle.getParentFile());
+        FileUtils.touch(bundle);
+    }
+
+    private Map<String, LocationClass> scan(String type) {
+        final Map<String, LocationClass> found = new HashMap<>();
+        newScanner(type).scan(dropins, type, new DirectoryScanner.Visitor() {
+            @Override
+            public void visit(Candidate candidate) {
+                found.put(candidate.getFile().getName(), candidate.getLocationClass());
+            }
+        });
+        return found;
+    }
+
+    private Map<String, LocationClass> scan(DirectoryScanner directoryScanner, DropinsScanner.Listing listing,
+            String type) {
+        final Map<String, LocationClass> found = new HashMap<>();
+        new DropinsScanner(directoryScanner, eclipse).scan(listing, type, new DirectoryScanner.Visitor() {
+            @Override
+            public void visit(Candidate candidate) {
+                found.put(candidate.getFile().getName(), candidate.getLocationClass());
+            }
+        });
+        return found;
+    }
+
+    private int count(String type) {
+        final int[] count = new int[1];
+        newScanner(type).scan(dropins, type, new DirectoryScanner.Visitor() {
+            @Override
+            public void visit(Candidate candidate) {
+                count[0]++;
+            }
+        });
+        return count[0];
+    }
+
+    private DropinsScanner newScanner(String type) {
+        DropinsScanner scanner = new DropinsScanner(new DirectoryScanner(), eclipse);
+        scanner.exclude(new File(eclipse, type));
+        return scanner;
+    }
+}
@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(JUnitParamsRunner.class)
+public class DuplicateMoverTest {
+
+    File eclipse;
+    File backup;
+
+    @Before
+    public void before() throws IOException {
+        eclipse = Files.createTempDirectory("duplicate-mover-").toFile();
+        backup = new File(eclipse, "duplicates/plugins");
+    }
+
+    @After
+    public void after() throws IOException {
+        FileUtils.deleteDirectory(eclipse);
+    }
+
+    private File jar() throws IOException {
+        File jar = FileUtils.getFile(eclipse, "dropins", "a_1.0.0.jar");
+        FileUtils.writeStringToFile(jar, "jar");
+        assertThat(jar.setLastModified(1400000000000L)).isTrue();
+        return jar;
+    }
+
+    private File folder() throws IOException {
+        File folder = FileUtils.getFile(eclipse, "dropins", "a_1.0.0");
+        FileUtils.writeStringToFile(FileUtils.getFile(folder, "META-INF", "MANIFEST.MF"), "Bundle-SymbolicName: a");
+        FileUtils.writeStringToFile(FileUtils.getFile(folder, "a", "A.class"), "class A");
+        return folder;
+    }
+
+    @Test
+    public void sameFileStoreIsDetected() throws IOException {
+        DuplicateMover mover = DuplicateMover.create(eclipse, backup);
+
+        mover.move(jar(), backup);
+
+        assertThat(mover.getMoved()).isEqualTo(1);
+        assertThat(mover.getCopied()).isEqualTo(0);
+    }
+
+    @Test
+    @Parameters({ "true", "false" })
+    public void moveJar(boolean sameFileStore) throws IOException {
+        DuplicateMover mover = new DuplicateMover(sameFileStore);
+        File jar = jar();
+
+        mover.move(jar, backup);
+
+        File moved = new File(backup, jar.getName());
+        assertThat(jar).doesNotExist();
+        assertThat(FileUtils.readFileToString(moved)).isEqualTo("jar");
+        assertThat(moved.lastModified()).isEqualTo(1400000000000L);
+        assertThat(mover.getMoved()).isEqualTo(sameFileStore ? 1 : 0);
+        assertThat(mover.getCopied()).isEqualTo(sameFileStore ? 0 : 1);
+    }
+
+    @Test
+    @Parameters({ "true", "false" })
+    public void moveFolder(boolean sameFileStore) throws IOException {
+        DuplicateMover mover = new DuplicateMover(sameFileStore);
+        File folder = folder();
+
+        mover.move(folder, backup);
+
+        assertThat(folder).doesNotExist();
+        assertThat(FileUtils.readFileToString(FileUtils.getFile(backup, folder.getName(), "a", "A.class")))
+                .isEqualTo("class A");
+        assertThat(mover.getMoved() + mover.getCopied()).isEqualTo(1);
+    }
+
+    @Test
+    @Parameters({ "true", "false" })
+    public void existingBackupIsNotReplaced(boolean sameFileStore) throws IOException {
+        DuplicateMover mover = new DuplicateMover(sameFileStore);
+        File folder = folder();
+        FileUtils.writeStringToFile(FileUtils.getFile(backup, folder.getName(), "other"), "other");
+
+        try {
+            mover.move(folder, backup);
+            throw new AssertionError("The existing backup has been replaced.");
+        } catch (FileAlreadyExistsException e) {
+            // expected
+        }
+
+        assertThat(folder).exists();
+        assertThat(FileUtils.getFile(backup, folder.getName(), "a")).doesNotExist();
+        assertThat(mover.getMoved() + mover.getCopied()).isEqualTo(0);
+    }
+}
@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import eu.chocolatejar.eclipse.plugin.cleaner.model.Artifact;
+import eu.chocolatejar.eclipse.plugin.cleaner.model.CleaningMode;
+import eu.chocolatejar.eclipse.plugin.cleaner.model.LocationClass;
+
+/**
+ * Measures how the duplication detection scales with the number of artifacts,
+ * from 1k to 1M. Each symbolic name has four versions on average, a third of
+ * the artifacts is in the dropins folder.
+ * 
+ * Each size is measured with a single thread and with all available
+ * processors.
+ * 
+ * The work per artifact is constant: one hash lookup to group it, one
+ * comparison to choose the master, one entry in the result. The time per
+ * artifact is not constant, though. With a single thread it was about 130 ns
+ * for 1k artifacts, 270-1050 ns for 10k and 100k, and 1040-1360 ns for 1M.
+ * The step between 1k and 10k most likely comes from the artifacts no longer
+ * fitting into the CPU caches; iterating them in allocation order instead of
+ * hash order changed the times by less than 20%. Above 10k the growth is about
+ * 1.3x per tenfold size. Compare runs of the same size when looking for
+ * regressions, and don't expect the same time per artifact across sizes.
+ * 
+ * Not a unit test, run it manually with enough heap, e.g. <code>-Xmx2g</code>.
+ */
+public class DuplicationDetectorBenchmark {
+
+    private static final int[] SIZES = { 1000, 10000, 100000, 1000000 };
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        // warm up
+        final int[] parallelisms = { 1, Runtime.getRuntime().availableProcessors() };
+        for (CleaningMode mode : CleaningMode.values()) {
+            for (int parallelism : parallelisms) {
+                detect(mode, parallelism, artifacts(100000));
+            }
+        }
+
+        System.out.printf("%-15s %8s %10s %12s %14s%n", "mode", "threads", "artifacts", "ms", "ns/artifact");
+        for (int size : SIZES) {
+            Set<Artifact> artifacts = artifacts(size);
+            for (CleaningMode mode : CleaningMode.values()) {
+                for (int parallelism : parallelisms) {
+                    long best = Long.MAX_VALUE;
+                    for (int r = 0; r < ROUNDS; r++) {
+                        long start = System.nanoTime();
+                        detect(mode, parallelism, artifacts);
+                        best = Math.min(best, System.nanoTime() - start);
+                    }
+                    System.out.printf("%-15s %8d %10d %12.1f %14d%n", mode, parallelism, size, best / 1e6, best
+                            / size);
+                }
+            }
+        }
+    }
+
+    private static int detect(CleaningMode mode, int parallelism, Set<Artifact> artifacts) {
+        return new DuplicationDetectorFactory(mode, parallelism).detect(artifacts).getDuplicates().size();
+    }
+
+    private static Set<Artifact> artifacts(int size) {
+        Random random = new Random(size);
+        LocationClass[] locations = LocationClass.values();
+        Set<Artifact> artifacts = new HashSet<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            String name = "org.example.bundle" + random.nextInt(Math.max(1, size / 4));
+            String version = random.nextInt(3) + "." + random.nextInt(10) + ".0.v" + random.nextInt(100);
+            Artifact a = new Artifact(new File("plugins", name + "_" + version + "_" + i + ".jar"), name, version);
+            artifacts.add(a.withLocationClass(locations[random.nextInt(locations.length)]));
+        }
+        return artifacts;
+    }
+}
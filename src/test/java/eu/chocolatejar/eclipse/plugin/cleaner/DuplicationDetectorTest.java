@@ -18,8 +18,20 @@ package eu.chocolatejar.eclipse.plugin.cleaner;
 import static org.assertj.core.api.Assertions.assertThat;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import junitparams.JUnitParamsRunner;
 import junitparams.Parameters;
@@ -29,8 +41,13 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.osgi.framework.Version;
 
+import eu.chocolatejar.eclipse.plugin.cleaner.detector.RetentionPolicy;
 import eu.chocolatejar.eclipse.plugin.cleaner.model.Artifact;
 import eu.chocolatejar.eclipse.plugin.cleaner.model.CleaningMode;
+import eu.chocolatejar.eclipse.plugin.cleaner.model.DetectionResult;
+import eu.chocolatejar.eclipse.plugin.cleaner.model.DetectionResult.Group;
+import eu.chocolatejar.eclipse.plugin.cleaner.model.DuplicationListener;
+import eu.chocolatejar.eclipse.plugin.cleaner.model.StreamingDuplicationDetector;
 
 @RunWith(JUnitParamsRunner.class)
 public class DuplicationDetectorTest {
@@ -63,7 +80,7 @@ public class DuplicationDetectorTest {
 
         dd = new DuplicationDetectorFactory(mode);
 
-        assertThat(dd.getDuplicates(samples)).extractingResultOf("getVersion").contains(
+        assertThat(dd.detect(samples).getDuplicates()).extractingResultOf("getVersion").contains(
 
         new Version("0.3.7"), new Version("0.3.5")
 
@@ -80,7 +97,7 @@ public class DuplicationDetectorTest {
 
         dd = new DuplicationDetectorFactory(mode);
 
-        assertThat(dd.getDuplicates(samples))
+        assertThat(dd.detect(samples).getDuplicates())
 
         .contains(a("symbolicName", "0.3.8.SAME", "/dropins/plugins/a.jar\""))
 
@@ -101,7 +118,7 @@ public class DuplicationDetectorTest {
 
         dd = new DuplicationDetectorFactory(mode);
 
-        assertThat(dd.getDuplicates(samples)).extractingResultOf("getVersion").contains(
+        assertThat(dd.detect(samples).getDuplicates()).extractingResultOf("getVersion").contains(
 
         new Version("0.3.8.201210040400"), new Version("0.3.8.201310040400")
 
@@ -117,36 +134,34 @@ public class DuplicationDetectorTest {
 
         dd = new DuplicationDetectorFactory(mode);
 
-        assertThat(dd.getDuplicates(samples)).extractingResultOf("getMaster").containsOnly(
+        assertThat(dd.detect(samples).getMastersOfDuplicates().values()).containsOnly(
                 a("symbolicName", "3.0.0", "c.jar"));
     }
 
     /**
-     * This test is based on the order of the sample data!
+     * The lexicographically first location is kept regardless of the order of
+     * the sample data.
      */
     @Test
-    @Parameters({ "unlimited" })
+    @Parameters({ "unlimited", "dropinsOnly", "prefereDropins" })
     public void keepOnlyOneBundleIfLocationIsDifferentAndTheRestIsSame_justInDropins(CleaningMode mode) {
         samples.add(a("same", "1.0.0", "/dropins/a/same.jar"));
         samples.add(a("same", "1.0.0", "/dropins/b/same.jar"));
 
         dd = new DuplicationDetectorFactory(mode);
 
-        assertThat(dd.getDuplicates(samples)).containsOnly(a("same", "1.0.0", "/dropins/b/same.jar"));
+        assertThat(dd.detect(samples).getDuplicates()).containsOnly(a("same", "1.0.0", "/dropins/b/same.jar"));
     }
 
-    /**
-     * This test is based on the order of the sample data!
-     */
     @Test
-    @Parameters({ "dropinsOnly", "prefereDropins" })
-    public void keepOnlyOneBundleIfLocationIsDifferentAndTheRestIsSame_justInDropins2(CleaningMode mode) {
-        samples.add(a("same", "1.0.0", "/dropins/a/same.jar"));
+    @Parameters({ "unlimited", "dropinsOnly", "prefereDropins" })
+    public void keepOnlyOneBundleIfLocationIsDifferentAndTheRestIsSame_justInDropins_oppositeOrder(CleaningMode mode) {
         samples.add(a("same", "1.0.0", "/dropins/b/same.jar"));
+        samples.add(a("same", "1.0.0", "/dropins/a/same.jar"));
 
         dd = new DuplicationDetectorFactory(mode);
 
-        assertThat(dd.getDuplicates(samples)).containsOnly(a("same", "1.0.0", "/dropins/a/same.jar"));
+        assertThat(dd.detect(samples).getDuplicates()).containsOnly(a("same", "1.0.0", "/dropins/b/same.jar"));
     }
 
     @Test
@@ -157,7 +172,7 @@ public class DuplicationDetectorTest {
 
         dd = new DuplicationDetectorFactory(mode);
 
-        assertThat(dd.getDuplicates(samples)).containsOnly(a("same", "1.0.0", "/dropins/plugins/same.jar"));
+        assertThat(dd.detect(samples).getDuplicates()).containsOnly(a("same", "1.0.0", "/dropins/plugins/same.jar"));
     }
 
     @Test
@@ -171,7 +186,7 @@ public class DuplicationDetectorTest {
 
         dd = new DuplicationDetectorFactory(mode);
 
-        assertThat(dd.getDuplicates(samples)).containsOnly(
+        assertThat(dd.detect(samples).getDuplicates()).containsOnly(
 
         a("same", "1.0.0", "eclipse/dropins/plugins/same_1.0.0.jar"),
 
@@ -188,7 +203,7 @@ public class DuplicationDetectorTest {
 
         dd = new DuplicationDetectorFactory(mode);
 
-        assertThat(dd.getDuplicates(samples)).isEmpty();
+        assertThat(dd.detect(samples).getDuplicates()).isEmpty();
     }
 
     @Test
@@ -199,7 +214,7 @@ public class DuplicationDetectorTest {
 
         dd = new DuplicationDetectorFactory(mode);
 
-        assertThat(dd.getDuplicates(samples)).containsOnly(a("same", "1.0.0", "eclipse/dropins/plugins/same.jar"));
+        assertThat(dd.detect(samples).getDuplicates()).containsOnly(a("same", "1.0.0", "eclipse/dropins/plugins/same.jar"));
     }
 
     @Test
@@ -210,14 +225,322 @@ public class DuplicationDetectorTest {
 
         dd = new DuplicationDetectorFactory(mode);
 
-        assertThat(dd.getDuplicates(samples)).isEmpty();
+        assertThat(dd.detect(samples).getDuplicates()).isEmpty();
     }
 
     @Test
     @Parameters({ "unlimited", "dropinsOnly", "prefereDropins" })
     public void empty(CleaningMode mode) {
         dd = new DuplicationDetectorFactory(mode);
-        assertThat(dd.getDuplicates(samples)).isEmpty();
+        assertThat(dd.detect(samples).getDuplicates()).isEmpty();
+    }
+
+    @Test
+    @Parameters({ "unlimited", "dropinsOnly", "prefereDropins" })
+    public void streamingSameAsBatch(CleaningMode mode) {
+        samples.add(a("same", "1.0.0", "eclipse/plugins/same_1.0.0.jar"));
+        samples.add(a("same", "2.0.0", "eclipse/dropins/plugins/same_2.0.0.jar"));
+        samples.add(a("same", "1.0.0", "eclipse/dropins/eclipse/plugins/same_1.0.0.jar"));
+        samples.add(a("same", "2.0.0", "eclipse/plugins/same_2.0.0.jar"));
+        samples.add(a("same", "2.0.0.v2014", "eclipse/dropins/plugins/same_2.0.0.v2014.jar"));
+        samples.add(a("other", "1.0.0", "eclipse/plugins/other_1.0.0.jar"));
+        samples.add(a("other", "1.0.0", "eclipse/dropins/plugins/other_1.0.0.jar"));
+        samples.add(a("single", "1.0.0"));
+
+        dd = new DuplicationDetectorFactory(mode);
+        Set<Artifact> batch = dd.detect(samples).getDuplicates();
+
+        final Set<Artifact> streamed = new HashSet<>();
+        StreamingDuplicationDetector detector = dd.createStreamingDetector(new DuplicationListener() {
+            @Override
+            public void duplicateFound(Artifact duplicate, Artifact master) {
+                assertThat(master).isNotNull();
+                streamed.add(duplicate);
+            }
+        });
+        for (Artifact a : samples) {
+            detector.add(a);
+        }
+
+        assertThat(streamed).isEqualTo(batch);
+        assertThat(detector.getArtifactsCount()).isEqualTo(samples.size());
+    }
+
+    @Test
+    @Parameters({ "unlimited", "prefereDropins" })
+    public void sameContent(CleaningMode mode) {
+        Artifact older = a("a", "1.0.0", "eclipse/dropins/a_1.0.0.jar");
+        Artifact newer = a("renamed.a", "1.1.0", "eclipse/dropins/renamed.a_1.1.0.jar");
+        Artifact other = a("b", "1.0.0", "eclipse/dropins/b_1.0.0.jar");
+        Artifact unknown = a("c", "1.0.0", "eclipse/dropins/c_1.0.0.jar");
+        Artifact unknownCopy = a("d", "1.0.0", "eclipse/dropins/d_1.0.0.jar");
+        older = older.withFingerprint("f1");
+        newer = newer.withFingerprint("f1");
+        other = other.withFingerprint("f2");
+        samples.addAll(Arrays.asList(older, newer, other, unknown, unknownCopy));
+
+        assertThat(new DuplicationDetectorFactory(mode).detect(samples).getDuplicates()).isEmpty();
+        DetectionResult result = new DuplicationDetectorFactory(mode, 1, true).detect(samples);
+
+        assertThat(result.getDuplicates()).containsOnly(older);
+        assertThat(result.getMaster(older)).isSameAs(newer);
+    }
+
+    @Test
+    @Parameters({ "unlimited", "prefereDropins" })
+    public void sameContentRequiredByName(CleaningMode mode) {
+        Artifact older = a("a", "1.0.0", "eclipse/dropins/a_1.0.0.jar").withFingerprint("f1");
+        Artifact newer = a("renamed.a", "1.1.0", "eclipse/dropins/renamed.a_1.1.0.jar").withFingerprint("f1");
+        Artifact user = new Artifact(new File("eclipse/dropins/user_1.0.0.jar"), "user", new Version("1.0.0"),
+                RequirementParser.parse("a;bundle-version=\"[1.0.0,2.0.0)\"", null), null, null);
+        samples.addAll(Arrays.asList(older, newer, user));
+
+        DetectionResult result = new DuplicationDetectorFactory(mode, 1, true).detect(samples);
+
+        // the copy doesn't satisfy the requirement on a
+        assertThat(result.getDuplicates()).isEmpty();
+    }
+
+    @Test
+    @Parameters({ "unlimited", "dropinsOnly", "prefereDropins" })
+    public void sameContentAfterSameName(CleaningMode mode) {
+        Artifact a1 = a("a", "1.0.0", "eclipse/dropins/a_1.0.0.jar");
+        Artifact a2 = a("a", "2.0.0", "eclipse/dropins/a_2.0.0.jar");
+        Artifact copy = a("copy", "1.0.0", "eclipse/dropins/copy_1.0.0.jar");
+        Artifact installed = a("installed", "3.0.0", "eclipse/plugins/installed_3.0.0.jar");
+        a1 = a1.withFingerprint("f1");
+        copy = copy.withFingerprint("f1");
+        a2 = a2.withFingerprint("f2");
+        installed = installed.withFingerprint("f2");
+        samples.addAll(Arrays.asList(a1, a2, copy, installed));
+
+        DetectionResult result = new DuplicationDetectorFactory(mode, 1, true).detect(samples);
+
+        // a1 is already a duplicate of a2, so the copy has no one to duplicate
+        assertThat(result.getDuplicates()).containsOnly(a1, a2);
+        assertThat(result.getMaster(a2)).isSameAs(installed);
     }
 
+    @Test
+    @Parameters({ "unlimited", "dropinsOnly", "prefereDropins" })
+    public void sameAsRuleOfEachGroup(CleaningMode mode) {
+        generate(2000, 200);
+
+        Set<Artifact> duplicates = new DuplicationDetectorFactory(mode).detect(samples).getDuplicates();
+
+        assertThat(duplicates).isEqualTo(expectedDuplicates(mode));
+    }
+
+    @Test
+    @Parameters({ "unlimited", "dropinsOnly", "prefereDropins" })
+    public void parallelSameAsSingleThreaded(CleaningMode mode) {
+        generate(50000, 5000);
+
+        DetectionResult singleThreaded = new DuplicationDetectorFactory(mode).detect(samples);
+
+        List<Artifact> shuffled = new ArrayList<>(samples);
+        Collections.shuffle(shuffled, new Random(7));
+        for (int threads : new int[] { 2, 3, 8 }) {
+            DetectionResult parallel = new DuplicationDetectorFactory(mode, threads).detect(new LinkedHashSet<>(
+                    shuffled));
+
+            assertThat(parallel.getDuplicates()).isEqualTo(singleThreaded.getDuplicates());
+            assertThat(parallel.getMastersOfDuplicates()).isEqualTo(singleThreaded.getMastersOfDuplicates());
+        }
+        assertThat(singleThreaded.getDuplicates()).isEqualTo(expectedDuplicates(mode));
+    }
+
+    @Test
+    @Parameters({ "dropinsOnly" })
+    public void groupDecisionsKeepInstalledArtifacts(CleaningMode mode) {
+        Artifact installed = a("same", "1.0.0", "eclipse/plugins/same_1.0.0.jar");
+        Artifact master = a("same", "2.0.0", "eclipse/plugins/same_2.0.0.jar");
+        Artifact dropin = a("same", "1.0.0", "eclipse/dropins/plugins/same_1.0.0.jar");
+        samples.addAll(Arrays.asList(installed, master, dropin, a("single", "1.0.0")));
+
+        DetectionResult result = new DuplicationDetectorFactory(mode).detect(samples);
+
+        assertThat(result.getGroups()).hasSize(1);
+        Group group = result.getGroups().get(0);
+        assertThat(group.getKey()).isEqualTo("same");
+        assertThat(group.getMaster()).isSameAs(master);
+        assertThat(group.getDuplicates()).containsOnly(dropin);
+        assertThat(group.getKept()).containsOnly(installed);
+        assertThat(result.getMasters()).containsOnly(master);
+        assertThat(result.isDuplicate(installed)).isFalse();
+    }
+
+    @Test
+    @Parameters({ "unlimited", "dropinsOnly", "prefereDropins" })
+    public void reusedByConcurrentCalls(CleaningMode mode) throws Exception {
+        generate(20000, 2000);
+        final Set<Artifact> all = new HashSet<>(samples);
+        final Set<Artifact> half = new HashSet<>(new ArrayList<>(samples).subList(0, samples.size() / 2));
+        final DuplicationDetectorFactory shared = new DuplicationDetectorFactory(mode, 2);
+        DetectionResult expectedAll = new DuplicationDetectorFactory(mode).detect(all);
+        DetectionResult expectedHalf = new DuplicationDetectorFactory(mode).detect(half);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<DetectionResult>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                final Set<Artifact> artifacts = i % 2 == 0 ? all : half;
+                results.add(executor.submit(new Callable<DetectionResult>() {
+                    @Override
+                    public DetectionResult call() {
+                        return shared.detect(artifacts);
+                    }
+                }));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                DetectionResult expected = i % 2 == 0 ? expectedAll : expectedHalf;
+                assertThat(results.get(i).get().getMastersOfDuplicates()).isEqualTo(
+                        expected.getMastersOfDuplicates());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    @Parameters({ "unlimited", "dropinsOnly", "prefereDropins" })
+    public void pinnedGroupHasNoDuplicates(CleaningMode mode) {
+        samples.add(a("com.ourcorp.a", "1.0.0"));
+        samples.add(a("com.ourcorp.a", "2.0.0"));
+        samples.add(a("other", "1.0.0"));
+        samples.add(a("other", "2.0.0"));
+
+        DetectionResult result = new DuplicationDetectorFactory(mode, 1, false, RetentionPolicy.parse(
+                Arrays.asList("pin com.ourcorp.*"), 0)).detect(samples);
+
+        assertThat(result.getDuplicates()).containsOnly(a("other", "1.0.0"));
+        for (Group group : result.getGroups()) {
+            assertThat(group.getRule()).isEqualTo(
+                    group.getKey().equals("other") ? null : "'pin com.ourcorp.*' (line 1)");
+        }
+    }
+
+    @Test
+    @Parameters({ "unlimited", "prefereDropins" })
+    public void keepNewestVersions(CleaningMode mode) {
+        samples.add(a("jdt", "1.0.0", "eclipse/dropins/plugins/jdt_1.0.0.jar"));
+        samples.add(a("jdt", "2.0.0", "eclipse/dropins/plugins/jdt_2.0.0.jar"));
+        samples.add(a("jdt", "3.0.0", "eclipse/dropins/plugins/jdt_3.0.0.jar"));
+        samples.add(a("jdt", "2.0.0", "eclipse/plugins/jdt_2.0.0.jar"));
+        samples.add(a("jdt", "2.0.0", "eclipse/zzz/plugins/jdt_2.0.0.jar"));
+        samples.add(a("other", "1.0.0"));
+        samples.add(a("other", "2.0.0"));
+
+        DetectionResult result = new DuplicationDetectorFactory(mode, 1, false, RetentionPolicy.parse(
+                Arrays.asList("keep jdt 2"), 0)).detect(samples);
+
+        // the kept copy of 2.0.0 is the installed one in both modes
+        Artifact kept = a("jdt", "2.0.0", "eclipse/plugins/jdt_2.0.0.jar");
+        Set<Artifact> expected = new HashSet<>(samples);
+        expected.removeAll(Arrays.asList(kept, a("jdt", "3.0.0", "eclipse/dropins/plugins/jdt_3.0.0.jar"),
+                a("other", "2.0.0")));
+        assertThat(result.getDuplicates()).isEqualTo(expected);
+        assertThat(result.getMaster(a("jdt", "1.0.0", "eclipse/dropins/plugins/jdt_1.0.0.jar"))).isEqualTo(
+                a("jdt", "3.0.0", "eclipse/dropins/plugins/jdt_3.0.0.jar"));
+    }
+
+    @Test
+    @Parameters({ "unlimited", "dropinsOnly", "prefereDropins" })
+    public void keepRuleIsTheSameInParallel(CleaningMode mode) {
+        generate(20000, 1000);
+        RetentionPolicy policy = RetentionPolicy.parse(Arrays.asList("keep bundle1* 2", "pin bundle2*"), 0);
+
+        DetectionResult singleThreaded = new DuplicationDetectorFactory(mode, 1, false, policy).detect(samples);
+        DetectionResult parallel = new DuplicationDetectorFactory(mode, 4, false, policy).detect(samples);
+
+        assertThat(parallel.getMastersOfDuplicates()).isEqualTo(singleThreaded.getMastersOfDuplicates());
+        Set<Artifact> withoutRules = new DuplicationDetectorFactory(mode).detect(samples).getDuplicates();
+        assertThat(withoutRules.containsAll(singleThreaded.getDuplicates())).isTrue();
+        for (Artifact duplicate : singleThreaded.getDuplicates()) {
+            assertThat(duplicate.getSymbolicName()).doesNotMatch("bundle2.*");
+        }
+    }
+
+    @Test
+    @Parameters({ "unlimited", "prefereDropins" })
+    public void pinProtectsSameContent(CleaningMode mode) {
+        Artifact older = a("a", "1.0.0", "eclipse/dropins/a_1.0.0.jar");
+        Artifact newer = a("renamed.a", "1.1.0", "eclipse/dropins/renamed.a_1.1.0.jar");
+        older = older.withFingerprint("f1");
+        newer = newer.withFingerprint("f1");
+        samples.addAll(Arrays.asList(older, newer));
+
+        DetectionResult result = new DuplicationDetectorFactory(mode, 1, true, RetentionPolicy.parse(
+                Arrays.asList("pin a"), 0)).detect(samples);
+
+        assertThat(result.getDuplicates()).isEmpty();
+        assertThat(result.getGroups()).hasSize(1);
+        assertThat(result.getGroups().get(0).getKept()).containsOnly(older);
+        assertThat(result.getGroups().get(0).getRule()).isEqualTo("'pin a' (line 1)");
+    }
+
+    @Test
+    @Parameters({ "unlimited", "dropinsOnly", "prefereDropins" })
+    public void streamingRespectsPin(CleaningMode mode) {
+        samples.add(a("pinned", "1.0.0"));
+        samples.add(a("pinned", "2.0.0"));
+        samples.add(a("other", "2.0.0"));
+        samples.add(a("other", "1.0.0"));
+
+        final Set<Artifact> streamed = new HashSet<>();
+        StreamingDuplicationDetector detector = new DuplicationDetectorFactory(mode, 1, false,
+                RetentionPolicy.parse(Arrays.asList("pin pinned"), 0))
+                .createStreamingDetector(new DuplicationListener() {
+                    @Override
+                    public void duplicateFound(Artifact duplicate, Artifact master) {
+                        streamed.add(duplicate);
+                    }
+                });
+        for (Artifact a : samples) {
+            detector.add(a);
+        }
+
+        assertThat(streamed).containsOnly(a("other", "1.0.0"));
+    }
+
+    private void generate(int size, int names) {
+        Random random = new Random(42);
+        String[] locations = { "eclipse/plugins/", "eclipse/dropins/plugins/", "eclipse/dropins/eclipse/plugins/" };
+        for (int i = 0; i < size; i++) {
+            String name = "bundle" + random.nextInt(names);
+            String version = "1." + random.nextInt(3) + ".0";
+            samples.add(a(name, version, locations[random.nextInt(locations.length)] + name + "_" + version + "_" + i));
+        }
+    }
+
+    /**
+     * The newest version wins. Among the same versions the one outside of the
+     * dropins folder wins, then the one with the lexicographically first
+     * location.
+     */
+    private Set<Artifact> expectedDuplicates(CleaningMode mode) {
+        Map<String, Artifact> masters = new HashMap<>();
+        for (Artifact a : samples) {
+            Artifact master = masters.get(a.getSymbolicName());
+            boolean wins = master == null || a.compareTo(master) > 0;
+            if (master != null && a.compareTo(master) == 0) {
+                if (a.isInDropinsFolder() != master.isInDropinsFolder()) {
+                    wins = master.isInDropinsFolder();
+                } else {
+                    wins = a.getLocation().getPath().compareTo(master.getLocation().getPath()) < 0;
+                }
+            }
+            if (wins) {
+                masters.put(a.getSymbolicName(), a);
+            }
+        }
+        Set<Artifact> expected = new HashSet<>();
+        for (Artifact a : samples) {
+            if (masters.get(a.getSymbolicName()) != a
+                    && (mode != CleaningMode.dropinsOnly || a.isInDropinsFolder())) {
+                expected.add(a);
+            }
+        }
+        return expected;
+    }
 }
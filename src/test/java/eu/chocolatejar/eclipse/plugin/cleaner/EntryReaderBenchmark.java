@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.jar.JarInputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.input.CountingInputStream;
+
+/**
+ * Compares bytes read per bundle by the sequential {@link JarInputStream} and
+ * by the central directory based {@link EntryReader}.
+ *
+ * Not a unit test, run it manually against a real plugins folder:
+ *
+ * <pre>
+ * java -cp ... eu.chocolatejar.eclipse.plugin.cleaner.EntryReaderBenchmark /path/to/eclipse/plugins
+ * </pre>
+ */
+public class EntryReaderBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        File plugins = new File(args.length > 0 ? args[0] : ".");
+        Collection<File> jars = FileUtils.listFiles(plugins, new String[] { "jar", "JAR" }, false);
+
+        long streamBytes = 0;
+        int streamManifests = 0;
+        long start = System.nanoTime();
+        for (File jar : jars) {
+            try (CountingInputStream counting = new CountingInputStream(new BufferedInputStream(new FileInputStream(
+                    jar)));
+                    JarInputStream jis = new JarInputStream(counting)) {
+                if (jis.getManifest() != null) {
+                    streamManifests++;
+                }
+                streamBytes += counting.getByteCount();
+            } catch (IOException e) {
+                // counted as missing
+            }
+        }
+        long streamTime = System.nanoTime() - start;
+
+        EntryReader reader = new EntryReader();
+        start = System.nanoTime();
+        for (File jar : jars) {
+            try {
+                reader.readManifest(jar);
+            } catch (IOException e) {
+                // counted as missing
+            }
+        }
+        long readerTime = System.nanoTime() - start;
+
+        int bundles = Math.max(1, jars.size());
+        System.out.printf("Bundles: %d%n", jars.size());
+        System.out.printf("JarInputStream: %d manifests, %d bytes/bundle, %d ms%n", streamManifests, streamBytes
+                / bundles, streamTime / 1000000);
+        System.out.printf("EntryReader: %d manifests, %d bytes/bundle, %d ms%n", reader.getManifestsRead(),
+                reader.getBytesRead() / bundles, readerTime / 1000000);
+    }
+}
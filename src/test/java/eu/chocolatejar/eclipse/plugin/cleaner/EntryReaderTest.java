@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.chocolatejar.eclipse.plugin.cleaner.model.Artifact;
+
+public class EntryReaderTest {
+
+    static final String MANIFEST = "Manifest-Version: 1.0\r\nBundle-SymbolicName: eu.chocolatejar.last;singleton:=true\r\nBundle-Version: 1.2.3.v20140101\r\n\r\n";
+
+    File folder;
+
+    EntryReader reader = new EntryReader();
+
+    @Before
+    public void before() throws IOException {
+        folder = Files.createTempDirectory("manifest-reader-").toFile();
+    }
+
+    @After
+    public void after() throws IOException {
+        FileUtils.deleteDirectory(folder);
+    }
+
+    @Test
+    public void manifestAsTheLastEntry() throws IOException {
+        File jar = new File(folder, "last_1.0.0.jar");
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(jar))) {
+            addRandomEntry(zip, "content.bin", 512 * 1024);
+            addEntry(zip, EntryReader.MANIFEST_NAME, MANIFEST.getBytes());
+        }
+
+        byte[] manifest = reader.readManifest(jar);
+
+        assertThat(new String(manifest)).isEqualTo(MANIFEST);
+        assertThat(reader.getBytesRead()).isLessThan(jar.length() / 10);
+    }
+
+    @Test
+    public void storedManifest() throws IOException {
+        File jar = new File(folder, "stored_1.0.0.jar");
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(jar))) {
+            zip.setMethod(ZipOutputStream.STORED);
+            addEntry(zip, EntryReader.MANIFEST_NAME, MANIFEST.getBytes(), true);
+        }
+
+        assertThat(new String(reader.readManifest(jar))).isEqualTo(MANIFEST);
+    }
+
+    @Test
+    public void withoutManifest() throws IOException {
+        File jar = new File(folder, "without_1.0.0.jar");
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(jar))) {
+            addEntry(zip, "readme.txt", "Hello".getBytes());
+        }
+
+        assertThat(reader.readManifest(jar)).isNull();
+    }
+
+    @Test(expected = IOException.class)
+    public void notAZipFile() throws IOException {
+        File jar = new File(folder, "broken_1.0.0.jar");
+        FileUtils.writeStringToFile(jar, "This is not a zip file, but it is long enough to be one.");
+
+        reader.readManifest(jar);
+    }
+
+    @Test
+    public void zip64() throws IOException {
+        File jar = new File(folder, "zip64_1.0.0.jar");
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(jar))) {
+            zip.setLevel(0);
+            // more entries than fits into the classic end of central directory
+            for (int i = 0; i < 0x10000; i++) {
+                zip.putNextEntry(new ZipEntry("e/" + i));
+                zip.closeEntry();
+            }
+            addEntry(zip, EntryReader.MANIFEST_NAME, MANIFEST.getBytes());
+        }
+
+        assertThat(new String(reader.readManifest(jar))).isEqualTo(MANIFEST);
+    }
+
+    @Test
+    public void parserUsesTheManifestNotTheFilename() throws IOException {
+        File jar = new File(folder, "misleading_9.9.9.jar");
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(jar))) {
+            addRandomEntry(zip, "a/content.bin", 1024);
+            addRandomEntry(zip, "b/content.bin", 1024);
+            addEntry(zip, EntryReader.MANIFEST_NAME, MANIFEST.getBytes());
+        }
+
+        Artifact a = new ArtifactParser().createFromFile(jar);
+
+        assertThat(a.getSymbolicName()).isEqualTo("eu.chocolatejar.last");
+        assertThat(a.getVersion().toString()).isEqualTo("1.2.3.v20140101");
+    }
+
+    private void addRandomEntry(ZipOutputStream zip, String name, int size) throws IOException {
+        byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+        addEntry(zip, name, content);
+    }
+
+    private void addEntry(ZipOutputStream zip, String name, byte[] content) throws IOException {
+        addEntry(zip, name, content, false);
+    }
+
+    private void addEntry(ZipOutputStream zip, String name, byte[] content, boolean stored) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        if (stored) {
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            entry.setSize(content.length);
+            entry.setCompressedSize(content.length);
+            entry.setCrc(crc.getValue());
+        }
+        zip.putNextEntry(entry);
+        zip.write(content);
+        zip.closeEntry();
+    }
+}
@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.chocolatejar.eclipse.plugin.cleaner.model.Artifact;
+
+public class FeatureParserTest {
+
+    static final String FEATURE_XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<feature\n      id=\"org.eclipse.egit\"\n      label=\"%featureName\"\n"
+            + "      version=\"3.4.1.201406201815-r\"\n      provider-name=\"%providerName\">\n"
+            + "   <license url=\"%licenseURL\">" + StringUtils.repeat("%license ", 100000) + "</license>\n"
+            // never reached, the parsing stops at the root element
+            + "   <plugin id=\"&undefined;\"/>\n" + "<broken";
+
+    File folder;
+
+    @Before
+    public void before() throws IOException {
+        folder = Files.createTempDirectory("feature-parser-").toFile();
+    }
+
+    @After
+    public void after() throws IOException {
+        FileUtils.deleteDirectory(folder);
+    }
+
+    @Test
+    public void readsOnlyTheRootElement() throws IOException {
+        Artifact a = new FeatureParser().parse(folder, new ByteArrayInputStream(FEATURE_XML.getBytes("UTF-8")));
+
+        assertThat(a.getSymbolicName()).isEqualTo("org.eclipse.egit");
+        assertThat(a.getVersion().toString()).isEqualTo("3.4.1.201406201815-r");
+    }
+
+    @Test
+    public void notAFeature() throws IOException {
+        String xml = "<site><feature id=\"a\" version=\"1.0.0\"/></site>";
+        assertThat(new FeatureParser().parse(folder, new ByteArrayInputStream(xml.getBytes("UTF-8")))).isNull();
+    }
+
+    @Test
+    public void missingVersion() throws IOException {
+        String xml = "<feature id=\"a\"/>";
+        assertThat(new FeatureParser().parse(folder, new ByteArrayInputStream(xml.getBytes("UTF-8")))).isNull();
+    }
+
+    @Test(expected = IOException.class)
+    public void invalidXml() throws IOException {
+        new FeatureParser().parse(folder, new ByteArrayInputStream("not xml".getBytes("UTF-8")));
+    }
+
+    @Test
+    public void explodedFeature() throws IOException {
+        File feature = new File(folder, "org.eclipse.egit_3.4.1.201406201815-r");
+        FileUtils.writeStringToFile(new File(feature, FeatureParser.FEATURE_XML), FEATURE_XML, "UTF-8");
+        // signed features have a manifest without OSGi headers
+        FileUtils.writeStringToFile(FileUtils.getFile(feature, "META-INF", "MANIFEST.MF"),
+                "Manifest-Version: 1.0\n\nName: feature.xml\nSHA1-Digest: x\n");
+
+        Artifact a = new ArtifactParser().createFromFile(feature);
+
+        assertThat(a.getLocation()).isEqualTo(feature);
+        assertThat(a.getSymbolicName()).isEqualTo("org.eclipse.egit");
+        assertThat(a.getVersion().toString()).isEqualTo("3.4.1.201406201815-r");
+    }
+
+    @Test
+    public void featureJar() throws IOException {
+        // the filename doesn't contain a version
+        File jar = new File(folder, "egit.jar");
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(jar))) {
+            zip.putNextEntry(new ZipEntry("Feature.xml"));
+            zip.write(FEATURE_XML.getBytes("UTF-8"));
+            zip.closeEntry();
+        }
+
+        Artifact a = new ArtifactParser().createFromFile(jar);
+
+        assertThat(a.getLocation()).isEqualTo(jar);
+        assertThat(a.getSymbolicName()).isEqualTo("org.eclipse.egit");
+        assertThat(a.getVersion().toString()).isEqualTo("3.4.1.201406201815-r");
+    }
+
+    @Test
+    public void cachedFeature() throws IOException {
+        File feature = new File(folder, "egit");
+        FileUtils.writeStringToFile(new File(feature, FeatureParser.FEATURE_XML), FEATURE_XML, "UTF-8");
+
+        ManifestCache cache = ManifestCache.load(folder);
+        new ArtifactParser(cache).createFromFile(feature);
+        cache.save();
+
+        cache = ManifestCache.load(folder);
+        Artifact a = new ArtifactParser(cache).createFromFile(feature);
+
+        assertThat(a.getSymbolicName()).isEqualTo("org.eclipse.egit");
+        assertThat(cache.getHits()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import eu.chocolatejar.eclipse.plugin.cleaner.model.Artifact;
+
+/**
+ * Compares the {@link FilenameTokenizer} with the former regular expression
+ * based parsing on a corpus of real Eclipse filenames.
+ * 
+ * Not a unit test, run it manually.
+ */
+public class FilenameTokenizerBenchmark {
+
+    private static final Pattern VERSION_PATTERN = Pattern
+            .compile("[0-9]+(\\.[0-9]+(\\.[0-9]+(\\.[A-Za-z0-9\\_\\-]+)?)?)?");
+
+    private static final int ROUNDS = 200000;
+
+    public static void main(String[] args) throws IOException {
+        List<String[]> corpus = FilenameTokenizerTest.corpus();
+        File[] files = new File[corpus.size()];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = new File("plugins", corpus.get(i)[0]);
+        }
+
+        // warm up
+        runRegex(files, ROUNDS / 10);
+        runTokenizer(files, ROUNDS / 10);
+
+        long start = System.nanoTime();
+        int regex = runRegex(files, ROUNDS);
+        long regexTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        int tokenizer = runTokenizer(files, ROUNDS);
+        long tokenizerTime = System.nanoTime() - start;
+
+        long parsed = (long) ROUNDS * files.length;
+        System.out.printf("Filenames parsed: %d%n", parsed);
+        System.out.printf("Regex:     %d ns/filename (%d artifacts)%n", regexTime / parsed, regex);
+        System.out.printf("Tokenizer: %d ns/filename (%d artifacts)%n", tokenizerTime / parsed, tokenizer);
+    }
+
+    private static int runTokenizer(File[] files, int rounds) {
+        int found = 0;
+        for (int r = 0; r < rounds; r++) {
+            for (File f : files) {
+                if (FilenameTokenizer.tokenize(f) != null) {
+                    found++;
+                }
+            }
+        }
+        return found;
+    }
+
+    private static int runRegex(File[] files, int rounds) {
+        int found = 0;
+        for (int r = 0; r < rounds; r++) {
+            for (File f : files) {
+                if (parseWithRegex(f) != null) {
+                    found++;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * The former implementation of the filename parsing.
+     */
+    private static Artifact parseWithRegex(File file) {
+        try {
+            String baseName = FilenameUtils.getName(file.getAbsolutePath());
+            Matcher versionMatcher = VERSION_PATTERN.matcher(baseName);
+            if (versionMatcher.find()) {
+                String version = versionMatcher.group(0);
+                if (baseName.contains("_")) {
+                    String bundleSymbolicName = StringUtils.substringBeforeLast(baseName, "_" + version);
+                    return new Artifact(file, bundleSymbolicName, version);
+                }
+            }
+        } catch (Exception e) {
+            // not parseable
+        }
+        return null;
+    }
+}
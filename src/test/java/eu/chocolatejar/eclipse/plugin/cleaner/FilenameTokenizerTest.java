@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.osgi.framework.Version;
+
+import eu.chocolatejar.eclipse.plugin.cleaner.model.Artifact;
+
+public class FilenameTokenizerTest {
+
+    /**
+     * Real Eclipse filenames with expected results, see
+     * <code>eclipse-filenames.txt</code>.
+     * 
+     * @return rows of filename, symbolic name and version
+     */
+    static List<String[]> corpus() throws IOException {
+        List<String[]> corpus = new ArrayList<>();
+        for (String line : IOUtils.readLines(FilenameTokenizerTest.class.getClassLoader().getResourceAsStream(
+                "eclipse-filenames.txt"))) {
+            if (!line.startsWith("#") && !line.trim().isEmpty()) {
+                corpus.add(line.split(";", -1));
+            }
+        }
+        return corpus;
+    }
+
+    @Test
+    public void realEclipseFilenames() throws IOException {
+        for (String[] row : corpus()) {
+            Artifact a = FilenameTokenizer.tokenize(new File("plugins", row[0]));
+
+            if (row[1].isEmpty()) {
+                assertThat(a).as(row[0]).isNull();
+            } else {
+                assertThat(a).as(row[0]).isNotNull();
+                assertThat(a.getSymbolicName()).as(row[0]).isEqualTo(row[1]);
+                assertThat(a.getVersion()).as(row[0]).isEqualTo(new Version(row[2]));
+            }
+        }
+    }
+
+    @Test
+    public void versionMustSpanTheRest() {
+        assertThat(FilenameTokenizer.parseVersion("a_1.0.0.", 2, 8)).isNull();
+        assertThat(FilenameTokenizer.parseVersion("a_1..0", 2, 6)).isNull();
+        assertThat(FilenameTokenizer.parseVersion("a_1.0.0.q!", 2, 10)).isNull();
+        assertThat(FilenameTokenizer.parseVersion("a_99999999999", 2, 13)).isNull();
+        assertThat(FilenameTokenizer.parseVersion("a_1.2.3.q", 2, 9)).isEqualTo(new Version(1, 2, 3, "q"));
+    }
+}
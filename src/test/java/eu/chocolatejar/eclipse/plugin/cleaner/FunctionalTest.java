@@ -46,6 +46,186 @@ public class FunctionalTest {
         assertThatFeatureIsPresentInEclipseRootAndInDropins("org.eclipse.wst.server_core.feature_3.3.201.v20130412_1040-34Et8s73573C4Da2815");
     }
 
+    @Test
+    public void quickScanWithVerification() throws IOException {
+        createEclipseMock("eclipse-mock");
+        String source = eclipseMock.getAbsolutePath();
+        Main.main(new String[] { "--quick-scan", "--verify-scan", "--source=" + source });
+
+        assertThatPluginIsPresentInEclipseRootOnly("uppercase_1.0.0.JAR");
+        assertThatFeatureIsPresentInEclipseRootOnly("org.eclipse.wst.server_core.feature_3.3.201.v20130412_1040-34Et8s73573C4Da2815");
+    }
+
+    @Parameters({ "1", "4" })
+    @Test
+    public void pipeline(String threads) throws IOException {
+        createEclipseMock("eclipse-mock");
+        String source = eclipseMock.getAbsolutePath();
+        Main.main(new String[] { "--pipeline", "--threads=" + threads, "--source=" + source });
+
+        assertThatPluginIsPresentInEclipseRootOnly("uppercase_1.0.0.JAR");
+        assertThatFeatureIsPresentInEclipseRootOnly("org.eclipse.wst.server_core.feature_3.3.201.v20130412_1040-34Et8s73573C4Da2815");
+    }
+
+    @Test
+    public void installationWithinDropinsFolder() throws IOException {
+        createEclipseMock("eclipse-mock");
+        File parent = Files.createTempDirectory("eclipse-mock-").toFile();
+        File installation = FileUtils.getFile(parent, "dropins", "eclipse");
+        FileUtils.moveDirectory(eclipseMock, installation);
+        eclipseMock = installation;
+        try {
+            Main.main(new String[] { "--source=" + eclipseMock.getAbsolutePath() });
+
+            assertThatPluginIsPresentInEclipseRootOnly("uppercase_1.0.0.JAR");
+            assertThatFeatureIsPresentInEclipseRootOnly("org.eclipse.wst.server_core.feature_3.3.201.v20130412_1040-34Et8s73573C4Da2815");
+        } finally {
+            FileUtils.deleteDirectory(parent);
+        }
+    }
+
+    @Parameters({ "false", "true" })
+    @Test
+    public void bundlePoolKeepsReferencedBundles(boolean pipeline) throws IOException {
+        eclipseMock = Files.createTempDirectory("bundle-pool-").toFile();
+        File pool = new File(eclipseMock, "pool");
+        for (String bundle : new String[] { "a_1.0.0", "a_2.0.0", "a_3.0.0" }) {
+            FileUtils.writeStringToFile(FileUtils.getFile(pool, "plugins", bundle, "META-INF", "MANIFEST.MF"),
+                    "Bundle-SymbolicName: a\nBundle-Version: " + bundle.substring(2) + "\n");
+        }
+        File installation = new File(eclipseMock, "eclipse");
+        FileUtils.writeStringToFile(FileUtils.getFile(installation, "configuration",
+                "org.eclipse.equinox.simpleconfigurator", "bundles.info"), "a,1.0.0,plugins/a_1.0.0,4,false\n");
+
+        Main.main(new String[] { pipeline ? "--pipeline" : "--threads=1", "--pool=" + pool.getAbsolutePath(),
+                "--references=" + installation.getAbsolutePath(),
+                "--destination=" + new File(eclipseMock, "backup").getAbsolutePath() });
+
+        assertThat(FileUtils.getFile(pool, "plugins", "a_1.0.0")).exists();
+        assertThat(FileUtils.getFile(pool, "plugins", "a_2.0.0")).doesNotExist();
+        assertThat(FileUtils.getFile(pool, "plugins", "a_3.0.0")).exists();
+        assertThat(FileUtils.getFile(eclipseMock, "backup", "plugins", "a_2.0.0")).exists();
+    }
+
+    @Test
+    public void requiredDuplicateIsKept() throws IOException {
+        eclipseMock = Files.createTempDirectory("required-").toFile();
+        for (String bundle : new String[] { "a_1.0.0", "a_2.0.0", "a_3.0.0" }) {
+            FileUtils.writeStringToFile(FileUtils.getFile(eclipseMock, "plugins", bundle, "META-INF", "MANIFEST.MF"),
+                    "Bundle-SymbolicName: a\nBundle-Version: " + bundle.substring(2) + "\n");
+        }
+        FileUtils.writeStringToFile(FileUtils.getFile(eclipseMock, "plugins", "b_1.0.0", "META-INF", "MANIFEST.MF"),
+                "Bundle-SymbolicName: b\nBundle-Version: 1.0.0\nRequire-Bundle: a;bundle-version=\"[1.0.0,2.0.0)\"\n");
+
+        Main.main(new String[] { "--source=" + eclipseMock.getAbsolutePath(), "--mode=unlimited",
+                "--destination=" + new File(eclipseMock, "backup").getAbsolutePath() });
+
+        assertThat(FileUtils.getFile(eclipseMock, "plugins", "a_1.0.0")).exists();
+        assertThat(FileUtils.getFile(eclipseMock, "plugins", "a_2.0.0")).doesNotExist();
+        assertThat(FileUtils.getFile(eclipseMock, "plugins", "a_3.0.0")).exists();
+    }
+
+    @Test
+    public void rulesOverrideTheMode() throws IOException {
+        eclipseMock = Files.createTempDirectory("rules-").toFile();
+        for (String bundle : new String[] { "a_1.0.0", "a_2.0.0", "a_3.0.0", "pinned_1.0.0", "pinned_2.0.0" }) {
+            FileUtils.writeStringToFile(FileUtils.getFile(eclipseMock, "plugins", bundle, "META-INF", "MANIFEST.MF"),
+                    "Bundle-SymbolicName: " + bundle.substring(0, bundle.indexOf('_')) + "\nBundle-Version: "
+                            + bundle.substring(bundle.indexOf('_') + 1) + "\n");
+        }
+        File rules = new File(eclipseMock, "rules.txt");
+        FileUtils.writeStringToFile(rules, "pin pinned\nkeep a 2\n");
+
+        Main.main(new String[] { "--source=" + eclipseMock.getAbsolutePath(), "--mode=unlimited",
+                "--rules=" + rules.getAbsolutePath(),
+                "--destination=" + new File(eclipseMock, "backup").getAbsolutePath() });
+
+        assertThat(FileUtils.getFile(eclipseMock, "plugins", "a_1.0.0")).doesNotExist();
+        assertThat(FileUtils.getFile(eclipseMock, "plugins", "a_2.0.0")).exists();
+        assertThat(FileUtils.getFile(eclipseMock, "plugins", "a_3.0.0")).exists();
+        assertThat(FileUtils.getFile(eclipseMock, "plugins", "pinned_1.0.0")).exists();
+    }
+
+    @Test
+    public void invalidRulesStopTheRun() throws IOException {
+        createEclipseMock("eclipse-mock");
+        File rules = new File(eclipseMock, "rules.txt");
+        FileUtils.writeStringToFile(rules, "pin\n");
+        File backup = new File(eclipseMock, "backup");
+
+        Main.main(new String[] { "--source=" + eclipseMock.getAbsolutePath(), "--rules=" + rules.getAbsolutePath(),
+                "--destination=" + backup.getAbsolutePath() });
+
+        assertThat(backup).doesNotExist();
+    }
+
+    @Test
+    public void fingerprintFindsRenamedCopies() throws IOException {
+        eclipseMock = Files.createTempDirectory("fingerprint-").toFile();
+        File installed = FileUtils.getFile(eclipseMock, "plugins", "a_1.0.0");
+        FileUtils.writeStringToFile(FileUtils.getFile(installed, "META-INF", "MANIFEST.MF"),
+                "Bundle-SymbolicName: a\nBundle-Version: 1.0.0\n");
+        FileUtils.writeStringToFile(FileUtils.getFile(installed, "a", "A.class"), "class A");
+        File copy = FileUtils.getFile(eclipseMock, "dropins", "copy-of-a_1.0.0");
+        FileUtils.copyDirectory(installed, copy);
+        FileUtils.writeStringToFile(FileUtils.getFile(copy, "META-INF", "MANIFEST.MF"),
+                "Bundle-SymbolicName: copy.of.a\nBundle-Version: 1.0.0\n");
+
+        Main.main(new String[] { "--source=" + eclipseMock.getAbsolutePath(), "--fingerprint", "--cache",
+                "--destination=" + new File(eclipseMock, "backup").getAbsolutePath() });
+
+        assertThat(installed).exists();
+        assertThat(copy).doesNotExist();
+        assertThat(FileUtils.getFile(eclipseMock, "backup", "plugins", "copy-of-a_1.0.0")).exists();
+    }
+
+    @Parameters({ "false", "true" })
+    @Test
+    public void zipBackupIsRestored(boolean pipeline) throws IOException {
+        createEclipseMock("eclipse-mock");
+        File backup = new File(eclipseMock, "backup");
+        File archive = new File(eclipseMock, "backup.zip");
+        Main.main(new String[] { pipeline ? "--pipeline" : "--threads=1", "--source=" + eclipseMock.getAbsolutePath(),
+                "--destination=" + backup.getAbsolutePath(), "--backup-format=zip" });
+
+        assertThatPluginIsPresentInEclipseRootOnly("uppercase_1.0.0.JAR");
+        assertThat(archive).exists();
+        assertThat(backup).doesNotExist();
+
+        Main.main(new String[] { "--restore=" + archive.getAbsolutePath(), "--restore-bundles=uppercase_1.0.0" });
+
+        assertThatPluginIsPresentInEclipseRootAndInDropins("uppercase_1.0.0.JAR");
+        assertThatFeatureIsPresentInEclipseRootOnly("org.eclipse.wst.server_core.feature_3.3.201.v20130412_1040-34Et8s73573C4Da2815");
+    }
+
+    @Parameters({ "1", "2" })
+    @Test
+    public void fleet(String parallelInstallations) throws IOException {
+        createEclipseMock("eclipse-mock");
+        File second = Files.createTempDirectory("eclipse-mock-").toFile();
+        File third = Files.createTempDirectory("eclipse-mock-").toFile();
+        try {
+            FileUtils.copyDirectory(eclipseMock, second);
+            FileUtils.copyDirectory(eclipseMock, third);
+            File sourceList = new File(third, "sources.txt");
+            FileUtils.writeStringToFile(sourceList, "# more installations\n" + third.getAbsolutePath() + "\n");
+
+            Main.main(new String[] { "--source=" + eclipseMock.getAbsolutePath(), "--source=" + second.getAbsolutePath(),
+                    "--source-list=" + sourceList.getAbsolutePath(), "--threads=2",
+                    "--parallel-installations=" + parallelInstallations, "--cache" });
+
+            for (File installation : new File[] { eclipseMock, second, third }) {
+                assertThat(FileUtils.getFile(installation, "plugins", "uppercase_1.0.0.JAR")).exists();
+                assertThat(FileUtils.getFile(installation, "dropins", "eclipse", "plugins", "uppercase_1.0.0.JAR"))
+                        .doesNotExist();
+                assertThat(FileUtils.getFile(installation, ManifestCache.CACHE_FOLDER, "manifest.cache")).exists();
+            }
+        } finally {
+            FileUtils.deleteDirectory(second);
+            FileUtils.deleteDirectory(third);
+        }
+    }
+
     @Parameters({ "-s=", "-source=" })
     @Test
     public void invalidSource(String sourceOption) throws IOException {
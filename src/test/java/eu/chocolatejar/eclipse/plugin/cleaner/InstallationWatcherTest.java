@@ -0,0 +1,172 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.chocolatejar.eclipse.plugin.cleaner.model.Artifact;
+import eu.chocolatejar.eclipse.plugin.cleaner.model.CleaningMode;
+import eu.chocolatejar.eclipse.plugin.cleaner.model.DuplicationListener;
+
+public class InstallationWatcherTest {
+
+    private static final long TIMEOUT_SECONDS = 20;
+
+    File eclipse;
+    File staging;
+    Thread watching;
+    InstallationWatcher watcher;
+    final BlockingQueue<Artifact> duplicates = new LinkedBlockingQueue<>();
+
+    @Before
+    public void before() throws IOException {
+        eclipse = Files.createTempDirectory("installation-watcher-").toFile();
+        staging = Files.createTempDirectory("installation-watcher-staging-").toFile();
+        FileUtils.forceMkdir(new File(eclipse, "features"));
+        FileUtils.forceMkdir(FileUtils.getFile(eclipse, "dropins", "eclipse", "plugins"));
+        bundle(new File(eclipse, "plugins"), "a", "1.0.0");
+    }
+
+    @After
+    public void after() throws Exception {
+        if (watching != null) {
+            watching.interrupt();
+            watching.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+        }
+        FileUtils.deleteDirectory(eclipse);
+        FileUtils.deleteDirectory(staging);
+    }
+
+    @Test
+    public void reportsDuplicatesOfAddedBundles() throws Exception {
+        watch();
+
+        drop(FileUtils.getFile(eclipse, "dropins", "eclipse", "plugins"), "a", "2.0.0");
+        Artifact duplicate = duplicates.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertThat(duplicate).isNotNull();
+        assertThat(duplicate.getVersion().toString()).isEqualTo("1.0.0");
+
+        drop(FileUtils.getFile(eclipse, "dropins", "eclipse", "plugins"), "b", "1.0.0");
+        drop(FileUtils.getFile(eclipse, "dropins", "eclipse", "plugins"), "a", "3.0.0");
+        duplicate = duplicates.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertThat(duplicate.getVersion().toString()).isEqualTo("2.0.0");
+        // a_1.0.0 has been reported already
+        assertThat(duplicates.poll(1, TimeUnit.SECONDS)).isNull();
+    }
+
+    @Test
+    public void rescansWhenDropinsLayoutChanges() throws Exception {
+        watch();
+
+        File tool = new File(staging, "tool");
+        bundle(new File(tool, "plugins"), "a", "2.0.0");
+        Files.move(tool.toPath(), FileUtils.getFile(eclipse, "dropins", "tool").toPath());
+
+        Artifact duplicate = duplicates.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertThat(duplicate).isNotNull();
+        assertThat(duplicate.getVersion().toString()).isEqualTo("1.0.0");
+    }
+
+    @Test
+    public void updatesLooseBundlesWithoutRescan() throws Exception {
+        watch();
+
+        File dropins = new File(eclipse, "dropins");
+        FileUtils.writeStringToFile(new File(dropins, "readme.txt"), "not a bundle");
+        drop(dropins, "a", "2.0.0");
+
+        Artifact duplicate = duplicates.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertThat(duplicate).isNotNull();
+        assertThat(duplicate.getVersion().toString()).isEqualTo("1.0.0");
+        assertThat(watcher.getRescans()).isEqualTo(1);
+
+        File deleted = new File(dropins, "a_2.0.0");
+        FileUtils.deleteDirectory(deleted);
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (watcher.getIndex(Cleaner.PLUGINS).contains(deleted) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(watcher.getIndex(Cleaner.PLUGINS).contains(deleted)).isFalse();
+        assertThat(watcher.getRescans()).isEqualTo(1);
+    }
+
+    private void watch() throws InterruptedException {
+        Map<String, DuplicationListener> listeners = new LinkedHashMap<>();
+        DuplicationListener listener = new DuplicationListener() {
+            @Override
+            public void duplicateFound(Artifact duplicate, Artifact master) {
+                duplicates.add(duplicate);
+            }
+        };
+        listeners.put(Cleaner.PLUGINS, listener);
+        listeners.put(Cleaner.FEATURES, listener);
+
+        final ParsingStage parsingStage = new ParsingStage(new ArtifactParser(), 1);
+        final InstallationWatcher watcher = this.watcher = new InstallationWatcher(eclipse, false, new DirectoryScanner(),
+                parsingStage, new DuplicationDetectorFactory(CleaningMode.unlimited), listeners);
+        watcher.setDebounce(50);
+
+        watching = new Thread("installation-watcher-test") {
+            @Override
+            public void run() {
+                try {
+                    watcher.watch();
+                } catch (InterruptedException | IOException e) {
+                    // stopped
+                } finally {
+                    parsingStage.close();
+                }
+            }
+        };
+        watching.start();
+
+        // folders are watched before they are indexed
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (watcher.getIndex(Cleaner.PLUGINS).size() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Prepares the bundle outside of the installation and moves it in at
+     * once.
+     */
+    private void drop(File plugins, String symbolicName, String version) throws IOException {
+        File bundle = bundle(staging, symbolicName, version);
+        Files.move(bundle.toPath(), new File(plugins, bundle.getName()).toPath());
+    }
+
+    private File bundle(File plugins, String symbolicName, String version) throws IOException {
+        File bundle = new File(plugins, symbolicName + "_" + version);
+        FileUtils.writeStringToFile(FileUtils.getFile(bundle, "META-INF", "MANIFEST.MF"), "Bundle-SymbolicName: "
+                + symbolicName + "\nBundle-Version: " + version + "\n");
+        return bundle;
+    }
+}
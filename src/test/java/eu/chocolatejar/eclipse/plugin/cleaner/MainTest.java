@@ -20,6 +20,8 @@ import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.when;
 
 import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.apache.commons.cli.CommandLine;
 import org.junit.Before;
@@ -74,6 +76,27 @@ public class MainTest {
         assertThat(param).isEqualTo("userInput");
     }
 
+    @Test
+    public void resolveIntParam() {
+        when(mockInput.getOptionValue(eq("testParam"))).thenReturn("8");
+
+        assertThat(main.getParamInt("testParam", 1)).isEqualTo(8);
+    }
+
+    @Test
+    public void resolveIntParam_invalid() {
+        when(mockInput.getOptionValue(eq("testParam"))).thenReturn("many");
+
+        assertThat(main.getParamInt("testParam", 1)).isEqualTo(1);
+    }
+
+    @Test
+    public void resolveIntParam_notPositive() {
+        when(mockInput.getOptionValue(eq("testParam"))).thenReturn("0");
+
+        assertThat(main.getParamInt("testParam", 1)).isEqualTo(1);
+    }
+
     @Test
     public void resolveDefaultFolder() {
         String file = main.getDefaultDestinationFolder(new File("."));
@@ -85,4 +108,17 @@ public class MainTest {
         String file = main.getDefaultDestinationFolder(new File("."));
         assertThat(file.startsWith(".")).isFalse();
     }
+
+    @Test
+    public void resolveFleetFolders_areUnique() {
+        when(mockInput.hasOption(eq("destination"))).thenReturn(true);
+        when(mockInput.getOptionValue(eq("destination"))).thenReturn("backup");
+        Set<String> used = new HashSet<>();
+
+        String first = main.getFleetDestinationFolder(new File("hosts/a/eclipse"), used);
+        String second = main.getFleetDestinationFolder(new File("hosts/b/eclipse"), used);
+
+        assertThat(first).endsWith("backup" + File.separator + "eclipse");
+        assertThat(second).endsWith("backup" + File.separator + "eclipse_2");
+    }
 }
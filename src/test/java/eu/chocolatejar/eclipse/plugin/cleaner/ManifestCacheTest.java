@@ -0,0 +1,222 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.chocolatejar.eclipse.plugin.cleaner.model.Artifact;
+import eu.chocolatejar.eclipse.plugin.cleaner.model.Requirement;
+import eu.chocolatejar.eclipse.plugin.cleaner.model.VersionRange;
+
+public class ManifestCacheTest {
+
+    File eclipse;
+
+    @Before
+    public void before() throws IOException {
+        eclipse = Files.createTempDirectory("manifest-cache-").toFile();
+    }
+
+    @After
+    public void after() throws IOException {
+        FileUtils.deleteDirectory(eclipse);
+    }
+
+    @Test
+    public void roundTrip() {
+        ManifestCache cache = ManifestCache.load(eclipse);
+        assertThat(cache.get("/a.jar", 10, 20)).isNull();
+        cache.put("/a.jar", 10, 20, new Artifact(new File("/a.jar"), "a", "1.0.0.v2014"));
+        cache.put("/b.jar", 30, 40, null);
+        cache.save();
+
+        cache = ManifestCache.load(eclipse);
+        ManifestCache.Entry a = cache.get("/a.jar", 10, 20);
+        assertThat(a.symbolicName).isEqualTo("a");
+        assertThat(a.version).isEqualTo("1.0.0.v2014");
+        assertThat(cache.get("/b.jar", 30, 40).isNegative()).isTrue();
+        assertThat(cache.getHits()).isEqualTo(2);
+        assertThat(cache.getMisses()).isEqualTo(0);
+    }
+
+    @Test
+    public void requirementsAreCached() throws IOException {
+        File bundle = FileUtils.getFile(eclipse, "plugins", "a_1.0.0");
+        FileUtils.writeStringToFile(FileUtils.getFile(bundle, "META-INF", "MANIFEST.MF"),
+                "Bundle-SymbolicName: a\nBundle-Version: 1.0.0\nRequire-Bundle: b;bundle-version=\"[1.0.0,2.0\n"
+                        + " .0)\",c\nFragment-Host: d\n");
+
+        ManifestCache cache = ManifestCache.load(eclipse);
+        List<Requirement> parsed = new ArtifactParser(cache).createFromFile(bundle).getRequirements();
+        cache.save();
+        List<Requirement> cached = new ArtifactParser(ManifestCache.load(eclipse)).createFromFile(bundle)
+                .getRequirements();
+
+        assertThat(parsed).containsExactly(new Requirement("b", VersionRange.parse("[1.0.0,2.0.0)")),
+                new Requirement("c", VersionRange.ANY), new Requirement("d", VersionRange.ANY));
+        assertThat(cached).isEqualTo(parsed);
+    }
+
+    @Test
+    public void fingerprintsAreCached() throws IOException {
+        File bundle = FileUtils.getFile(eclipse, "plugins", "a_1.0.0");
+        FileUtils.writeStringToFile(FileUtils.getFile(bundle, "META-INF", "MANIFEST.MF"),
+                "Bundle-SymbolicName: a\nBundle-Version: 1.0.0\n");
+        FileUtils.writeStringToFile(FileUtils.getFile(bundle, "a", "A.class"), "class A");
+
+        ManifestCache cache = ManifestCache.load(eclipse);
+        assertThat(new ArtifactParser(cache).createFromFile(bundle).getFingerprint()).isNull();
+        cache.save();
+
+        cache = ManifestCache.load(eclipse);
+        ArtifactParser parser = new ArtifactParser(cache);
+        parser.setFingerprints(true);
+        String fingerprint = parser.createFromFile(bundle).getFingerprint();
+        assertThat(fingerprint).isNotNull();
+        cache.save();
+
+        // the content is not read again while the tree signature is the same
+        File classFile = FileUtils.getFile(bundle, "a", "A.class");
+        final long lastModified = classFile.lastModified();
+        FileUtils.writeStringToFile(classFile, "class B");
+        assertThat(classFile.setLastModified(lastModified)).isTrue();
+        cache = ManifestCache.load(eclipse);
+        parser = new ArtifactParser(cache);
+        parser.setFingerprints(true);
+        assertThat(parser.createFromFile(bundle).getFingerprint()).isEqualTo(fingerprint);
+        assertThat(cache.getHits()).isEqualTo(1);
+        cache.save();
+    }
+
+    @Test
+    public void changedContentOfExplodedBundleIsFingerprintedAgain() throws IOException {
+        File bundle = FileUtils.getFile(eclipse, "plugins", "a_1.0.0");
+        FileUtils.writeStringToFile(FileUtils.getFile(bundle, "META-INF", "MANIFEST.MF"),
+                "Bundle-SymbolicName: a\nBundle-Version: 1.0.0\n");
+        File classFile = FileUtils.getFile(bundle, "a", "A.class");
+        FileUtils.writeStringToFile(classFile, "class A");
+
+        ManifestCache cache = ManifestCache.load(eclipse);
+        ArtifactParser parser = new ArtifactParser(cache);
+        parser.setFingerprints(true);
+        String fingerprint = parser.createFromFile(bundle).getFingerprint();
+        cache.save();
+
+        // the manifest is unchanged
+        FileUtils.writeStringToFile(classFile, "class B");
+        assertThat(classFile.setLastModified(classFile.lastModified() + 2000)).isTrue();
+        cache = ManifestCache.load(eclipse);
+        parser = new ArtifactParser(cache);
+        parser.setFingerprints(true);
+        String changed = parser.createFromFile(bundle).getFingerprint();
+        cache.save();
+
+        assertThat(cache.getHits()).isEqualTo(1);
+        assertThat(changed).isNotNull().isNotEqualTo(fingerprint);
+
+        // an added file is noticed as well
+        FileUtils.writeStringToFile(FileUtils.getFile(bundle, "a", "B.class"), "class C");
+        cache = ManifestCache.load(eclipse);
+        parser = new ArtifactParser(cache);
+        parser.setFingerprints(true);
+        assertThat(parser.createFromFile(bundle).getFingerprint()).isNotEqualTo(changed);
+    }
+
+    @Test
+    public void changedFileIsAMiss() {
+        ManifestCache cache = ManifestCache.load(eclipse);
+        cache.put("/a.jar", 10, 20, new Artifact(new File("/a.jar"), "a", "1.0.0"));
+        cache.save();
+
+        cache = ManifestCache.load(eclipse);
+        assertThat(cache.get("/a.jar", 10, 21)).isNull();
+        assertThat(cache.get("/a.jar", 11, 20)).isNull();
+        assertThat(cache.getMisses()).isEqualTo(2);
+    }
+
+    @Test
+    public void unusedEntriesAreNotSaved() {
+        ManifestCache cache = ManifestCache.load(eclipse);
+        cache.put("/a.jar", 10, 20, new Artifact(new File("/a.jar"), "a", "1.0.0"));
+        cache.save();
+
+        ManifestCache.load(eclipse).save();
+
+        assertThat(ManifestCache.load(eclipse).get("/a.jar", 10, 20)).isNull();
+    }
+
+    @Test
+    public void corruptedCacheIsDiscarded() throws IOException {
+        ManifestCache cache = ManifestCache.load(eclipse);
+        cache.put("/a.jar", 10, 20, new Artifact(new File("/a.jar"), "a", "1.0.0"));
+        cache.save();
+
+        File file = FileUtils.getFile(eclipse, ManifestCache.CACHE_FOLDER, "manifest.cache");
+        byte[] content = FileUtils.readFileToByteArray(file);
+        FileUtils.writeByteArrayToFile(file, Arrays.copyOf(content, content.length - 5));
+
+        assertThat(ManifestCache.load(eclipse).get("/a.jar", 10, 20)).isNull();
+    }
+
+    @Test
+    public void parserOpensOnlyChangedBundles() throws IOException {
+        File bundle = FileUtils.getFile(eclipse, "plugins", "a_1.0.0");
+        File manifest = FileUtils.getFile(bundle, "META-INF", "MANIFEST.MF");
+        FileUtils.writeStringToFile(manifest, "Bundle-SymbolicName: a\nBundle-Version: 1.0.0.cached\n");
+
+        ManifestCache cache = ManifestCache.load(eclipse);
+        assertThat(new ArtifactParser(cache).createFromFile(bundle).getVersion().toString()).isEqualTo(
+                "1.0.0.cached");
+        cache.save();
+
+        cache = ManifestCache.load(eclipse);
+        assertThat(new ArtifactParser(cache).createFromFile(bundle).getVersion().toString()).isEqualTo(
+                "1.0.0.cached");
+        assertThat(cache.getHits()).isEqualTo(1);
+        assertThat(cache.getMisses()).isEqualTo(0);
+    }
+
+    @Test
+    public void sharedByInstallations() throws IOException {
+        File second = Files.createTempDirectory("manifest-cache-").toFile();
+        try {
+            String first = new File(eclipse, "a.jar").getAbsolutePath();
+            String other = new File(second, "b.jar").getAbsolutePath();
+            ManifestCache cache = ManifestCache.load(Arrays.asList(eclipse, second));
+            cache.put(first, 10, 20, new Artifact(new File(first), "a", "1.0.0"));
+            cache.put(other, 10, 20, new Artifact(new File(other), "b", "1.0.0"));
+            cache.save();
+
+            assertThat(ManifestCache.load(eclipse).get(first, 10, 20)).isNotNull();
+            assertThat(ManifestCache.load(eclipse).get(other, 10, 20)).isNull();
+            assertThat(ManifestCache.load(second).get(other, 10, 20)).isNotNull();
+            assertThat(ManifestCache.load(Arrays.asList(eclipse, second)).get(other, 10, 20)).isNotNull();
+        } finally {
+            FileUtils.deleteDirectory(second);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class ManifestHeaderScannerTest {
+
+    ManifestHeaderScanner scanner = new ManifestHeaderScanner("Bundle-SymbolicName", "Bundle-Version");
+
+    private String[] scan(String manifest) throws IOException {
+        return scanner.scan(ByteBuffer.wrap(manifest.getBytes("UTF-8")));
+    }
+
+    @Test
+    public void simple() throws IOException {
+        assertThat(scan("Manifest-Version: 1.0\r\nBundle-SymbolicName: a.b;singleton:=true\r\nBundle-Version: 1.0.0\r\n"))
+                .containsExactly("a.b;singleton:=true", "1.0.0");
+    }
+
+    @Test
+    public void continuationLines() throws IOException {
+        assertThat(
+                scan("Bundle-SymbolicName: org.eclipse.very.long.symbolic.name.that.does.not.fit.on.a.single.line.o\n"
+                        + " f.a.manifest;singleton:=true\n" + "Bundle-Version: 1.0.0.v2014\n"
+                        + " 0101-1200\n")).containsExactly(
+                "org.eclipse.very.long.symbolic.name.that.does.not.fit.on.a.single.line.of.a.manifest;singleton:=true",
+                "1.0.0.v20140101-1200");
+    }
+
+    @Test
+    public void caseInsensitiveNamesAndMixedLineEndings() throws IOException {
+        assertThat(scan("bundle-symbolicname: a\rBUNDLE-VERSION: 2.0\r\n")).containsExactly("a", "2.0");
+    }
+
+    @Test
+    public void onlyMainSection() throws IOException {
+        assertThat(scan("Bundle-SymbolicName: a\r\n\r\nName: a/b.class\r\nBundle-Version: 1.0\r\n")).containsExactly(
+                "a", null);
+    }
+
+    @Test
+    public void stopsWhenAllHeadersAreFound() throws IOException {
+        assertThat(scan("Bundle-Version: 1.0\nBundle-SymbolicName: a\nthis is not a header\n")).containsExactly("a",
+                "1.0");
+    }
+
+    @Test(expected = IOException.class)
+    public void invalidHeader() throws IOException {
+        scan("this is not a header\nBundle-SymbolicName: a\nBundle-Version: 1.0\n");
+    }
+
+    @Test
+    public void empty() throws IOException {
+        assertThat(scan("")).containsExactly(null, null);
+    }
+
+    @Test
+    public void respectsBufferPosition() throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap("XXBundle-SymbolicName: a\nBundle-Version: 1.0\n".getBytes("UTF-8"));
+        buffer.position(2);
+
+        assertThat(scanner.scan(buffer)).containsExactly("a", "1.0");
+        assertThat(buffer.position()).isEqualTo(2);
+    }
+}
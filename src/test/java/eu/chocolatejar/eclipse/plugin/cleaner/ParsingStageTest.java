@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.osgi.framework.Version;
+
+import eu.chocolatejar.eclipse.plugin.cleaner.model.Artifact;
+import eu.chocolatejar.eclipse.plugin.cleaner.model.CleaningMode;
+import eu.chocolatejar.eclipse.plugin.cleaner.model.LocationClass;
+import eu.chocolatejar.eclipse.plugin.cleaner.model.StreamingDuplicationDetector;
+
+@RunWith(JUnitParamsRunner.class)
+public class ParsingStageTest {
+
+    private Set<Artifact> parse(int threads) {
+        List<Candidate> candidates = new DirectoryScanner().list(new File(ArtifactParserTest.TEST_BUNDLES),
+                LocationClass.INSTALLATION);
+        Set<Artifact> artifacts = Collections.newSetFromMap(new ConcurrentHashMap<Artifact, Boolean>());
+        try (ParsingStage stage = new ParsingStage(new ArtifactParser(), threads)) {
+            stage.parse(candidates, artifacts);
+        }
+        return artifacts;
+    }
+
+    @Test
+    @Parameters({ "1", "4" })
+    public void quickScanOpensOnlyContestedManifests(int threads) throws IOException {
+        File plugins = Files.createTempDirectory("quick-scan-").toFile();
+        try {
+            bundle(plugins, "a_1.0.0", "a", "1.0.0.fromManifest");
+            bundle(plugins, "a_2.0.0", "a", "2.0.0.fromManifest");
+            bundle(plugins, "b_1.0.0", "b", "1.0.0.fromManifest");
+            bundle(plugins, "unversioned", "c", "1.0.0.fromManifest");
+
+            Set<Artifact> artifacts = Collections.newSetFromMap(new ConcurrentHashMap<Artifact, Boolean>());
+            int opened;
+            try (ParsingStage stage = new ParsingStage(new ArtifactParser(), threads)) {
+                opened = stage.parseContested(new DirectoryScanner().list(plugins, LocationClass.INSTALLATION),
+                        artifacts);
+            }
+
+            assertThat(opened).isEqualTo(3);
+            assertThat(artifacts).extractingResultOf("getVersion").containsOnly(new Version("1.0.0.fromManifest"),
+                    new Version("2.0.0.fromManifest"), new Version("1.0.0"));
+        } finally {
+            FileUtils.deleteDirectory(plugins);
+        }
+    }
+
+    @Test
+    @Parameters({ "1", "4" })
+    public void quickScanOpensBundlesNamedByAnotherManifest(int threads) throws IOException {
+        File plugins = Files.createTempDirectory("quick-scan-").toFile();
+        try {
+            bundle(plugins, "x_1.0.0", "b", "1.0.0.fromManifest");
+            bundle(plugins, "x_2.0.0", "x", "2.0.0.fromManifest");
+            bundle(plugins, "b_2.0.0", "b", "2.0.0.fromManifest");
+            bundle(plugins, "c_1.0.0", "c", "1.0.0.fromManifest");
+            List<Candidate> candidates = new DirectoryScanner().list(plugins, LocationClass.INSTALLATION);
+
+            Set<Artifact> quick = Collections.newSetFromMap(new ConcurrentHashMap<Artifact, Boolean>());
+            Set<Artifact> full = Collections.newSetFromMap(new ConcurrentHashMap<Artifact, Boolean>());
+            int opened;
+            try (ParsingStage stage = new ParsingStage(new ArtifactParser(), threads)) {
+                opened = stage.parseContested(candidates, quick);
+                stage.parse(candidates, full);
+            }
+
+            assertThat(opened).isEqualTo(3);
+            assertThat(quick).extractingResultOf("getVersion").containsOnly(new Version("1.0.0.fromManifest"),
+                    new Version("2.0.0.fromManifest"), new Version("1.0.0"));
+            assertThat(new DuplicationDetectorFactory(CleaningMode.unlimited).detect(quick).getDuplicates())
+                    .isEqualTo(new DuplicationDetectorFactory(CleaningMode.unlimited).detect(full).getDuplicates())
+                    .hasSize(1);
+        } finally {
+            FileUtils.deleteDirectory(plugins);
+        }
+    }
+
+    private void bundle(File plugins, String folder, String symbolicName, String version) throws IOException {
+        FileUtils.writeStringToFile(FileUtils.getFile(plugins, folder, "META-INF", "MANIFEST.MF"),
+                "Bundle-SymbolicName: " + symbolicName + "\nBundle-Version: " + version + "\n");
+    }
+
+    @Test
+    @Parameters({ "2", "4", "32" })
+    public void sameResultAsSequential(int threads) {
+        Set<Artifact> sequential = parse(1);
+
+        assertThat(sequential).isNotEmpty();
+        assertThat(parse(threads)).isEqualTo(sequential);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void asyncRunsAreAwaitedSeparately() throws Exception {
+        List<Candidate> candidates = new DirectoryScanner().list(new File(ArtifactParserTest.TEST_BUNDLES),
+                LocationClass.INSTALLATION);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger added = new AtomicInteger();
+
+        try (ParsingStage stage = new ParsingStage(new ArtifactParser(), 4)) {
+            ParsingStage.AsyncRun failing = stage.startAsync();
+            failing.parse(candidates.get(0), new StreamingDuplicationDetector() {
+                @Override
+                public void add(Artifact artifact) {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    throw new IllegalArgumentException("failure of another installation");
+                }
+
+                @Override
+                public int getArtifactsCount() {
+                    return 0;
+                }
+            });
+
+            ParsingStage.AsyncRun run = stage.startAsync();
+            for (Candidate c : candidates.subList(1, candidates.size())) {
+                run.parse(c, new StreamingDuplicationDetector() {
+                    @Override
+                    public void add(Artifact artifact) {
+                        added.incrementAndGet();
+                    }
+
+                    @Override
+                    public int getArtifactsCount() {
+                        return added.get();
+                    }
+                });
+            }
+            // doesn't wait for the blocked run and doesn't see its failure
+            run.await();
+            assertThat(added.get()).isGreaterThan(0);
+
+            release.countDown();
+            failing.await();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.osgi.framework.Version;
+
+import eu.chocolatejar.eclipse.plugin.cleaner.model.Artifact;
+import eu.chocolatejar.eclipse.plugin.cleaner.model.CleaningMode;
+import eu.chocolatejar.eclipse.plugin.cleaner.model.Requirement;
+import eu.chocolatejar.eclipse.plugin.cleaner.model.VersionRange;
+
+/**
+ * Measures building of the requirement graph and finding of required
+ * duplicates for installations from 5k to 80k bundles. Each symbolic name has
+ * two versions on average, each bundle requires ten other bundles with a
+ * version range.
+ * 
+ * Not a unit test, run it manually.
+ */
+public class RequirementGraphBenchmark {
+
+    private static final int[] SIZES = { 5000, 20000, 80000 };
+    private static final int ROUNDS = 5;
+    private static final int REQUIREMENTS = 10;
+
+    public static void main(String[] args) {
+        // warm up
+        Set<Artifact> warmUp = artifacts(20000);
+        find(warmUp, duplicates(warmUp));
+
+        System.out.printf("%10s %12s %10s %14s%n", "bundles", "ms", "kept", "ns/bundle");
+        for (int size : SIZES) {
+            Set<Artifact> artifacts = artifacts(size);
+            Set<Artifact> duplicates = duplicates(artifacts);
+            long best = Long.MAX_VALUE;
+            int kept = 0;
+            for (int r = 0; r < ROUNDS; r++) {
+                long start = System.nanoTime();
+                kept = find(artifacts, duplicates);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            System.out.printf("%10d %12.1f %10d %14d%n", size, best / 1e6, kept, best / size);
+        }
+    }
+
+    private static Set<Artifact> duplicates(Set<Artifact> artifacts) {
+        return new DuplicationDetectorFactory(CleaningMode.unlimited).detect(artifacts).getDuplicates();
+    }
+
+    private static int find(Set<Artifact> artifacts, Set<Artifact> duplicates) {
+        return new RequirementGraph(artifacts).findRequired(duplicates).size();
+    }
+
+    private static Set<Artifact> artifacts(int size) {
+        Random random = new Random(size);
+        final int names = Math.max(1, size / 2);
+        Set<Artifact> artifacts = new HashSet<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            String name = "org.example.bundle" + random.nextInt(names);
+            String version = random.nextInt(3) + "." + random.nextInt(10) + ".0.v" + random.nextInt(100);
+            List<Requirement> requirements = new ArrayList<>(REQUIREMENTS);
+            for (int r = 0; r < REQUIREMENTS; r++) {
+                int major = random.nextInt(3);
+                requirements.add(new Requirement("org.example.bundle" + random.nextInt(names), VersionRange.parse("["
+                        + major + ".0.0," + (major + 1) + ".0.0)")));
+            }
+            artifacts.add(new Artifact(new File("plugins", name + "_" + version + "_" + i + ".jar"), name,
+                    new Version(version), requirements, null, null));
+        }
+        return artifacts;
+    }
+}
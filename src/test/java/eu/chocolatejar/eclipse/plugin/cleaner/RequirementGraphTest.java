@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+import org.osgi.framework.Version;
+
+import eu.chocolatejar.eclipse.plugin.cleaner.model.Artifact;
+
+public class RequirementGraphTest {
+
+    private static Artifact bundle(String symbolicName, String version, String requireBundle) {
+        return new Artifact(new File(symbolicName + "_" + version), symbolicName, new Version(version),
+                RequirementParser.parse(requireBundle, null), null, null);
+    }
+
+    private static Set<Artifact> set(Artifact... artifacts) {
+        return new HashSet<>(Arrays.asList(artifacts));
+    }
+
+    @Test
+    public void keepsOnlyMatch() {
+        Artifact old = bundle("lib", "1.0.0", null);
+        Artifact current = bundle("lib", "2.0.0", null);
+        Artifact app = bundle("app", "1.0.0", "lib;bundle-version=\"[1.0.0,2.0.0)\"");
+
+        Map<Artifact, Artifact> required = new RequirementGraph(set(old, current, app)).findRequired(set(old));
+
+        assertThat(required).hasSize(1).containsEntry(old, app);
+    }
+
+    @Test
+    public void satisfiedBySurvivor() {
+        Artifact old = bundle("lib", "1.0.0", null);
+        Artifact current = bundle("lib", "1.5.0", null);
+        Artifact app = bundle("app", "1.0.0", "lib;bundle-version=\"[1.0.0,2.0.0)\"");
+
+        assertThat(new RequirementGraph(set(old, current, app)).findRequired(set(old))).isEmpty();
+    }
+
+    @Test
+    public void requirementsOfRemovedBundlesDontCount() {
+        Artifact lib = bundle("lib", "1.0.0", null);
+        Artifact newLib = bundle("lib", "2.0.0", null);
+        Artifact oldApp = bundle("app", "1.0.0", "lib;bundle-version=\"[1.0.0,2.0.0)\"");
+        Artifact app = bundle("app", "2.0.0", "lib;bundle-version=2.0.0");
+
+        assertThat(new RequirementGraph(set(lib, newLib, oldApp, app)).findRequired(set(lib, oldApp))).isEmpty();
+    }
+
+    @Test
+    public void keptBundlesRequireFurther() {
+        Artifact base1 = bundle("base", "1.0.0", null);
+        Artifact base2 = bundle("base", "2.0.0", null);
+        Artifact lib1 = bundle("lib", "1.0.0", "base;bundle-version=\"[1.0.0,2.0.0)\"");
+        Artifact lib2 = bundle("lib", "2.0.0", "base;bundle-version=2.0.0");
+        Artifact app = bundle("app", "1.0.0", "lib;bundle-version=\"[1.0.0,1.0.0]\"");
+
+        Map<Artifact, Artifact> required = new RequirementGraph(set(base1, base2, lib1, lib2, app)).findRequired(set(
+                base1, lib1));
+
+        assertThat(required).hasSize(2).containsEntry(lib1, app).containsEntry(base1, lib1);
+    }
+
+    @Test
+    public void newestOfSeveralMatchesIsKept() {
+        Artifact lib1 = bundle("lib", "1.0.0", null);
+        Artifact lib11 = bundle("lib", "1.1.0", null);
+        Artifact lib2 = bundle("lib", "2.0.0", null);
+        Artifact app = bundle("app", "1.0.0", "lib;bundle-version=\"[1.0.0,2.0.0)\"");
+
+        Map<Artifact, Artifact> required = new RequirementGraph(set(lib1, lib11, lib2, app)).findRequired(set(lib1,
+                lib11));
+
+        assertThat(required).hasSize(1).containsKey(lib11);
+    }
+
+    @Test
+    public void unsatisfiableRequirementsAreIgnored() {
+        Artifact lib1 = bundle("lib", "1.0.0", null);
+        Artifact lib2 = bundle("lib", "2.0.0", null);
+        Artifact app = bundle("app", "1.0.0", "lib;bundle-version=\"[3.0.0,4.0.0)\",missing");
+
+        RequirementGraph graph = new RequirementGraph(set(lib1, lib2, app));
+
+        assertThat(graph.findRequired(set(lib1))).isEmpty();
+        assertThat(graph.getResolvedRequirements()).isEqualTo(0);
+        assertThat(graph.size()).isEqualTo(3);
+    }
+
+    @Test
+    public void fragmentKeepsItsHost() {
+        Artifact host1 = bundle("swt", "3.0.0", null);
+        Artifact host2 = bundle("swt", "4.0.0", null);
+        Artifact fragment = new Artifact(new File("swt.gtk_3.0.0"), "swt.gtk", new Version("3.0.0"),
+                RequirementParser.parse(null, "swt;bundle-version=\"[3.0.0,4.0.0)\""), null, null);
+
+        assertThat(new RequirementGraph(set(host1, host2, fragment)).findRequired(set(host1))).containsKey(host1);
+    }
+
+    @Test
+    public void requiredByName() {
+        Artifact lib1 = bundle("lib", "1.0.0", null);
+        Artifact lib2 = bundle("lib", "2.0.0", null);
+        Artifact self = bundle("self", "1.0.0", "self");
+        Artifact app = bundle("app", "1.0.0", "lib;bundle-version=\"[2.0.0,3.0.0)\",self");
+
+        assertThat(new RequirementGraph(set(lib1, lib2, self, app)).findRequiredByName()).containsOnly(lib2, self);
+    }
+}
@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import eu.chocolatejar.eclipse.plugin.cleaner.model.Requirement;
+import eu.chocolatejar.eclipse.plugin.cleaner.model.VersionRange;
+
+public class RequirementParserTest {
+
+    @Test
+    public void requireBundle() {
+        List<Requirement> requirements = RequirementParser.parse(
+                "org.eclipse.core.runtime;bundle-version=\"[3.4.0,4.0.0)\",org.eclipse.ui;visibility:=reexport,"
+                        + " org.junit;bundle-version=\"4.8\"", null);
+
+        assertThat(requirements).containsExactly(
+                new Requirement("org.eclipse.core.runtime", VersionRange.parse("[3.4.0,4.0.0)")),
+                new Requirement("org.eclipse.ui", VersionRange.ANY),
+                new Requirement("org.junit", VersionRange.parse("4.8")));
+    }
+
+    @Test
+    public void fragmentHost() {
+        List<Requirement> requirements = RequirementParser.parse(null,
+                "org.eclipse.swt; bundle-version=\"[3.0.0,4.0.0)\"");
+
+        assertThat(requirements).containsExactly(
+                new Requirement("org.eclipse.swt", VersionRange.parse("[3.0.0,4.0.0)")));
+    }
+
+    @Test
+    public void optionalAndInvalidAreSkipped() {
+        List<Requirement> requirements = RequirementParser.parse("a;resolution:=optional,"
+                + "b;bundle-version=\"[1.0,x)\",c;resolution:=\"optional\";bundle-version=1.0,d", null);
+
+        assertThat(requirements).containsExactly(new Requirement("d", VersionRange.ANY));
+    }
+
+    @Test
+    public void missingHeaders() {
+        assertThat(RequirementParser.parse(null, null)).isEmpty();
+        assertThat(RequirementParser.parse(" ", "")).isEmpty();
+    }
+}
@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import eu.chocolatejar.eclipse.plugin.cleaner.model.Artifact;
+
+/**
+ * Measures the retained heap of 100k artifacts parsed from a generated tree
+ * of installations sharing the same bundles, with and without a shared
+ * {@link SymbolTable}.
+ * 
+ * The tree is generated in memory only, filenames are parsed without
+ * touching the disk. Not a unit test, run it manually, preferably with
+ * <code>-Xmx1g</code>.
+ */
+public class SymbolTableBenchmark {
+
+    private static final int INSTALLATIONS = 20;
+    private static final int BUNDLES = 5000;
+    private static final int VERSIONS = 3;
+
+    public static void main(String[] args) {
+        List<File> tree = generateTree();
+        System.out.printf("Bundles: %d%n", tree.size());
+
+        long baseline = usedHeap();
+        List<Artifact> separate = new ArrayList<>(tree.size());
+        for (File f : tree) {
+            // a new table per bundle doesn't share anything
+            separate.add(new ArtifactParser(null, new SymbolTable()).createFromFilename(f));
+        }
+        long separateHeap = usedHeap() - baseline;
+        System.out.printf("Without sharing: %,d bytes (%d artifacts)%n", separateHeap, separate.size());
+        separate = null;
+
+        baseline = usedHeap();
+        SymbolTable table = new SymbolTable();
+        ArtifactParser parser = new ArtifactParser(null, table);
+        List<Artifact> shared = new ArrayList<>(tree.size());
+        for (File f : tree) {
+            shared.add(parser.createFromFilename(f));
+        }
+        long sharedHeap = usedHeap() - baseline;
+        System.out.printf("With a symbol table: %,d bytes (%d artifacts, %d names, %d versions)%n", sharedHeap,
+                shared.size(), table.getNames(), table.getVersions());
+    }
+
+    /**
+     * Every installation contains the same bundles in one of a few versions.
+     */
+    private static List<File> generateTree() {
+        List<File> tree = new ArrayList<>(INSTALLATIONS * BUNDLES);
+        for (int i = 0; i < INSTALLATIONS; i++) {
+            File plugins = new File("eclipse-" + i, "plugins");
+            for (int b = 0; b < BUNDLES; b++) {
+                String version = "3." + ((b + i) % VERSIONS) + ".0.v20140" + (b % 10) + "01-1517";
+                tree.add(new File(plugins, "org.eclipse.generated.bundle" + b + "_" + version + ".jar"));
+            }
+        }
+        return tree;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
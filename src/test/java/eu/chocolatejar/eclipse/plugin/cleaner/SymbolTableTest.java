@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+
+import org.junit.Test;
+import org.osgi.framework.Version;
+
+import eu.chocolatejar.eclipse.plugin.cleaner.model.Artifact;
+import eu.chocolatejar.eclipse.plugin.cleaner.model.LocationClass;
+
+public class SymbolTableTest {
+
+    SymbolTable table = new SymbolTable();
+
+    @Test
+    public void sameNameIsStoredOnce() {
+        String a = table.symbolicName(new String("org.eclipse.core"));
+        String b = table.symbolicName("org.eclipse.core;singleton:=true");
+
+        assertThat(a).isEqualTo("org.eclipse.core");
+        assertThat(b).isSameAs(a);
+        assertThat(table.getNames()).isEqualTo(1);
+    }
+
+    @Test
+    public void sameVersionIsStoredOnce() {
+        Version a = table.version("1.0.0.v2014");
+        Version b = table.version(new Version(1, 0, 0, "v2014"));
+
+        assertThat(b).isSameAs(a);
+        assertThat(table.version("1.0.0.v2015")).isNotSameAs(a);
+        assertThat(table.getVersions()).isEqualTo(2);
+    }
+
+    @Test
+    public void internedArtifactIsEqual() {
+        Artifact original = new Artifact(new File("a_1.0.0"), "a", "1.0.0");
+        Artifact interned = table.intern(original);
+
+        assertThat(interned).isEqualTo(original);
+        assertThat(table.intern(interned)).isSameAs(interned);
+    }
+
+    @Test
+    public void internedArtifactKeepsScanValues() {
+        Artifact original = new Artifact(new File("a_1.0.0"), "a", "1.0.0").withLocationClass(
+                LocationClass.DROPINS_ECLIPSE).withFingerprint("f1");
+        Artifact interned = table.intern(original);
+
+        assertThat(interned.getLocationClass()).isEqualTo(LocationClass.DROPINS_ECLIPSE);
+        assertThat(interned.getFingerprint()).isEqualTo("f1");
+    }
+
+    @Test
+    public void parsedArtifactsShareNamesAndVersions() {
+        ArtifactParser parser = new ArtifactParser(null, table);
+        Artifact a = parser.createFromFilename(new File("eclipse1/plugins", "org.eclipse.core_1.0.0.v2014.jar"));
+        Artifact b = parser.createFromFilename(new File("eclipse2/plugins", "org.eclipse.core_1.0.0.v2014.jar"));
+
+        assertThat(b.getSymbolicName()).isSameAs(a.getSymbolicName());
+        assertThat(b.getVersion()).isSameAs(a.getVersion());
+    }
+}
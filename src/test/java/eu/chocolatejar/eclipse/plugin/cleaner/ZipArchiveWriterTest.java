@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.CRC32;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ZipArchiveWriterTest {
+
+    File folder;
+
+    @Before
+    public void before() throws IOException {
+        folder = Files.createTempDirectory("zip-writer-").toFile();
+    }
+
+    @After
+    public void after() throws IOException {
+        FileUtils.deleteDirectory(folder);
+    }
+
+    private static ZipArchiveWriter.Entry stored(String name, byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return new ZipArchiveWriter.Entry(name, 1400000000000L, ZipArchiveWriter.STORED, crc.getValue(),
+                data.length, data.length, new byte[0]);
+    }
+
+    @Test
+    public void readableByZipFile() throws IOException {
+        File file = new File(folder, "a.zip");
+        byte[] data = "čokoláda".getBytes(StandardCharsets.UTF_8);
+        try (ZipArchiveWriter writer = new ZipArchiveWriter(file)) {
+            writer.write(stored("a/", new byte[0]), new byte[0]);
+            writer.write(stored("a/čokoláda.txt", data), data);
+        }
+
+        try (ZipFile zip = new ZipFile(file)) {
+            assertThat(zip.size()).isEqualTo(2);
+            assertThat(zip.getEntry("a/").isDirectory()).isTrue();
+            assertThat(IOUtils.toByteArray(zip.getInputStream(zip.getEntry("a/čokoláda.txt")))).isEqualTo(data);
+        }
+    }
+
+    @Test
+    public void manyEntriesUseZip64() throws IOException {
+        File file = new File(folder, "many.zip");
+        final int count = 0xFFFF + 10;
+        byte[] data = "x".getBytes(StandardCharsets.UTF_8);
+        try (ZipArchiveWriter writer = new ZipArchiveWriter(file)) {
+            for (int i = 0; i < count; i++) {
+                writer.write(stored("plugins/" + i, data), data);
+            }
+        }
+
+        try (ZipFile zip = new ZipFile(file)) {
+            assertThat(zip.size()).isEqualTo(count);
+            assertThat(zip.getEntry("plugins/" + (count - 1))).isNotNull();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner.detector;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import eu.chocolatejar.eclipse.plugin.cleaner.detector.RetentionRule.Action;
+import eu.chocolatejar.eclipse.plugin.cleaner.model.Artifact;
+
+@RunWith(JUnitParamsRunner.class)
+public class RetentionPolicyTest {
+
+    private static final long NOW = 1400000000000L;
+
+    private static RetentionPolicy parse(String... lines) {
+        return RetentionPolicy.parse(Arrays.asList(lines), NOW);
+    }
+
+    @Test
+    public void parse() {
+        RetentionPolicy policy = parse("# comment", "", "pin com.ourcorp.*", "keep  org.eclipse.jdt.*  2 # jdt",
+                "min-age * 30d");
+
+        assertThat(policy.getRules()).hasSize(3);
+        RetentionRule keep = policy.getRules().get(1);
+        assertThat(keep.getAction()).isEqualTo(Action.KEEP);
+        assertThat(keep.getPattern()).isEqualTo("org.eclipse.jdt.*");
+        assertThat(keep.getVersions()).isEqualTo(2);
+        assertThat(keep.getLine()).isEqualTo(4);
+        assertThat(keep.toString()).isEqualTo("'keep  org.eclipse.jdt.*  2' (line 4)");
+        assertThat(policy.retainsSeveralVersions()).isTrue();
+    }
+
+    @Test
+    public void emptyFileHasNoRules() {
+        assertThat(parse("# nothing", " ")).isSameAs(RetentionPolicy.NONE);
+        assertThat(RetentionPolicy.NONE.match("a")).isNull();
+    }
+
+    @Test
+    @Parameters({ "remove a", "pin", "pin a b", "keep a", "keep a 0", "keep a x", "min-age a 30", "min-age a d",
+            "min-age a 30w" })
+    public void parse_invalid(String line) {
+        try {
+            parse("pin ok", line);
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage()).contains("line 2");
+            return;
+        }
+        throw new AssertionError("Expected an invalid rule: " + line);
+    }
+
+    @Test
+    @Parameters({ "org.eclipse.jdt.core | 1", //
+            "org.eclipse.jdt | 3", //
+            "org.eclipse.jdt.ui.source | 0", //
+            "com.ourcorp.tools | 2", //
+            "org.eclipse.platform | 3", //
+            "org.apache.ant | -1" })
+    public void firstMatchingRuleWins(String symbolicName, int expected) {
+        RetentionPolicy policy = parse("pin *.source", "keep org.eclipse.jdt.* 2", "pin com.ourcorp.*",
+                "keep org.eclipse.* 1", "pin org.eclipse.jdt.core");
+
+        RetentionRule rule = policy.match(symbolicName);
+
+        assertThat(rule == null ? -1 : policy.getRules().indexOf(rule)).isEqualTo(expected);
+    }
+
+    @Test
+    public void exactAndPrefixPatterns() {
+        RetentionPolicy policy = parse("pin a.b", "pin a.b*", "pin *");
+
+        assertThat(policy.match("a.b").getLine()).isEqualTo(1);
+        assertThat(policy.match("a.bc").getLine()).isEqualTo(2);
+        assertThat(policy.match("a").getLine()).isEqualTo(3);
+    }
+
+    @Test
+    public void innerWildcard() {
+        RetentionPolicy policy = parse("pin org.*.ui", "pin a*b*c");
+
+        assertThat(policy.match("org.eclipse.ui")).isNotNull();
+        assertThat(policy.match("org.eclipse.ui.ide")).isNull();
+        assertThat(policy.match("axxbyyc").getLine()).isEqualTo(2);
+        assertThat(policy.match("a.c")).isNull();
+    }
+
+    @Test
+    public void manyRules() {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            lines.add("keep bundle" + i + ".* " + (i % 3 + 1));
+        }
+        lines.add("pin *");
+        RetentionPolicy policy = RetentionPolicy.parse(lines, NOW);
+
+        for (int i = 0; i < 1000; i++) {
+            assertThat(policy.match("bundle" + i + ".x").getLine()).isEqualTo(i + 1);
+        }
+        assertThat(policy.match("other").getLine()).isEqualTo(1001);
+    }
+
+    @Test
+    public void minAgeProtectsRecentlyModifiedArtifacts() throws Exception {
+        File recent = File.createTempFile("recent", ".jar");
+        File old = File.createTempFile("old", ".jar");
+        try {
+            long now = System.currentTimeMillis();
+            assertThat(old.setLastModified(now - TimeUnit.DAYS.toMillis(31))).isTrue();
+            RetentionRule rule = RetentionPolicy.parse(Arrays.asList("min-age * 30d"), now).match("a");
+
+            assertThat(rule.protects(new Artifact(recent, "a", "1.0.0"))).isTrue();
+            assertThat(rule.protects(new Artifact(old, "a", "1.0.0"))).isFalse();
+        } finally {
+            recent.delete();
+            old.delete();
+        }
+    }
+}
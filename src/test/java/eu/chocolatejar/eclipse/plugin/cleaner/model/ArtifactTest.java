@@ -72,6 +72,14 @@ public class ArtifactTest {
         assertThat(a.isInDropinsFolder()).isFalse();
     }
 
+    @Test
+    public void recordedLocationClassWins() throws Exception {
+        Artifact a = new Artifact(new File("home/dropins/eclipse/plugins/a_1.0.jar"), "a", "1.0");
+
+        assertThat(a.withLocationClass(LocationClass.INSTALLATION).isInDropinsFolder()).isFalse();
+        assertThat(a.withLocationClass(LocationClass.DROPINS_ECLIPSE).isInDropinsFolder()).isTrue();
+    }
+
     @Test
     public void comparisonWithNull() throws Exception {
         Artifact a = new Artifact(new File("old/a_1.1.300.v20130514-0733.jar"), "a", "1.1.300.v20130514-0733");
@@ -93,4 +101,33 @@ public class ArtifactTest {
                 "1.2.300.201305140733");
     }
 
+    @Test
+    public void sameOrderAsNormalizedVersions() throws Exception {
+        String[] versions = { "1.0.0", "1.0.0.v20140528-1017", "1.0.0.201405281017", "1.0.0.20140528",
+                "1.0.0.20140528000000", "1.0.0.201405281017v", "1.0.0.I20140606-1215", "1.0.0.R35x_v20090805",
+                "1.0.0.9", "1.0.0.10", "1.0.0.qualifier", "1.0.0.v-", "1.0.1.1", "1.1.0.0", "2.0.0.v2014",
+                "1.0.0.1234567890123456789", "1.0.0.123456789012345678" };
+
+        for (String first : versions) {
+            for (String second : versions) {
+                Artifact a = new Artifact(null, "a", first);
+                Artifact b = new Artifact(null, "a", second);
+                int expected = Artifact.normalizeQualifier(a.getVersion()).compareTo(
+                        Artifact.normalizeQualifier(b.getVersion()));
+
+                assertThat(Integer.signum(a.compareTo(b))).as(first + " vs " + second).isEqualTo(
+                        Integer.signum(expected));
+            }
+        }
+    }
+
+    @Test
+    public void timestampIsOlderThanLongerTimestamp() throws Exception {
+        Artifact a = new Artifact(null, "a", "1.0.0.20140620");
+        Artifact b = new Artifact(null, "a", "1.0.0.v20140620-0000");
+
+        assertThat(a.compareTo(b)).isNegative();
+        assertThat(b.compareTo(a)).isPositive();
+    }
+
 }
@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright 2014 Chocolate Jar, Andrej Zachar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *Unless required by applicable law or agreed to in writing, software
+ *distributed under the License is distributed on an "AS IS" BASIS,
+ *WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *See the License for the specific language governing permissions and
+ *limitations under the License.
+ *******************************************************************************/
+package eu.chocolatejar.eclipse.plugin.cleaner.model;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.osgi.framework.Version;
+
+@RunWith(JUnitParamsRunner.class)
+public class VersionRangeTest {
+
+    @Test
+    @Parameters({ "[1.0;2.0) | 1.0.0 | true", //
+            "[1.0;2.0) | 1.9.9.v2014 | true", //
+            "[1.0;2.0) | 2.0.0 | false", //
+            "[1.0;2.0) | 0.9.0 | false", //
+            "(1.0;2.0] | 1.0.0 | false", //
+            "(1.0;2.0] | 1.0.0.qualifier | true", //
+            "(1.0;2.0] | 2.0.0 | true", //
+            "[1.2.3;1.2.3] | 1.2.3 | true", //
+            "1.2 | 1.2.0 | true", //
+            "1.2 | 99.0.0 | true", //
+            "1.2 | 1.1.9 | false" })
+    public void includes(String range, String version, boolean included) {
+        assertThat(VersionRange.parse(range.replace(';', ',')).includes(new Version(version))).isEqualTo(included);
+    }
+
+    @Test
+    @Parameters({ "\"[1.0.0;2.0.0)\"", "[1.0.0;2.0.0)", " [ 1.0.0 ; 2.0.0 ) " })
+    public void parse_quotesAndSpaces(String range) {
+        assertThat(VersionRange.parse(range.replace(';', ',')).toString()).isEqualTo("[1.0.0,2.0.0)");
+    }
+
+    @Test
+    @Parameters({ "", "[1.0", "[1.0)", "(1.0;2.0", "x.y" })
+    public void parse_invalid(String range) {
+        try {
+            VersionRange.parse(range.replace(';', ','));
+        } catch (IllegalArgumentException e) {
+            return;
+        }
+        throw new AssertionError("Expected an invalid range: " + range);
+    }
+
+    @Test
+    public void toStringCanBeParsed() {
+        for (String range : new String[] { "(1.0.0,2.0.0]", "1.5.0.v2014", "[1.0.0,1.0.0]" }) {
+            assertThat(VersionRange.parse(VersionRange.parse(range).toString())).isEqualTo(VersionRange.parse(range));
+        }
+    }
+}